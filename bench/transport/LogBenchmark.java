@@ -0,0 +1,59 @@
+package transport;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the debug output with the calls of the transports, printed to
+ * a stream that drops it. With the level off a call must allocate nothing:
+ * gc.alloc.rate.norm of the GC profiler is 0 bytes per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LogBenchmark {
+
+    @Param({"0", "2"})
+    public int level; //tracing level of the run, Log.OFF or Log.DEBUG
+
+    private Log log;
+    private Packet pkt;
+    private int i;
+
+    @Setup
+    public void setUp() {
+        log = new Log();
+        log.configure(level);
+        log.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        pkt = new Packet(new Message("payload"), 5, -1);
+    }
+
+    @Benchmark
+    public void twoLongs() {
+        i++;
+        log.log(Log.SENDER, Log.DEBUG, "Current queuing messages: {}, open windows: {}", i, i + 1);
+    }
+
+    @Benchmark
+    public void longsAndObject() {
+        log.log(Log.RECEIVER, Log.DEBUG, "Receive packet at receiver; seqnum: {} acknum: {} msg: {}",
+                pkt.getSeqnum(), pkt.getAcknum(), pkt.getMessage().getMessage());
+    }
+}
@@ -0,0 +1,53 @@
+package transport;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of NetworkLayer.sendPacket: drawing the packet's loss, corruption
+ * and delay, and scheduling its arrival. A copy of the packet is sent, as the
+ * sender does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NetworkLayerBenchmark {
+
+    private static final int CLEAR_INTERVAL = 4096; //packets sent between two clears of the queue
+
+    @Param({"0.0", "0.1", "0.5"})
+    public float lossProb;
+
+    @Param({"0.0", "0.1"})
+    public float corrProb;
+
+    private Timeline tl;
+    private NetworkLayer nl;
+    private Packet packet;
+    private int sent;
+
+    @Setup
+    public void setUp() {
+        tl = new Timeline(0, 0, 1, 1, 42L);
+        nl = new NetworkLayer(lossProb, corrProb, tl);
+        packet = new Packet(new Message("benchmark message"), 0, -1);
+    }
+
+    @Benchmark
+    public int sendPacket() {
+        nl.sendPacket(packet.clone(), Event.RECEIVER, 0);
+        if (++sent == CLEAR_INTERVAL) {
+            //keep the queue small, its cost is measured by TimelineBenchmark
+            tl.clearEvents();
+            sent = 0;
+        }
+        return sent;
+    }
+}
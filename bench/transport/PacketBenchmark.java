@@ -0,0 +1,53 @@
+package transport;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the packets: construction (which computes the checksum),
+ * cloning and checking the checksum.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacketBenchmark {
+
+    @Param({"8", "64", "1024"})
+    public int payloadLength;
+
+    private String payload;
+    private Packet packet;
+    private int seqnum;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < payloadLength; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        payload = sb.toString();
+        packet = new Packet(new Message(payload), 7, -1);
+    }
+
+    @Benchmark
+    public Packet construct() {
+        return new Packet(new Message(payload), seqnum++, -1);
+    }
+
+    @Benchmark
+    public Packet clonePacket() {
+        return packet.clone();
+    }
+
+    @Benchmark
+    public boolean isCorrupt() {
+        return packet.isCorrupt();
+    }
+}
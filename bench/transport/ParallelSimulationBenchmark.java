@@ -0,0 +1,61 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the parallel engines against the sequential one: the same
+ * seeded run of many flows, simulated by a Simulation (0 processes), a
+ * ParallelSimulation or a TimeWarpSimulation. The speedup is the time of the
+ * sequential run divided by the time of a parallel one, and needs at least as
+ * many cores as processes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelSimulationBenchmark {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int numLps; //number of logical processes, 0 for the sequential engine
+
+    @Param({"256"})
+    public int numFlows;
+
+    @Param({"0.1"})
+    public float lossProb;
+
+    private List<String> messages;
+
+    @Setup
+    public void setUp() {
+        messages = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            messages.add("message number " + i + " of the benchmark corpus");
+        }
+    }
+
+    @Benchmark
+    public FlowStatistics sequentialOrConservative() {
+        if (numLps == 0) {
+            return new Simulation(messages, numFlows, 2, lossProb, lossProb / 2, 8, 1, 10, 42L).run();
+        }
+        return new ParallelSimulation(messages, numFlows, 2, lossProb, lossProb / 2, 8, 1, 10, 42L, numLps).run();
+    }
+
+    @Benchmark
+    public FlowStatistics sequentialOrOptimistic() {
+        if (numLps == 0) {
+            return new Simulation(messages, numFlows, 2, lossProb, lossProb / 2, 8, 1, 10, 42L).run();
+        }
+        return new TimeWarpSimulation(messages, numFlows, 2, lossProb, lossProb / 2, 8, 1, 10, 42L, numLps, 256).run();
+    }
+}
@@ -0,0 +1,69 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the receive paths of the receiver transport, Go-back-N and
+ * TCP: checking the packet, buffering or delivering it and sending the ack.
+ * Packets arrive in order, or with every pair swapped so that TCP buffers
+ * every other packet and Go-back-N drops everything after the first gap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReceiverBenchmark {
+
+    private static final int ROUND = 1024; //packets received before the receiver starts over
+
+    @Param({"0", "1"})
+    public int protocol;
+
+    @Param({"false", "true"})
+    public boolean reordered;
+
+    private Timeline tl;
+    private ReceiverTransport rt;
+    private Packet[] packets;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        ArrayList<String> messages = new ArrayList<>();
+        messages.add("benchmark message");
+        Simulation sim = new Simulation(messages, 1, 1, 0f, 0f, 8, protocol, 1, 42L);
+        sim.setReceiverSink(new CountingSink(1));
+        tl = sim.getTimeline();
+        rt = sim.getReceiverTransport(0);
+        packets = new Packet[ROUND];
+        for (int i = 0; i < ROUND; i++) {
+            int seqnum = reordered ? i ^ 1 : i;
+            packets[i] = new Packet(new Message("message " + seqnum), seqnum, -1);
+        }
+        startOver();
+    }
+
+    private void startOver() {
+        rt.setProtocol(protocol);
+        rt.getReceiverApplication().setNumReceived(0);
+        tl.clearEvents();
+        next = 0;
+    }
+
+    @Benchmark
+    public int receiveMessage() {
+        rt.receiveMessage(packets[next]);
+        if (++next == ROUND) {
+            startOver();
+        }
+        return next;
+    }
+}
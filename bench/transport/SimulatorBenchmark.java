@@ -0,0 +1,67 @@
+package transport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end benchmark of NetworkSimulator.run, reading the corpus and
+ * simulating one flow until every message is delivered and acknowledged.
+ * Every run has the same seed. Delivered messages are only counted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SimulatorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int corpusSize; //number of messages
+
+    @Param({"4", "32"})
+    public int windowSize;
+
+    @Param({"0.0", "0.1", "0.3"})
+    public float lossProb;
+
+    @Param({"0", "1"})
+    public int protocol;
+
+    private Path corpus;
+    private NetworkSimulator ns;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = Files.createTempFile("corpus", ".txt");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < corpusSize; i++) {
+            lines.add("message number " + i + " of the benchmark corpus");
+        }
+        Files.write(corpus, lines, StandardCharsets.UTF_8);
+        ns = new NetworkSimulator();
+        ns.setSeed(42L);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(corpus);
+    }
+
+    @Benchmark
+    public RunMetrics run() {
+        ns.setReceiverSink(new CountingSink(1));
+        return ns.run(corpus.toString(), 2, lossProb, lossProb / 2, windowSize, protocol, 0);
+    }
+}
@@ -0,0 +1,85 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the event queue of Timeline: the hold model, in which every
+ * event taken off the queue is replaced by one a random delay later, so the
+ * queue keeps its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimelineBenchmark {
+
+    private static final int NUM_DELAYS = 1 << 12;
+
+    @Param({"16", "1024", "65536"})
+    public int queueSize; //events pending at any time
+
+    @Param({"1", "64"})
+    public int numFlows;
+
+    private Timeline tl;
+    private int[] delays; //delay of each new event, in ticks
+    private int next; //index of the next delay
+    private List<Event> batch;
+
+    @Setup
+    public void setUp() {
+        tl = new Timeline(0, 0, numFlows, 1, 42L);
+        Random ran = new Random(42L);
+        delays = new int[NUM_DELAYS];
+        for (int i = 0; i < NUM_DELAYS; i++) {
+            //link delays are 1 to 10 units, timeouts 30
+            delays[i] = ran.nextInt(8) == 0 ? 30 : 1 + ran.nextInt(9);
+        }
+        for (int i = 0; i < queueSize; i++) {
+            tl.insertEvent(new Event(delays[i % NUM_DELAYS], Event.MESSAGEARRIVE, i & 1, i % numFlows));
+        }
+        batch = new ArrayList<>();
+    }
+
+    private void reinsert(Event e) {
+        next = (next + 1) & (NUM_DELAYS - 1);
+        tl.insertEvent(new Event(e.getTime() + delays[next], Event.MESSAGEARRIVE, e.getHost(), e.getFlow()));
+    }
+
+    /**
+     * Take the next event off the queue and schedule a new one
+     *
+     * @return the event taken
+     */
+    @Benchmark
+    public Event holdEvent() {
+        Event e = tl.returnNextEvent();
+        reinsert(e);
+        return e;
+    }
+
+    /**
+     * Take every event of the next tick off the queue and schedule as many new
+     * ones, as the simulation loop does
+     *
+     * @return the number of events taken
+     */
+    @Benchmark
+    public int holdBatch() {
+        int n = tl.returnNextBatch(batch);
+        for (int i = 0; i < n; i++) {
+            reinsert(batch.get(i));
+        }
+        return n;
+    }
+}
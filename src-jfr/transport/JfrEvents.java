@@ -0,0 +1,205 @@
+package transport;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The flight recorder events of the runs, on a JVM with the jdk.jfr module.
+ * Only FlightEvents loads this class, and only when the module is there. It
+ * is kept apart from the other sources and only compiled by a JDK that has
+ * the module, so the project still builds on JDK 7 (see build.xml). The
+ * events are enabled by default, queue samples once a second, and can be
+ * selected with their names, e.g. transport.Timeout.
+ */
+class JfrEvents extends FlightEvents {
+
+    @Name("transport.RunStarted")
+    @Label("Run Started")
+    @Category("Network Simulator")
+    @StackTrace(false)
+    static class RunStartedEvent extends Event {
+
+        @Label("Run")
+        long run;
+        @Label("Engine")
+        String engine;
+        @Label("Flows")
+        int flows;
+        @Label("Protocol")
+        String protocol;
+        @Label("Window Size")
+        int windowSize;
+        @Label("Loss Probability")
+        float lossProb;
+    }
+
+    @Name("transport.Run")
+    @Label("Run")
+    @Description("A run, from its start to its end")
+    @Category("Network Simulator")
+    @StackTrace(false)
+    static class RunEvent extends Event {
+
+        @Label("Run")
+        long run;
+        @Label("Engine")
+        String engine;
+        @Label("Flows")
+        int flows;
+        @Label("Protocol")
+        String protocol;
+        @Label("Window Size")
+        int windowSize;
+        @Label("Loss Probability")
+        float lossProb;
+        @Label("Events Processed")
+        long events;
+        @Label("Simulated Time")
+        @Description("Simulated time the run went through, in time units")
+        double simulatedTime;
+        @Label("Queue High-Water Mark")
+        long peakQueued;
+    }
+
+    @Name("transport.Timeout")
+    @Label("Timeout")
+    @Category("Network Simulator")
+    @StackTrace(false)
+    static class TimeoutEvent extends Event {
+
+        @Label("Flow")
+        int flow;
+        @Label("Window Base")
+        int base;
+        @Label("Simulated Time")
+        @Description("Time of the timeout, in ticks")
+        long time;
+    }
+
+    @Name("transport.FastRetransmit")
+    @Label("Fast Retransmit")
+    @Category("Network Simulator")
+    @StackTrace(false)
+    static class FastRetransmitEvent extends Event {
+
+        @Label("Flow")
+        int flow;
+        @Label("Window Base")
+        int base;
+        @Label("Simulated Time")
+        @Description("Time of the retransmit, in ticks")
+        long time;
+    }
+
+    @Name("transport.QueueSample")
+    @Label("Queue Sample")
+    @Description("Progress and queue depth of an active run")
+    @Category("Network Simulator")
+    @Period("1 s")
+    @StackTrace(false)
+    static class QueueSampleEvent extends Event {
+
+        @Label("Run")
+        long run;
+        @Label("Queue Depth")
+        long queued;
+        @Label("Queue High-Water Mark")
+        long peakQueued;
+        @Label("Events Processed")
+        long events;
+        @Label("Simulated Time")
+        @Description("Simulated time the run has gone through, in time units")
+        double simulatedTime;
+        @Label("Wall-Clock Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    private static final String[] PROTOCOL_NAMES = {"GBN", "TCP"};
+
+    public JfrEvents() {
+        FlightRecorder.addPeriodicEvent(QueueSampleEvent.class, new Runnable() {
+            @Override
+            public void run() {
+                for (Telemetry.Run run : Telemetry.get().getActive()) {
+                    QueueSampleEvent event = new QueueSampleEvent();
+                    event.run = run.getId();
+                    event.queued = run.getQueued();
+                    event.peakQueued = run.getPeakQueued();
+                    event.events = run.getEvents();
+                    event.simulatedTime = run.getSimulatedTime();
+                    event.elapsed = run.getElapsedNanos();
+                    event.commit();
+                }
+            }
+        });
+    }
+
+    private static String protocolName(int protocol) {
+        return protocol >= 0 && protocol < PROTOCOL_NAMES.length ? PROTOCOL_NAMES[protocol] : Integer.toString(protocol);
+    }
+
+    @Override
+    Object runStarted(Telemetry.Run run) {
+        RunStartedEvent started = new RunStartedEvent();
+        if (started.isEnabled()) {
+            started.run = run.getId();
+            started.engine = run.getEngine();
+            started.flows = run.getNumFlows();
+            started.protocol = protocolName(run.getProtocol());
+            started.windowSize = run.getWindowSize();
+            started.lossProb = run.getLossProb();
+            started.commit();
+        }
+        RunEvent event = new RunEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void runEnded(Telemetry.Run run, Object started) {
+        RunEvent event = (RunEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.run = run.getId();
+            event.engine = run.getEngine();
+            event.flows = run.getNumFlows();
+            event.protocol = protocolName(run.getProtocol());
+            event.windowSize = run.getWindowSize();
+            event.lossProb = run.getLossProb();
+            event.events = run.getEvents();
+            event.simulatedTime = run.getSimulatedTime();
+            event.peakQueued = run.getPeakQueued();
+            event.commit();
+        }
+    }
+
+    @Override
+    void timeout(int flow, int base, long time) {
+        TimeoutEvent event = new TimeoutEvent();
+        if (event.isEnabled()) {
+            event.flow = flow;
+            event.base = base;
+            event.time = time;
+            event.commit();
+        }
+    }
+
+    @Override
+    void fastRetransmit(int flow, int base, long time) {
+        FastRetransmitEvent event = new FastRetransmitEvent();
+        if (event.isEnabled()) {
+            event.flow = flow;
+            event.base = base;
+            event.time = time;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A class which runs independent trials until their results are precise
+ * enough. Trials are run in parallel batches; after each batch, the
+ * confidence interval of the mean of every measured value is checked, and
+ * more trials are run until all of them are narrower than the target (relative
+ * to the mean) or the budget of trials is spent. Points that vary little stop
+ * after a few trials and the noisy ones get the rest.
+ *
+ * Trials are numbered from 0 and their results are added in that order,
+ * checking the intervals after each one, so for deterministic trials the
+ * statistics do not depend on the number of threads; at most a batch of
+ * trials is run for nothing.
+ */
+public class AdaptiveTrials {
+
+    /**
+     * One trial of an experiment
+     */
+    public interface Trial {
+
+        /**
+         * Run a trial
+         *
+         * @param index number of the trial, from 0
+         * @return the measured values, always the same number of them
+         */
+        double[] run(int index);
+    }
+
+    private final int numThreads;
+    private double confidence = 0.95; //confidence level of the intervals
+    private double targetRelativeHalfWidth = 0.05; //half-width to reach, relative to the mean
+    private int minTrials = 4; //trials to run before checking the intervals
+    private int maxTrials = 200; //budget of trials
+
+    /**
+     * Create a runner
+     *
+     * @param numThreads number of trials run at once
+     */
+    public AdaptiveTrials(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("number of threads must be at least 1: " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    public void setConfidence(double confidence) {
+        if (confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("confidence must be between 0 and 1: " + confidence);
+        }
+        this.confidence = confidence;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public void setTargetRelativeHalfWidth(double target) {
+        if (target <= 0) {
+            throw new IllegalArgumentException("target half-width must be positive: " + target);
+        }
+        this.targetRelativeHalfWidth = target;
+    }
+
+    /**
+     * Set the number of trials run before the intervals are first checked and
+     * the most trials run for one point
+     *
+     * @param minTrials least number of trials, at least 2
+     * @param maxTrials budget of trials, at least minTrials
+     */
+    public void setTrialBounds(int minTrials, int maxTrials) {
+        if (minTrials < 2 || maxTrials < minTrials) {
+            throw new IllegalArgumentException("need 2 <= minTrials <= maxTrials: " + minTrials + ", " + maxTrials);
+        }
+        this.minTrials = minTrials;
+        this.maxTrials = maxTrials;
+    }
+
+    /**
+     * Run trials until every measured value is precise enough or the budget
+     * is spent
+     *
+     * @param trial the trial to run
+     * @param numValues number of values each trial measures
+     * @return the statistics of each measured value
+     */
+    public TrialStatistics[] run(final Trial trial, int numValues) {
+        TrialStatistics[] stats = new TrialStatistics[numValues];
+        for (int i = 0; i < numValues; i++) {
+            stats[i] = new TrialStatistics();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            int done = 0;
+            while (done < maxTrials) {
+                int batch = Math.min(Math.max(numThreads, minTrials - done), maxTrials - done);
+                List<Future<double[]>> results = new ArrayList<>(batch);
+                for (int i = done; i < done + batch; i++) {
+                    final int index = i;
+                    results.add(pool.submit(new Callable<double[]>() {
+                        @Override
+                        public double[] call() {
+                            return trial.run(index);
+                        }
+                    }));
+                }
+                //the intervals are checked after every trial, in order, so the
+                //trials used do not depend on the size of the batches
+                for (Future<double[]> result : results) {
+                    double[] values = get(result);
+                    for (int v = 0; v < numValues; v++) {
+                        stats[v].add(values[v]);
+                    }
+                    done++;
+                    if (done >= minTrials && isPrecise(stats)) {
+                        return stats;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return stats;
+    }
+
+    /**
+     * Return whether every interval is narrower than the target
+     *
+     * @param stats statistics of the measured values
+     * @return true if no more trials are needed
+     */
+    private boolean isPrecise(TrialStatistics[] stats) {
+        for (TrialStatistics s : stats) {
+            if (s.getRelativeHalfWidth(confidence) > targetRelativeHalfWidth) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the result of a trial
+     *
+     * @param result the pending result
+     * @return the measured values
+     */
+    private static double[] get(Future<double[]> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a trial", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Trial failed", ex.getCause());
+        }
+    }
+}
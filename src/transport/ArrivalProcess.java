@@ -0,0 +1,150 @@
+package transport;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * The process by which the sender applications hand messages to their
+ * transports, i.e. the times of the send events. A process is shared by all
+ * flows of a run and only describes the arrivals; the timeline of each flow
+ * pulls its next send time from a Source of its own, when the previous
+ * message is sent.
+ *
+ * The processes are Poisson arrivals (the default, see PoissonArrivals),
+ * constant bit rate (ConstantArrivals), bursty Markov-modulated Poisson
+ * arrivals, on-off ones among them (MmppArrivals), and the replay of a
+ * recorded trace of timestamps (TraceArrivals). A source only draws from the
+ * random number generator of its sender and keeps its state in one long,
+ * which checkpoints and rollbacks save with the rest of the host, so a run
+ * gives the same results whichever way it is simulated.
+ *
+ * A process can also be given as a spec, see parse.
+ */
+public abstract class ArrivalProcess {
+
+    /**
+     * The arrivals of one flow
+     */
+    public abstract static class Source {
+
+        /**
+         * Return the time between the previous message of the flow and the
+         * next one
+         *
+         * @param index number of the next message, 0 for the first, whose
+         * time is counted from the start of the run
+         * @param random random number generator of the sender
+         * @return the time until the next message, in ticks
+         */
+        public abstract long nextGap(long index, RandomStream random);
+
+        /**
+         * Return the state of the source, apart from its random number
+         * generator
+         *
+         * @return the state, 0 if it has none
+         */
+        public long getState() {
+            return 0;
+        }
+
+        /**
+         * Put the source back to a state returned by getState
+         *
+         * @param state the state
+         */
+        public void setState(long state) {
+        }
+    }
+
+    /**
+     * Create the source of one flow
+     *
+     * @param ticksPerUnit number of ticks in one time unit
+     * @return the source, in its initial state
+     */
+    public abstract Source newSource(long ticksPerUnit);
+
+    /**
+     * Return the spec of the process, which parse turns back into the same
+     * process
+     *
+     * @return the spec
+     */
+    public abstract String toSpec();
+
+    @Override
+    public String toString() {
+        return toSpec();
+    }
+
+    /**
+     * Create a process from its spec, one of
+     *
+     * poisson:MEAN - Poisson arrivals, MEAN time units apart on average
+     * cbr:GAP - one message every GAP time units
+     * onoff:RATE:ON:OFF - RATE messages per time unit during on periods of ON
+     * time units on average, none during off periods of OFF time units
+     * mmpp:RATE@SOJOURN:RATE@SOJOURN:... - Poisson arrivals at the RATE of
+     * the current phase, each phase lasting SOJOURN time units on average
+     * before the next one, in a cycle
+     * trace:FILE - the timestamps of an arrival trace, see TraceArrivals
+     *
+     * @param spec the spec
+     * @return the process
+     * @throws IOException if the file of a trace cannot be read
+     */
+    public static ArrivalProcess parse(String spec) throws IOException {
+        int colon = spec.indexOf(':');
+        String kind = colon < 0 ? spec : spec.substring(0, colon);
+        String params = colon < 0 ? "" : spec.substring(colon + 1);
+        try {
+            switch (kind) {
+                case "poisson":
+                    return new PoissonArrivals(Double.parseDouble(params));
+                case "cbr":
+                    return new ConstantArrivals(Double.parseDouble(params));
+                case "onoff":
+                    String[] p = params.split(":");
+                    if (p.length != 3) {
+                        throw new IllegalArgumentException("onoff needs a rate, an on time and an off time: " + spec);
+                    }
+                    return MmppArrivals.onOff(Double.parseDouble(p[0]), Double.parseDouble(p[1]),
+                            Double.parseDouble(p[2]));
+                case "mmpp":
+                    String[] phases = params.split(":");
+                    double[] rates = new double[phases.length];
+                    double[] sojourns = new double[phases.length];
+                    for (int i = 0; i < phases.length; i++) {
+                        String[] phase = phases[i].split("@");
+                        if (phase.length != 2) {
+                            throw new IllegalArgumentException("phase " + phases[i] + " is not RATE@SOJOURN: " + spec);
+                        }
+                        rates[i] = Double.parseDouble(phase[0]);
+                        sojourns[i] = Double.parseDouble(phase[1]);
+                    }
+                    return new MmppArrivals(rates, sojourns);
+                case "trace":
+                    return new TraceArrivals(Paths.get(params));
+                default:
+                    throw new IllegalArgumentException("unknown arrival process " + kind);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid arrival process: " + spec, ex);
+        }
+    }
+
+    /**
+     * Check that a time is positive and finite
+     *
+     * @param name what the time is
+     * @param time the time
+     * @return the time
+     */
+    static double checkTime(String name, double time) {
+        if (!(time > 0) || Double.isInfinite(time)) {
+            throw new IllegalArgumentException(name + " should be positive: " + time);
+        }
+        return time;
+    }
+}
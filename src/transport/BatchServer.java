@@ -0,0 +1,584 @@
+package transport;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server which keeps one warm JVM and runs simulations on a pool of
+ * workers, so that an orchestrator launching thousands of short runs pays
+ * for JVM startup and a cold JIT once instead of once per run.
+ *
+ * Runs are read as newline-delimited JSON, one object per line, with the
+ * parameters of NetworkSimulator.run:
+ *
+ * {"id": 7, "fileName": "msgs.txt", "timeBetweenMsg": 2, "lossProb": 0.1,
+ * "corrProb": 0.1, "windowsSize": 8, "protocolType": 1}
+ *
+ * and optionally "tracing" (0), "numFlows" (1), "ticksPerUnit" (1), "seed"
+ * (random), "antithetic" (false), "arrivals" (the spec of an arrival
+ * process, see ArrivalProcess; Poisson arrivals by default) and "linkTrace"
+ * (the spec of a link trace replayed instead of the probabilities, see
+ * LinkTrace; none by default). "id" is anything the client wants back
+ * with the result. Each run writes one line when it ends, in the order runs
+ * end rather than the order they were read:
+ *
+ * {"id": 7, "seed": 42, "micros": 812, "metrics": {"Total Time": 1234, ...}}
+ *
+ * or {"id": 7, "error": "..."} if the line could not be run, or if its run
+ * threw an Error. The metrics are
+ * named as in RunMetrics.FIELD_NAMES. The files of messages are read once and
+ * kept until they change on disk; the file name can also be the spec of
+ * synthetic messages (see SyntheticMessages). Arrival processes and link
+ * traces are parsed once per spec and shared by the runs that use them, so
+ * the files of traces are only mapped again when they change on disk.
+ * Tracing output goes to standard error, so that standard output only holds
+ * results. The server stops once its input
+ * ends and every run has written its result.
+ *
+ * The server talks over its standard input and output; to serve a local
+ * socket instead, put it behind one, e.g.
+ * socat UNIX-LISTEN:/tmp/sim.sock,fork EXEC:"java transport.BatchServer".
+ */
+public class BatchServer {
+
+    public static final int PENDING_PER_WORKER = 4; //runs read ahead for each worker
+
+    private static final Set<String> KEYS = new HashSet<>(Arrays.asList("id", "fileName", "timeBetweenMsg",
+            "lossProb", "corrProb", "windowsSize", "protocolType", "tracing", "numFlows", "ticksPerUnit", "seed",
+            "antithetic", "arrivals", "linkTrace"));
+
+    private final ExecutorService workers;
+    private final Semaphore pending; //runs that may still be read before one ends
+    private final Writer out; //where results are written, one line each
+    private final NetworkSimulator reader = new NetworkSimulator(); //reads the files of messages
+    private final Map<Path, Corpus> corpora = new ConcurrentHashMap<>(); //files of messages read so far
+    private final Map<String, Parsed<ArrivalProcess>> arrivalProcesses = new ConcurrentHashMap<>(); //by spec
+    private final Map<String, Parsed<LinkTrace>> linkTraces = new ConcurrentHashMap<>(); //by spec
+
+    /**
+     * The messages of a file, as of when it was read
+     */
+    private static final class Corpus {
+
+        final long modified; //last modification time of the file when it was read, in ms
+        final long size; //size of the file when it was read
+        final ArrayList<String> messages;
+
+        Corpus(long modified, long size, ArrayList<String> messages) {
+            this.modified = modified;
+            this.size = size;
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * An arrival process or link trace parsed from its spec, as of when the
+     * file it reads, if any, was parsed
+     */
+    private static final class Parsed<T> {
+
+        final long modified; //last modification time of the file when it was parsed, in ms, -1 without a file
+        final long size; //size of the file when it was parsed, -1 without a file
+        final T value;
+
+        Parsed(long modified, long size, T value) {
+            this.modified = modified;
+            this.size = size;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Create a server
+     *
+     * @param numWorkers number of runs done at once
+     * @param out where the results are written
+     */
+    public BatchServer(int numWorkers, Writer out) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("need at least one worker");
+        }
+        this.out = out;
+        pending = new Semaphore(numWorkers * PENDING_PER_WORKER);
+        workers = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "worker-" + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Main method
+     *
+     * @param args number of workers, the number of processors by default
+     */
+    public static void main(String[] args) {
+        int numWorkers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        try {
+            BatchServer server = new BatchServer(numWorkers,
+                    new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+        } catch (IOException ex) {
+            System.err.println("Could not serve: " + ex);
+            System.exit(2);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Run every line of the input, until it ends, then wait for the last
+     * runs to write their results
+     *
+     * @param in the runs, one JSON object per line
+     * @throws IOException if the input cannot be read or the results cannot
+     * be written
+     * @throws InterruptedException if interrupted while waiting for a worker
+     */
+    public void serve(BufferedReader in) throws IOException, InterruptedException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            final String request = line;
+            pending.acquire();
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(execute(request));
+                    } catch (Throwable t) {
+                        //an Error such as OutOfMemoryError ended the run, its client still waits for a result
+                        System.err.println("Run failed: " + t);
+                        write(error(request, t));
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        synchronized (out) {
+            out.flush();
+        }
+    }
+
+    private void write(String result) {
+        synchronized (out) {
+            try {
+                out.write(result);
+                out.write('\n');
+                out.flush();
+            } catch (IOException ex) {
+                //the client has gone, nothing is left to tell
+                System.err.println("Could not write a result: " + ex);
+            }
+        }
+    }
+
+    /**
+     * Run one line of the input
+     *
+     * @param request the run, as a JSON object
+     * @return the result of the run, as a JSON object on one line
+     */
+    String execute(String request) {
+        Object id = null;
+        try {
+            Map<String, Object> spec = parse(request);
+            id = spec.get("id");
+            for (String key : spec.keySet()) {
+                if (!KEYS.contains(key)) {
+                    throw new IllegalArgumentException("unknown parameter " + key);
+                }
+            }
+            long seed = spec.containsKey("seed") ? number(spec, "seed").longValueExact() : new Random().nextLong();
+            long start = System.nanoTime();
+            Simulation sim = new Simulation(corpus(string(spec, "fileName")),
+                    intValue(spec, "numFlows", 1),
+                    intValue(spec, "timeBetweenMsg", -1),
+                    number(spec, "lossProb").floatValue(),
+                    number(spec, "corrProb").floatValue(),
+                    intValue(spec, "windowsSize", -1),
+                    intValue(spec, "protocolType", -1),
+                    number(spec, "ticksPerUnit", 1).longValueExact(),
+                    seed,
+                    Boolean.TRUE.equals(spec.get("antithetic")));
+            if (spec.containsKey("arrivals")) {
+                sim.setArrivalProcess(arrivalProcess(string(spec, "arrivals")));
+            }
+            if (spec.containsKey("linkTrace")) {
+                sim.setLinkTrace(linkTrace(string(spec, "linkTrace")));
+            }
+            sim.setTracing(intValue(spec, "tracing", 0));
+            sim.getTimeline().getLog().setOut(System.err);
+            sim.setReceiverSink(new CountingSink(intValue(spec, "numFlows", 1)));
+            RunMetrics metrics = sim.run().getMetrics();
+            long micros = (System.nanoTime() - start) / 1000;
+
+            StringBuilder sb = new StringBuilder("{\"id\":");
+            appendValue(sb, id);
+            sb.append(",\"seed\":").append(seed).append(",\"micros\":").append(micros).append(",\"metrics\":{");
+            for (int field = 0; field < RunMetrics.FIELD_NAMES.length; field++) {
+                if (field > 0) {
+                    sb.append(',');
+                }
+                appendValue(sb, RunMetrics.FIELD_NAMES[field]);
+                sb.append(':').append(metrics.get(field));
+            }
+            return sb.append("}}").toString();
+        } catch (IOException | RuntimeException ex) {
+            return error(id, ex instanceof IllegalArgumentException ? ex.getMessage() : ex.toString());
+        }
+    }
+
+    /**
+     * Return the result of a line whose run threw
+     *
+     * @param request the run, as a JSON object
+     * @param t what the run threw
+     * @return the error, with the id of the run if the line has one
+     */
+    private static String error(String request, Throwable t) {
+        Object id = null;
+        try {
+            id = parse(request).get("id");
+        } catch (RuntimeException ex) {
+            //not JSON, the error has no id
+        }
+        return error(id, t.toString());
+    }
+
+    private static String error(Object id, String message) {
+        StringBuilder sb = new StringBuilder("{\"id\":");
+        appendValue(sb, id);
+        sb.append(",\"error\":");
+        appendValue(sb, message);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Return the messages of a file, read again only if it has changed since
+     * it was last read
+     *
+     * @param fileName the file
+     * @return the messages, one per line
+     * @throws IOException if the file cannot be read
+     */
+    private List<String> corpus(String fileName) throws IOException {
+        if (SyntheticMessages.isSpec(fileName)) {
+            return SyntheticMessages.parse(fileName);
+        }
+        Path path = Paths.get(fileName).toAbsolutePath();
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        long size = Files.size(path);
+        Corpus corpus = corpora.get(path);
+        if (corpus == null || corpus.modified != modified || corpus.size != size) {
+            corpus = new Corpus(modified, size, reader.readFile(path.toString()));
+            corpora.put(path, corpus);
+        }
+        return corpus.messages;
+    }
+
+    /**
+     * Return the arrival process of a spec, parsed again only if the file of
+     * its trace has changed since it was last parsed
+     *
+     * @param spec the spec, see ArrivalProcess.parse
+     * @return the process
+     * @throws IOException if the file of a trace cannot be read
+     */
+    ArrivalProcess arrivalProcess(String spec) throws IOException {
+        Path file = spec.startsWith("trace:") ? Paths.get(spec.substring(6)) : null;
+        long modified = file == null ? -1 : Files.getLastModifiedTime(file).toMillis();
+        long size = file == null ? -1 : Files.size(file);
+        Parsed<ArrivalProcess> parsed = arrivalProcesses.get(spec);
+        if (parsed == null || parsed.modified != modified || parsed.size != size) {
+            parsed = new Parsed<>(modified, size, ArrivalProcess.parse(spec));
+            arrivalProcesses.put(spec, parsed);
+        }
+        return parsed.value;
+    }
+
+    /**
+     * Return the link trace of a spec, opened again only if its file has
+     * changed since it was last opened
+     *
+     * @param spec the spec, see LinkTrace.parse
+     * @return the trace
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    LinkTrace linkTrace(String spec) throws IOException {
+        if (!spec.startsWith("loop:") && !spec.startsWith("stop:")) {
+            return LinkTrace.parse(spec);
+        }
+        Path file = Paths.get(spec.substring(5));
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+        Parsed<LinkTrace> parsed = linkTraces.get(spec);
+        if (parsed == null || parsed.modified != modified || parsed.size != size) {
+            parsed = new Parsed<>(modified, size, LinkTrace.parse(spec));
+            linkTraces.put(spec, parsed);
+        }
+        return parsed.value;
+    }
+
+    private static Object required(Map<String, Object> spec, String key) {
+        if (!spec.containsKey(key)) {
+            throw new IllegalArgumentException("missing parameter " + key);
+        }
+        return spec.get(key);
+    }
+
+    private static String string(Map<String, Object> spec, String key) {
+        Object value = required(spec, key);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException(key + " should be a string");
+        }
+        return (String) value;
+    }
+
+    private static BigDecimal number(Map<String, Object> spec, String key) {
+        Object value = required(spec, key);
+        if (!(value instanceof BigDecimal)) {
+            throw new IllegalArgumentException(key + " should be a number");
+        }
+        return (BigDecimal) value;
+    }
+
+    private static BigDecimal number(Map<String, Object> spec, String key, long defaultValue) {
+        return spec.containsKey(key) ? number(spec, key) : BigDecimal.valueOf(defaultValue);
+    }
+
+    /**
+     * Return an int parameter
+     *
+     * @param spec the parameters
+     * @param key name of the parameter
+     * @param defaultValue its value if missing, or -1 if it is required
+     * @return the value
+     */
+    private static int intValue(Map<String, Object> spec, String key, int defaultValue) {
+        if (defaultValue < 0 || spec.containsKey(key)) {
+            try {
+                return number(spec, key).intValueExact();
+            } catch (ArithmeticException ex) {
+                throw new IllegalArgumentException(key + " should be an int", ex);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Parse a JSON object whose values are strings, numbers, booleans or
+     * null, which is all a run needs
+     *
+     * @param json the object
+     * @return its members in order; numbers are BigDecimals
+     */
+    static Map<String, Object> parse(String json) {
+        Parser parser = new Parser(json);
+        parser.skipSpaces();
+        Map<String, Object> members = parser.object();
+        parser.skipSpaces();
+        if (parser.pos != json.length()) {
+            throw parser.error("trailing characters");
+        }
+        return members;
+    }
+
+    private static final class Parser {
+
+        private final String json;
+        private int pos;
+
+        Parser(String json) {
+            this.json = json;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> members = new LinkedHashMap<>();
+            expect('{');
+            skipSpaces();
+            if (peek() == '}') {
+                pos++;
+                return members;
+            }
+            while (true) {
+                skipSpaces();
+                String key = string();
+                skipSpaces();
+                expect(':');
+                skipSpaces();
+                if (members.put(key, value()) != null) {
+                    throw error("duplicate member " + key);
+                }
+                skipSpaces();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return members;
+                }
+            }
+        }
+
+        private Object value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            } else if (json.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            } else if (json.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            } else if (json.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            int start = pos;
+            while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+                pos++;
+            }
+            try {
+                return new BigDecimal(json.substring(start, pos));
+            } catch (NumberFormatException ex) {
+                pos = start;
+                throw error("unexpected value");
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                } else if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                c = next();
+                switch (c) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > json.length()) {
+                            throw error("truncated escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("bad escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+        }
+
+        void skipSpaces() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            if (pos >= json.length()) {
+                throw error("unexpected end");
+            }
+            return json.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("bad JSON at " + pos + ": " + message);
+        }
+    }
+
+    /**
+     * Append a value as JSON
+     *
+     * @param sb where to append it
+     * @param value a string, a number, a boolean or null
+     */
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (!(value instanceof String)) {
+            sb.append(value instanceof BigDecimal ? ((BigDecimal) value).toString() : String.valueOf(value));
+            return;
+        }
+        String s = (String) value;
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
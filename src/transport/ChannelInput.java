@@ -0,0 +1,107 @@
+package transport;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A class which reads primitive values written by ChannelOutput from a
+ * channel through a buffer.
+ */
+public class ChannelInput implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Create an input reading from a channel
+     *
+     * @param channel the channel to read from
+     */
+    public ChannelInput(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.limit(0);
+    }
+
+    /**
+     * Make sure there are n more bytes in the buffer, reading from the channel
+     * if needed
+     *
+     * @param n number of bytes, at most the size of the buffer
+     * @throws EOFException if the channel ends first
+     */
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() >= n) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of input");
+            }
+        }
+        buffer.flip();
+    }
+
+    public int readByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        ensure(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        ensure(8);
+        return buffer.getDouble();
+    }
+
+    /**
+     * Read a string written by ChannelOutput.writeString
+     *
+     * @return the string
+     * @throws IOException if the channel cannot be read or ends first
+     */
+    public String readString() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            throw new IOException("Negative string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        int off = 0;
+        while (off < length) {
+            ensure(1);
+            int n = Math.min(buffer.remaining(), length - off);
+            buffer.get(bytes, off, n);
+            off += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,118 @@
+package transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A class which writes primitive values to a channel through a buffer. Values
+ * are written big-endian; strings are written as their length followed by
+ * their UTF-8 bytes. Nothing reaches the channel until the buffer is full or
+ * flush is called.
+ */
+public class ChannelOutput implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Create an output writing to a channel
+     *
+     * @param channel the channel to write to
+     */
+    public ChannelOutput(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Make sure there is room for n more bytes in the buffer
+     *
+     * @param n number of bytes, at most the size of the buffer
+     */
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    public void writeByte(int v) throws IOException {
+        ensure(1);
+        buffer.put((byte) v);
+    }
+
+    public void writeBoolean(boolean v) throws IOException {
+        writeByte(v ? 1 : 0);
+    }
+
+    public void writeInt(int v) throws IOException {
+        ensure(4);
+        buffer.putInt(v);
+    }
+
+    public void writeLong(long v) throws IOException {
+        ensure(8);
+        buffer.putLong(v);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        ensure(4);
+        buffer.putFloat(v);
+    }
+
+    public void writeDouble(double v) throws IOException {
+        ensure(8);
+        buffer.putDouble(v);
+    }
+
+    /**
+     * Write a string as its length in bytes followed by its UTF-8 bytes
+     *
+     * @param s the string
+     * @throws IOException if the channel cannot be written
+     */
+    public void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        int off = 0;
+        while (off < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(buffer.remaining(), bytes.length - off);
+            buffer.put(bytes, off, n);
+            off += n;
+        }
+    }
+
+    /**
+     * Write everything buffered so far to the channel
+     *
+     * @throws IOException if the channel cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flush the buffer and close the channel
+     *
+     * @throws IOException if the channel cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package transport;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class which writes a simulation to a checkpoint file and reads it back.
+ * The checkpoint holds everything needed to carry on with the run: its
+ * parameters and messages (or their spec, for SyntheticMessages), the spec
+ * of its arrival process (see ArrivalProcess) and of its link trace, if any
+ * (see LinkTrace), every pending event (timers included), the windows and
+ * buffers of the transports, the message cursor and arrival source of every
+ * sender and the state of every host's random number generator. A run
+ * resumed from a checkpoint gives exactly the same results as one that was
+ * not interrupted.
+ *
+ * The file starts with a magic number and a format version, followed by the
+ * state written by Simulation.writeState, all in big-endian binary.
+ * Checkpoints are written to a temporary file that then replaces the previous
+ * checkpoint, so a crash while writing leaves the previous one intact.
+ */
+public class Checkpoint {
+
+    static final int MAGIC = 0x4E53434B; //"NSCK"
+    static final int VERSION = 10;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Write a checkpoint of a simulation
+     *
+     * @param sim the simulation, which must not be a logical process of a
+     * parallel run
+     * @param file the checkpoint file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Simulation sim, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChannelOutput out = new ChannelOutput(channel);
+            write(sim, out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a simulation back from a checkpoint
+     *
+     * @param file the checkpoint file
+     * @return the simulation, ready to carry on with run()
+     * @throws IOException if the file cannot be read, is not a checkpoint or
+     * was written in a format version this one cannot read
+     */
+    public static Simulation load(Path file) throws IOException {
+        try (ChannelInput in = new ChannelInput(FileChannel.open(file, StandardOpenOption.READ))) {
+            return read(in, file.toString());
+        }
+    }
+
+    /**
+     * Write a checkpoint, header included, to an output
+     *
+     * @param sim the simulation
+     * @param out the output, which is not flushed
+     * @throws IOException if the output cannot be written
+     */
+    static void write(Simulation sim, ChannelOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        sim.writeState(out);
+    }
+
+    /**
+     * Read a checkpoint written by write
+     *
+     * @param in the input
+     * @param source where the input comes from, for error messages
+     * @return the simulation
+     * @throws IOException if the input cannot be read, is not a checkpoint or
+     * is in a format version this one cannot read
+     */
+    static Simulation read(ChannelInput in, String source) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(source + " is not a checkpoint");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + " in " + source);
+        }
+        return Simulation.readState(in);
+    }
+
+    static void writePacket(ChannelOutput out, Packet p) throws IOException {
+        out.writeString(p.getMessage().getMessage());
+        out.writeLong(p.getMessage().getSendTime());
+        out.writeInt(p.getSeqnum());
+        out.writeInt(p.getAcknum());
+        out.writeInt(p.getChecksum());
+    }
+
+    static Packet readPacket(ChannelInput in) throws IOException {
+        Message msg = new Message(in.readString(), in.readLong());
+        int seqnum = in.readInt();
+        int acknum = in.readInt();
+        return new Packet(msg, seqnum, acknum, in.readInt());
+    }
+
+    static void writeEvent(ChannelOutput out, Event e) throws IOException {
+        out.writeLong(e.getTime());
+        out.writeLong(e.seq);
+        out.writeByte(e.getType());
+        out.writeByte(e.getHost());
+        out.writeInt(e.getFlow());
+        out.writeBoolean(e.getPacket() != null);
+        if (e.getPacket() != null) {
+            writePacket(out, e.getPacket());
+        }
+    }
+
+    /**
+     * Read an event written by writeEvent
+     *
+     * @param in the checkpoint
+     * @param numFlows number of flows of the run
+     * @return the event
+     * @throws IOException if the checkpoint cannot be read or the event is not
+     * valid
+     */
+    static Event readEvent(ChannelInput in, int numFlows) throws IOException {
+        long time = in.readLong();
+        long seq = in.readLong();
+        int type = in.readByte();
+        int host = in.readByte();
+        int flow = in.readInt();
+        Packet pkt = in.readBoolean() ? readPacket(in) : null;
+        if (type < Event.MESSAGESEND || type > Event.KILLEDTIMER
+                || (host != Event.SENDER && host != Event.RECEIVER)
+                || flow < 0 || flow >= numFlows) {
+            throw new IOException("Invalid event in checkpoint: type " + type + ", host " + host + ", flow " + flow);
+        }
+        Event e = new Event(time, type, host, flow, pkt);
+        e.seq = seq;
+        return e;
+    }
+}
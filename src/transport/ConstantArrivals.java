@@ -0,0 +1,35 @@
+package transport;
+
+/**
+ * Constant bit rate arrivals: one message every given time. The first
+ * message is sent one gap after the start of the run.
+ */
+public class ConstantArrivals extends ArrivalProcess {
+
+    private final double gap; //time between two messages, in time units
+
+    /**
+     * Create constant bit rate arrivals
+     *
+     * @param gap time between two messages, in time units
+     */
+    public ConstantArrivals(double gap) {
+        this.gap = checkTime("time between messages", gap);
+    }
+
+    @Override
+    public Source newSource(final long ticksPerUnit) {
+        return new Source() {
+            @Override
+            public long nextGap(long index, RandomStream random) {
+                //from the times of the messages rather than the gap, so that a gap of a fraction of a tick does not drift
+                return (long) ((index + 1) * gap * ticksPerUnit) - (long) (index * gap * ticksPerUnit);
+            }
+        };
+    }
+
+    @Override
+    public String toSpec() {
+        return "cbr:" + gap;
+    }
+}
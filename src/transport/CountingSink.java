@@ -0,0 +1,51 @@
+package transport;
+
+/**
+ * A sink which keeps nothing but the number of messages and characters
+ * delivered on each flow, for runs whose output is not needed.
+ */
+public class CountingSink implements ReceiverSink {
+
+    private final int[] delivered; //messages delivered on each flow
+    private final long[] chars; //characters delivered on each flow
+
+    /**
+     * Create a sink
+     *
+     * @param numFlows number of flows of the run
+     */
+    public CountingSink(int numFlows) {
+        delivered = new int[numFlows];
+        chars = new long[numFlows];
+    }
+
+    @Override
+    public void receive(int flow, int index, Message msg) {
+        //a message handed over again after a rollback is not counted twice
+        if (index == delivered[flow]) {
+            delivered[flow]++;
+            chars[flow] += msg.getMessage().length();
+        }
+    }
+
+    public int getDelivered(int flow) {
+        return delivered[flow];
+    }
+
+    public long getChars(int flow) {
+        return chars[flow];
+    }
+
+    /**
+     * Return the number of messages delivered on all flows
+     *
+     * @return the number of messages
+     */
+    public long getTotalDelivered() {
+        long total = 0;
+        for (int count : delivered) {
+            total += count;
+        }
+        return total;
+    }
+}
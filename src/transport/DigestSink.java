@@ -0,0 +1,176 @@
+package transport;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sink which keeps a CRC-64 of the messages delivered on each flow, in
+ * order, to check them against the messages the senders sent. Each message is
+ * digested as its UTF-8 bytes followed by a newline, so the digest of a flow
+ * that delivered its first n messages intact is that of the first n lines of
+ * the corpus. The CRC is CRC-64/XZ (the ECMA-182 polynomial, reflected).
+ *
+ * The digest a flow should have is computed only when asked for, from the
+ * messages of the corpus up to the number the flow delivered, and kept to go
+ * on from there; nothing is computed or kept per message of the corpus, which
+ * may be synthetic and too large to digest up front.
+ */
+public class DigestSink implements ReceiverSink {
+
+    private static final long POLY = 0xC96C5795D7870F42L; //ECMA-182, reflected
+    private static final long[] TABLE = new long[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            long crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private final List<String> corpus;
+    private final long[] state; //CRC register of each flow
+    private final int[] delivered; //messages delivered on each flow
+    private final boolean[] outOfOrder; //whether a flow skipped a message
+    private final long[] expected; //CRC register of the first checked[flow] messages of the corpus
+    private final int[] checked; //messages of the corpus in expected[flow]
+    private long furthest = -1; //CRC register of the longest prefix of the corpus digested so far
+    private int furthestLength; //messages in that prefix
+
+    /**
+     * Create a sink
+     *
+     * @param corpus the messages every flow sends
+     * @param numFlows number of flows of the run
+     */
+    public DigestSink(List<String> corpus, int numFlows) {
+        this.corpus = corpus;
+        state = new long[numFlows];
+        Arrays.fill(state, -1);
+        delivered = new int[numFlows];
+        outOfOrder = new boolean[numFlows];
+        expected = new long[numFlows];
+        Arrays.fill(expected, -1);
+        checked = new int[numFlows];
+    }
+
+    @Override
+    public void receive(int flow, int index, Message msg) {
+        if (index < delivered[flow]) {
+            //handed over again after a rollback, already digested
+            return;
+        }
+        if (index > delivered[flow]) {
+            outOfOrder[flow] = true;
+        }
+        state[flow] = update(state[flow], msg.getMessage());
+        delivered[flow]++;
+    }
+
+    /**
+     * Digest a message and its newline
+     *
+     * @param crc the CRC register
+     * @param s the message
+     * @return the new register
+     */
+    private static long update(long crc, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            int c = s.charAt(i);
+            if (c < 0x80) {
+                crc = step(crc, c);
+            } else if (c < 0x800) {
+                crc = step(crc, 0xC0 | (c >> 6));
+                crc = step(crc, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint((char) c, s.charAt(++i));
+                crc = step(crc, 0xF0 | (cp >> 18));
+                crc = step(crc, 0x80 | ((cp >> 12) & 0x3F));
+                crc = step(crc, 0x80 | ((cp >> 6) & 0x3F));
+                crc = step(crc, 0x80 | (cp & 0x3F));
+            } else {
+                crc = step(crc, 0xE0 | (c >> 12));
+                crc = step(crc, 0x80 | ((c >> 6) & 0x3F));
+                crc = step(crc, 0x80 | (c & 0x3F));
+            }
+        }
+        return step(crc, '\n');
+    }
+
+    /**
+     * Return the CRC-64 of the first messages of the corpus a flow should have
+     * delivered, digesting the messages it delivered since the last call
+     *
+     * @param flow the flow
+     * @return the digest of its first getDelivered(flow) messages
+     */
+    private long expectedDigest(int flow) {
+        int n = delivered[flow];
+        if (checked[flow] < furthestLength && furthestLength <= n) {
+            //another flow got there first
+            expected[flow] = furthest;
+            checked[flow] = furthestLength;
+        }
+        while (checked[flow] < n) {
+            expected[flow] = update(expected[flow], corpus.get(checked[flow]++));
+        }
+        if (n > furthestLength) {
+            furthest = expected[flow];
+            furthestLength = n;
+        }
+        return ~expected[flow];
+    }
+
+    /**
+     * Digest one byte
+     *
+     * @param crc the CRC register
+     * @param b the byte
+     * @return the new register
+     */
+    static long step(long crc, int b) {
+        return TABLE[(int) (crc ^ b) & 0xFF] ^ (crc >>> 8);
+    }
+
+    /**
+     * Return the CRC-64 of the messages delivered on a flow so far
+     *
+     * @param flow the flow
+     * @return the digest
+     */
+    public long getDigest(int flow) {
+        return ~state[flow];
+    }
+
+    public int getDelivered(int flow) {
+        return delivered[flow];
+    }
+
+    /**
+     * Tell whether the messages delivered on a flow so far are the first
+     * messages of the corpus, in order
+     *
+     * @param flow the flow
+     * @return true if they are
+     */
+    public boolean isIntact(int flow) {
+        return !outOfOrder[flow] && delivered[flow] <= corpus.size() && getDigest(flow) == expectedDigest(flow);
+    }
+
+    /**
+     * Tell whether every flow delivered the whole corpus, intact and in order
+     *
+     * @return true if they did
+     */
+    public boolean isComplete() {
+        for (int flow = 0; flow < state.length; flow++) {
+            if (delivered[flow] != corpus.size() || !isIntact(flow)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
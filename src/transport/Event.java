@@ -6,10 +6,13 @@ package transport;
 public class Event implements Comparable<Event>
 {
 
-    int time; //time of the event
+    long time; //time of the event, in ticks
+    long seq; //order in which the creating host made the event, breaks ties between events at the same time
     int type; //type of event
     int host; //host where event is happening
+    int flow; //flow (sender/receiver pair) the event belongs to
     Packet pkt; //pkt related to event if relevant (only arrive events)
+    boolean cancelled; //set when the event was created by speculation that has been rolled back
 
     public static int MESSAGESEND = 0;  
     public static int MESSAGEARRIVE=1;
@@ -23,12 +26,14 @@ public class Event implements Comparable<Event>
      * @param time time of event
      * @param type type of event
      * @param host where event is happening.
+     * @param flow flow the event belongs to.
      */
-    public Event(int time, int type, int host)
+    public Event(long time, int type, int host, int flow)
     {
         this.time=time;
         this.type=type;
         this.host=host;
+        this.flow=flow;
     }
 
     /**
@@ -36,14 +41,16 @@ public class Event implements Comparable<Event>
      * @param time time of event
      * @param type type of event
      * @param host where event is happening.
+     * @param flow flow the event belongs to.
      * @param pkt packet that is arriving.
      */
 
-    public Event(int time, int type, int host, Packet pkt)
+    public Event(long time, int type, int host, int flow, Packet pkt)
     {
         this.time=time;
         this.type=type;
         this.host=host;
+        this.flow=flow;
         this.pkt=pkt;
     }
     
@@ -62,7 +69,7 @@ public class Event implements Comparable<Event>
     }
     
 
-    public int getTime()
+    public long getTime()
     {
         return time;
     }
@@ -77,15 +84,41 @@ public class Event implements Comparable<Event>
         return host;
     }
 
+    public int getFlow()
+    {
+        return flow;
+    }
+
     public Packet getPacket()
     {
         return pkt;
     }
 
+    /**
+     * Orders events by time, events at the same time by flow, so that all
+     * events of one flow in a tick are next to each other, then by host, and
+     * events of the same host at the same time by the order in which they
+     * were created.
+     * @param e event to compare to
+     * @return a negative number, zero or a positive number if this event is
+     * before, the same as or after e
+     */
     public int compareTo(Event e)
     {
-        return this.time-e.time;
-
+        int c = Long.compare(this.time, e.time);
+        if (c != 0)
+        {
+            return c;
+        }
+        if (this.flow != e.flow)
+        {
+            return this.flow < e.flow ? -1 : 1;
+        }
+        if (this.host != e.host)
+        {
+            return this.host < e.host ? -1 : 1;
+        }
+        return Long.compare(this.seq, e.seq);
     }
 
 }
@@ -0,0 +1,249 @@
+package transport;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The queue of the events of a timeline, grouped by time. Each time that has
+ * events is a tick holding them in an array; the ticks are in a heap ordered by
+ * time and in a hash table by time, so an event is added with a hash lookup,
+ * and the heap is only offered a tick when its first event is added and only
+ * polled when its last event is taken. Events at the same time are many, as
+ * times are whole ticks, so this takes far fewer heap operations than a heap
+ * of events. The events of a tick are sorted, in the order of
+ * Event.compareTo, when the tick reaches the head of the queue; events added
+ * to the head tick are sorted in among the events still in it.
+ *
+ * Cancelled events stay in the queue, and are counted by size, until they are
+ * taken. The ticks that are emptied are kept for reuse, so a run whose
+ * number of pending ticks is stable allocates nothing to queue its events.
+ */
+class EventQueue {
+
+    private static final int MIN_TICK_CAPACITY = 4;
+
+    /**
+     * The events at one time
+     */
+    private static final class Tick implements Comparable<Tick> {
+
+        long time;
+        Event[] events = new Event[MIN_TICK_CAPACITY];
+        int first; //index of the first event not taken
+        int size; //index after the last event
+        boolean sorted; //whether events[first..size) are in order
+
+        void add(Event e) {
+            if (size == events.length) {
+                events = Arrays.copyOf(events, 2 * size);
+            }
+            if (sorted && size > first && events[size - 1].compareTo(e) > 0) {
+                sorted = false;
+            }
+            events[size++] = e;
+        }
+
+        void sort() {
+            if (!sorted) {
+                Arrays.sort(events, first, size);
+                sorted = true;
+            }
+        }
+
+        @Override
+        public int compareTo(Tick t) {
+            return Long.compare(time, t.time);
+        }
+    }
+
+    private final PriorityQueue<Tick> ticks = new PriorityQueue<>(); //ticks with events, by time
+    private long[] times = new long[16]; //hash table of the ticks: time of each slot
+    private Tick[] slots = new Tick[16]; //tick of each slot, null if the slot is free
+    private int numTicks; //ticks in the hash table
+    private Tick[] free = new Tick[16]; //emptied ticks kept for reuse
+    private int numFree;
+    private int size; //events in the queue
+
+    /**
+     * Add an event
+     *
+     * @param e the event
+     */
+    void add(Event e) {
+        long time = e.getTime();
+        int mask = slots.length - 1;
+        int i = slot(time, mask);
+        Tick tick;
+        while ((tick = slots[i]) != null && times[i] != time) {
+            i = (i + 1) & mask;
+        }
+        if (tick == null) {
+            tick = numFree > 0 ? free[--numFree] : new Tick();
+            tick.time = time;
+            tick.sorted = true;
+            times[i] = time;
+            slots[i] = tick;
+            ticks.add(tick);
+            if (++numTicks > slots.length >> 1) {
+                rehash(slots.length << 1);
+            }
+        }
+        tick.add(e);
+        size++;
+    }
+
+    /**
+     * Return the first event, cancelled or not, without taking it
+     *
+     * @return the event, null if the queue is empty
+     */
+    Event peek() {
+        Tick head = ticks.peek();
+        if (head == null) {
+            return null;
+        }
+        head.sort();
+        return head.events[head.first];
+    }
+
+    /**
+     * Take the first event, cancelled or not
+     *
+     * @return the event, null if the queue is empty
+     */
+    Event poll() {
+        Tick head = ticks.peek();
+        if (head == null) {
+            return null;
+        }
+        head.sort();
+        Event e = head.events[head.first];
+        head.events[head.first++] = null;
+        size--;
+        if (head.first == head.size) {
+            ticks.poll();
+            release(head);
+        }
+        return e;
+    }
+
+    /**
+     * Take every event at the time of the first event, in order, with a
+     * single poll of the heap. Cancelled events are dropped.
+     *
+     * @param out list the events are added to
+     * @return the time of the events, Long.MAX_VALUE if the queue is empty
+     */
+    long pollTick(List<Event> out) {
+        Tick head = ticks.poll();
+        if (head == null) {
+            return Long.MAX_VALUE;
+        }
+        head.sort();
+        for (int i = head.first; i < head.size; i++) {
+            Event e = head.events[i];
+            head.events[i] = null;
+            if (!e.cancelled) {
+                out.add(e);
+            }
+        }
+        size -= head.size - head.first;
+        release(head);
+        return head.time;
+    }
+
+    /**
+     * Add the events of the queue that are not cancelled, in no particular
+     * order
+     *
+     * @param out list the events are added to
+     */
+    void addPendingTo(List<Event> out) {
+        for (Tick tick : ticks) {
+            for (int i = tick.first; i < tick.size; i++) {
+                if (!tick.events[i].cancelled) {
+                    out.add(tick.events[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of events in the queue, cancelled ones included
+     *
+     * @return number of events
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remove every event
+     */
+    void clear() {
+        while (!ticks.isEmpty()) {
+            Tick tick = ticks.poll();
+            Arrays.fill(tick.events, tick.first, tick.size, null);
+            release(tick);
+        }
+        size = 0;
+    }
+
+    private static int slot(long time, int mask) {
+        return (int) ((time * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Take an emptied tick out of the hash table and keep it for reuse
+     *
+     * @param tick the tick, out of the heap
+     */
+    private void release(Tick tick) {
+        int mask = slots.length - 1;
+        int i = slot(tick.time, mask);
+        while (slots[i] != tick) {
+            i = (i + 1) & mask;
+        }
+        //shift back the ticks after it that would no longer be found
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (slots[j] == null) {
+                break;
+            }
+            int home = slot(times[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                times[i] = times[j];
+                slots[i] = slots[j];
+                i = j;
+            }
+        }
+        slots[i] = null;
+        numTicks--;
+        tick.first = 0;
+        tick.size = 0;
+        if (numFree == free.length) {
+            free = Arrays.copyOf(free, 2 * numFree);
+        }
+        free[numFree++] = tick;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldTimes = times;
+        Tick[] oldSlots = slots;
+        times = new long[capacity];
+        slots = new Tick[capacity];
+        int mask = capacity - 1;
+        for (int k = 0; k < oldSlots.length; k++) {
+            if (oldSlots[k] != null) {
+                int i = slot(oldTimes[k], mask);
+                while (slots[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                times[i] = oldTimes[k];
+                slots[i] = oldSlots[k];
+            }
+        }
+    }
+}
@@ -1,16 +1,13 @@
 package transport;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
 
 /**
  * Setting up and control the experiment
@@ -20,25 +17,112 @@ import java.util.logging.Logger;
 public class ExperimentController {
 
     private NetworkSimulator ns;
+    private long baseSeed; //seed from which the seed of every trial is derived
+    private boolean antitheticPairs; //whether trials are antithetic pairs
+    private AdaptiveTrials trials; //runs the trials of each point of an experiment
+    private ArrayList<String> expMessages; //messages of the experiments
+    private byte[] expMessagesDigest; //digest of the messages of the experiments
+    private ResultCache cache; //results of the runs done before, null if none
+    private int metric; //counter of RunMetrics the experiments measure
     private static final String CORRECTNESS_FILE_PATH = "./correctnessTest.txt";
     private static final String EXP_FILE_PATH = "./expTest.txt";
-    private static final int DEBUG_SETTING_EXP = 0;
+    private static final String CACHE_FILE_PATH = "./expResults.cache";
+    private static final long DEFAULT_BASE_SEED = 1;
 
     private static final int GBN = 0;
     private static final int TCP = 1;
+    private static final String[] PROTOCOL_NAMES = {"GBN", "TCP"};
 
     /**
      * Create an experiment controller
      */
     public ExperimentController() {
         ns = new NetworkSimulator();
+        baseSeed = new Random().nextLong();
+        trials = new AdaptiveTrials(Runtime.getRuntime().availableProcessors());
+        metric = RunMetrics.TOTAL_TIME;
+    }
+
+    /**
+     * Set the counter of the runs the experiments measure, the total time by
+     * default
+     *
+     * @param metric index of the counter, see RunMetrics.FIELD_NAMES
+     */
+    public void setMetric(int metric) {
+        if (metric < 0 || metric >= RunMetrics.FIELD_NAMES.length) {
+            throw new IllegalArgumentException("unknown metric " + metric);
+        }
+        this.metric = metric;
+    }
+
+    /**
+     * Return the runner of the trials, to set the target precision, the
+     * confidence level and the budget of trials of each point
+     *
+     * @return the runner
+     */
+    public AdaptiveTrials getTrials() {
+        return trials;
+    }
+
+    /**
+     * Set the seed from which the seed of every trial is derived, to repeat
+     * an experiment exactly
+     *
+     * @param baseSeed the seed
+     */
+    public void setBaseSeed(long baseSeed) {
+        this.baseSeed = baseSeed;
+    }
+
+    /**
+     * Set whether trials are antithetic pairs: each trial is the mean of a run
+     * and of the antithetic run with the same seed
+     *
+     * @param antitheticPairs true for antithetic pairs
+     */
+    public void setAntitheticPairs(boolean antitheticPairs) {
+        this.antitheticPairs = antitheticPairs;
+    }
+
+    /**
+     * Set the cache of the results of runs. Runs found in the cache are not
+     * run again, and the runs done are added to it.
+     *
+     * @param cache the cache, or null to run every run
+     */
+    public void setCache(ResultCache cache) {
+        this.cache = cache;
     }
 
 //=============================== MAIN =============================     
+    /**
+     * Check correctness, then run the experiments. The results of the runs
+     * are kept in a cache and the base seed is fixed (or given as the first
+     * argument), so running again after an interruption or a change to some
+     * of the points only runs what is missing. The progress of the runs can be
+     * watched over JMX, see Telemetry.
+     *
+     * @param args the base seed, optional
+     */
     public static void main(String[] args) {
         ExperimentController ec = new ExperimentController();
+        ec.setBaseSeed(args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_BASE_SEED);
+        try {
+            Telemetry.register();
+        } catch (JMException ex) {
+            //the experiments only cannot be watched
+            Logger.getLogger(ExperimentController.class.getName()).log(Level.WARNING, null, ex);
+        }
         ec.checkCorrectness();
-        ec.runExperiments("./expResults.csv");
+        try (ResultCache cache = new ResultCache(Paths.get(CACHE_FILE_PATH))) {
+            ec.setCache(cache);
+            ec.runExperiments("./expResults.csv");
+            System.out.println("Cached runs reused: " + cache.getHits() + ", run: " + cache.getMisses());
+        } catch (IOException ex) {
+            Logger.getLogger(ExperimentController.class.getName()).log(Level.SEVERE, null, ex);
+        }
 
     }
 
@@ -74,38 +158,38 @@ public class ExperimentController {
 
 //==================EXPERIMENT=====================================
     /**
-     * Run all 4 experiments
+     * Run all 4 experiments. The row of each point is written as soon as the
+     * point is done, to a CSV file and to a binary columnar file next to it
+     * (see ResultsWriter).
      * @param outputFilePath The path of the output file
      */
     public void runExperiments(String outputFilePath) {
         int runs = 50;
-        int numTrialsPerRun = 6;
-        String finalResult = "";
-        //============Time Between Sends==================//
-        int initialTimeBtwSends = 0;
-        int maxTimeBtwSends = 50;
-        int tbsIncrement = (maxTimeBtwSends - initialTimeBtwSends) / runs;
-        finalResult += this.runTimeBtwSendsExp(initialTimeBtwSends, tbsIncrement, runs, numTrialsPerRun).toCsvString();
-
-        //============Loss Probability==================//
-        float initialLossProb = 0.0f;
-        float maxLossProb = 0.70f;
-        float lossIncrement = (maxLossProb - initialLossProb) / runs;
-        finalResult += this.runLossProbExp(initialLossProb, lossIncrement, runs, numTrialsPerRun).toCsvString();
-
-        //============Corruption Probability==================//
-        float initialCorrProb = 0.0f;
-        float maxCorrProb = 0.70f;
-        float corrIncrement = (maxCorrProb - initialCorrProb) / runs;
-        finalResult += this.runCorrProbExp(initialCorrProb, corrIncrement, runs, numTrialsPerRun).toCsvString();
-
-        //============Windows size==================//
-        int initialSize = 1;
-        int sizeIncrement = 1;
-        finalResult += this.runWindowsSizeExp(initialSize, sizeIncrement, runs, numTrialsPerRun).toCsvString();
-
-        try {
-            this.printToFile(outputFilePath, finalResult);
+        expMessages = ns.readFile(EXP_FILE_PATH);
+        expMessagesDigest = ResultCache.digest(expMessages);
+        try (ResultsWriter results = new ResultsWriter(Paths.get(outputFilePath), binaryPath(outputFilePath))) {
+            //============Time Between Sends==================//
+            int initialTimeBtwSends = 0;
+            int maxTimeBtwSends = 50;
+            int tbsIncrement = (maxTimeBtwSends - initialTimeBtwSends) / runs;
+            this.runTimeBtwSendsExp(results, initialTimeBtwSends, tbsIncrement, runs);
+
+            //============Loss Probability==================//
+            float initialLossProb = 0.0f;
+            float maxLossProb = 0.70f;
+            float lossIncrement = (maxLossProb - initialLossProb) / runs;
+            this.runLossProbExp(results, initialLossProb, lossIncrement, runs);
+
+            //============Corruption Probability==================//
+            float initialCorrProb = 0.0f;
+            float maxCorrProb = 0.70f;
+            float corrIncrement = (maxCorrProb - initialCorrProb) / runs;
+            this.runCorrProbExp(results, initialCorrProb, corrIncrement, runs);
+
+            //============Windows size==================//
+            int initialSize = 1;
+            int sizeIncrement = 1;
+            this.runWindowsSizeExp(results, initialSize, sizeIncrement, runs);
         } catch (IOException ex) {
             Logger.getLogger(ExperimentController.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -113,16 +197,18 @@ public class ExperimentController {
     }
 
     /**
-     * Return the experiment results to run a between sends experiment
+     * Run a time between sends experiment
      *
+     * @param results where the row of each point is written
      * @param initialTime initial time between sends
      * @param increment increment to increase independent var
      * @param numRuns number of runs
-     * @param numTrialsPerRun number of trials per run
-     * @return the results of the experiment
+     * @throws IOException if the results cannot be written
      */
-    private ExperimentResults runTimeBtwSendsExp(int initialTime, int increment, int numRuns, int numTrialsPerRun) {
-        ExperimentResults results = new ExperimentResults("Time Between Sends vs. Total Time");
+    private void runTimeBtwSendsExp(ResultsWriter results, int initialTime, int increment,
+            int numRuns) throws IOException {
+        ResultsSchema schema = startTable(results, "Time Between Sends vs. " + RunMetrics.FIELD_NAMES[metric],
+                new ResultsSchema().addInt("Time Between Sends"));
 
         //control vars
         float lossProb = 0.10f;
@@ -132,39 +218,27 @@ public class ExperimentController {
         //run exp
         for (int i = 0; i < numRuns; i++) {
             int timeBtwSends = initialTime + i * increment;
-            int totalGBN = 0;
-            int totalTCP = 0;
-
-            for (int j = 0; j < numTrialsPerRun; j++) {
-                System.out.println("\n================================= GBN =================================\n");
-                totalGBN += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, GBN, DEBUG_SETTING_EXP);
-
-                System.out.println("\n================================= TCP =================================\n");
-                totalTCP += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, TCP, DEBUG_SETTING_EXP);
-            }
-            //take the average
-            int gbnTime = totalGBN / numTrialsPerRun;
-            int tcpTime = totalTCP / numTrialsPerRun;
+            TrialStatistics[] stats = runPoint(timeBtwSends, lossProb, corrProb, windowsSize);
             //add to result table
-            results.add("Time Between Sends", "" + timeBtwSends);
-            results.add("Total Time (GBN)", "" + gbnTime);
-            results.add("Total Time (TCP)", "" + tcpTime);
+            ResultRow row = new ResultRow(schema).setInt(0, timeBtwSends);
+            results.append(addMeasures(row, stats));
 
         }
-        return results;
     }
 
     /**
-     * Return the experiment results to run a loss probability experiment
+     * Run a loss probability experiment
      *
+     * @param results where the row of each point is written
      * @param initialProb initial loss probability
      * @param increment increment to increase independent var
      * @param numRuns number of runs
-     * @param numTrialsPerRun number of trials per run
-     * @return the results of the experiment
+     * @throws IOException if the results cannot be written
      */
-    private ExperimentResults runLossProbExp(float initialProb, float increment, int numRuns, int numTrialsPerRun) {
-        ExperimentResults results = new ExperimentResults("Loss Probability vs. Total Time");
+    private void runLossProbExp(ResultsWriter results, float initialProb, float increment,
+            int numRuns) throws IOException {
+        ResultsSchema schema = startTable(results, "Loss Probability vs. " + RunMetrics.FIELD_NAMES[metric],
+                new ResultsSchema().addDouble("Loss Probability"));
 
         //control vars
         int timeBtwSends = 10;
@@ -174,36 +248,27 @@ public class ExperimentController {
         //run exp
         for (int i = 0; i < numRuns; i++) {
             float lossProb = initialProb + i * increment;
-            int totalGBN = 0;
-            int totalTCP = 0;
-
-            for (int j = 0; j < numTrialsPerRun; j++) {
-                totalGBN += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, GBN, DEBUG_SETTING_EXP);
-                totalTCP += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, TCP, DEBUG_SETTING_EXP);
-            }
-            //take the average
-            int gbnTime = totalGBN / numTrialsPerRun;
-            int tcpTime = totalTCP / numTrialsPerRun;
+            TrialStatistics[] stats = runPoint(timeBtwSends, lossProb, corrProb, windowsSize);
             //add to result table
-            results.add("Loss Probability", "" + lossProb);
-            results.add("Total Time (GBN)", "" + gbnTime);
-            results.add("Total Time (TCP)", "" + tcpTime);
+            ResultRow row = new ResultRow(schema).setDouble(0, lossProb);
+            results.append(addMeasures(row, stats));
 
         }
-        return results;
     }
 
     /**
-     * Return the experiment results to run a corruption probability experiment
+     * Run a corruption probability experiment
      *
+     * @param results where the row of each point is written
      * @param initialProb initial corruption probability
      * @param increment increment to increase independent var
      * @param numRuns number of runs
-     * @param numTrialsPerRun number of trials per run
-     * @return the results of the experiment
+     * @throws IOException if the results cannot be written
      */
-    private ExperimentResults runCorrProbExp(float initialProb, float increment, int numRuns, int numTrialsPerRun) {
-        ExperimentResults results = new ExperimentResults("Corruption Probability vs. Total Time");
+    private void runCorrProbExp(ResultsWriter results, float initialProb, float increment,
+            int numRuns) throws IOException {
+        ResultsSchema schema = startTable(results, "Corruption Probability vs. " + RunMetrics.FIELD_NAMES[metric],
+                new ResultsSchema().addDouble("Corruption Probability"));
 
         //control vars
         int timeBtwSends = 10;
@@ -213,36 +278,27 @@ public class ExperimentController {
         //run exp
         for (int i = 0; i < numRuns; i++) {
             float corrProb = initialProb + i * increment;
-            int totalGBN = 0;
-            int totalTCP = 0;
-
-            for (int j = 0; j < numTrialsPerRun; j++) {
-                totalGBN += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, GBN, DEBUG_SETTING_EXP);
-                totalTCP += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, TCP, DEBUG_SETTING_EXP);
-            }
-            //take the average
-            int gbnTime = totalGBN / numTrialsPerRun;
-            int tcpTime = totalTCP / numTrialsPerRun;
+            TrialStatistics[] stats = runPoint(timeBtwSends, lossProb, corrProb, windowsSize);
             //add to result table
-            results.add("Corruption Probability", "" + corrProb);
-            results.add("Total Time (GBN)", "" + gbnTime);
-            results.add("Total Time (TCP)", "" + tcpTime);
+            ResultRow row = new ResultRow(schema).setDouble(0, corrProb);
+            results.append(addMeasures(row, stats));
 
         }
-        return results;
     }
 
     /**
-     * Return the experiment results to run a between sends experiment
+     * Run a windows size experiment
      *
-     * @param initialSize initial time between sends
+     * @param results where the row of each point is written
+     * @param initialSize initial windows size
      * @param increment increment to increase independent var
      * @param numRuns number of runs
-     * @param numTrialsPerRun number of trials per run
-     * @return the results of the experiment
+     * @throws IOException if the results cannot be written
      */
-    private ExperimentResults runWindowsSizeExp(int initialSize, int increment, int numRuns, int numTrialsPerRun) {
-        ExperimentResults results = new ExperimentResults("Windows Size vs. Total Time");
+    private void runWindowsSizeExp(ResultsWriter results, int initialSize, int increment,
+            int numRuns) throws IOException {
+        ResultsSchema schema = startTable(results, "Windows Size vs. " + RunMetrics.FIELD_NAMES[metric],
+                new ResultsSchema().addInt("Windows Size"));
 
         //control vars
         float lossProb = 0.10f;
@@ -252,80 +308,154 @@ public class ExperimentController {
         //run exp
         for (int i = 0; i < numRuns; i++) {
             int windowsSize = initialSize + i * increment;
-            int totalGBN = 0;
-            int totalTCP = 0;
-
-            for (int j = 0; j < numTrialsPerRun; j++) {
-                totalGBN += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, GBN, DEBUG_SETTING_EXP);
-                totalTCP += ns.run(EXP_FILE_PATH, timeBtwSends, lossProb, corrProb, windowsSize, TCP, DEBUG_SETTING_EXP);
-            }
-            //take the average
-            int gbnTime = totalGBN / numTrialsPerRun;
-            int tcpTime = totalTCP / numTrialsPerRun;
+            TrialStatistics[] stats = runPoint(timeBtwSends, lossProb, corrProb, windowsSize);
             //add to result table
-            results.add("Windows Size", "" + windowsSize);
-            results.add("Total Time (GBN)", "" + gbnTime);
-            results.add("Total Time (TCP)", "" + tcpTime);
+            ResultRow row = new ResultRow(schema).setInt(0, windowsSize);
+            results.append(addMeasures(row, stats));
 
         }
-        return results;
     }
-//========================HELPERS=============================
 
     /**
-     * Print a string to a new file
+     * Run trials of GBN and TCP at one point of an experiment until the total
+     * times of both are known precisely enough (see AdaptiveTrials)
      *
-     * @param filePath The path of the file
-     * @param text The text to be printed
-     * @throws IOException Input output exception
+     * @param timeBtwSends time between sends
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @return statistics of the measured counter of GBN and of TCP
      */
-    private void printToFile(String filePath, String text) throws IOException {
-        Path path = Paths.get(filePath);
-        List<String> lines = new ArrayList<>();
-        lines.add(text);
-        Files.write(path, lines, Charset.defaultCharset());
+    private TrialStatistics[] runPoint(final int timeBtwSends, final float lossProb,
+            final float corrProb, final int windowsSize) {
+        return trials.run(new AdaptiveTrials.Trial() {
+            @Override
+            public double[] run(int index) {
+                return new double[]{
+                    runTrial(index, timeBtwSends, lossProb, corrProb, windowsSize, GBN),
+                    runTrial(index, timeBtwSends, lossProb, corrProb, windowsSize, TCP)};
+            }
+        }, 2);
     }
 
     /**
-     * This class holds all the experiment results
+     * Start the table of an experiment. The columns of the measured counter
+     * of GBN and TCP are added after the independent variable.
+     *
+     * @param results where the table is written
+     * @param nameOfExp name of the experiment
+     * @param schema columns of the table, with the independent variable
+     * @return the columns of the table
+     * @throws IOException if the results cannot be written
      */
-    private class ExperimentResults {
+    private ResultsSchema startTable(ResultsWriter results, String nameOfExp, ResultsSchema schema)
+            throws IOException {
+        System.out.println("Start experiment " + nameOfExp);
+        for (String protocol : PROTOCOL_NAMES) {
+            schema.addDouble(RunMetrics.FIELD_NAMES[metric] + " (" + protocol + ")")
+                    .addDouble("CI Half-Width (" + protocol + ")")
+                    .addDouble("Std Dev (" + protocol + ")");
+        }
+        schema.addLong("Trials");
+        results.startTable(nameOfExp, schema);
+        return schema;
+    }
 
-        private final String nameOfExperiment;
-        private final HashMap<String, List<String>> cols;
+    /**
+     * Add the measured counter of GBN and TCP at one point to its row
+     *
+     * @param row the row, whose independent variable is set
+     * @param stats statistics of the counter of GBN and of TCP
+     * @return the row
+     */
+    private ResultRow addMeasures(ResultRow row, TrialStatistics[] stats) {
+        int col = 1;
+        for (int p = 0; p < PROTOCOL_NAMES.length; p++) {
+            row.setDouble(col++, stats[p].getMean());
+            row.setDouble(col++, stats[p].getHalfWidth(trials.getConfidence()));
+            row.setDouble(col++, stats[p].getStdDev());
+        }
+        return row.setLong(col, stats[0].getCount());
+    }
 
-        ExperimentResults(String nameOfExp) {
-            System.out.println("Start experiment " + nameOfExp);
-            nameOfExperiment = nameOfExp;
-            cols = new LinkedHashMap<>();
+//========================HELPERS=============================
+
+    /**
+     * Run one trial of a protocol and return its measured counter. The GBN and TCP
+     * runs of a trial, and trial j of every point of an experiment, use the
+     * same seed (common random numbers), so the difference between the
+     * protocols and between the points is not swamped by noise. With
+     * antithetic pairs, a trial is the mean of a run and of its antithetic run.
+     * Trials build their own simulation, so several can run at once.
+     *
+     * @param trial number of the trial
+     * @param timeBtwSends time between sends
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocol GBN or TCP
+     * @return the measured counter of the trial
+     */
+    private double runTrial(int trial, int timeBtwSends, float lossProb, float corrProb,
+            int windowsSize, int protocol) {
+        long seed = RandomStream.mix64(baseSeed + trial);
+        long value = runOnce(timeBtwSends, lossProb, corrProb, windowsSize, protocol, seed, false).get(metric);
+        if (!antitheticPairs) {
+            return value;
         }
+        long antithetic = runOnce(timeBtwSends, lossProb, corrProb, windowsSize, protocol, seed, true).get(metric);
+        return (value + antithetic) / 2.0;
+    }
 
-        void add(String colName, String colValue) {
-            List<String> col = cols.get(colName);
-            if (col == null) {
-                col = new ArrayList<>();
-                cols.put(colName, col);
+    /**
+     * Return the metrics of one run, from the cache if it was run before
+     *
+     * @param timeBtwSends time between sends
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocol GBN or TCP
+     * @param seed seed of the run
+     * @param antithetic whether the random numbers are antithetic
+     * @return the metrics of the run
+     */
+    private RunMetrics runOnce(int timeBtwSends, float lossProb, float corrProb, int windowsSize,
+            int protocol, long seed, boolean antithetic) {
+        String key = null;
+        if (cache != null) {
+            key = ResultCache.key(expMessagesDigest, 1, timeBtwSends, lossProb, corrProb,
+                    windowsSize, protocol, 1, seed, antithetic);
+            RunMetrics cached = cache.get(key);
+            if (cached != null) {
+                return cached;
             }
-            col.add(colValue);
         }
-
-        /**
-         * Convert Experiment Results into a CSV String
-         *
-         * @return a CSV String
-         */
-        String toCsvString() {
-            StringBuilder result = new StringBuilder();
-            result.append(nameOfExperiment).append("\n");
-            for (String colName : cols.keySet()) {
-                result.append(colName);
-                for (String val : cols.get(colName)) {
-                    result.append(",").append(val);
-                }
-                result.append("\n");
+        Simulation sim = new Simulation(expMessages, 1, timeBtwSends, lossProb, corrProb,
+                windowsSize, protocol, 1, seed, antithetic);
+        //only the metrics are kept, the messages delivered are not printed
+        sim.setReceiverSink(new CountingSink(1));
+        RunMetrics metrics = sim.run().getMetrics();
+        if (cache != null) {
+            try {
+                cache.put(key, metrics);
+            } catch (IOException ex) {
+                //the run is only not cached
+                Logger.getLogger(ExperimentController.class.getName()).log(Level.WARNING, null, ex);
             }
-            return result.toString();
         }
+        return metrics;
+    }
+
+    /**
+     * Return the path of the binary results file next to a CSV file
+     *
+     * @param csvFilePath The path of the CSV file
+     * @return the path of the binary file
+     */
+    private static Path binaryPath(String csvFilePath) {
+        String base = csvFilePath.endsWith(".csv")
+                ? csvFilePath.substring(0, csvFilePath.length() - 4) : csvFilePath;
+        return Paths.get(base + ".bin");
     }
 
 }
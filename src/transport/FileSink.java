@@ -0,0 +1,72 @@
+package transport;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A sink which writes every message delivered to a file, one line per message:
+ * the flow, a tab and the message. Lines are buffered and written in large
+ * blocks; the file is complete once the sink is closed. The flows of a
+ * parallel run are interleaved in the order they were delivered.
+ */
+public class FileSink implements ReceiverSink, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private IOException failure; //first error writing the file
+
+    /**
+     * Create a sink
+     *
+     * @param file the file, replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    public FileSink(Path file) throws IOException {
+        out = new BufferedWriter(Channels.newWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE);
+    }
+
+    @Override
+    public synchronized void receive(int flow, int index, Message msg) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            out.write(Integer.toString(flow));
+            out.write('\t');
+            out.write(msg.getMessage());
+            out.write('\n');
+        } catch (IOException ex) {
+            //the run goes on; the error is thrown when the sink is closed
+            failure = ex;
+        }
+    }
+
+    /**
+     * Write what is left and close the file
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package transport;
+
+/**
+ * The flight recorder events of the runs: run start and end, timeouts, fast
+ * retransmits, and samples of the queue depth of the active runs, taken once
+ * a second by the recorder itself. See JfrEvents for the events.
+ *
+ * The events are only recorded on a JVM with the jdk.jfr module (JDK 11 and
+ * later, or 8u262 and later), by a build made on such a JDK, since JfrEvents
+ * is only compiled when the module is there; elsewhere INSTANCE is this
+ * class, whose methods
+ * do nothing. On a JVM with the recorder, an event that is not being recorded
+ * costs a check of a flag, so the events can stay in production sweeps and
+ * be turned on with -XX:StartFlightRecording or jcmd JFR.start when needed.
+ */
+class FlightEvents {
+
+    static final FlightEvents INSTANCE = load();
+
+    /**
+     * Return the events of the flight recorder if this JVM has one, or events
+     * that do nothing
+     *
+     * @return the events
+     */
+    private static FlightEvents load() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return (FlightEvents) Class.forName("transport.JfrEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | SecurityException ex) {
+            return new FlightEvents();
+        }
+    }
+
+    /**
+     * Record the start of a run
+     *
+     * @param run the run
+     * @return what to pass to runEnded
+     */
+    Object runStarted(Telemetry.Run run) {
+        return null;
+    }
+
+    /**
+     * Record the end of a run
+     *
+     * @param run the run
+     * @param started what runStarted returned
+     */
+    void runEnded(Telemetry.Run run, Object started) {
+    }
+
+    /**
+     * Record a timer that expired
+     *
+     * @param flow flow of the run whose timer expired
+     * @param base base of the sender's window
+     * @param time time of the timeout, in ticks
+     */
+    void timeout(int flow, int base, long time) {
+    }
+
+    /**
+     * Record a fast retransmit
+     *
+     * @param flow flow of the run
+     * @param base base of the sender's window
+     * @param time time of the retransmit, in ticks
+     */
+    void fastRetransmit(int flow, int base, long time) {
+    }
+}
@@ -0,0 +1,233 @@
+package transport;
+
+/**
+ * A class which holds the results of a simulation run, for each flow and for
+ * all flows together. Times are in ticks.
+ */
+public class FlowStatistics {
+
+    private final long[] completionTimes; //time at which each flow completed, -1 if it did not
+    private final int[] delivered; //number of messages delivered on each flow
+    private final long totalTime; //time at which the run ended
+    private final RunMetrics metrics; //counters of the run
+    private final LatencyHistogram latencies; //latencies of the delivered messages
+
+    /**
+     * Create the statistics of a run without counters
+     *
+     * @param completionTimes completion time of each flow, -1 if it did not
+     * complete
+     * @param delivered number of messages delivered on each flow
+     * @param totalTime time at which the run ended
+     */
+    public FlowStatistics(long[] completionTimes, int[] delivered, long totalTime) {
+        this(completionTimes, delivered, totalTime, new RunMetrics());
+        long total = 0;
+        for (int d : delivered) {
+            total += d;
+        }
+        metrics.set(RunMetrics.MESSAGES_DELIVERED, total);
+    }
+
+    /**
+     * Create the statistics of a run without latencies
+     *
+     * @param completionTimes completion time of each flow, -1 if it did not
+     * complete
+     * @param delivered number of messages delivered on each flow
+     * @param totalTime time at which the run ended
+     * @param metrics counters of the run, whose total time is set to totalTime
+     */
+    public FlowStatistics(long[] completionTimes, int[] delivered, long totalTime, RunMetrics metrics) {
+        this(completionTimes, delivered, totalTime, metrics, new LatencyHistogram());
+    }
+
+    /**
+     * Create the statistics of a run
+     *
+     * @param completionTimes completion time of each flow, -1 if it did not
+     * complete
+     * @param delivered number of messages delivered on each flow
+     * @param totalTime time at which the run ended
+     * @param metrics counters of the run, whose total time and latency
+     * percentiles are set from totalTime and latencies
+     * @param latencies latencies of the delivered messages
+     */
+    public FlowStatistics(long[] completionTimes, int[] delivered, long totalTime,
+            RunMetrics metrics, LatencyHistogram latencies) {
+        this.completionTimes = completionTimes;
+        this.delivered = delivered;
+        this.totalTime = totalTime;
+        this.metrics = metrics;
+        this.latencies = latencies;
+        metrics.set(RunMetrics.TOTAL_TIME, totalTime);
+        metrics.setLatencies(latencies);
+    }
+
+    /**
+     * Merge the statistics of the logical processes of a run: completion
+     * times come from the process of each flow's sender and delivered counts
+     * from the process of its receiver.
+     *
+     * @param lps the logical processes
+     * @param numFlows number of flows
+     * @return per-flow and aggregate statistics
+     */
+    static FlowStatistics merge(Simulation[] lps, int numFlows) {
+        int numLps = lps.length;
+        long[] completionTimes = new long[numFlows];
+        int[] delivered = new int[numFlows];
+        boolean allCompleted = true;
+        long maxCompletion = 0;
+        for (int flow = 0; flow < numFlows; flow++) {
+            completionTimes[flow] = lps[Timeline.logicalProcessOf(flow, Event.SENDER, numLps)].getCompletionTime(flow);
+            delivered[flow] = lps[Timeline.logicalProcessOf(flow, Event.RECEIVER, numLps)].getDelivered(flow);
+            allCompleted &= completionTimes[flow] >= 0;
+            maxCompletion = Math.max(maxCompletion, completionTimes[flow]);
+        }
+        long totalTime = maxCompletion;
+        if (!allCompleted) {
+            for (Simulation sim : lps) {
+                totalTime = Math.max(totalTime, sim.getTimeSoFar());
+            }
+        }
+        RunMetrics metrics = new RunMetrics();
+        for (Simulation sim : lps) {
+            metrics.addAll(sim.getMetrics());
+        }
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (Simulation sim : lps) {
+            latencies.add(sim.getLatencies());
+        }
+        return new FlowStatistics(completionTimes, delivered, totalTime, metrics, latencies);
+    }
+
+    /**
+     * Return the counters of the run: retransmissions, timeouts, losses...
+     *
+     * @return the metrics of the run
+     */
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Return the histogram of the latencies of the delivered messages, from
+     * the time they were handed to the sender transport to the time they were
+     * delivered to the receiver application
+     *
+     * @return the latencies, in ticks
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    public int getNumFlows() {
+        return completionTimes.length;
+    }
+
+    /**
+     * Return the time at which the run ended, i.e. when the last flow completed
+     *
+     * @return the total time
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Return the time at which a flow delivered and acknowledged all of its
+     * messages
+     *
+     * @param flow the flow
+     * @return the completion time, -1 if the flow did not complete
+     */
+    public long getCompletionTime(int flow) {
+        return completionTimes[flow];
+    }
+
+    /**
+     * Return the number of messages delivered to a flow's receiver application
+     *
+     * @param flow the flow
+     * @return number of delivered messages
+     */
+    public int getDelivered(int flow) {
+        return delivered[flow];
+    }
+
+    /**
+     * Return the number of flows that completed
+     *
+     * @return number of completed flows
+     */
+    public int getFlowsCompleted() {
+        int count = 0;
+        for (long t : completionTimes) {
+            if (t >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of messages delivered on all flows
+     *
+     * @return total number of delivered messages
+     */
+    public long getTotalDelivered() {
+        long total = 0;
+        for (int d : delivered) {
+            total += d;
+        }
+        return total;
+    }
+
+    /**
+     * Return the mean completion time of the flows that completed
+     *
+     * @return mean completion time, 0 if no flow completed
+     */
+    public double getMeanCompletionTime() {
+        long total = 0;
+        int count = 0;
+        for (long t : completionTimes) {
+            if (t >= 0) {
+                total += t;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Return the earliest completion time of the flows that completed
+     *
+     * @return minimum completion time, -1 if no flow completed
+     */
+    public long getMinCompletionTime() {
+        long min = -1;
+        for (long t : completionTimes) {
+            if (t >= 0 && (min < 0 || t < min)) {
+                min = t;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Return the latest completion time of the flows that completed
+     *
+     * @return maximum completion time, -1 if no flow completed
+     */
+    public long getMaxCompletionTime() {
+        long max = -1;
+        for (long t : completionTimes) {
+            if (t > max) {
+                max = t;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,243 @@
+package transport;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of the state of one host of a simulation: its application and
+ * transport, the parts of the timeline it owns (its send count and timer,
+ * the link it sends on, its event numbering) and its random number generator.
+ * A host's state only changes when it processes events, so putting a host
+ * back to a saved state undoes everything it did since.
+ *
+ * The transports are not copied object by object. Message i is always sent
+ * with seqnum i, so a sender is described by a few counters and the number of
+ * times each unacked packet was sent, and its window is rebuilt from the
+ * messages when it is restored.
+ *
+ * A sender keeps the send times of its messages in flight only, from the base
+ * of its window on, and those are copied. A receiver's histogram of latencies
+ * is not copied: the receiver copies it itself before it next changes (see
+ * ReceiverApplication.shareLatencies).
+ */
+class HostState {
+
+    private int flow;
+    private int host; //Event.SENDER or Event.RECEIVER
+    private long randomState; //state of the host's random number generator
+    private long eventsCreated; //number of events the host had created
+    private long lastArrivalTime; //last arrival time on the link the host sends on
+    private long packetsSent; //packets the host had sent
+    private long packetsLost; //packets of the host the network layer had lost
+    private long packetsCorrupted; //packets of the host the network layer had corrupted
+    private long[] counters; //counters of the host's transport, see RunMetrics
+
+    //sender only
+    private int numSent; //messages handed to the transport by the application
+    private int base; //base of the window
+    private int nextSeqNum; //seqnum of the next packet
+    private int dupAcks; //duplicate acks received
+    private int[] transmissions; //times each unacked packet had been sent
+    private long[] sendTimes; //send times of the messages from base on
+    private int sentSoFar; //send events created by the timeline
+    private long arrivalState; //state of the arrival source of the flow
+    private Event timer; //timer running, null if none
+    private long completionTime; //completion time of the flow, -1 if it had not completed
+
+    //receiver only
+    private int cumulativeAckNum;
+    private int acksSent; //acks sent with cumulativeAckNum
+    private Packet[] buffered; //packets buffered out of order
+    private int numReceived; //messages delivered to the application
+    private LatencyHistogram latencies; //latencies of the messages delivered
+
+    /**
+     * Save the state of a host of a simulation
+     *
+     * @param sim the simulation, which must own the host
+     * @param flow the flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     * @return the saved state
+     */
+    static HostState save(Simulation sim, int flow, int host) {
+        HostState state = new HostState();
+        Timeline tl = sim.getTimeline();
+        state.flow = flow;
+        state.host = host;
+        state.randomState = tl.getRandom(flow, host).getState();
+        state.eventsCreated = tl.getEventsCreated(flow, host);
+        state.lastArrivalTime = tl.getLastArrivalTime(flow, 1 - host);
+        state.packetsSent = tl.getPacketsSent(flow, host);
+        state.packetsLost = tl.getPacketsLost(flow, host);
+        state.packetsCorrupted = tl.getPacketsCorrupted(flow, host);
+        if (host == Event.SENDER) {
+            SenderTransport st = sim.getSenderTransport(flow);
+            state.counters = st.getCounters();
+            state.numSent = sim.getSenderApplication(flow).getNumSent();
+            state.base = st.getBase();
+            state.nextSeqNum = st.getNextSeqNum();
+            state.dupAcks = st.getDupAcks();
+            state.transmissions = st.getTransmissions();
+            state.sendTimes = sim.getSenderApplication(flow).getInFlightSendTimes();
+            state.sentSoFar = tl.getSentSoFar(flow);
+            state.arrivalState = tl.getArrivalState(flow);
+            state.timer = tl.getTimer(flow);
+            state.completionTime = sim.getCompletionTime(flow);
+        } else {
+            ReceiverTransport rt = sim.getReceiverTransport(flow);
+            state.counters = rt.getCounters();
+            state.cumulativeAckNum = rt.getCumulativeAckNum();
+            state.acksSent = rt.getAcksSent();
+            state.buffered = rt.getBufferedPackets();
+            state.numReceived = rt.getReceiverApplication().getNumReceived();
+            state.latencies = rt.getReceiverApplication().shareLatencies();
+        }
+        return state;
+    }
+
+    /**
+     * Put the host back to this state
+     *
+     * @param sim the simulation the state was saved from
+     */
+    void restore(Simulation sim) {
+        Timeline tl = sim.getTimeline();
+        tl.getRandom(flow, host).setState(randomState);
+        tl.setEventsCreated(flow, host, eventsCreated);
+        tl.setLastArrivalTime(flow, 1 - host, lastArrivalTime);
+        tl.setPacketsSent(flow, host, packetsSent);
+        tl.setPacketsLost(flow, host, packetsLost);
+        tl.setPacketsCorrupted(flow, host, packetsCorrupted);
+        if (host == Event.SENDER) {
+            sim.getSenderApplication(flow).restoreState(numSent, base, nextSeqNum, dupAcks, transmissions, sendTimes);
+            sim.getSenderTransport(flow).setCounters(counters);
+            tl.setSentSoFar(flow, sentSoFar);
+            tl.setArrivalState(flow, arrivalState);
+            tl.setTimer(flow, timer);
+            sim.setCompletionTime(flow, completionTime);
+        } else {
+            sim.getReceiverTransport(flow).restoreState(cumulativeAckNum, acksSent, buffered, numReceived);
+            sim.getReceiverTransport(flow).setCounters(counters);
+            sim.getReceiverTransport(flow).getReceiverApplication().setLatencies(latencies);
+        }
+    }
+
+    /**
+     * Write this state to a checkpoint
+     *
+     * @param out the checkpoint
+     * @param eventIndex position in the checkpoint of each pending event, used
+     * to write the timer
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void write(ChannelOutput out, Map<Event, Integer> eventIndex) throws IOException {
+        out.writeInt(flow);
+        out.writeByte(host);
+        out.writeLong(randomState);
+        out.writeLong(eventsCreated);
+        out.writeLong(lastArrivalTime);
+        out.writeLong(packetsSent);
+        out.writeLong(packetsLost);
+        out.writeLong(packetsCorrupted);
+        out.writeInt(counters.length);
+        for (long counter : counters) {
+            out.writeLong(counter);
+        }
+        if (host == Event.SENDER) {
+            out.writeInt(numSent);
+            out.writeInt(base);
+            out.writeInt(nextSeqNum);
+            out.writeInt(dupAcks);
+            for (int t : transmissions) {
+                out.writeInt(t);
+            }
+            for (long time : sendTimes) {
+                out.writeLong(time);
+            }
+            out.writeInt(sentSoFar);
+            out.writeLong(arrivalState);
+            if (timer != null && !eventIndex.containsKey(timer)) {
+                throw new IllegalStateException("Timer of flow " + flow + " is not pending");
+            }
+            out.writeInt(timer == null ? -1 : eventIndex.get(timer));
+            out.writeLong(completionTime);
+        } else {
+            out.writeInt(cumulativeAckNum);
+            out.writeInt(acksSent);
+            out.writeInt(numReceived);
+            out.writeInt(buffered.length);
+            for (Packet p : buffered) {
+                Checkpoint.writePacket(out, p);
+            }
+            latencies.write(out);
+        }
+    }
+
+    /**
+     * Read a state written by write
+     *
+     * @param in the checkpoint
+     * @param events the pending events, in the order they were written
+     * @return the state
+     * @throws IOException if the checkpoint cannot be read
+     */
+    static HostState read(ChannelInput in, List<Event> events) throws IOException {
+        HostState state = new HostState();
+        state.flow = in.readInt();
+        state.host = in.readByte();
+        state.randomState = in.readLong();
+        state.eventsCreated = in.readLong();
+        state.lastArrivalTime = in.readLong();
+        state.packetsSent = in.readLong();
+        state.packetsLost = in.readLong();
+        state.packetsCorrupted = in.readLong();
+        state.counters = new long[in.readInt()];
+        for (int i = 0; i < state.counters.length; i++) {
+            state.counters[i] = in.readLong();
+        }
+        if (state.host == Event.SENDER) {
+            state.numSent = in.readInt();
+            state.base = in.readInt();
+            state.nextSeqNum = in.readInt();
+            state.dupAcks = in.readInt();
+            if (state.base < 0 || state.nextSeqNum < state.base || state.nextSeqNum > state.numSent) {
+                throw new IOException("Invalid checkpoint: window " + state.base + " to " + state.nextSeqNum + " of flow " + state.flow);
+            }
+            state.transmissions = new int[state.nextSeqNum - state.base];
+            for (int i = 0; i < state.transmissions.length; i++) {
+                state.transmissions[i] = in.readInt();
+            }
+            state.sendTimes = new long[state.numSent - state.base];
+            for (int i = 0; i < state.sendTimes.length; i++) {
+                state.sendTimes[i] = in.readLong();
+            }
+            state.sentSoFar = in.readInt();
+            state.arrivalState = in.readLong();
+            int timerIndex = in.readInt();
+            if (timerIndex >= events.size()) {
+                throw new IOException("Invalid checkpoint: timer " + timerIndex + " of flow " + state.flow + " is not pending");
+            }
+            state.timer = timerIndex < 0 ? null : events.get(timerIndex);
+            state.completionTime = in.readLong();
+        } else {
+            state.cumulativeAckNum = in.readInt();
+            state.acksSent = in.readInt();
+            state.numReceived = in.readInt();
+            state.buffered = new Packet[in.readInt()];
+            for (int i = 0; i < state.buffered.length; i++) {
+                state.buffered[i] = Checkpoint.readPacket(in);
+            }
+            state.latencies = LatencyHistogram.read(in);
+        }
+        return state;
+    }
+
+    int getFlow() {
+        return flow;
+    }
+
+    int getHost() {
+        return host;
+    }
+}
@@ -0,0 +1,218 @@
+package transport;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A class which counts values (latencies, in ticks) in log-scaled buckets, in
+ * the manner of HdrHistogram. Values below 2^SUB_BUCKET_BITS have a bucket of
+ * their own; above that, every power of two is split into 2^(SUB_BUCKET_BITS-1)
+ * buckets, so a value is known to within 1/64 of itself whatever its size,
+ * and a histogram of any range of values holds at most a few thousand
+ * counters.
+ *
+ * Histograms of different runs merge by adding their counters, so trials run
+ * in parallel can be summed up without keeping their samples. The smallest
+ * and largest values are kept exactly.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; //buckets below the first power of two split
+    private static final int HALF = SUB_BUCKETS / 2; //buckets per power of two above that
+
+    private long[] counts; //number of values in each bucket, grown as needed
+    private long count; //number of values
+    private long sum; //sum of the values
+    private long min; //smallest value, Long.MAX_VALUE if none
+    private long max; //largest value, -1 if none
+
+    /**
+     * Create an empty histogram
+     */
+    public LatencyHistogram() {
+        counts = new long[SUB_BUCKETS];
+        min = Long.MAX_VALUE;
+        max = -1;
+    }
+
+    /**
+     * Create a copy of a histogram
+     *
+     * @param other the histogram to copy
+     */
+    LatencyHistogram(LatencyHistogram other) {
+        counts = other.counts.clone();
+        count = other.count;
+        sum = other.sum;
+        min = other.min;
+        max = other.max;
+    }
+
+    /**
+     * Return the bucket of a value
+     *
+     * @param value the value, at least 0
+     * @return index of its bucket
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * Return the largest value of a bucket
+     *
+     * @param bucket index of the bucket
+     * @return the largest value counted in it
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / HALF + 1;
+        long top = HALF + (bucket - SUB_BUCKETS) % HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Count a value
+     *
+     * @param value the value, at least 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value " + value);
+        }
+        int bucket = bucketOf(value);
+        if (bucket >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(bucket + 1, counts.length + counts.length / 2));
+        }
+        counts[bucket]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the values of another histogram to this one
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int bucket = 0; bucket < other.counts.length; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Write the histogram to a checkpoint: its buckets up to the last one
+     * used, then the totals
+     *
+     * @param out the checkpoint
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void write(ChannelOutput out) throws IOException {
+        int used = count == 0 ? 0 : bucketOf(max) + 1;
+        out.writeInt(used);
+        for (int bucket = 0; bucket < used; bucket++) {
+            out.writeLong(counts[bucket]);
+        }
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+    }
+
+    /**
+     * Read a histogram written by write
+     *
+     * @param in the checkpoint
+     * @return the histogram
+     * @throws IOException if the checkpoint cannot be read
+     */
+    static LatencyHistogram read(ChannelInput in) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int used = in.readInt();
+        if (used < 0 || used > bucketOf(Long.MAX_VALUE) + 1) {
+            throw new IOException("Invalid checkpoint: " + used + " latency buckets");
+        }
+        histogram.counts = new long[Math.max(SUB_BUCKETS, used)];
+        for (int bucket = 0; bucket < used; bucket++) {
+            histogram.counts[bucket] = in.readLong();
+        }
+        histogram.count = in.readLong();
+        histogram.sum = in.readLong();
+        histogram.min = in.readLong();
+        histogram.max = in.readLong();
+        return histogram;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Return the smallest value
+     *
+     * @return the smallest value, 0 if there are none
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Return the largest value
+     *
+     * @return the largest value, 0 if there are none
+     */
+    public long getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * Return the mean of the values
+     *
+     * @return the mean, 0 if there are none
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Return a value such that the given percentage of the values are at most
+     * that value. It is the largest value of the bucket it falls in, so it
+     * overestimates by less than 1/64, and it is never above the largest value.
+     *
+     * @param percentile the percentage, from 0 to 100
+     * @return the value, 0 if there are none
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, highestValueOf(bucket)));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,476 @@
+package transport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A recorded trace of what the network did to each packet, replayed by the
+ * network layer in place of its loss and corruption probabilities and random
+ * delays (see NetworkLayer.setLinkTrace). The n-th packet a host sends gets
+ * the n-th entry of the trace of its direction: sender to receiver for data
+ * packets, receiver to sender for acks. Every flow replays the same trace.
+ * Past the end of its trace, a direction either starts over or stops
+ * replaying, and packets are then lost, corrupted and delayed at random as
+ * without a trace.
+ *
+ * The trace is a binary file: a header (magic number, format version, delay
+ * steps per time unit and number of entries of each direction) followed by
+ * the entries of each direction, one big-endian int per packet: LOST and
+ * CORRUPTED flags and the delay in steps. See fromText to make one from text
+ * files. Delays shorter than one time unit are replayed as one time unit, the
+ * shortest delay of a link (see ParallelSimulation).
+ *
+ * The file is memory-mapped a window at a time, so traces of billions of
+ * entries are replayed without being read into the heap. Windows are shared
+ * by every flow and thread. Each host reads through its own Cursor, which
+ * keeps its current window at hand. When a cursor enters a window, the next
+ * one is mapped and loaded by a background thread, so it is usually ready
+ * before a packet reads it. A window is dropped once no cursor is in it, and
+ * mapped again if a host comes back to it after a rollback.
+ */
+public class LinkTrace {
+
+    static final int MAGIC = 0x4E534C4B; //"NSLK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    public static final int NONE = -1; //no entry: the packet is handled as without a trace
+    public static final int LOST = 1 << 30; //the packet is lost
+    public static final int CORRUPTED = 1 << 29; //the packet is corrupted
+    public static final int DELAY_MASK = CORRUPTED - 1; //delay of the packet, in steps
+
+    private static final int WINDOW_SHIFT = 20; //entries mapped at a time: 2^20, 4 MB
+
+    //maps and loads the windows ahead of the cursors
+    private static final ExecutorService PREFETCH = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "link-trace-prefetch");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final Path file;
+    private final boolean loop; //whether a direction starts over at the end of its trace
+    private final int stepsPerUnit; //delay steps in one time unit
+    private final long[] counts; //number of entries, per direction
+    private final long[] offsets; //position of the first entry in the file, per direction
+    private final int windowShift;
+    private final AtomicReferenceArray<ByteBuffer>[] windows; //the windows mapped, per direction
+    private final AtomicIntegerArray[] readers; //number of cursors in each window, per direction
+
+    /**
+     * Open a trace
+     *
+     * @param file the trace
+     * @param loop true to start a direction over at the end of its trace,
+     * false to stop replaying it
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public LinkTrace(Path file, boolean loop) throws IOException {
+        this(file, loop, WINDOW_SHIFT);
+    }
+
+    /**
+     * Open a trace, mapped in windows of a given size
+     *
+     * @param file the trace
+     * @param loop true to start a direction over at the end of its trace
+     * @param windowShift log2 of the number of entries of a window
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    LinkTrace(Path file, boolean loop, int windowShift) throws IOException {
+        this.file = file;
+        this.loop = loop;
+        this.windowShift = windowShift;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            size = channel.size();
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException(file + " is not a link trace");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported link trace version " + version + " in " + file);
+        }
+        stepsPerUnit = header.getInt();
+        header.getInt(); //reserved
+        counts = new long[]{header.getLong(), header.getLong()};
+        offsets = new long[]{HEADER_SIZE, HEADER_SIZE + 4 * counts[0]};
+        if (stepsPerUnit < 1 || counts[0] < 1 || counts[1] < 1
+                || counts[0] + counts[1] > (size - HEADER_SIZE) / 4) {
+            throw new IOException("Invalid link trace " + file + ": " + counts[0] + " and " + counts[1]
+                    + " entries, " + stepsPerUnit + " steps per unit");
+        }
+        windows = new AtomicReferenceArray[2];
+        readers = new AtomicIntegerArray[2];
+        for (int direction = 0; direction < 2; direction++) {
+            int numWindows = (int) ((counts[direction] - 1) >>> windowShift) + 1;
+            windows[direction] = new AtomicReferenceArray<>(numWindows);
+            readers[direction] = new AtomicIntegerArray(numWindows);
+        }
+    }
+
+    /**
+     * Return the number of entries of a direction
+     *
+     * @param direction host sending the packets, Event.SENDER or
+     * Event.RECEIVER
+     * @return the number of entries
+     */
+    public long getCount(int direction) {
+        return counts[direction];
+    }
+
+    /**
+     * Return the number of delay steps in one time unit
+     *
+     * @return the steps per time unit
+     */
+    public int getStepsPerUnit() {
+        return stepsPerUnit;
+    }
+
+    /**
+     * Return the delay of an entry
+     *
+     * @param entry the entry, not NONE
+     * @param ticksPerUnit number of ticks in one time unit
+     * @return the delay, in ticks, at least one time unit
+     */
+    public long delay(int entry, long ticksPerUnit) {
+        return Math.max(ticksPerUnit, (entry & DELAY_MASK) * ticksPerUnit / stepsPerUnit);
+    }
+
+    /**
+     * Map a window of a direction
+     *
+     * @param direction the direction
+     * @param window number of the window
+     * @param load true to read the whole window into memory now
+     * @return the window
+     * @throws IOException if the file can no longer be read
+     */
+    private MappedByteBuffer map(int direction, int window, boolean load) throws IOException {
+        long start = (long) window << windowShift;
+        long size = 4 * Math.min(counts[direction] - start, 1L << windowShift);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offsets[direction] + 4 * start, size);
+            return load ? mapped.load() : mapped;
+        }
+    }
+
+    /**
+     * Enter a window of a direction, mapping it if it is not mapped yet (the
+     * pages are then read as the entries are), and have the next window
+     * mapped and loaded in the background
+     *
+     * @param direction the direction
+     * @param window number of the window
+     * @return the window
+     * @throws IllegalStateException if the file can no longer be read
+     */
+    private ByteBuffer enter(int direction, int window) {
+        readers[direction].incrementAndGet(window);
+        ByteBuffer buffer = windows[direction].get(window);
+        if (buffer == null) {
+            try {
+                buffer = map(direction, window, false);
+            } catch (IOException ex) {
+                readers[direction].decrementAndGet(window);
+                throw new IllegalStateException("Could not map link trace " + file, ex);
+            }
+            //another host may have mapped it meanwhile; either mapping will do
+            if (!windows[direction].compareAndSet(window, null, buffer)) {
+                ByteBuffer other = windows[direction].get(window);
+                buffer = other == null ? buffer : other;
+            }
+        }
+        int next = window + 1;
+        if (next == windows[direction].length() && loop) {
+            next = 0;
+        }
+        if (next < windows[direction].length() && windows[direction].get(next) == null) {
+            prefetch(direction, next);
+        }
+        return buffer;
+    }
+
+    /**
+     * Leave a window of a direction, dropping it if no other cursor is in it
+     *
+     * @param direction the direction
+     * @param window number of the window
+     */
+    private void leave(int direction, int window) {
+        if (readers[direction].decrementAndGet(window) == 0) {
+            //a cursor entering now keeps the buffer it got, or maps the window again
+            windows[direction].set(window, null);
+        }
+    }
+
+    /**
+     * Map and load a window in the background. A window that cannot be
+     * mapped is left for the cursor that needs it, which reports the error.
+     *
+     * @param direction the direction
+     * @param window number of the window
+     */
+    private void prefetch(final int direction, final int window) {
+        PREFETCH.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (windows[direction].get(window) != null) {
+                    return;
+                }
+                try {
+                    windows[direction].compareAndSet(window, null, map(direction, window, true));
+                } catch (IOException ex) {
+                }
+            }
+        });
+    }
+
+    /**
+     * Return whether a window of a direction is mapped
+     *
+     * @param direction the direction
+     * @param window number of the window
+     * @return true if the window is mapped
+     */
+    boolean isMapped(int direction, int window) {
+        return windows[direction].get(window) != null;
+    }
+
+    /**
+     * Wait until the windows asked for so far are prefetched
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException never, the wait is an empty task
+     */
+    static void awaitPrefetch() throws InterruptedException, ExecutionException {
+        PREFETCH.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    /**
+     * Create a cursor reading the entries of one direction
+     *
+     * @param direction host sending the packets, Event.SENDER or
+     * Event.RECEIVER
+     * @return the cursor
+     */
+    public Cursor newCursor(int direction) {
+        return new Cursor(direction);
+    }
+
+    /**
+     * Reads the entries of one direction for one host. Hosts read their
+     * entries in order, going back only when rolled back, so the cursor keeps
+     * the window of the last entry read.
+     */
+    public class Cursor {
+
+        private final int direction;
+        private ByteBuffer window; //window of the last entry read, null before the first
+        private int number; //number of that window
+        private long start; //first entry of the window
+        private long end; //entry after the last one of the window
+
+        private Cursor(int direction) {
+            this.direction = direction;
+        }
+
+        /**
+         * Return an entry
+         *
+         * @param index number of the packet in the direction
+         * @return the entry, NONE if the trace is over and does not loop
+         */
+        public int entry(long index) {
+            long count = counts[direction];
+            if (index >= count) {
+                if (!loop) {
+                    return NONE;
+                }
+                index %= count;
+            }
+            if (index < start || index >= end || window == null) {
+                int w = (int) (index >>> windowShift);
+                ByteBuffer entered = enter(direction, w);
+                if (window != null) {
+                    leave(direction, number);
+                }
+                window = entered;
+                number = w;
+                start = (long) w << windowShift;
+                end = start + window.capacity() / 4;
+            }
+            return window.getInt((int) (index - start) * 4);
+        }
+    }
+
+    /**
+     * Return the spec of the trace, which parse turns back into the same
+     * trace
+     *
+     * @return the spec
+     */
+    public String toSpec() {
+        return (loop ? "loop:" : "stop:") + file;
+    }
+
+    @Override
+    public String toString() {
+        return toSpec();
+    }
+
+    /**
+     * Open a trace from its spec: loop:FILE to start each direction over at
+     * the end of its trace, stop:FILE to stop replaying it
+     *
+     * @param spec the spec
+     * @return the trace
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public static LinkTrace parse(String spec) throws IOException {
+        if (spec.startsWith("loop:")) {
+            return new LinkTrace(Paths.get(spec.substring(5)), true);
+        }
+        if (spec.startsWith("stop:")) {
+            return new LinkTrace(Paths.get(spec.substring(5)), false);
+        }
+        throw new IllegalArgumentException("link trace should be loop:FILE or stop:FILE: " + spec);
+    }
+
+    /**
+     * Make a trace from two text files, one per direction, with a line per
+     * packet: its loss flag (0 or 1), corruption flag (0 or 1) and delay in
+     * time units, separated by spaces. Blank lines and lines starting with #
+     * are skipped. The files are read and written as streams, whatever their
+     * size.
+     *
+     * @param forward the packets from the sender to the receiver
+     * @param backward the packets from the receiver to the sender
+     * @param trace the trace to write, replaced if it exists
+     * @param stepsPerUnit delay steps in one time unit, the resolution of the
+     * delays
+     * @return the number of entries written
+     * @throws IOException if a file cannot be read or written, a line is not
+     * an entry or a direction has no entry
+     */
+    public static long fromText(Path forward, Path backward, Path trace, int stepsPerUnit) throws IOException {
+        if (stepsPerUnit < 1) {
+            throw new IllegalArgumentException("steps per unit should be positive: " + stepsPerUnit);
+        }
+        long[] counts = new long[2];
+        try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChannelOutput out = new ChannelOutput(channel);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stepsPerUnit);
+            out.writeInt(0); //reserved
+            out.writeLong(0); //numbers of entries, written once known
+            out.writeLong(0);
+            counts[0] = writeEntries(forward, out, stepsPerUnit);
+            counts[1] = writeEntries(backward, out, stepsPerUnit);
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putLong(counts[0]).putLong(counts[1]).flip();
+            channel.write(header, 16);
+        }
+        return counts[0] + counts[1];
+    }
+
+    /**
+     * Write the entries of one direction
+     *
+     * @return the number of entries
+     */
+    private static long writeEntries(Path text, ChannelOutput out, int stepsPerUnit) throws IOException {
+        long count = 0;
+        try (BufferedReader in = Files.newBufferedReader(text, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                int entry;
+                try {
+                    if (fields.length != 3 || !fields[0].matches("[01]") || !fields[1].matches("[01]")) {
+                        throw new NumberFormatException();
+                    }
+                    double steps = Math.rint(Double.parseDouble(fields[2]) * stepsPerUnit);
+                    if (!(steps >= 0 && steps <= DELAY_MASK)) {
+                        throw new IOException(text + ":" + lineNumber + ": delay out of range: " + fields[2]);
+                    }
+                    entry = (int) steps;
+                } catch (NumberFormatException ex) {
+                    throw new IOException(text + ":" + lineNumber + ": not LOST CORRUPTED DELAY: " + line, ex);
+                }
+                if (fields[0].equals("1")) {
+                    entry |= LOST;
+                }
+                if (fields[1].equals("1")) {
+                    entry |= CORRUPTED;
+                }
+                out.writeInt(entry);
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new IOException(text + " has no entry");
+        }
+        return count;
+    }
+
+    /**
+     * Make a trace from text files, see fromText
+     *
+     * @param args forward and backward text files, trace file and optionally
+     * the delay steps per time unit (1000)
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 4) {
+            System.out.println("usage: LinkTrace forward.txt backward.txt trace.bin [stepsPerUnit]");
+            System.exit(1);
+        }
+        try {
+            int stepsPerUnit = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+            System.out.println(fromText(Paths.get(args[0]), Paths.get(args[1]), Paths.get(args[2]), stepsPerUnit)
+                    + " entries");
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+    }
+}
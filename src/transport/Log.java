@@ -0,0 +1,257 @@
+package transport;
+
+import java.io.PrintStream;
+
+/**
+ * A class which prints the debug output of one run, with a level per
+ * component. The levels are resolved once, when the run's tracing level is
+ * set, and every call checks its level before touching its arguments, so a
+ * message that is not printed costs one array read: no string is built and
+ * nothing is allocated, as long as the caller passes primitives or existing
+ * objects rather than concatenating.
+ *
+ * Messages are either a pattern whose "{}" are replaced by the arguments, in
+ * order, or a LazyMessage built only when it is printed. A "{}" with no
+ * argument is printed as it is, and an argument with no "{}" is dropped.
+ *
+ * The level of a component is the tracing level of the run (see
+ * NetworkSimulator.run) unless the system property transport.log.(component)
+ * sets it, as a number or as off, info, debug or trace; for example
+ * -Dtransport.log.receiver=debug prints the receivers' debug output only.
+ */
+public class Log {
+
+    public static final int OFF = 0;
+    public static final int INFO = 1; //sends, arrivals, timers and rollbacks
+    public static final int DEBUG = 2; //the network layer and the transports
+    public static final int TRACE = 3; //the timeline
+
+    public static final int SIMULATOR = 0;
+    public static final int NETWORK = 1;
+    public static final int SENDER = 2;
+    public static final int RECEIVER = 3;
+    public static final int TIMELINE = 4;
+    public static final int TIME_WARP = 5;
+
+    public static final String[] COMPONENT_NAMES = {"simulator", "network", "sender", "receiver", "timeline", "timewarp"};
+    public static final String PROPERTY_PREFIX = "transport.log.";
+
+    private static final String[] LEVEL_NAMES = {"off", "info", "debug", "trace"};
+    private static final String[] PREFIXES = {"\n[NS] ", "[NL] ", "[ST] ", "[RT] ", "[Tl] ", "\n[TW] "};
+
+    /**
+     * A message built only when it is printed
+     */
+    public interface LazyMessage {
+
+        /**
+         * Build the message
+         *
+         * @return the message
+         */
+        String get();
+    }
+
+    private final int[] levels = new int[COMPONENT_NAMES.length]; //level of each component
+    private PrintStream out = System.out;
+
+    /**
+     * Create a log with every component off
+     */
+    public Log() {
+    }
+
+    /**
+     * Set the level of every component from the tracing level of the run and
+     * the system properties
+     *
+     * @param tracing tracing level, see NetworkSimulator.run
+     */
+    public void configure(int tracing) {
+        for (int component = 0; component < levels.length; component++) {
+            String level = System.getProperty(PROPERTY_PREFIX + COMPONENT_NAMES[component]);
+            levels[component] = level == null ? tracing : parseLevel(level);
+        }
+    }
+
+    /**
+     * Parse a level
+     *
+     * @param level a number, or off, info, debug or trace
+     * @return the level
+     */
+    public static int parseLevel(String level) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(level.trim())) {
+                return i;
+            }
+        }
+        try {
+            return Integer.parseInt(level.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Unknown log level: " + level, ex);
+        }
+    }
+
+    public void setLevel(int component, int level) {
+        levels[component] = level;
+    }
+
+    public int getLevel(int component) {
+        return levels[component];
+    }
+
+    /**
+     * Set the stream messages are printed to, System.out by default
+     *
+     * @param out the stream
+     */
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Tell whether messages of a component at a level are printed
+     *
+     * @param component the component
+     * @param level the level of the messages
+     * @return true if they are printed
+     */
+    public boolean isEnabled(int component, int level) {
+        return level <= levels[component];
+    }
+
+    /**
+     * Print a warning whatever the levels, as it is
+     *
+     * @param message the warning
+     */
+    public void warn(String message) {
+        out.println(message);
+    }
+
+    public void log(int component, int level, String message) {
+        if (level <= levels[component]) {
+            out.println(PREFIXES[component] + message);
+        }
+    }
+
+    public void log(int component, int level, LazyMessage message) {
+        if (level <= levels[component]) {
+            out.println(PREFIXES[component] + message.get());
+        }
+    }
+
+    public void log(int component, int level, String pattern, long a) {
+        if (level <= levels[component]) {
+            StringBuilder sb = new StringBuilder(PREFIXES[component]);
+            int pos = arg(sb, pattern, 0, a);
+            print(sb, pattern, pos);
+        }
+    }
+
+    public void log(int component, int level, String pattern, long a, long b) {
+        if (level <= levels[component]) {
+            StringBuilder sb = new StringBuilder(PREFIXES[component]);
+            int pos = arg(sb, pattern, 0, a);
+            pos = arg(sb, pattern, pos, b);
+            print(sb, pattern, pos);
+        }
+    }
+
+    public void log(int component, int level, String pattern, long a, Object b) {
+        if (level <= levels[component]) {
+            StringBuilder sb = new StringBuilder(PREFIXES[component]);
+            int pos = arg(sb, pattern, 0, a);
+            pos = arg(sb, pattern, pos, b);
+            print(sb, pattern, pos);
+        }
+    }
+
+    public void log(int component, int level, String pattern, long a, long b, long c) {
+        if (level <= levels[component]) {
+            StringBuilder sb = new StringBuilder(PREFIXES[component]);
+            int pos = arg(sb, pattern, 0, a);
+            pos = arg(sb, pattern, pos, b);
+            pos = arg(sb, pattern, pos, c);
+            print(sb, pattern, pos);
+        }
+    }
+
+    public void log(int component, int level, String pattern, long a, long b, Object c) {
+        if (level <= levels[component]) {
+            StringBuilder sb = new StringBuilder(PREFIXES[component]);
+            int pos = arg(sb, pattern, 0, a);
+            pos = arg(sb, pattern, pos, b);
+            pos = arg(sb, pattern, pos, c);
+            print(sb, pattern, pos);
+        }
+    }
+
+    public void log(int component, int level, String pattern, long a, long b, Object c, long d) {
+        if (level <= levels[component]) {
+            StringBuilder sb = new StringBuilder(PREFIXES[component]);
+            int pos = arg(sb, pattern, 0, a);
+            pos = arg(sb, pattern, pos, b);
+            pos = arg(sb, pattern, pos, c);
+            pos = arg(sb, pattern, pos, d);
+            print(sb, pattern, pos);
+        }
+    }
+
+    /**
+     * Append the pattern up to its next "{}", then an argument in place of the
+     * "{}". An argument with no "{}" left is dropped.
+     *
+     * @param sb the message so far
+     * @param pattern the pattern
+     * @param from where to start in the pattern, -1 once it is all appended
+     * @param value the argument
+     * @return where the pattern goes on after the "{}", or -1 if there was
+     * none
+     */
+    private static int arg(StringBuilder sb, String pattern, int from, long value) {
+        int at = next(sb, pattern, from);
+        if (at >= 0) {
+            sb.append(value);
+        }
+        return at;
+    }
+
+    private static int arg(StringBuilder sb, String pattern, int from, Object value) {
+        int at = next(sb, pattern, from);
+        if (at >= 0) {
+            sb.append(value);
+        }
+        return at;
+    }
+
+    /**
+     * Append the pattern up to its next "{}"
+     *
+     * @param sb the message so far
+     * @param pattern the pattern
+     * @param from where to start in the pattern, -1 once it is all appended
+     * @return where the pattern goes on after the "{}", or -1 if there is
+     * none, in which case the rest of the pattern is appended
+     */
+    private static int next(StringBuilder sb, String pattern, int from) {
+        if (from < 0) {
+            return -1;
+        }
+        int at = pattern.indexOf("{}", from);
+        if (at < 0) {
+            sb.append(pattern, from, pattern.length());
+            return -1;
+        }
+        sb.append(pattern, from, at);
+        return at + 2;
+    }
+
+    private void print(StringBuilder sb, String pattern, int from) {
+        if (from >= 0) {
+            sb.append(pattern, from, pattern.length());
+        }
+        out.println(sb);
+    }
+}
@@ -2,24 +2,49 @@ package transport;
 
 /**
  * A class which represents an application message (which is simply a string)
+ * and the time it was sent, so that its receiver can tell its latency without
+ * asking its sender, which may be simulated by another logical process
  */
 public class Message {
 
     private String x;
+    private long sendTime = -1; //time the sender application handed it to its transport, in ticks, -1 if unknown
 
     public Message(String x) {
         this.x = x;
     }
 
+    /**
+     * Create a message sent at a known time
+     *
+     * @param x the text of the message
+     * @param sendTime time the sender application handed it to its
+     * transport, in ticks
+     */
+    public Message(String x, long sendTime) {
+        this.x = x;
+        this.sendTime = sendTime;
+    }
+
     public String getMessage() {
         return x;
     }
 
+    /**
+     * Return the time the sender application handed the message to its
+     * transport
+     *
+     * @return the send time, in ticks, -1 if unknown
+     */
+    public long getSendTime() {
+        return sendTime;
+    }
+
     public void corruptMessage() {
         x = String.valueOf(x.charAt(0) + 1) + x.substring(1);
     }
     
     public Message clone(){
-        return new Message(x);
+        return new Message(x, sendTime);
     }
 }
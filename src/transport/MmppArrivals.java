@@ -0,0 +1,99 @@
+package transport;
+
+/**
+ * Markov-modulated Poisson arrivals, for bursty traffic: the source goes
+ * through a cycle of phases, each lasting an exponential time with its own
+ * mean, and sends Poisson arrivals at the rate of the current phase. On-off
+ * traffic is the cycle of an on phase and an off phase without arrivals, and
+ * slow phases of different rates give daily cycles.
+ *
+ * The state of a source is its current phase. As the phases last exponential
+ * times, the time already spent in the phase does not matter.
+ */
+public class MmppArrivals extends ArrivalProcess {
+
+    private final double[] rates; //messages per time unit in each phase
+    private final double[] sojourns; //average time spent in each phase, in time units
+
+    /**
+     * Create Markov-modulated Poisson arrivals. The source starts in the
+     * first phase.
+     *
+     * @param rates number of messages per time unit in each phase, at least
+     * one of them positive
+     * @param sojourns average time spent in each phase, in time units
+     */
+    public MmppArrivals(double[] rates, double[] sojourns) {
+        if (rates.length == 0 || rates.length != sojourns.length) {
+            throw new IllegalArgumentException("every phase needs a rate and a sojourn time");
+        }
+        boolean sending = false;
+        for (int i = 0; i < rates.length; i++) {
+            if (!(rates[i] >= 0) || Double.isInfinite(rates[i])) {
+                throw new IllegalArgumentException("invalid rate " + rates[i]);
+            }
+            checkTime("sojourn time", sojourns[i]);
+            sending |= rates[i] > 0;
+        }
+        if (!sending) {
+            throw new IllegalArgumentException("no phase sends messages");
+        }
+        this.rates = rates.clone();
+        this.sojourns = sojourns.clone();
+    }
+
+    /**
+     * Create on-off arrivals, starting with an on period
+     *
+     * @param rate number of messages per time unit during on periods
+     * @param on average length of an on period, in time units
+     * @param off average length of an off period, in time units
+     * @return the arrivals
+     */
+    public static MmppArrivals onOff(double rate, double on, double off) {
+        return new MmppArrivals(new double[]{checkTime("rate", rate), 0}, new double[]{on, off});
+    }
+
+    @Override
+    public Source newSource(final long ticksPerUnit) {
+        return new Source() {
+            private int phase;
+
+            @Override
+            public long nextGap(long index, RandomStream random) {
+                double gap = 0;
+                while (true) {
+                    //the next arrival and the end of the phase compete
+                    double total = rates[phase] + 1 / sojourns[phase];
+                    gap += -Math.log(1 - random.nextDouble()) / total;
+                    if (random.nextDouble() * total < rates[phase]) {
+                        return (long) (gap * ticksPerUnit);
+                    }
+                    phase = (phase + 1) % rates.length;
+                }
+            }
+
+            @Override
+            public long getState() {
+                return phase;
+            }
+
+            @Override
+            public void setState(long state) {
+                if (state < 0 || state >= rates.length) {
+                    throw new IllegalArgumentException("no phase " + state);
+                }
+                phase = (int) state;
+            }
+        };
+    }
+
+    @Override
+    public String toSpec() {
+        StringBuilder sb = new StringBuilder("mmpp");
+        for (int i = 0; i < rates.length; i++) {
+            sb.append(':').append(rates[i]).append('@').append(sojourns[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -4,6 +4,7 @@ import java.util.*;
 
 /**
  * A class which represents the transoprt layer for both sender and receiver.
+ * It is shared by all flows of a simulation.
  */
 
 public class NetworkLayer {
@@ -11,7 +12,8 @@ public class NetworkLayer {
     float lossProbability; //probablity of losing a packet
     float corrProbability; //probability of corruping a packet
     Timeline tl;
-    Random ran; //random number generator for losing packets.
+    private LinkTrace linkTrace; //trace replayed in place of the probabilities, null if none
+    private LinkTrace.Cursor[] cursors; //cursor of each host in the trace of its direction
 
     /**
      * Create a network layer
@@ -24,7 +26,63 @@ public class NetworkLayer {
         lossProbability = lp;
         corrProbability = cp;
         this.tl = tl;
-        ran = new Random();
+    }
+
+    public void setLossProbability(float lp) {
+        lossProbability = lp;
+    }
+
+    public void setCorruptionProbability(float cp) {
+        corrProbability = cp;
+    }
+
+    /**
+     * Replay a trace of losses, corruptions and delays instead of drawing
+     * them at random, or go back to the probabilities. Packets past the end
+     * of a trace that does not loop are handled with the probabilities.
+     *
+     * @param trace the trace, null for none
+     */
+    public void setLinkTrace(LinkTrace trace) {
+        linkTrace = trace;
+        cursors = null;
+        if (trace != null) {
+            cursors = new LinkTrace.Cursor[2 * tl.getNumFlows()];
+            for (int host = 0; host < cursors.length; host++) {
+                cursors[host] = trace.newCursor(host % 2);
+            }
+        }
+    }
+
+    /**
+     * Return the trace replayed by the network layer
+     *
+     * @return the trace, null if none
+     */
+    public LinkTrace getLinkTrace() {
+        return linkTrace;
+    }
+
+    Timeline getTimeline() {
+        return tl;
+    }
+
+    /**
+     * Return the debug output of the run
+     *
+     * @return the log of the timeline
+     */
+    public Log getLog() {
+        return tl.getLog();
+    }
+
+    /**
+     * Return the tracing level of the run
+     *
+     * @return tracing level, see NetworkSimulator.run
+     */
+    public int getTracing() {
+        return tl.getTracing();
     }
 
     /**
@@ -33,24 +91,39 @@ public class NetworkLayer {
      * @param pkt The packet to be sent
      * @param to Who the packet is being sent to (Event.SENDER or
      * Event.RECEIVER)
+     * @param flow The flow the packet belongs to
      */
-    public void sendPacket(Packet pkt, int to) {
-        if (ran.nextDouble() < lossProbability) {
-            if (NetworkSimulator.DEBUG > 1) {
-                System.out.println("[NL] Packet seq: " + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " lost    "+pkt.getMessage().getMessage());
-            }
+    public void sendPacket(Packet pkt, int to, int flow) {
+        //losses, corruptions and delays are drawn from the sending host's
+        //numbers for this packet, so they only depend on which packet it is
+        int number = (to == Event.RECEIVER) ? pkt.getSeqnum() : pkt.getAcknum();
+        Random ran = tl.packetRandom(flow, 1 - to, number, pkt.getTransmission());
+        //the packet's entry in the trace, which lists the packets in the order they were sent on the link
+        int entry = linkTrace == null ? LinkTrace.NONE
+                : cursors[2 * flow + 1 - to].entry(tl.getPacketsSent(flow, 1 - to) - 1);
+        boolean lost = (entry == LinkTrace.NONE) ? ran.nextDouble() < lossProbability : (entry & LinkTrace.LOST) != 0;
+        if (lost) {
+            tl.countLost(flow, 1 - to);
+            tl.trace(TraceRecorder.PACKET_SENT, flow, 1 - to, pkt.getSeqnum(), pkt.getAcknum(), TraceRecorder.LOST);
+            tl.getLog().log(Log.NETWORK, Log.DEBUG, "Packet seq: {} ack: {} lost    {}", pkt.getSeqnum(), pkt.getAcknum(), pkt.getMessage().getMessage());
             return;
         }
-        if (ran.nextDouble() < corrProbability) {
-            if (NetworkSimulator.DEBUG > 1) {
-                System.out.println("[NL] Packet seq: " + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " corrupted    "+pkt.getMessage().getMessage());
-            }
-            pkt.corrupt();
+        boolean corrupted = (entry == LinkTrace.NONE) ? ran.nextDouble() < corrProbability
+                : (entry & LinkTrace.CORRUPTED) != 0;
+        if (corrupted) {
+            tl.countCorrupted(flow, 1 - to);
+            tl.getLog().log(Log.NETWORK, Log.DEBUG, "Packet seq: {} ack: {} corrupted    {}", pkt.getSeqnum(), pkt.getAcknum(), pkt.getMessage().getMessage());
+            pkt.corrupt(ran);
+            tl.trace(TraceRecorder.PACKET_SENT, flow, 1 - to, pkt.getSeqnum(), pkt.getAcknum(), TraceRecorder.CORRUPTED);
+        } else {
+            tl.trace(TraceRecorder.PACKET_SENT, flow, 1 - to, pkt.getSeqnum(), pkt.getAcknum(), 0);
         }
-        if (NetworkSimulator.DEBUG > 1) {
-            System.out.println("[NL] Packet seq: " + pkt.getSeqnum() + " ack: " + pkt.getAcknum() + " sent     "+pkt.getMessage().getMessage());
+        tl.getLog().log(Log.NETWORK, Log.DEBUG, "Packet seq: {} ack: {} sent     {}", pkt.getSeqnum(), pkt.getAcknum(), pkt.getMessage().getMessage());
+        if (entry == LinkTrace.NONE) {
+            tl.createArriveEvent(pkt, to, flow);
+        } else {
+            tl.createArriveEvent(pkt, to, flow, linkTrace.delay(entry, tl.getTicksPerUnit()));
         }
-        tl.createArriveEvent(pkt, to);
     }
 
 }
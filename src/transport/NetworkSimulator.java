@@ -1,24 +1,209 @@
 package transport;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.*;
 import java.io.FileReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class NetworkSimulator {
 
-    public static int DEBUG;
+    private long ticksPerUnit = 1; //resolution of simulated time
+    private Long seed; //seed of the random number generators, null for a new seed every run
+    private boolean antithetic; //whether sequential runs use antithetic random numbers
+    private Path checkpointFile; //where sequential runs write checkpoints, null for none
+    private long checkpointTimeInterval; //simulated time between checkpoints, in ticks
+    private long checkpointEventInterval; //events between checkpoints
+    private Path traceFile; //where runs write their binary trace, null for none
+    private ReceiverSink sink = new PrintSink(); //where the receivers of runs put the messages delivered
+    private ArrivalProcess arrivals; //process of the send times of runs, null for Poisson arrivals
+    private LinkTrace linkTrace; //losses, corruptions and delays replayed by runs, null for none
 
     public NetworkSimulator() {
 
     }
 
+    /**
+     * Set the resolution of simulated time, i.e. how many ticks make up one
+     * time unit. The time between messages, the timeout and the link delay are
+     * all given in time units, so with 1000 ticks per unit a run where one unit
+     * is a millisecond is simulated with microsecond granularity.
+     *
+     * @param ticksPerUnit number of ticks in one time unit, at least 1
+     */
+    public void setTicksPerUnit(long ticksPerUnit) {
+        if (ticksPerUnit < 1) {
+            throw new IllegalArgumentException("ticks per unit must be at least 1: " + ticksPerUnit);
+        }
+        this.ticksPerUnit = ticksPerUnit;
+    }
+
+    /**
+     * Set the seed of the random number generators. Runs with the same seed
+     * and parameters give the same results, whether they are run sequentially
+     * or in parallel. Runs with the same seed also share their random numbers
+     * whatever the protocol: the same send times, and the same loss,
+     * corruption and delay for the n-th packet of each host, so that the
+     * difference between two protocols is not hidden by noise.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Set whether sequential runs (run and runFlows) use antithetic random
+     * numbers. A run with a seed and the antithetic run with the same seed
+     * form an antithetic pair, whose results are negatively correlated, so
+     * their mean varies less than that of two independent runs.
+     *
+     * @param antithetic true for antithetic random numbers
+     */
+    public void setAntithetic(boolean antithetic) {
+        this.antithetic = antithetic;
+    }
+
+    /**
+     * Make sequential runs (run and runFlows) write a checkpoint every so
+     * often, see Simulation.setCheckpointing. A run can be carried on from its
+     * last checkpoint with resume.
+     *
+     * @param fileName file to write checkpoints to, null to turn checkpoints
+     * off
+     * @param timeInterval simulated time between checkpoints in ticks, 0 for
+     * no time-based checkpoints
+     * @param eventInterval number of events between checkpoints, 0 for no
+     * event-based checkpoints
+     */
+    public void setCheckpointing(String fileName, long timeInterval, long eventInterval) {
+        if (timeInterval < 0 || eventInterval < 0) {
+            throw new IllegalArgumentException("checkpoint intervals must not be negative");
+        }
+        checkpointFile = fileName == null ? null : Paths.get(fileName);
+        checkpointTimeInterval = timeInterval;
+        checkpointEventInterval = eventInterval;
+    }
+
+    /**
+     * Make runs (run, runFlows, runParallel and runSharded) write a binary
+     * trace of every packet, timer and message, see TraceRecorder. Unlike
+     * tracing, it barely slows a run down. Each run replaces the file.
+     *
+     * @param fileName file to write the trace to, null to turn it off
+     */
+    public void setTraceFile(String fileName) {
+        traceFile = fileName == null ? null : Paths.get(fileName);
+    }
+
+    /**
+     * Set where the receiver applications of runs (run, runFlows, runParallel,
+     * runSharded, runOptimistic and resume) put the messages delivered to them.
+     * By default they are printed, see PrintSink; CountingSink keeps only
+     * their number, DigestSink checks them against the messages sent and
+     * FileSink writes them to a file. Every later run uses the same sink, so
+     * a sink that keeps counts per flow should be replaced before each run.
+     *
+     * @param sink the sink
+     */
+    public void setReceiverSink(ReceiverSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Set the process of the send times of the flows of later runs (run,
+     * runFlows, runParallel, runForked, runSharded and runOptimistic). By
+     * default messages are sent as Poisson arrivals with average
+     * timeBetweenMsg; see ArrivalProcess for the others.
+     *
+     * @param arrivals the arrival process, null for Poisson arrivals
+     */
+    public void setArrivalProcess(ArrivalProcess arrivals) {
+        this.arrivals = arrivals;
+    }
+
+    /**
+     * Set the trace of losses, corruptions and delays that the network layer
+     * of later runs (run, runFlows, runParallel, runForked, runSharded and
+     * runOptimistic) replays instead of drawing them with the loss and
+     * corruption probabilities, see LinkTrace
+     *
+     * @param linkTrace the trace, null for none
+     */
+    public void setLinkTrace(LinkTrace linkTrace) {
+        this.linkTrace = linkTrace;
+    }
+
+    /**
+     * Open the binary trace of a run
+     *
+     * @return the recorder, null if there is no trace file
+     */
+    private TraceRecorder openTrace() {
+        if (traceFile == null) {
+            return null;
+        }
+        try {
+            return new TraceRecorder(traceFile);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not open trace file " + traceFile, ex);
+        }
+    }
+
+    private void closeTrace(TraceRecorder trace) {
+        if (trace == null) {
+            return;
+        }
+        try {
+            trace.close();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not write trace file " + traceFile, ex);
+        }
+    }
+
+    /**
+     * Carry on with a run from a checkpoint until it is over. The results are
+     * the same as if the run had not been interrupted. If checkpoints are on,
+     * the resumed run keeps writing them.
+     *
+     * @param fileName the checkpoint file
+     * @param tracing Tracing, see run
+     * @return per-flow and aggregate statistics of the run
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public FlowStatistics resume(String fileName, int tracing) throws IOException {
+        Simulation sim = Checkpoint.load(Paths.get(fileName));
+        sim.setTracing(tracing);
+        sim.setReceiverSink(sink);
+        if (checkpointFile != null) {
+            sim.setCheckpointing(checkpointFile, checkpointTimeInterval, checkpointEventInterval);
+        }
+        return sim.run();
+    }
+
+    /**
+     * Return the seed for the next run: the one that was set, or a new random
+     * one if none was set
+     *
+     * @return the seed
+     */
+    private long nextSeed() {
+        return seed != null ? seed : new Random().nextLong();
+    }
+
     /**
      * Main method
      *
      * @param args fileName timeBetweenSends lossProb corrProb winSize
-     * protocolType tracing
+     * protocolType tracing, or --server and the number of workers to run
+     * simulations from standard input (see BatchServer)
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            BatchServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         //checking to see if enough arguements have been sent    
         if (args.length < 6) {
             System.out.println("need at least 6 arguments");
@@ -46,7 +231,8 @@ public class NetworkSimulator {
 
     /**
      * Run the simulator
-     * @param fileName file with messages
+     * @param fileName file with messages, or the spec of synthetic messages
+     * (see SyntheticMessages)
      * @param timeBetweenMsg time between messages
      * @param lossProb loss probability
      * @param corrProb corruption probability
@@ -56,84 +242,246 @@ public class NetworkSimulator {
      * sending, receiving and timers expiring events. 2 prints out when a
      * message is corrupted and lost. Greater than 2 will display messages that
      * are related to the event timeline.
-     * @return The total time taken to run the simulation
+     * @return The counters of the run, among which the time at which the last
+     * message was delivered and acknowledged, in ticks
      */
-    public int run(String fileName, int timeBetweenMsg,
+    public RunMetrics run(String fileName, int timeBetweenMsg,
             float lossProb, float corrProb,
             int windowsSize, int protocolType,
             int tracing) {
-        //current event to process
-        Event currentEvent;
+        return runFlows(fileName, 1, timeBetweenMsg, lossProb, corrProb,
+                windowsSize, protocolType, tracing).getMetrics();
+    }
 
+    /**
+     * Run the simulator with several flows (sender/receiver pairs) at once.
+     * Every flow sends the messages in the file, and all flows share the same
+     * network layer and timeline.
+     *
+     * @param fileName file with messages
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param tracing Tracing, see run
+     * @return per-flow and aggregate statistics of the run
+     */
+    public FlowStatistics runFlows(String fileName, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType,
+            int tracing) {
         //reading in file line by line. Each line will be one message
-        ArrayList<String> messageArray = readFile(fileName);
-        //creating a new timeline with an average time between packets.
-        Timeline tl = new Timeline(timeBetweenMsg, messageArray.size());
-        //creating a new network layer with specific loss and curroption probability.
-        NetworkLayer nl = new NetworkLayer(lossProb, corrProb, tl);
-        SenderApplication sa = new SenderApplication(messageArray, nl);
-        SenderTransport st = sa.getSenderTransport();
-        //sender and receiver transport needs access to timeline to set timer.
-        st.setTimeLine(tl);
-        ReceiverTransport rt = new ReceiverTransport(nl);
-        //setting window size
-        st.setWindowSize(windowsSize);
-        //setting protocol type
-        st.setProtocol(protocolType);
-        rt.setProtocol(protocolType);
-
-        DEBUG = tracing;
-
-        //this loop will run while there are events in the priority queue
-        int totalTime = 0;
-        while (true) {
-            //get next event
-            currentEvent = tl.returnNextEvent();
-
-            //if no event present, break out
-            if (currentEvent == null) {
-                return totalTime;
-            }
-            totalTime = currentEvent.getTime();
-            
-
-            //if event is time to send a message, call the send message function of the sender application.   
-            if (currentEvent.getType() == Event.MESSAGESEND) {
-                if (DEBUG > 0) {
-                    System.out.println("\n[NS] Message sending from sender to receiver at time " + currentEvent.getTime());
-                }
-                sa.sendMessage();
-            } //if event is a message arrival
-            else if (currentEvent.getType() == Event.MESSAGEARRIVE) {
-                //if it arrives at the sender, call the get packet from the sender
-                if (currentEvent.getHost() == Event.SENDER) {
-                    if (DEBUG > 0) {
-                        System.out.println("\n[NS] Message arriving from receiver to sender at time " + currentEvent.getTime());
-                    }
-                    st.receiveMessage(currentEvent.getPacket());
-                } //if it arrives at the receiver, call the get packet from the receiver
-                else {
-                    if (DEBUG > 0) {
-                        System.out.println("\n[NS] Message arriving from sender to receiver at time " + currentEvent.getTime());
-                    }
-                    rt.receiveMessage(currentEvent.getPacket());
-                }
-            } //If event is an expired timer, call the timerExpired method in the sender transport.
-            else if (currentEvent.getType() == Event.TIMER) {
-                if (DEBUG > 0) {
-                    System.out.println("\n[NS] Timer expired at time " + currentEvent.getTime());
-                }
-
-                tl.stopTimer();
-                st.timerExpired();
-            } else if (currentEvent.getType() == Event.KILLEDTIMER) {//do nothing if it is just a turned off timer.
-            } //this should not happen.
-            else {
-                System.out.println("Unidentified event type!");
-                System.exit(1);
-            }
+        List<String> messageArray = loadMessages(fileName);
+        Simulation sim = new Simulation(messageArray, numFlows, timeBetweenMsg,
+                lossProb, corrProb, windowsSize, protocolType, ticksPerUnit, nextSeed(), antithetic);
+        sim.setTracing(tracing);
+        sim.setReceiverSink(sink);
+        if (arrivals != null) {
+            sim.setArrivalProcess(arrivals);
+        }
+        sim.setLinkTrace(linkTrace);
+        if (checkpointFile != null) {
+            sim.setCheckpointing(checkpointFile, checkpointTimeInterval, checkpointEventInterval);
+        }
+        TraceRecorder trace = openTrace();
+        sim.setTraceRecorder(trace);
+        try {
+            return sim.run();
+        } finally {
+            closeTrace(trace);
+        }
+    }
+
+    /**
+     * Run the simulator with several flows as a conservative parallel
+     * simulation: the hosts are split between numThreads logical processes,
+     * each simulated on its own thread. With the same seed, the results are
+     * the same as those of runFlows.
+     *
+     * @param fileName file with messages
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param tracing Tracing, see run
+     * @param numThreads number of logical processes
+     * @return per-flow and aggregate statistics of the run
+     */
+    public FlowStatistics runParallel(String fileName, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType,
+            int tracing, int numThreads) {
+        //reading in file line by line. Each line will be one message
+        List<String> messageArray = loadMessages(fileName);
+        ParallelSimulation sim = new ParallelSimulation(messageArray, numFlows, timeBetweenMsg,
+                lossProb, corrProb, windowsSize, protocolType, ticksPerUnit, nextSeed(), numThreads);
+        sim.setTracing(tracing);
+        sim.setReceiverSink(sink);
+        if (arrivals != null) {
+            sim.setArrivalProcess(arrivals);
+        }
+        sim.setLinkTrace(linkTrace);
+        TraceRecorder trace = openTrace();
+        sim.setTraceRecorder(trace);
+        try {
+            return sim.run();
+        } finally {
+            closeTrace(trace);
+        }
+    }
+
+    /**
+     * Run a sweep over the loss and corruption probabilities that only
+     * differ after a warm-up: the common prefix is simulated once up to
+     * warmUpTime, then a snapshot of it is forked into one run per pair of
+     * probabilities, each carrying on from there to the end. The receiver sink
+     * is given the messages delivered during the warm-up once, then those
+     * delivered by each run after it; the trace file, if any, records the
+     * warm-up, which is the part the runs have in common.
+     *
+     * @param fileName file with messages
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability during the warm-up
+     * @param corrProb corruption probability during the warm-up
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param tracing Tracing, see run
+     * @param warmUpTime length of the common prefix, in ticks
+     * @param lossProbs loss probability of each run after the warm-up
+     * @param corrProbs corruption probability of each run after the warm-up
+     * @return per-flow and aggregate statistics of each run, in the order of
+     * the probabilities
+     */
+    public FlowStatistics[] runForked(String fileName, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType,
+            int tracing, long warmUpTime, float[] lossProbs, float[] corrProbs) {
+        if (lossProbs.length != corrProbs.length) {
+            throw new IllegalArgumentException("need as many corruption probabilities as loss probabilities");
+        }
+        //reading in file line by line. Each line will be one message
+        List<String> messageArray = loadMessages(fileName);
+        Simulation prefix = new Simulation(messageArray, numFlows, timeBetweenMsg,
+                lossProb, corrProb, windowsSize, protocolType, ticksPerUnit, nextSeed(), antithetic);
+        prefix.setTracing(tracing);
+        prefix.setReceiverSink(sink);
+        if (arrivals != null) {
+            prefix.setArrivalProcess(arrivals);
+        }
+        prefix.setLinkTrace(linkTrace);
+        TraceRecorder trace = openTrace();
+        prefix.setTraceRecorder(trace);
+        try {
+            prefix.runUntil(warmUpTime);
+        } finally {
+            closeTrace(trace);
+        }
+        prefix.setTraceRecorder(null);
+        Snapshot snapshot = prefix.snapshot();
+
+        FlowStatistics[] results = new FlowStatistics[lossProbs.length];
+        for (int i = 0; i < results.length; i++) {
+            Simulation fork = snapshot.fork(lossProbs[i], corrProbs[i]);
+            fork.setReceiverSink(sink);
+            results[i] = fork.run();
+        }
+        return results;
+    }
+
+    /**
+     * Run the simulator with several flows split into numThreads shards, each
+     * a simulation of its own run on its own thread. Flows do not interact, so
+     * with the same seed the results are the same as those of runFlows.
+     *
+     * @param fileName file with messages
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param tracing Tracing, see run
+     * @param numThreads number of shards
+     * @return per-flow and aggregate statistics of the run
+     */
+    public FlowStatistics runSharded(String fileName, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType,
+            int tracing, int numThreads) {
+        //reading in file line by line. Each line will be one message
+        List<String> messageArray = loadMessages(fileName);
+        ShardedSimulation sim = new ShardedSimulation(messageArray, numFlows, timeBetweenMsg,
+                lossProb, corrProb, windowsSize, protocolType, ticksPerUnit, nextSeed(), numThreads);
+        sim.setTracing(tracing);
+        sim.setReceiverSink(sink);
+        if (arrivals != null) {
+            sim.setArrivalProcess(arrivals);
+        }
+        sim.setLinkTrace(linkTrace);
+        TraceRecorder trace = openTrace();
+        sim.setTraceRecorder(trace);
+        try {
+            return sim.run();
+        } finally {
+            closeTrace(trace);
+        }
+    }
 
+    /**
+     * Run the simulator with several flows as an optimistic (Time Warp)
+     * parallel simulation: the hosts are split between numThreads logical
+     * processes, which process events speculatively and roll back when an
+     * event arrives late. With the same seed, the results are the same as
+     * those of runFlows.
+     *
+     * @param fileName file with messages
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param tracing Tracing, see run
+     * @param numThreads number of logical processes
+     * @param gvtInterval number of groups of events a process handles between
+     * two computations of global virtual time
+     * @return per-flow and aggregate statistics of the run
+     */
+    public FlowStatistics runOptimistic(String fileName, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType,
+            int tracing, int numThreads, int gvtInterval) {
+        //reading in file line by line. Each line will be one message
+        List<String> messageArray = loadMessages(fileName);
+        TimeWarpSimulation sim = new TimeWarpSimulation(messageArray, numFlows, timeBetweenMsg,
+                lossProb, corrProb, windowsSize, protocolType, ticksPerUnit, nextSeed(),
+                numThreads, gvtInterval);
+        sim.setTracing(tracing);
+        sim.setReceiverSink(sink);
+        if (arrivals != null) {
+            sim.setArrivalProcess(arrivals);
+        }
+        sim.setLinkTrace(linkTrace);
+        return sim.run();
+    }
+
+    /**
+     * Return the messages of a run: the lines of a file, or synthetic messages
+     * generated as they are sent if the name is a spec (see SyntheticMessages)
+     *
+     * @param fileName the file, or the spec of synthetic messages
+     * @return the messages
+     */
+    public List<String> loadMessages(String fileName) {
+        if (SyntheticMessages.isSpec(fileName)) {
+            return SyntheticMessages.parse(fileName);
         }
+        return readFile(fileName);
     }
 
     /**
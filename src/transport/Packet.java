@@ -11,8 +11,7 @@ public class Packet {
     private int seqnum; //packets seq. number
     private int acknum; //packet ack. number
     private int checksum; //packet checksum
-
-    Random ran; //random number generator
+    private int transmission; //times a packet with the same seqnum (data) or acknum (ack) was sent before this one
 
     /**
      * Create a packet to be sent
@@ -25,7 +24,34 @@ public class Packet {
         this.seqnum = seqnum;
         this.acknum = acknum;
         this.setChecksum(); 
-        this.ran = new Random();
+    }
+
+    /**
+     * Create a packet exactly as it was, checksum included, e.g. when it is
+     * read back from a checkpoint
+     * @param msg The message wrapped
+     * @param seqnum The sequence number
+     * @param acknum The ack number
+     * @param checksum The checksum, which may not match if the packet was
+     * corrupted
+     */
+    Packet(Message msg, int seqnum, int acknum, int checksum) {
+        this.msg = msg;
+        this.seqnum = seqnum;
+        this.acknum = acknum;
+        this.checksum = checksum;
+    }
+
+    int getChecksum() {
+        return checksum;
+    }
+
+    int getTransmission() {
+        return transmission;
+    }
+
+    void setTransmission(int transmission) {
+        this.transmission = transmission;
     }
 
     public int getAcknum() {
@@ -76,6 +102,16 @@ public class Packet {
      * with 12.5% chance
      */
     public void corrupt() {
+        corrupt(new Random());
+    }
+
+    /**
+     * Corrupts the packet as described above, drawing from the given random
+     * number generator
+     *
+     * @param ran random number generator of the host sending the packet
+     */
+    public void corrupt(Random ran) {
         if (ran.nextDouble() < 0.75) {
             this.msg.corruptMessage();
         } else if (ran.nextDouble() < 0.875) {
@@ -92,7 +128,9 @@ public class Packet {
      */
     @Override
     public Packet clone(){
-        return new Packet(msg.clone(),seqnum,acknum);
+        Packet copy = new Packet(msg.clone(),seqnum,acknum);
+        copy.transmission = transmission;
+        return copy;
     }
 
 }
@@ -0,0 +1,252 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * A class which runs a simulation as a conservative parallel discrete-event
+ * simulation. The hosts are split between logical processes, each with its
+ * own timeline and running on its own thread. The sender and receiver of a
+ * flow belong to different processes (see Timeline.logicalProcessOf), so
+ * every packet is an event sent from one process to another.
+ *
+ * The processes advance in windows. A packet always takes at least one time
+ * unit to arrive, so no event processed in [t, t + lookahead) can create an
+ * event for another process before t + lookahead, where t is the earliest
+ * pending event of all processes and the lookahead is one time unit. Every
+ * process simulates its part of the window on its own, then all of them meet
+ * at a barrier, where the events sent between processes are delivered and the
+ * next window is computed.
+ *
+ * Only the sender of a flow can tell when the flow completes, so within a
+ * window its receiver may go on acknowledging retransmissions that a
+ * sequential run would have dropped. At the barrier, those acks are taken
+ * back (see Simulation.dropLateAcks) and the events of flows that have
+ * completed before their time are not delivered.
+ *
+ * Events are ordered the same way in every timeline (see Event.compareTo) and
+ * each host has its own random number generator, so a parallel run gives
+ * exactly the same results as a Simulation with the same seed.
+ */
+public class ParallelSimulation {
+
+    private final Simulation[] lps; //logical processes
+    private final int numFlows;
+    private final long lookahead; //smallest delay of a packet, in ticks
+    private final CyclicBarrier barrier;
+    private final List<Event> inTransit; //events sent between processes in the last window
+    private long remoteEvents; //events delivered from one process to another
+
+    private long windowEnd; //end of the current window, exclusive
+    private boolean done; //whether the run is over
+    private RuntimeException failure; //first error thrown by a process
+
+    /**
+     * Create a parallel simulation in which every flow sends the same messages
+     *
+     * @param messages the messages each flow sends
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     * @param numLps number of logical processes (and threads)
+     */
+    public ParallelSimulation(List<String> messages, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType, long ticksPerUnit, long seed,
+            int numLps) {
+        this.numFlows = numFlows;
+        lookahead = ticksPerUnit;
+        lps = new Simulation[numLps];
+        for (int lp = 0; lp < numLps; lp++) {
+            lps[lp] = new Simulation(messages, numFlows, timeBetweenMsg, lossProb, corrProb,
+                    windowsSize, protocolType, ticksPerUnit, seed, lp, numLps);
+        }
+        inTransit = new ArrayList<>();
+        barrier = new CyclicBarrier(numLps, new Runnable() {
+            @Override
+            public void run() {
+                nextWindow();
+            }
+        });
+    }
+
+    /**
+     * Set the tracing level of the run
+     *
+     * @param tracing tracing level, see NetworkSimulator.run
+     */
+    public void setTracing(int tracing) {
+        for (Simulation sim : lps) {
+            sim.setTracing(tracing);
+        }
+    }
+
+    /**
+     * Set the recorder of the binary trace of the run, shared by all threads.
+     * Records of different threads are not in time order.
+     *
+     * @param trace the recorder, null for no binary trace
+     */
+    public void setTraceRecorder(TraceRecorder trace) {
+        for (Simulation sim : lps) {
+            sim.setTraceRecorder(trace);
+        }
+    }
+
+    /**
+     * Set the process of the send times of every flow. This has to be done
+     * before the run starts.
+     *
+     * @param process the arrival process, shared by all threads
+     */
+    public void setArrivalProcess(ArrivalProcess process) {
+        for (Simulation sim : lps) {
+            sim.setArrivalProcess(process);
+        }
+    }
+
+    /**
+     * Replay a trace of the losses, corruptions and delays of the packets
+     * instead of drawing them with the loss and corruption probabilities
+     *
+     * @param trace the trace, shared by all threads, null for none
+     */
+    public void setLinkTrace(LinkTrace trace) {
+        for (Simulation sim : lps) {
+            sim.setLinkTrace(trace);
+        }
+    }
+
+    /**
+     * Set where the receiver applications put the messages delivered to them,
+     * shared by all threads
+     *
+     * @param sink the sink of the run
+     */
+    public void setReceiverSink(ReceiverSink sink) {
+        for (Simulation sim : lps) {
+            sim.setReceiverSink(sink);
+        }
+    }
+
+    /**
+     * Run the simulation until every flow has delivered and acknowledged all
+     * of its messages (or no events are left)
+     *
+     * @return the statistics of the run
+     */
+    public FlowStatistics run() {
+        Telemetry.Run run = Telemetry.get().begin("parallel", numFlows, lps);
+        Thread[] threads = new Thread[lps.length];
+        try {
+            for (int lp = 0; lp < lps.length; lp++) {
+                final Simulation sim = lps[lp];
+                threads[lp] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runProcess(sim);
+                    }
+                }, "lp-" + lp);
+                threads[lp].start();
+            }
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the logical processes", ex);
+                }
+            }
+        } finally {
+            run.end();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return FlowStatistics.merge(lps, numFlows);
+    }
+
+    /**
+     * Return the number of events delivered from one process to another
+     *
+     * @return number of events
+     */
+    public long getRemoteEvents() {
+        return remoteEvents;
+    }
+
+    /**
+     * The loop of one logical process: wait for the next window, then
+     * simulate it.
+     *
+     * @param sim the logical process
+     */
+    private void runProcess(Simulation sim) {
+        try {
+            while (true) {
+                barrier.await();
+                if (done) {
+                    return;
+                }
+                try {
+                    sim.runUntil(windowEnd);
+                } catch (RuntimeException ex) {
+                    //keep taking part in the barrier so the others can stop at the next window
+                    fail(ex);
+                }
+            }
+        } catch (InterruptedException | BrokenBarrierException ex) {
+            fail(new IllegalStateException("Logical process " + Thread.currentThread().getName() + " was interrupted", ex));
+        }
+    }
+
+    /**
+     * Record the first error thrown by a process
+     *
+     * @param ex the error
+     */
+    private synchronized void fail(RuntimeException ex) {
+        if (failure == null) {
+            failure = ex;
+        }
+    }
+
+    /**
+     * Run by the last process to reach the barrier, while all others wait:
+     * take back the acks sent after their flow had completed, deliver the
+     * events sent between processes and compute the next window.
+     */
+    private void nextWindow() {
+        int numLps = lps.length;
+        for (Simulation sim : lps) {
+            sim.dropLateAcks(lps);
+            sim.getTimeline().drainRemoteEvents(inTransit);
+        }
+        for (Event e : inTransit) {
+            long completionTime = lps[Timeline.logicalProcessOf(e.getFlow(), Event.SENDER, numLps)].getCompletionTime(e.getFlow());
+            if (completionTime < 0 || e.getTime() <= completionTime) {
+                lps[Timeline.logicalProcessOf(e.getFlow(), e.getHost(), numLps)].getTimeline().insertEvent(e);
+                remoteEvents++;
+            }
+        }
+        inTransit.clear();
+
+        int flowsCompleted = 0;
+        long next = Long.MAX_VALUE;
+        for (Simulation sim : lps) {
+            flowsCompleted += sim.getFlowsCompleted();
+            next = Math.min(next, sim.getTimeline().peekNextTime());
+        }
+        synchronized (this) {
+            done = failure != null || flowsCompleted == numFlows || next == Long.MAX_VALUE;
+        }
+        windowEnd = next + lookahead;
+    }
+}
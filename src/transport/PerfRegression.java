@@ -0,0 +1,343 @@
+package transport;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class which checks that simulations have not become slower. It runs a
+ * fixed set of seeded scenarios (a clean link, 10% and 50% loss, small and
+ * large windows, Go-back-N and TCP), each as NetworkSimulator.run would with
+ * one flow, and measures
+ * <ul>
+ * <li>events per second, the best of a few runs after a warm-up,</li>
+ * <li>bytes allocated per event, by the thread running the simulation,</li>
+ * <li>the peak heap used during a run.</li>
+ * </ul>
+ * The measures are compared with a baseline file, with a tolerance band for
+ * each: a scenario regressed if its events per second dropped, or its
+ * allocations or peak heap grew, by more than the tolerance. The runs are
+ * seeded, so a scenario that processed another number of events than its
+ * baseline no longer simulates the same thing; it fails too, and the baseline
+ * has to be recorded again. A report with
+ * the measures, the baseline and the verdict of every scenario is written as
+ * a CSV table (see ResultsWriter).
+ *
+ * Usage: PerfRegression [baseline [report]] [--update]. With --update, the
+ * measures are written to the baseline file instead. The exit status is 0 if
+ * no scenario regressed, 1 if one did and 2 if the baseline could not be read.
+ * The measures depend on the JVM and its heap settings, so the baseline
+ * should be recorded with the same ones, see the perf target of build.xml.
+ */
+public class PerfRegression {
+
+    public static final String DEFAULT_BASELINE = "./perf-baseline.csv";
+    public static final String DEFAULT_REPORT = "./perf-report.csv";
+
+    public static final double THROUGHPUT_TOLERANCE = 0.30; //fraction events per second may drop by
+    public static final double ALLOCATION_TOLERANCE = 0.10; //fraction allocations per event may grow by
+    public static final double HEAP_TOLERANCE = 0.50; //fraction the peak heap may grow by
+    public static final double ALLOCATION_SLACK = 16; //bytes per event allocations may always grow by
+
+    //kinds of regression, as bits of the verdict
+    public static final int THROUGHPUT = 1;
+    public static final int ALLOCATION = 2;
+    public static final int HEAP = 4;
+    public static final int EVENTS = 8; //not a regression as such: the baseline is stale
+
+    private static final float[] LOSS_PROBS = {0f, 0.1f, 0.5f};
+    private static final int[] WINDOW_SIZES = {4, 8}; //Go-back-N collapses under loss from 16 on
+    private static final int[] PROTOCOLS = {0, 1};
+    private static final int CORPUS_SIZE = 20000; //messages of a run
+    private static final int TIME_BETWEEN_MSG = 2;
+    private static final long SEED = 1;
+    private static final int WARM_UP_PASSES = 3; //runs of every scenario before any is measured
+    private static final int WARM_UP_RUNS = 1; //runs of a scenario right before it is measured
+    private static final int MEASURED_RUNS = 7;
+    private static final int RETRIES = 2; //measures of a scenario that seems slower before it regressed
+
+    /**
+     * The measures of a scenario
+     */
+    static class Measures {
+
+        long events; //events processed by a run
+        double eventsPerSec;
+        double bytesPerEvent; //-1 if allocations cannot be measured
+        long peakHeap; //bytes
+    }
+
+    private PerfRegression() {
+    }
+
+    /**
+     * Run the scenarios and compare them with the baseline
+     *
+     * @param args baseline file and report file, optionally followed by
+     * --update
+     */
+    public static void main(String[] args) {
+        List<String> files = new ArrayList<>();
+        boolean update = false;
+        for (String arg : args) {
+            if (arg.equals("--update")) {
+                update = true;
+            } else {
+                files.add(arg);
+            }
+        }
+        Path baselineFile = Paths.get(files.size() > 0 ? files.get(0) : DEFAULT_BASELINE);
+        Path reportFile = Paths.get(files.size() > 1 ? files.get(1) : DEFAULT_REPORT);
+        try {
+            Map<String, Measures> baseline = update ? new HashMap<String, Measures>() : readBaseline(baselineFile);
+            int regressions = run(baseline, update ? baselineFile : reportFile, update);
+            if (update) {
+                System.out.println("Wrote baseline " + baselineFile);
+            } else {
+                System.out.println(regressions + " scenarios regressed, see " + reportFile);
+            }
+            System.exit(regressions > 0 ? 1 : 0);
+        } catch (IOException ex) {
+            System.out.println("Could not compare with baseline " + baselineFile + ": " + ex);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Run every scenario and write the report, or the new baseline
+     *
+     * @param baseline the measures of the baseline, by scenario
+     * @param out the report file, or the baseline file if updating it
+     * @param update whether to write a baseline rather than a report
+     * @return the number of scenarios that regressed
+     * @throws IOException if the file cannot be written, or a scenario is
+     * missing from the baseline
+     */
+    static int run(Map<String, Measures> baseline, Path out, boolean update) throws IOException {
+        ArrayList<String> corpus = corpus(CORPUS_SIZE);
+        ResultsSchema schema = new ResultsSchema().addDouble("lossProb").addInt("windowSize").addInt("protocol")
+                .addLong("events").addDouble("eventsPerSec").addDouble("bytesPerEvent").addLong("peakHeap");
+        if (!update) {
+            schema.addLong("baselineEvents").addDouble("baselineEventsPerSec").addDouble("baselineBytesPerEvent").addLong("baselinePeakHeap")
+                    .addInt("regression");
+        }
+        //every scenario is run a few times first, so the first ones are not measured before the code is compiled
+        for (int i = 0; i < WARM_UP_PASSES; i++) {
+            for (float lossProb : LOSS_PROBS) {
+                for (int windowSize : WINDOW_SIZES) {
+                    for (int protocol : PROTOCOLS) {
+                        newSimulation(corpus, lossProb, windowSize, protocol).run();
+                    }
+                }
+            }
+        }
+        int regressions = 0;
+        try (ResultsWriter results = new ResultsWriter(out, null)) {
+            results.startTable(update ? "baseline" : "report", schema);
+            for (float lossProb : LOSS_PROBS) {
+                for (int windowSize : WINDOW_SIZES) {
+                    for (int protocol : PROTOCOLS) {
+                        Measures m = measure(corpus, lossProb, windowSize, protocol, WARM_UP_RUNS, MEASURED_RUNS);
+                        ResultRow row = new ResultRow(schema).setDouble(0, lossProb).setInt(1, windowSize)
+                                .setInt(2, protocol).setLong(3, m.events).setDouble(4, m.eventsPerSec)
+                                .setDouble(5, m.bytesPerEvent).setLong(6, m.peakHeap);
+                        if (!update) {
+                            Measures base = baseline.get(key(lossProb, windowSize, protocol));
+                            if (base == null) {
+                                throw new IOException("no baseline for scenario " + key(lossProb, windowSize, protocol));
+                            }
+                            int verdict = compare(m, base);
+                            //timing is noisy, so a slow scenario is measured again before it counts
+                            for (int retry = 0; retry < RETRIES && (verdict & THROUGHPUT) != 0; retry++) {
+                                Measures again = measure(corpus, lossProb, windowSize, protocol, 0, MEASURED_RUNS);
+                                m.eventsPerSec = Math.max(m.eventsPerSec, again.eventsPerSec);
+                                verdict = compare(m, base);
+                            }
+                            row.setDouble(4, m.eventsPerSec);
+                            row.setLong(7, base.events).setDouble(8, base.eventsPerSec).setDouble(9, base.bytesPerEvent)
+                                    .setLong(10, base.peakHeap).setInt(11, verdict);
+                            if (verdict != 0) {
+                                regressions++;
+                            }
+                        }
+                        results.append(row);
+                    }
+                }
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Compare the measures of a scenario with its baseline
+     *
+     * @param m the measures
+     * @param base the baseline
+     * @return 0 if the scenario did not regress, otherwise the kinds of
+     * regression (THROUGHPUT, ALLOCATION, HEAP, EVENTS) or-ed together
+     */
+    static int compare(Measures m, Measures base) {
+        int verdict = 0;
+        if (m.events != base.events) {
+            verdict |= EVENTS;
+        }
+        if (m.eventsPerSec < base.eventsPerSec * (1 - THROUGHPUT_TOLERANCE)) {
+            verdict |= THROUGHPUT;
+        }
+        if (m.bytesPerEvent >= 0 && base.bytesPerEvent >= 0
+                && m.bytesPerEvent > base.bytesPerEvent * (1 + ALLOCATION_TOLERANCE) + ALLOCATION_SLACK) {
+            verdict |= ALLOCATION;
+        }
+        if (m.peakHeap > base.peakHeap * (1 + HEAP_TOLERANCE)) {
+            verdict |= HEAP;
+        }
+        return verdict;
+    }
+
+    /**
+     * Measure a scenario
+     *
+     * @param corpus the messages the flow sends
+     * @param lossProb loss probability
+     * @param windowSize window size
+     * @param protocol Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param warmUps number of runs before measuring
+     * @param runs number of measured runs
+     * @return the measures
+     */
+    static Measures measure(ArrayList<String> corpus, float lossProb, int windowSize, int protocol,
+            int warmUps, int runs) {
+        for (int i = 0; i < warmUps; i++) {
+            newSimulation(corpus, lossProb, windowSize, protocol).run();
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long thread = Thread.currentThread().getId();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heap.add(pool);
+            }
+        }
+
+        Measures m = new Measures();
+        long bestTime = Long.MAX_VALUE;
+        long fewestBytes = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            System.gc();
+            for (MemoryPoolMXBean pool : heap) {
+                pool.resetPeakUsage();
+            }
+            long bytesBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+            long start = cpuTime(threads);
+            Simulation sim = newSimulation(corpus, lossProb, windowSize, protocol);
+            sim.run();
+            long time = cpuTime(threads) - start;
+            long bytes = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread) - bytesBefore;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heap) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            m.events = sim.getEventsProcessed();
+            bestTime = Math.min(bestTime, time);
+            fewestBytes = Math.min(fewestBytes, bytes);
+            m.peakHeap = Math.max(m.peakHeap, peak);
+        }
+        m.eventsPerSec = m.events * 1e9 / Math.max(1, bestTime);
+        m.bytesPerEvent = allocations == null ? -1 : (double) fewestBytes / Math.max(1, m.events);
+        return m;
+    }
+
+    /**
+     * Return the CPU time of the current thread, or the elapsed time if it
+     * cannot be measured
+     *
+     * @param threads the thread bean
+     * @return the time, in nanoseconds
+     */
+    private static long cpuTime(ThreadMXBean threads) {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Create the simulation of a scenario, as NetworkSimulator.run does
+     *
+     * @param corpus the messages the flow sends
+     * @param lossProb loss probability
+     * @param windowSize window size
+     * @param protocol Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @return the simulation, with its delivered messages only counted
+     */
+    private static Simulation newSimulation(ArrayList<String> corpus, float lossProb, int windowSize, int protocol) {
+        Simulation sim = new Simulation(corpus, 1, TIME_BETWEEN_MSG, lossProb, 0f, windowSize, protocol, 1, SEED);
+        sim.setReceiverSink(new CountingSink(1));
+        return sim;
+    }
+
+    static ArrayList<String> corpus(int size) {
+        ArrayList<String> corpus = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            corpus.add("message " + i + " of the performance corpus");
+        }
+        return corpus;
+    }
+
+    static String key(float lossProb, int windowSize, int protocol) {
+        return lossProb + "/" + windowSize + "/" + protocol;
+    }
+
+    /**
+     * Read a baseline written with --update
+     *
+     * @param file the baseline file
+     * @return the measures of each scenario, by key
+     * @throws IOException if the file cannot be read or is not a baseline
+     */
+    static Map<String, Measures> readBaseline(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.size() < 2) {
+            throw new IOException("not a baseline: " + file);
+        }
+        List<String> header = Arrays.asList(lines.get(1).split(","));
+        String[] names = {"lossProb", "windowSize", "protocol", "events", "eventsPerSec", "bytesPerEvent", "peakHeap"};
+        int[] cols = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            cols[i] = header.indexOf(names[i]);
+            if (cols[i] < 0) {
+                throw new IOException("no column " + names[i] + " in baseline " + file);
+            }
+        }
+        Map<String, Measures> baseline = new HashMap<>();
+        for (String line : lines.subList(2, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                Measures m = new Measures();
+                m.events = Long.parseLong(fields[cols[3]]);
+                m.eventsPerSec = Double.parseDouble(fields[cols[4]]);
+                m.bytesPerEvent = Double.parseDouble(fields[cols[5]]);
+                m.peakHeap = Long.parseLong(fields[cols[6]]);
+                baseline.put(key(Float.parseFloat(fields[cols[0]]), Integer.parseInt(fields[cols[1]]),
+                        Integer.parseInt(fields[cols[2]])), m);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                throw new IOException("bad line in baseline " + file + ": " + line, ex);
+            }
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,41 @@
+package transport;
+
+/**
+ * Poisson arrivals: the times between messages are exponential with a given
+ * mean. This is the default process of a run, whose mean is its time between
+ * messages.
+ */
+public class PoissonArrivals extends ArrivalProcess {
+
+    private final double mean; //average time between two messages, in time units
+
+    /**
+     * Create Poisson arrivals
+     *
+     * @param mean average time between two messages, in time units, 0 to
+     * send every message at once
+     */
+    public PoissonArrivals(double mean) {
+        if (!(mean >= 0) || Double.isInfinite(mean)) {
+            throw new IllegalArgumentException("mean time between messages should not be negative: " + mean);
+        }
+        this.mean = mean;
+    }
+
+    @Override
+    public Source newSource(final long ticksPerUnit) {
+        return new Source() {
+            @Override
+            public long nextGap(long index, RandomStream random) {
+                double tmp = random.nextFloat();
+                tmp = (tmp == 0) ? 0.00001 : tmp;
+                return (long) (mean * ticksPerUnit * (-Math.log(tmp)));
+            }
+        };
+    }
+
+    @Override
+    public String toSpec() {
+        return "poisson:" + mean;
+    }
+}
@@ -0,0 +1,13 @@
+package transport;
+
+/**
+ * A sink which prints every message delivered, as the receiver applications
+ * always did. It is the default sink of a run.
+ */
+public class PrintSink implements ReceiverSink {
+
+    @Override
+    public void receive(int flow, int index, Message msg) {
+        System.out.println("from receiver:" + msg.getMessage());
+    }
+}
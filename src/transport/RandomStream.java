@@ -0,0 +1,105 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * A random number generator for one host of the simulation. Every host draws
+ * from its own streams, seeded from the run's seed and the stream number, so
+ * the numbers a host sees do not depend on what other hosts do or on the order
+ * in which hosts are simulated. The generator is SplitMix64, whose whole state
+ * is a single long that can be read and restored.
+ *
+ * SplitMix64 is counter-based: its i-th number only depends on the seed and
+ * i, so a stream can be moved to any position with seek. This is used to give
+ * every packet its own block of numbers (common random numbers). An
+ * antithetic stream returns the complement of every number, i.e. 1 - u for
+ * uniform draws, so that a pair of runs with the same seed, one of them
+ * antithetic, have negatively correlated results.
+ */
+public class RandomStream extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long origin; //state of the generator before its first number
+    private final boolean antithetic; //whether every number is complemented
+    private long state; //current state of the generator
+
+    /**
+     * Create the stream of a host
+     *
+     * @param seed seed of the run
+     * @param host number of the host, 2 * flow + side
+     */
+    public RandomStream(long seed, long host) {
+        this(seed, host, false);
+    }
+
+    /**
+     * Create a stream
+     *
+     * @param seed seed of the run
+     * @param stream number of the stream, different for every host and use
+     * @param antithetic true to complement every number
+     */
+    public RandomStream(long seed, long stream, boolean antithetic) {
+        super(0);
+        origin = mix64(seed + mix64(stream * GOLDEN_GAMMA));
+        state = origin;
+        this.antithetic = antithetic;
+    }
+
+    /**
+     * Overrides the seeding done by Random, the state is set by the
+     * constructor
+     *
+     * @param seed ignored
+     */
+    @Override
+    public void setSeed(long seed) {
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return antithetic ? ~mix64(state) : mix64(state);
+    }
+
+    /**
+     * Move the stream so that the next number is the one at the given position
+     *
+     * @param index position of the next number, 0 for the first
+     */
+    public void seek(long index) {
+        state = origin + index * GOLDEN_GAMMA;
+    }
+
+    public boolean isAntithetic() {
+        return antithetic;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Scramble the bits of a long (the SplitMix64 output function)
+     *
+     * @param z value to scramble
+     * @return scrambled value
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
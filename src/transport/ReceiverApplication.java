@@ -1,14 +1,97 @@
 package transport;
 
-
 /**
- * A class which represents the receiver's application. It simply prints out the message received from the tranport layer.
+ * A class which represents the receiver's application. It hands the messages received from the tranport layer to the sink of the run, which prints them out by default.
  */
 public class ReceiverApplication
 {
+    private static final ReceiverSink DEFAULT_SINK = new PrintSink();
+
+    private ReceiverSink sink = DEFAULT_SINK; //where received messages go
+    private int flow; //flow of the run this application receives on
+    private int numReceived; //how many messages the application has received so far
+    private LatencyHistogram latencies = new LatencyHistogram(); //latencies of the messages received so far
+    private boolean latenciesShared; //whether a saved state holds latencies too, so it is copied before it changes
+
+    /**
+     * Receive the next message and count its latency, from the time the
+     * sender handed it to its transport (which the message carries) to now
+     * @param msg the message
+     * @param time the time of delivery, in ticks
+     */
+    void receiveMessage(Message msg, long time)
+    {
+        if (msg.getSendTime() >= 0) {
+            if (latenciesShared) {
+                latencies = new LatencyHistogram(latencies);
+                latenciesShared = false;
+            }
+            latencies.record(time - msg.getSendTime());
+        }
+        receiveMessage(msg);
+    }
+
     public void receiveMessage(Message msg)
     {
-        System.out.println("from receiver:" + msg.getMessage());
+        sink.receive(flow, numReceived++, msg);
+    }
+
+    /**
+     * Set where received messages go
+     * @param sink the sink of the run
+     * @param flow the flow of the run this application receives on
+     */
+    void setSink(ReceiverSink sink, int flow)
+    {
+        this.sink = sink;
+        this.flow = flow;
+    }
+
+    /**
+     * Return the number of messages delivered to the application so far
+     * @return number of received messages
+     */
+    public int getNumReceived()
+    {
+        return numReceived;
+    }
+
+    /**
+     * Return the histogram of the latencies of the messages received so far.
+     * It must not be changed, see shareLatencies.
+     * @return the latencies, in ticks
+     */
+    LatencyHistogram getLatencies()
+    {
+        return latencies;
+    }
+
+    /**
+     * Return the histogram of the latencies to be kept in a saved state. The
+     * histogram is copied the next time a latency is counted, so the saved
+     * one does not change.
+     * @return the latencies, in ticks
+     */
+    LatencyHistogram shareLatencies()
+    {
+        latenciesShared = true;
+        return latencies;
+    }
+
+    /**
+     * Put back the latencies of a saved state
+     * @param latencies the histogram returned by shareLatencies, or read
+     * from a checkpoint
+     */
+    void setLatencies(LatencyHistogram latencies)
+    {
+        this.latencies = latencies;
+        latenciesShared = true;
+    }
+
+    void setNumReceived(int numReceived)
+    {
+        this.numReceived = numReceived;
     }
 
 }
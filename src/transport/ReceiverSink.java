@@ -0,0 +1,23 @@
+package transport;
+
+/**
+ * An interface for where the receiver applications of a run put the messages
+ * delivered to them. One sink is shared by every flow of a run, and by every
+ * thread of a parallel run: a flow's messages are always handed over by the
+ * same thread, in order, but different flows may be handed over at the same
+ * time.
+ *
+ * In a Time Warp run, a message can be handed over again with the same index
+ * after a rollback.
+ */
+public interface ReceiverSink {
+
+    /**
+     * Take a message delivered to a receiver application
+     *
+     * @param flow the flow of the run the message was sent on
+     * @param index number of messages delivered on the flow before this one
+     * @param msg the message
+     */
+    void receive(int flow, int index, Message msg);
+}
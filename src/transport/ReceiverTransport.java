@@ -13,9 +13,25 @@ public class ReceiverTransport {
 
     private ReceiverApplication ra;
     private NetworkLayer nl;
+    private Log log; //debug output of the run
+    private int flow; // flow this transport receives on
     private boolean usingTCP;
     private int cumulativeAckNum;
+    private int acksSent; //acks sent with the current cumulativeAckNum
     private Set<Packet> tcpBuffer;
+    private int peakBuffer; //largest number of packets buffered out of order
+
+    /**
+     * Orders buffered packets by sequence number. Shared by all receivers so
+     * that idle flows do not each carry their own comparator.
+     */
+    private static final Comparator<Packet> BY_SEQNUM = new Comparator<Packet>() {
+        @Override
+        public int compare(Packet p1, Packet p2) {
+            return p1.getSeqnum() - p2.getSeqnum();
+        }
+
+    };
 
     /**
      * Create a receiver transport
@@ -23,8 +39,20 @@ public class ReceiverTransport {
      * @param nl Network Layer
      */
     public ReceiverTransport(NetworkLayer nl) {
+        this(nl, 0);
+    }
+
+    /**
+     * Create the receiver transport of one flow
+     *
+     * @param nl Network Layer shared by all flows
+     * @param flow the flow this transport receives on
+     */
+    public ReceiverTransport(NetworkLayer nl, int flow) {
         ra = new ReceiverApplication();
         this.nl = nl;
+        this.log = nl.getLog();
+        this.flow = flow;
     }
 
     /**
@@ -47,13 +75,7 @@ public class ReceiverTransport {
      */
     private void initializeTCP() {
         cumulativeAckNum = 0;
-        tcpBuffer = new TreeSet<>(new Comparator<Packet>() {
-            @Override
-            public int compare(Packet p1, Packet p2) {
-                return p1.getSeqnum() - p2.getSeqnum();
-            }
-
-        });
+        tcpBuffer = new TreeSet<>(BY_SEQNUM);
     }
 
     /**
@@ -63,7 +85,7 @@ public class ReceiverTransport {
      * @param pkt the (possibly corrupted) packet sent from the sender.
      */
     public void receiveMessage(Packet pkt) {
-        debugPrint("Receive packet at receiver; seqnum: " + pkt.getSeqnum() + " acknum: " + pkt.getAcknum() + " msg: " + pkt.getMessage().getMessage());
+        log.log(Log.RECEIVER, Log.DEBUG, "Receive packet at receiver; seqnum: {} acknum: {} msg: {}", pkt.getSeqnum(), pkt.getAcknum(), pkt.getMessage().getMessage());
         if (!usingTCP) {
             receiveMessageGBN(pkt);
         } else {
@@ -121,13 +143,14 @@ public class ReceiverTransport {
                 // for each of the packets to debuffer, remove it from the buffer and send it to app
                 for (Packet p : packetsToDebuffer) {
                     tcpBuffer.remove(p);
-                    debugPrint("Remove packet seqnum " + p.getSeqnum() + " msg " + p.getMessage().getMessage() + " from buffer");
+                    log.log(Log.RECEIVER, Log.DEBUG, "Remove packet seqnum {} msg {} from buffer", p.getSeqnum(), p.getMessage().getMessage());
                     this.sendPacketToApp(p);
                 }
             } else if (pkt.getSeqnum() > cumulativeAckNum) {
                 tcpBuffer.add(pkt);
-                debugPrint("Buffer packet seqnum " + pkt.getSeqnum() + " msg: " + pkt.getMessage().getMessage());
-                debugPrint("Number of receiver's buffered pkts: " + tcpBuffer.size()); 
+                peakBuffer = Math.max(peakBuffer, tcpBuffer.size());
+                log.log(Log.RECEIVER, Log.DEBUG, "Buffer packet seqnum {} msg: {}", pkt.getSeqnum(), pkt.getMessage().getMessage());
+                log.log(Log.RECEIVER, Log.DEBUG, "Number of receiver's buffered pkts: {}", tcpBuffer.size());
             }
             sendAck();
             
@@ -141,7 +164,8 @@ public class ReceiverTransport {
      */
     private void sendPacketToApp(Packet pkt) {
         cumulativeAckNum++;
-        ra.receiveMessage(pkt.getMessage());
+        acksSent = 0;
+        ra.receiveMessage(pkt.getMessage(), nl.getTimeline().getTimeSoFar());
     }
 
     /**
@@ -149,7 +173,78 @@ public class ReceiverTransport {
      */
     private void sendAck() {
         Packet ackPkt = new Packet(new Message("ACK"), -1, cumulativeAckNum);
-        nl.sendPacket(ackPkt, Event.SENDER);
+        //numbered among the acks of the same acknum, like the retransmissions of a seqnum
+        ackPkt.setTransmission(acksSent++);
+        nl.sendPacket(ackPkt, Event.SENDER, flow);
+    }
+
+    /**
+     * Return the application this transport delivers messages to
+     *
+     * @return the receiver application
+     */
+    public ReceiverApplication getReceiverApplication() {
+        return ra;
+    }
+
+    int getCumulativeAckNum() {
+        return cumulativeAckNum;
+    }
+
+    int getAcksSent() {
+        return acksSent;
+    }
+
+    /**
+     * Return the packets buffered out of order (TCP only)
+     *
+     * @return the buffered packets in seqnum order, empty for Go-back-N
+     */
+    Packet[] getBufferedPackets() {
+        return usingTCP ? tcpBuffer.toArray(new Packet[tcpBuffer.size()]) : new Packet[0];
+    }
+
+    /**
+     * Add the counters of this transport to the metrics of a run
+     *
+     * @param metrics the metrics of the run
+     */
+    void addMetrics(RunMetrics metrics) {
+        metrics.add(RunMetrics.MESSAGES_DELIVERED, ra.getNumReceived());
+        metrics.add(RunMetrics.PEAK_REORDER_BUFFER, peakBuffer);
+    }
+
+    /**
+     * Return the counters of this transport, to be put back by setCounters
+     *
+     * @return the counters
+     */
+    long[] getCounters() {
+        return new long[]{peakBuffer};
+    }
+
+    void setCounters(long[] counters) {
+        peakBuffer = (int) counters[0];
+    }
+
+    /**
+     * Put the transport and its application back to an earlier state
+     *
+     * @param cumulativeAckNum the cumulative ack number
+     * @param acksSent number of acks sent with that ack number
+     * @param buffered the packets buffered out of order
+     * @param numReceived number of messages the application had received
+     */
+    void restoreState(int cumulativeAckNum, int acksSent, Packet[] buffered, int numReceived) {
+        this.cumulativeAckNum = cumulativeAckNum;
+        this.acksSent = acksSent;
+        if (usingTCP) {
+            tcpBuffer.clear();
+            for (Packet p : buffered) {
+                tcpBuffer.add(p);
+            }
+        }
+        ra.setNumReceived(numReceived);
     }
 
     /**
@@ -167,15 +262,4 @@ public class ReceiverTransport {
         }
     }
 
-    /**
-     * Print out debug code
-     *
-     * @param s
-     */
-    private void debugPrint(String s) {
-        if (NetworkSimulator.DEBUG > 1) {
-            System.out.println("[RT] " + s);
-        }
-    }
-
 }
@@ -0,0 +1,245 @@
+package transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class which keeps the results of simulation runs on disk, so a sweep that
+ * was interrupted or is run again with some of the same points does not run
+ * them again. A run is identified by the SHA-256 digest of its full
+ * configuration: the digest of its messages, its parameters, its seed and
+ * Simulation.MODEL_VERSION, so results of an older model are never reused.
+ *
+ * The file starts with a magic number, a format version and the number of
+ * counters of RunMetrics, followed by one fixed-size record per run: the 32
+ * bytes of its key and its counters. A cache holding another number of
+ * counters was written by an older version and is emptied. Records
+ * are appended as soon as they are put; a record cut short by a crash is
+ * dropped when the file is opened again. Every method is synchronized, so
+ * parallel trials may share a cache.
+ */
+public class ResultCache implements Closeable {
+
+    static final int MAGIC = 0x4E534343; //"NSCC"
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final int KEY_SIZE = 32;
+    private static final int RECORD_SIZE = KEY_SIZE + 8 * RunMetrics.FIELD_NAMES.length;
+
+    private final FileChannel channel;
+    private final Map<String, RunMetrics> results; //metrics of each run, by key
+    private final ByteBuffer record;
+    private int hits; //number of lookups that found a result
+    private int misses; //number of lookups that did not
+
+    /**
+     * Open a cache, creating its file if it does not exist
+     *
+     * @param file the cache file
+     * @throws IOException if the file cannot be read or written, or is not a
+     * cache
+     */
+    public ResultCache(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        results = new HashMap<>();
+        record = ByteBuffer.allocate(RECORD_SIZE);
+        try {
+            load(file);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void load(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE) {
+            clear();
+            return;
+        }
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a result cache");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported result cache version " + header.getInt(4) + " in " + file);
+        }
+        if (header.getInt(8) != RunMetrics.FIELD_NAMES.length) {
+            //the runs were cached before metrics were added or removed
+            clear();
+            return;
+        }
+        long numRecords = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        long end = HEADER_SIZE + numRecords * RECORD_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        for (long position = HEADER_SIZE; position < end; position += buffer.limit()) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            readFully(buffer, position);
+            byte[] key = new byte[KEY_SIZE];
+            while (buffer.hasRemaining()) {
+                buffer.get(key);
+                RunMetrics metrics = new RunMetrics();
+                for (int field = 0; field < RunMetrics.FIELD_NAMES.length; field++) {
+                    metrics.set(field, buffer.getLong());
+                }
+                results.put(toHex(key), metrics);
+            }
+        }
+        channel.truncate(end); //drop a record cut short
+    }
+
+    /**
+     * Empty the file, leaving only its header
+     */
+    private void clear() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RunMetrics.FIELD_NAMES.length).flip();
+        channel.truncate(0);
+        writeFully(header, 0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of result cache");
+            }
+        }
+        buffer.flip();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Return the digest of a list of messages
+     *
+     * @param messages the messages
+     * @return their SHA-256 digest
+     */
+    public static byte[] digest(List<String> messages) {
+        MessageDigest md = sha256();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        for (String message : messages) {
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            length.clear();
+            md.update(length.putInt(bytes.length).array());
+            md.update(bytes);
+        }
+        return md.digest();
+    }
+
+    /**
+     * Return the key of a run
+     *
+     * @param messagesDigest digest of the messages each flow sends
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     * @param antithetic whether the random numbers are antithetic
+     * @return the key, as 64 hexadecimal digits
+     */
+    public static String key(byte[] messagesDigest, int numFlows, int timeBetweenMsg,
+            float lossProb, float corrProb, int windowsSize, int protocolType,
+            long ticksPerUnit, long seed, boolean antithetic) {
+        ByteBuffer config = ByteBuffer.allocate(64);
+        config.putInt(Simulation.MODEL_VERSION).putInt(numFlows).putInt(timeBetweenMsg)
+                .putFloat(lossProb).putFloat(corrProb).putInt(windowsSize).putInt(protocolType)
+                .putLong(ticksPerUnit).putLong(seed).put((byte) (antithetic ? 1 : 0));
+        MessageDigest md = sha256();
+        md.update(messagesDigest);
+        md.update(config.array(), 0, config.position());
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Return the metrics of a run
+     *
+     * @param key key of the run
+     * @return its metrics, or null if it is not in the cache
+     */
+    public synchronized RunMetrics get(String key) {
+        RunMetrics result = results.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Add the metrics of a run to the cache and append them to the file
+     *
+     * @param key key of the run
+     * @param result its metrics
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void put(String key, RunMetrics result) throws IOException {
+        if (results.containsKey(key)) {
+            return;
+        }
+        record.clear();
+        for (int i = 0; i < KEY_SIZE; i++) {
+            record.put((byte) Integer.parseInt(key.substring(2 * i, 2 * i + 2), 16));
+        }
+        for (int field = 0; field < RunMetrics.FIELD_NAMES.length; field++) {
+            record.putLong(result.get(field));
+        }
+        record.flip();
+        writeFully(record, channel.size());
+        results.put(key, result);
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
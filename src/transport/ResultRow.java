@@ -0,0 +1,92 @@
+package transport;
+
+/**
+ * A class which holds one row of a table of results. Values are kept as
+ * primitives: integers as they are, doubles as their bits.
+ */
+public class ResultRow {
+
+    private final ResultsSchema schema;
+    private final long[] values; //value of each column, doubles as raw bits
+
+    /**
+     * Create a row of zeros
+     *
+     * @param schema the columns of the row
+     */
+    public ResultRow(ResultsSchema schema) {
+        this.schema = schema;
+        values = new long[schema.getNumColumns()];
+    }
+
+    public ResultsSchema getSchema() {
+        return schema;
+    }
+
+    public ResultRow setInt(int column, int value) {
+        check(column, ResultsSchema.INT);
+        values[column] = value;
+        return this;
+    }
+
+    public ResultRow setLong(int column, long value) {
+        check(column, ResultsSchema.LONG);
+        values[column] = value;
+        return this;
+    }
+
+    public ResultRow setDouble(int column, double value) {
+        check(column, ResultsSchema.DOUBLE);
+        values[column] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    public int getInt(int column) {
+        check(column, ResultsSchema.INT);
+        return (int) values[column];
+    }
+
+    public long getLong(int column) {
+        check(column, ResultsSchema.LONG);
+        return values[column];
+    }
+
+    public double getDouble(int column) {
+        check(column, ResultsSchema.DOUBLE);
+        return Double.longBitsToDouble(values[column]);
+    }
+
+    /**
+     * Return the value of a column as it is stored: integers as they are,
+     * doubles as their bits
+     *
+     * @param column the column
+     * @return the stored value
+     */
+    long getRaw(int column) {
+        return values[column];
+    }
+
+    void setRaw(int column, long value) {
+        values[column] = value;
+    }
+
+    /**
+     * Return the value of a column as text
+     *
+     * @param column the column
+     * @return the value
+     */
+    String format(int column) {
+        if (schema.getType(column) == ResultsSchema.DOUBLE) {
+            return Double.toString(Double.longBitsToDouble(values[column]));
+        }
+        return Long.toString(values[column]);
+    }
+
+    private void check(int column, int type) {
+        if (schema.getType(column) != type) {
+            throw new IllegalArgumentException("column " + schema.getName(column) + " is not of type " + type);
+        }
+    }
+}
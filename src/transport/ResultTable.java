@@ -0,0 +1,72 @@
+package transport;
+
+/**
+ * A class which holds a table of results read back from a binary results
+ * file, column by column.
+ */
+public class ResultTable {
+
+    private final String name;
+    private final ResultsSchema schema;
+    private long[][] columns; //values of each column, doubles as raw bits
+    private int numRows;
+
+    /**
+     * Create an empty table
+     *
+     * @param name name of the table
+     * @param schema columns of the table
+     */
+    ResultTable(String name, ResultsSchema schema) {
+        this.name = name;
+        this.schema = schema;
+        columns = new long[schema.getNumColumns()][16];
+    }
+
+    /**
+     * Add rows to the table
+     *
+     * @param block values of the rows, column by column
+     * @param rows number of rows in the block
+     */
+    void addBlock(long[][] block, int rows) {
+        for (int col = 0; col < columns.length; col++) {
+            if (numRows + rows > columns[col].length) {
+                long[] grown = new long[Math.max(numRows + rows, 2 * columns[col].length)];
+                System.arraycopy(columns[col], 0, grown, 0, numRows);
+                columns[col] = grown;
+            }
+            System.arraycopy(block[col], 0, columns[col], numRows, rows);
+        }
+        numRows += rows;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ResultsSchema getSchema() {
+        return schema;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Return a row of the table
+     *
+     * @param row index of the row
+     * @return a copy of the row
+     */
+    public ResultRow getRow(int row) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + numRows);
+        }
+        ResultRow result = new ResultRow(schema);
+        for (int col = 0; col < columns.length; col++) {
+            result.setRaw(col, columns[col][row]);
+        }
+        return result;
+    }
+}
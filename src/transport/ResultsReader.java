@@ -0,0 +1,99 @@
+package transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class which reads back the tables of a binary results file written by
+ * ResultsWriter. A file cut short by a crash is read up to its last complete
+ * block.
+ */
+public class ResultsReader {
+
+    private ResultsReader() {
+    }
+
+    /**
+     * Read every table of a binary results file
+     *
+     * @param file the binary results file
+     * @return the tables, in the order they were written
+     * @throws IOException if the file cannot be read, is not a results file or
+     * was written in a format version this one cannot read
+     */
+    public static List<ResultTable> read(Path file) throws IOException {
+        List<ResultTable> tables = new ArrayList<>();
+        try (ChannelInput in = new ChannelInput(FileChannel.open(file, StandardOpenOption.READ))) {
+            int magic = in.readInt();
+            if (magic != ResultsWriter.MAGIC) {
+                throw new IOException(file + " is not a results file");
+            }
+            int version = in.readInt();
+            if (version != ResultsWriter.VERSION) {
+                throw new IOException("Unsupported results file version " + version + " in " + file);
+            }
+            ResultTable table = null;
+            while (true) {
+                int record;
+                try {
+                    record = in.readByte();
+                } catch (EOFException ex) {
+                    break; //cut short between two records
+                }
+                if (record == ResultsWriter.END) {
+                    break;
+                } else if (record == ResultsWriter.TABLE) {
+                    try {
+                        table = readTable(in);
+                    } catch (EOFException ex) {
+                        break;
+                    }
+                    tables.add(table);
+                } else if (record == ResultsWriter.BLOCK && table != null) {
+                    try {
+                        readBlock(in, table);
+                    } catch (EOFException ex) {
+                        break; //the last block is incomplete
+                    }
+                } else {
+                    throw new IOException("Corrupt results file " + file + ": unexpected record " + record);
+                }
+            }
+        }
+        return tables;
+    }
+
+    private static ResultTable readTable(ChannelInput in) throws IOException {
+        String name = in.readString();
+        int numColumns = in.readInt();
+        ResultsSchema schema = new ResultsSchema();
+        for (int col = 0; col < numColumns; col++) {
+            String colName = in.readString();
+            schema.add(colName, in.readByte());
+        }
+        return new ResultTable(name, schema);
+    }
+
+    private static void readBlock(ChannelInput in, ResultTable table) throws IOException {
+        ResultsSchema schema = table.getSchema();
+        int rows = in.readInt();
+        long[][] block = new long[schema.getNumColumns()][rows];
+        for (int col = 0; col < block.length; col++) {
+            if (schema.getType(col) == ResultsSchema.INT) {
+                for (int i = 0; i < rows; i++) {
+                    block[col][i] = in.readInt();
+                }
+            } else {
+                for (int i = 0; i < rows; i++) {
+                    block[col][i] = in.readLong();
+                }
+            }
+        }
+        table.addBlock(block, rows);
+    }
+}
@@ -0,0 +1,76 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class which describes the columns of a table of results: their names and
+ * their primitive types.
+ */
+public class ResultsSchema {
+
+    public static final int INT = 0;
+    public static final int LONG = 1;
+    public static final int DOUBLE = 2;
+
+    private final List<String> names; //name of each column
+    private final List<Integer> types; //type of each column
+
+    /**
+     * Create a schema without columns
+     */
+    public ResultsSchema() {
+        names = new ArrayList<>();
+        types = new ArrayList<>();
+    }
+
+    /**
+     * Add a column
+     *
+     * @param name name of the column
+     * @param type INT, LONG or DOUBLE
+     * @return this schema
+     */
+    public ResultsSchema add(String name, int type) {
+        if (type < INT || type > DOUBLE) {
+            throw new IllegalArgumentException("unknown column type " + type + " for " + name);
+        }
+        names.add(name);
+        types.add(type);
+        return this;
+    }
+
+    public ResultsSchema addInt(String name) {
+        return add(name, INT);
+    }
+
+    public ResultsSchema addLong(String name) {
+        return add(name, LONG);
+    }
+
+    public ResultsSchema addDouble(String name) {
+        return add(name, DOUBLE);
+    }
+
+    public int getNumColumns() {
+        return names.size();
+    }
+
+    public String getName(int column) {
+        return names.get(column);
+    }
+
+    public int getType(int column) {
+        return types.get(column);
+    }
+
+    /**
+     * Return the size of a value of a column in the binary format
+     *
+     * @param column the column
+     * @return size in bytes
+     */
+    int getSize(int column) {
+        return getType(column) == INT ? 4 : 8;
+    }
+}
@@ -0,0 +1,251 @@
+package transport;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class which writes tables of results as they are produced, one row at a
+ * time, to a CSV file and to a binary columnar file. Nothing is kept but the
+ * rows of the current block, so memory does not grow with the number of rows,
+ * and a crash only loses the rows appended since the last flush.
+ *
+ * Both files hold a sequence of tables. In the CSV file, a table is its name
+ * on a line, a header line with the names of its columns and one line per
+ * row. The binary file starts with a magic number and a format version; a
+ * table is then a TABLE record with its name and columns, followed by BLOCK
+ * records, each holding a number of rows stored column after column, and the
+ * file ends with an END record. See ResultsReader.
+ *
+ * Rows are buffered in memory and both files are written every flushInterval
+ * rows, when a row is appended flushMillis or more after the last write, when
+ * a table starts and when flush or close is called. A point of a sweep takes
+ * longer than DEFAULT_FLUSH_MILLIS, so its row is on disk as soon as it is
+ * appended, while rows appended in a burst still share a block. Every method
+ * is synchronized, so parallel workers may share a writer.
+ */
+public class ResultsWriter implements Closeable {
+
+    static final int MAGIC = 0x4E535253; //"NSRS"
+    static final int VERSION = 1;
+    static final int TABLE = 'T';
+    static final int BLOCK = 'B';
+    static final int END = 'E';
+
+    public static final int DEFAULT_FLUSH_INTERVAL = 64;
+    public static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    private final Writer csv; //null if no CSV file is written
+    private final ChannelOutput binary; //null if no binary file is written
+    private final int flushInterval; //rows in a block
+    private final long flushNanos; //time after which an appended row is written at once
+
+    private ResultsSchema schema; //columns of the current table
+    private long[][] block; //values of the rows not written yet, column by column
+    private int blockRows; //number of rows in the block
+    private long lastFlush; //System.nanoTime of the last write
+    private boolean closed;
+
+    /**
+     * Create a writer which writes a block every DEFAULT_FLUSH_INTERVAL rows,
+     * or DEFAULT_FLUSH_MILLIS after the last one
+     *
+     * @param csvFile the CSV file, replaced if it exists, or null
+     * @param binaryFile the binary file, replaced if it exists, or null
+     * @throws IOException if a file cannot be opened
+     */
+    public ResultsWriter(Path csvFile, Path binaryFile) throws IOException {
+        this(csvFile, binaryFile, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Create a writer which writes a block DEFAULT_FLUSH_MILLIS after the last
+     * one if it is not full before
+     *
+     * @param csvFile the CSV file, replaced if it exists, or null
+     * @param binaryFile the binary file, replaced if it exists, or null
+     * @param flushInterval number of rows buffered before the files are written
+     * @throws IOException if a file cannot be opened
+     */
+    public ResultsWriter(Path csvFile, Path binaryFile, int flushInterval) throws IOException {
+        this(csvFile, binaryFile, flushInterval, DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * Create a writer
+     *
+     * @param csvFile the CSV file, replaced if it exists, or null
+     * @param binaryFile the binary file, replaced if it exists, or null
+     * @param flushInterval number of rows buffered before the files are written
+     * @param flushMillis time after the last write from which every appended
+     * row is written at once, 0 to write every row
+     * @throws IOException if a file cannot be opened
+     */
+    public ResultsWriter(Path csvFile, Path binaryFile, int flushInterval, long flushMillis) throws IOException {
+        if (flushInterval < 1) {
+            throw new IllegalArgumentException("flush interval must be at least 1: " + flushInterval);
+        }
+        if (flushMillis < 0) {
+            throw new IllegalArgumentException("flush time must not be negative: " + flushMillis);
+        }
+        this.flushInterval = flushInterval;
+        flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        lastFlush = System.nanoTime();
+        csv = csvFile == null ? null
+                : new BufferedWriter(Channels.newWriter(open(csvFile), StandardCharsets.UTF_8.newEncoder(), -1));
+        if (binaryFile == null) {
+            binary = null;
+        } else {
+            binary = new ChannelOutput(open(binaryFile));
+            binary.writeInt(MAGIC);
+            binary.writeInt(VERSION);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Start a new table. The rows of the previous table are written first.
+     *
+     * @param name name of the table
+     * @param schema columns of the table
+     * @throws IOException if a file cannot be written
+     */
+    public synchronized void startTable(String name, ResultsSchema schema) throws IOException {
+        checkOpen();
+        flush();
+        this.schema = schema;
+        block = new long[schema.getNumColumns()][flushInterval];
+        if (csv != null) {
+            csv.write(name);
+            csv.write('\n');
+            for (int col = 0; col < schema.getNumColumns(); col++) {
+                if (col > 0) {
+                    csv.write(',');
+                }
+                csv.write(schema.getName(col));
+            }
+            csv.write('\n');
+        }
+        if (binary != null) {
+            binary.writeByte(TABLE);
+            binary.writeString(name);
+            binary.writeInt(schema.getNumColumns());
+            for (int col = 0; col < schema.getNumColumns(); col++) {
+                binary.writeString(schema.getName(col));
+                binary.writeByte(schema.getType(col));
+            }
+        }
+    }
+
+    /**
+     * Add a row to the current table
+     *
+     * @param row the row, with the columns of the table
+     * @throws IOException if a file cannot be written
+     */
+    public synchronized void append(ResultRow row) throws IOException {
+        checkOpen();
+        if (schema == null) {
+            throw new IllegalStateException("no table was started");
+        }
+        if (row.getSchema() != schema) {
+            throw new IllegalArgumentException("row does not have the columns of the current table");
+        }
+        for (int col = 0; col < block.length; col++) {
+            block[col][blockRows] = row.getRaw(col);
+        }
+        blockRows++;
+        if (csv != null) {
+            for (int col = 0; col < block.length; col++) {
+                if (col > 0) {
+                    csv.write(',');
+                }
+                csv.write(row.format(col));
+            }
+            csv.write('\n');
+        }
+        if (blockRows == flushInterval || System.nanoTime() - lastFlush >= flushNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffered rows to the files
+     *
+     * @throws IOException if a file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        if (binary != null && blockRows > 0) {
+            binary.writeByte(BLOCK);
+            binary.writeInt(blockRows);
+            for (int col = 0; col < block.length; col++) {
+                long[] values = block[col];
+                if (schema.getType(col) == ResultsSchema.INT) {
+                    for (int i = 0; i < blockRows; i++) {
+                        binary.writeInt((int) values[i]);
+                    }
+                } else {
+                    for (int i = 0; i < blockRows; i++) {
+                        binary.writeLong(values[i]);
+                    }
+                }
+            }
+        }
+        blockRows = 0;
+        if (binary != null) {
+            binary.flush();
+        }
+        if (csv != null) {
+            csv.flush();
+        }
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Write the buffered rows and close the files
+     *
+     * @throws IOException if a file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            if (binary != null) {
+                binary.writeByte(END);
+                binary.flush();
+            }
+        } finally {
+            closed = true;
+            try {
+                if (csv != null) {
+                    csv.close();
+                }
+            } finally {
+                if (binary != null) {
+                    binary.close();
+                }
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("results writer is closed");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package transport;
+
+/**
+ * A class which holds the counters of a simulation run, summed over all of
+ * its flows, and percentiles of the latencies of its messages. Each host
+ * counts what it does in primitive fields as it goes (see SenderTransport,
+ * ReceiverTransport and NetworkLayer), and the counters are only gathered
+ * here once the run is over, so counting costs a few increments per packet
+ * and builds no strings.
+ *
+ * Every counter is also reachable by index, so experiments can sweep any of
+ * them (see FIELD_NAMES).
+ *
+ * Every engine drops the events of a flow once it has completed. The parallel
+ * engines may simulate the receiver of a flow in another process than its
+ * sender, so they also take back the acks the receiver sent after that time
+ * (see Simulation.dropLateAcks), and the counters of a run do not depend on
+ * the engine that simulated it.
+ */
+public class RunMetrics {
+
+    public static final int TOTAL_TIME = 0; //time at which the run ended, in ticks
+    public static final int MESSAGES_DELIVERED = 1; //messages delivered to the receiver applications
+    public static final int PACKETS_SENT = 2; //packets handed to the network layer, acks included
+    public static final int PACKETS_LOST = 3; //packets lost by the network layer
+    public static final int PACKETS_CORRUPTED = 4; //packets corrupted by the network layer
+    public static final int RETRANSMISSIONS = 5; //packets sent again by the senders
+    public static final int TIMEOUTS = 6; //timers that expired
+    public static final int FAST_RETRANSMITS = 7; //retransmissions after three duplicate acks
+    public static final int DUPLICATE_ACKS = 8; //acks that did not move the window
+    public static final int PEAK_WINDOW = 9; //largest number of unacked packets of a flow
+    public static final int PEAK_REORDER_BUFFER = 10; //largest number of packets a receiver buffered out of order
+    public static final int LATENCY_P50 = 11; //median latency of the messages, in ticks (see LatencyHistogram)
+    public static final int LATENCY_P90 = 12;
+    public static final int LATENCY_P99 = 13;
+    public static final int LATENCY_P999 = 14;
+    public static final int LATENCY_MAX = 15;
+
+    /**
+     * Name of each counter, by index
+     */
+    public static final String[] FIELD_NAMES = {
+        "Total Time", "Messages Delivered", "Packets Sent", "Packets Lost",
+        "Packets Corrupted", "Retransmissions", "Timeouts", "Fast Retransmits",
+        "Duplicate Acks", "Peak Window", "Peak Reorder Buffer", "Latency p50",
+        "Latency p90", "Latency p99", "Latency p99.9", "Latency Max"};
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+
+    private final long[] values;
+
+    /**
+     * Create metrics whose counters are all 0
+     */
+    public RunMetrics() {
+        values = new long[FIELD_NAMES.length];
+    }
+
+    /**
+     * Return the index of a counter
+     *
+     * @param name name of the counter, see FIELD_NAMES
+     * @return its index
+     */
+    public static int fieldOf(String name) {
+        for (int field = 0; field < FIELD_NAMES.length; field++) {
+            if (FIELD_NAMES[field].equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("unknown metric " + name);
+    }
+
+    /**
+     * Return whether a counter is the largest value of a flow rather than a
+     * sum. The latency percentiles are too, until they are set from the
+     * histogram of the whole run (see setLatencies).
+     *
+     * @param field index of the counter
+     * @return true for peaks
+     */
+    static boolean isPeak(int field) {
+        return field == PEAK_WINDOW || field == PEAK_REORDER_BUFFER || field >= LATENCY_P50;
+    }
+
+    public long get(int field) {
+        return values[field];
+    }
+
+    void set(int field, long value) {
+        values[field] = value;
+    }
+
+    /**
+     * Count a value of a host: added to a sum, or kept if it is a new peak
+     *
+     * @param field index of the counter
+     * @param value value of the host
+     */
+    void add(int field, long value) {
+        values[field] = isPeak(field) ? Math.max(values[field], value) : values[field] + value;
+    }
+
+    /**
+     * Set the latency percentiles from the histogram of the latencies. They
+     * cannot be merged from the percentiles of parts of a run, so they are set
+     * once the histograms of the parts have been merged.
+     *
+     * @param latencies the latencies of the run
+     */
+    void setLatencies(LatencyHistogram latencies) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            values[LATENCY_P50 + i] = latencies.getValueAtPercentile(PERCENTILES[i]);
+        }
+    }
+
+    /**
+     * Add the counters of another part of the run, e.g. another shard or
+     * logical process. The total time is the latest of both.
+     *
+     * @param other the counters to add
+     */
+    void addAll(RunMetrics other) {
+        for (int field = 0; field < values.length; field++) {
+            if (field == TOTAL_TIME) {
+                values[field] = Math.max(values[field], other.values[field]);
+            } else {
+                add(field, other.values[field]);
+            }
+        }
+    }
+
+    public long getTotalTime() {
+        return values[TOTAL_TIME];
+    }
+
+    public long getMessagesDelivered() {
+        return values[MESSAGES_DELIVERED];
+    }
+
+    public long getPacketsSent() {
+        return values[PACKETS_SENT];
+    }
+
+    public long getPacketsLost() {
+        return values[PACKETS_LOST];
+    }
+
+    public long getPacketsCorrupted() {
+        return values[PACKETS_CORRUPTED];
+    }
+
+    public long getRetransmissions() {
+        return values[RETRANSMISSIONS];
+    }
+
+    public long getTimeouts() {
+        return values[TIMEOUTS];
+    }
+
+    public long getFastRetransmits() {
+        return values[FAST_RETRANSMITS];
+    }
+
+    public long getDuplicateAcks() {
+        return values[DUPLICATE_ACKS];
+    }
+
+    public long getPeakWindow() {
+        return values[PEAK_WINDOW];
+    }
+
+    public long getPeakReorderBuffer() {
+        return values[PEAK_REORDER_BUFFER];
+    }
+
+    /**
+     * Return a latency percentile of the run, one of 50, 90, 99, 99.9 and 100
+     *
+     * @param percentile the percentile
+     * @return the latency, in ticks
+     */
+    public long getLatency(double percentile) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            if (PERCENTILES[i] == percentile) {
+                return values[LATENCY_P50 + i];
+            }
+        }
+        throw new IllegalArgumentException("percentile " + percentile + " is not kept");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int field = 0; field < values.length; field++) {
+            result.append(field == 0 ? "" : ", ").append(FIELD_NAMES[field]).append(": ").append(values[field]);
+        }
+        return result.toString();
+    }
+}
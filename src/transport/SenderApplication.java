@@ -9,13 +9,25 @@ import java.util.*;
 public class SenderApplication {
 
     private SenderTransport st; //transport layer used
-    private ArrayList<String> messages; //all messages the application will send
+    private List<String> messages; //all messages the application will send
     private int index; //how many messages has the application sent so far
     private Timeline tl; //the timeline associated with the simulation
 
-    public SenderApplication(ArrayList<String> messages, NetworkLayer nl) {
-        st = new SenderTransport(nl);
+    public SenderApplication(List<String> messages, NetworkLayer nl) {
+        this(messages, nl, 0);
+    }
+
+    /**
+     * Create the sender application of one flow
+     *
+     * @param messages all messages the application will send
+     * @param nl network layer shared by all flows
+     * @param flow the flow this application sends on
+     */
+    public SenderApplication(List<String> messages, NetworkLayer nl, int flow) {
+        st = new SenderTransport(nl, flow);
         this.messages = messages;
+        tl = nl.getTimeline();
         index = 0;
 
     }
@@ -24,8 +36,43 @@ public class SenderApplication {
         return st;
     }
 
+    /**
+     * Return how many messages the application has handed to the transport
+     *
+     * @return number of messages sent so far
+     */
+    public int getNumSent() {
+        return index;
+    }
+
+    /**
+     * Return the send times of the messages in flight, to be put back by
+     * restoreState
+     *
+     * @return the send times of messages base to getNumSent() - 1
+     */
+    long[] getInFlightSendTimes() {
+        return st.getSendTimes();
+    }
+
+    /**
+     * Put the application and its transport back to an earlier state
+     *
+     * @param numSent number of messages the application had sent
+     * @param base base of the transport's window
+     * @param nextSeqNum seqnum of the transport's next packet
+     * @param dupAcks number of duplicate acks the transport had received
+     * @param transmissions number of times each unacked packet had been sent
+     * @param inFlight send times of messages base to numSent - 1, see
+     * getInFlightSendTimes
+     */
+    void restoreState(int numSent, int base, int nextSeqNum, int dupAcks, int[] transmissions, long[] inFlight) {
+        index = numSent;
+        st.restoreState(base, nextSeqNum, dupAcks, transmissions, messages, numSent, inFlight);
+    }
+
     public void sendMessage() {
-        st.sendMessage(new Message(messages.get(index++)));
+        st.sendMessage(new Message(messages.get(index++), tl.getTimeSoFar()));
 
     }
 
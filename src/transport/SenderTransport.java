@@ -1,6 +1,7 @@
 package transport;
 
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -9,7 +10,9 @@ import java.util.NoSuchElementException;
 public class SenderTransport {
 
     private NetworkLayer nl;
+    private Log log; //debug output of the run
     private Timeline tl;
+    private int flow; // flow this transport sends on
     private int n; // window size
     private boolean usingTCP;
     private int nextSeqNum; // seg num of the next packet
@@ -18,9 +21,26 @@ public class SenderTransport {
     private LinkedList<Message> queue;
     private LinkedList<Packet> unackedMsgs;
     private int cntDupAcks;
+    private long retransmissions; //packets sent again
+    private long timeouts; //timers that expired
+    private long fastRetransmits; //retransmissions after three duplicate acks
+    private long duplicateAcks; //acks that did not move the window
+    private int peakWindow; //largest number of unacked packets
 
     public SenderTransport(NetworkLayer nl) {
+        this(nl, 0);
+    }
+
+    /**
+     * Create the sender transport of one flow
+     *
+     * @param nl network layer shared by all flows
+     * @param flow the flow this transport sends on
+     */
+    public SenderTransport(NetworkLayer nl, int flow) {
         this.nl = nl;
+        this.log = nl.getLog();
+        this.flow = flow;
         initialize();
     }
 
@@ -50,7 +70,7 @@ public class SenderTransport {
         if (nextSeqNum < base + n) { // Send message if the window is not full
             // start timer if needed
             if (this.base == this.nextSeqNum) {
-                tl.startTimer(timeout);
+                tl.startTimer(flow, timeout);
             }
 
             // put message in a packet and backup the packet
@@ -58,14 +78,15 @@ public class SenderTransport {
             unackedMsgs.add(p); // buffer unacked msg
             
             // pass a copy of the original packet to network layer
-            nl.sendPacket(p.clone(), Event.RECEIVER);
+            transmit(p);
             nextSeqNum++;
+            peakWindow = Math.max(peakWindow, nextSeqNum - base);
 
         } else { // Buffer message if full
             queue.add(msg);
 
-            debug_print("Buffered message");
-            debug_print("Current buffered messages: " + queue.size());
+            log.log(Log.SENDER, Log.DEBUG, "Buffered message");
+            log.log(Log.SENDER, Log.DEBUG, "Current buffered messages: {}", queue.size());
             
             // message should be sent later when base increases (open window)
         }
@@ -79,7 +100,7 @@ public class SenderTransport {
      * @param pkt the receiving packet
      */
     public void receiveMessage(Packet pkt) {
-        debug_print("Receive packet at sender; seqnum: " + pkt.getSeqnum() + " acknum: " + pkt.getAcknum());
+        log.log(Log.SENDER, Log.DEBUG, "Receive packet at sender; seqnum: {} acknum: {}", pkt.getSeqnum(), pkt.getAcknum());
         if (usingTCP) {
             receiveMessageTCP(pkt);
         } else {
@@ -95,23 +116,88 @@ public class SenderTransport {
      * pkt - the receiving packet
      */
     public void receiveMessageGBN(Packet pkt) {
-        if (!pkt.isCorrupt() && pkt.getAcknum() >= base) {
-            // update unacked messages
-            for (int i = base; i <= pkt.getAcknum(); i++) {
-                unackedMsgs.removeFirst();
+        if (!pkt.isCorrupt()) {
+            if (pkt.getAcknum() >= base) {
+                moveBase(pkt.getAcknum() + 1);
+            } else {
+                duplicateAcks++;
             }
+        }
+    }
 
-            // move base + stop/ restart timer
-            base = pkt.getAcknum() + 1;
-            tl.stopTimer();
-            // restart if there is unacked message
-            if (base != this.nextSeqNum) {
-                tl.startTimer(timeout);
+    /**
+     * This routine will be called with every packet that arrives at the sender
+     * in the same tick. The acks are checked one by one, but the window is
+     * moved (and the timer restarted) only once for the whole batch.
+     *
+     * An ack of a packet that was never sent can only come from a receiver
+     * that a Time Warp process has not rolled back yet (see
+     * TimeWarpSimulation); it is ignored, and this sender is rolled back too
+     * when the anti-message of the ack arrives.
+     *
+     * @param acks the receiving packets, in arrival order
+     */
+    public void receiveAcks(List<Packet> acks) {
+        int newBase = base;
+        for (int i = 0; i < acks.size(); i++) {
+            Packet pkt = acks.get(i);
+            log.log(Log.SENDER, Log.DEBUG, "Receive packet at sender; seqnum: {} acknum: {}", pkt.getSeqnum(), pkt.getAcknum());
+            if (pkt.isCorrupt() || (usingTCP ? pkt.getAcknum() : pkt.getAcknum() + 1) > nextSeqNum) {
+                continue;
             }
+            if (!usingTCP) {
+                if (pkt.getAcknum() >= newBase) {
+                    newBase = pkt.getAcknum() + 1;
+                } else {
+                    duplicateAcks++;
+                }
+            } else if (pkt.getAcknum() > newBase) { // valid ack
+                newBase = pkt.getAcknum();
+                cntDupAcks = 0;
+            } else { // duplicate ack
+                duplicateAcks++;
+                cntDupAcks++;
+                if (cntDupAcks == 3) { // fast retransmit
+                    log.log(Log.SENDER, Log.DEBUG, "Fast retransmit");
+                    fastRetransmits++;
+                    tl.recordFastRetransmit(flow, base);
+                    cntDupAcks = 0; // reset cnt
+                    // the window has to be up to date before its first packet is resent
+                    if (newBase != base) {
+                        moveBase(newBase);
+                    }
+                    resendFirstMsg();
+                }
+            }
+        }
+        if (newBase != base) {
+            moveBase(newBase);
+        }
+    }
 
-            // Send buffered messages if there is any
-            flushUnsentMsg();
+    /**
+     * Slide the window so that it starts at newBase: drop the acknowledged
+     * packets, stop the timer and restart it if anything is still unacked,
+     * then send buffered messages that now fit in the window.
+     *
+     * @param newBase the new base of the window
+     */
+    private void moveBase(int newBase) {
+        // update unacked messages
+        for (int i = base; i < newBase; i++) {
+            unackedMsgs.removeFirst();
         }
+
+        // move base + stop/ restart timer
+        base = newBase;
+        tl.stopTimer(flow);
+        // restart if there is unacked message
+        if (base != this.nextSeqNum) {
+            tl.startTimer(flow, timeout);
+        }
+
+        // Send buffered messages if there is any
+        flushUnsentMsg();
     }
 
     /**
@@ -137,27 +223,15 @@ public class SenderTransport {
     public void receiveMessageTCP(Packet pkt) {
         if (!pkt.isCorrupt()) {
             if (pkt.getAcknum() > base) { // valid ack
-                // update unacked messages
-                for (int i = base; i < pkt.getAcknum(); i++) {
-                    unackedMsgs.removeFirst();
-                }
-
-                // update variables 
-                base = pkt.getAcknum();
                 cntDupAcks = 0;
-                tl.stopTimer();
-                // restart if there is unacked message
-                if (base != this.nextSeqNum) {
-                    tl.startTimer(timeout);
-                }
-
-                // send buffered messages if there is any
-                flushUnsentMsg();
-
+                moveBase(pkt.getAcknum());
             } else { // duplicate ack
+                duplicateAcks++;
                 cntDupAcks++;
                 if (cntDupAcks == 3) { // fast retransmit
-                    debug_print("Fast retransmit");
+                    log.log(Log.SENDER, Log.DEBUG, "Fast retransmit");
+                    fastRetransmits++;
+                    tl.recordFastRetransmit(flow, base);
                     cntDupAcks = 0; // reset cnt
                     resendFirstMsg();
                 }
@@ -175,14 +249,24 @@ public class SenderTransport {
         return (base + n - nextSeqNum);
     }
 
+    /**
+     * Return whether every message handed to the transport so far has been
+     * acknowledged, i.e. nothing is in flight and nothing is waiting to be sent.
+     *
+     * @return true if the window and the queue are both empty
+     */
+    public boolean isWindowEmpty() {
+        return base == nextSeqNum && queue.isEmpty();
+    }
+
     /**
      * This method sends queuing messages continuously 
      * until the window is full or there is no more queuing messages.
      */
     public void flushUnsentMsg() {
         while (!queue.isEmpty() && openWins() > 0) {
-            debug_print("Current queuing messages: " + queue.size() + ", open windows: " + openWins());
-            debug_print("Sending the next message in the queue");
+            log.log(Log.SENDER, Log.DEBUG, "Current queuing messages: {}, open windows: {}", queue.size(), openWins());
+            log.log(Log.SENDER, Log.DEBUG, "Sending the next message in the queue");
             this.sendMessage(queue.pop());
         }
     }
@@ -194,6 +278,7 @@ public class SenderTransport {
      * timer is started and stopped.
      */
     public void timerExpired() {
+        timeouts++;
         if (usingTCP) {
             resendFirstMsg();
         } else { //GBN
@@ -205,13 +290,14 @@ public class SenderTransport {
      * This method resends all unacked messages currently in the buffer.
      */
     private void resendAllMsgs() {
-        tl.restartTimer(timeout);
+        tl.restartTimer(flow, timeout);
         // resend all unacked messages
         int seqnum = base;
         for (Packet p : unackedMsgs) {
-            nl.sendPacket(p.clone(), Event.RECEIVER);
+            transmit(p);
             seqnum++;
         }
+        retransmissions += unackedMsgs.size();
     }
 
     /**
@@ -221,10 +307,132 @@ public class SenderTransport {
 //        cntDupAcks = 0;
         if(unackedMsgs.isEmpty()){ return; }
         
-        tl.restartTimer(timeout);
+        tl.restartTimer(flow, timeout);
         // resend unacked message with smallest seqnum
         Packet p = unackedMsgs.getFirst();
-        nl.sendPacket(p.clone(), Event.RECEIVER);
+        transmit(p);
+        retransmissions++;
+    }
+
+    /**
+     * Pass a copy of an unacked packet to the network layer. The copy is
+     * numbered by how many times the packet was sent before, so the network
+     * layer treats each transmission of a seqnum the same way in every run
+     * with the same seed.
+     *
+     * @param p the unacked packet
+     */
+    private void transmit(Packet p) {
+        nl.sendPacket(p.clone(), Event.RECEIVER, flow);
+        p.setTransmission(p.getTransmission() + 1);
+    }
+
+    int getBase() {
+        return base;
+    }
+
+    int getNextSeqNum() {
+        return nextSeqNum;
+    }
+
+    int getDupAcks() {
+        return cntDupAcks;
+    }
+
+    /**
+     * Return how many times each unacked packet has been sent, to be put back
+     * by restoreState
+     *
+     * @return the transmissions of seqnums base to nextSeqNum - 1
+     */
+    int[] getTransmissions() {
+        int[] transmissions = new int[unackedMsgs.size()];
+        int i = 0;
+        for (Packet p : unackedMsgs) {
+            transmissions[i++] = p.getTransmission();
+        }
+        return transmissions;
+    }
+
+    /**
+     * Return the times at which the messages of the unacked packets and the
+     * queued messages were sent, to be put back by restoreState
+     *
+     * @return the send times of messages base to numSent - 1
+     */
+    long[] getSendTimes() {
+        long[] times = new long[unackedMsgs.size() + queue.size()];
+        int i = 0;
+        for (Packet p : unackedMsgs) {
+            times[i++] = p.getMessage().getSendTime();
+        }
+        for (Message m : queue) {
+            times[i++] = m.getSendTime();
+        }
+        return times;
+    }
+
+    /**
+     * Add the counters of this transport to the metrics of a run
+     *
+     * @param metrics the metrics of the run
+     */
+    void addMetrics(RunMetrics metrics) {
+        metrics.add(RunMetrics.RETRANSMISSIONS, retransmissions);
+        metrics.add(RunMetrics.TIMEOUTS, timeouts);
+        metrics.add(RunMetrics.FAST_RETRANSMITS, fastRetransmits);
+        metrics.add(RunMetrics.DUPLICATE_ACKS, duplicateAcks);
+        metrics.add(RunMetrics.PEAK_WINDOW, peakWindow);
+    }
+
+    /**
+     * Return the counters of this transport, to be put back by setCounters
+     *
+     * @return the counters
+     */
+    long[] getCounters() {
+        return new long[]{retransmissions, timeouts, fastRetransmits, duplicateAcks, peakWindow};
+    }
+
+    void setCounters(long[] counters) {
+        retransmissions = counters[0];
+        timeouts = counters[1];
+        fastRetransmits = counters[2];
+        duplicateAcks = counters[3];
+        peakWindow = (int) counters[4];
+    }
+
+    /**
+     * Put the transport back to an earlier state. Message i is always sent
+     * with seqnum i, so the window and the queue are rebuilt from the
+     * messages: the unacked packets are base to nextSeqNum - 1 and the queued
+     * messages are nextSeqNum to numSent - 1.
+     *
+     * @param base base of the window
+     * @param nextSeqNum seqnum of the next packet
+     * @param cntDupAcks number of duplicate acks received
+     * @param transmissions number of times each unacked packet had been sent,
+     * see getTransmissions
+     * @param messages all messages of the sender application
+     * @param numSent number of messages the application had sent
+     * @param sendTimes send times of messages base to numSent - 1, see
+     * getSendTimes
+     */
+    void restoreState(int base, int nextSeqNum, int cntDupAcks, int[] transmissions, List<String> messages, int numSent,
+            long[] sendTimes) {
+        this.base = base;
+        this.nextSeqNum = nextSeqNum;
+        this.cntDupAcks = cntDupAcks;
+        unackedMsgs.clear();
+        for (int i = base; i < nextSeqNum; i++) {
+            Packet p = new Packet(new Message(messages.get(i), sendTimes[i - base]), i, -1);
+            p.setTransmission(transmissions[i - base]);
+            unackedMsgs.add(p);
+        }
+        queue.clear();
+        for (int i = nextSeqNum; i < numSent; i++) {
+            queue.add(new Message(messages.get(i), sendTimes[i - base]));
+        }
     }
 
     public void setTimeLine(Timeline tl) {
@@ -238,10 +446,4 @@ public class SenderTransport {
     public void setProtocol(int n) {
         usingTCP = n > 0;
     }
-
-    private void debug_print(String s) {
-        if (NetworkSimulator.DEBUG > 1) {
-            System.out.println("[ST] " + s);
-        }
-    }
 }
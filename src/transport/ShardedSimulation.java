@@ -0,0 +1,195 @@
+package transport;
+
+import java.util.List;
+
+/**
+ * A class which runs the flows of a simulation in shards. Flows never
+ * interact, so each shard is a Simulation of its own for a contiguous range of
+ * flows, with its own timeline, network layer and transports, and is run to
+ * the end on its own thread. Nothing mutable is shared between shards; the
+ * results are merged once every shard is done.
+ *
+ * The hosts of a flow draw from the same random number streams whichever
+ * shard simulates them (see Timeline), so the results do not depend on the
+ * number of shards and are the same as those of a Simulation with the same
+ * seed.
+ */
+public class ShardedSimulation {
+
+    private final Simulation[] shards;
+    private final int[] firstFlows; //first flow of each shard
+    private final int numFlows;
+    private final RuntimeException[] failures; //error thrown by each shard, null if none
+
+    /**
+     * Create a sharded simulation in which every flow sends the same messages
+     *
+     * @param messages the messages each flow sends
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     * @param numShards number of shards (and threads), at most numFlows
+     */
+    public ShardedSimulation(List<String> messages, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType, long ticksPerUnit, long seed,
+            int numShards) {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("number of shards must be at least 1: " + numShards);
+        }
+        numShards = Math.max(1, Math.min(numShards, numFlows));
+        this.numFlows = numFlows;
+        shards = new Simulation[numShards];
+        firstFlows = new int[numShards];
+        failures = new RuntimeException[numShards];
+        for (int shard = 0; shard < numShards; shard++) {
+            int first = (int) ((long) numFlows * shard / numShards);
+            int end = (int) ((long) numFlows * (shard + 1) / numShards);
+            firstFlows[shard] = first;
+            shards[shard] = new Simulation(messages, first, end - first, timeBetweenMsg, lossProb, corrProb,
+                    windowsSize, protocolType, ticksPerUnit, seed, false, 0, 1);
+        }
+    }
+
+    /**
+     * Set the tracing level of the run
+     *
+     * @param tracing tracing level, see NetworkSimulator.run
+     */
+    public void setTracing(int tracing) {
+        for (Simulation sim : shards) {
+            sim.setTracing(tracing);
+        }
+    }
+
+    /**
+     * Set the recorder of the binary trace of the run, shared by all threads.
+     * Records of different threads are not in time order.
+     *
+     * @param trace the recorder, null for no binary trace
+     */
+    public void setTraceRecorder(TraceRecorder trace) {
+        for (Simulation sim : shards) {
+            sim.setTraceRecorder(trace);
+        }
+    }
+
+    /**
+     * Set the process of the send times of every flow. This has to be done
+     * before the run starts.
+     *
+     * @param process the arrival process, shared by all shards
+     */
+    public void setArrivalProcess(ArrivalProcess process) {
+        for (Simulation sim : shards) {
+            sim.setArrivalProcess(process);
+        }
+    }
+
+    /**
+     * Replay a trace of the losses, corruptions and delays of the packets
+     * instead of drawing them with the loss and corruption probabilities
+     *
+     * @param trace the trace, shared by all shards, null for none
+     */
+    public void setLinkTrace(LinkTrace trace) {
+        for (Simulation sim : shards) {
+            sim.setLinkTrace(trace);
+        }
+    }
+
+    /**
+     * Set where the receiver applications put the messages delivered to them,
+     * shared by all threads
+     *
+     * @param sink the sink of the run
+     */
+    public void setReceiverSink(ReceiverSink sink) {
+        for (Simulation sim : shards) {
+            sim.setReceiverSink(sink);
+        }
+    }
+
+    /**
+     * Run every shard until all of its flows have delivered and acknowledged
+     * their messages (or no events are left), then merge the results
+     *
+     * @return the statistics of the run
+     */
+    public FlowStatistics run() {
+        Telemetry.Run run = Telemetry.get().begin("sharded", numFlows, shards);
+        Thread[] threads = new Thread[shards.length];
+        final FlowStatistics[] results = new FlowStatistics[shards.length];
+        try {
+            for (int shard = 0; shard < shards.length; shard++) {
+                final int index = shard;
+                threads[shard] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            //the shards are parts of this run, not runs of their own
+                            shards[index].runUntil(Long.MAX_VALUE);
+                            results[index] = shards[index].getStatistics();
+                        } catch (RuntimeException ex) {
+                            failures[index] = ex;
+                        }
+                    }
+                }, "shard-" + shard);
+                threads[shard].start();
+            }
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the shards", ex);
+                }
+            }
+        } finally {
+            run.end();
+        }
+        for (RuntimeException failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        long[] completionTimes = new long[numFlows];
+        int[] delivered = new int[numFlows];
+        long totalTime = 0;
+        RunMetrics metrics = new RunMetrics();
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (int shard = 0; shard < shards.length; shard++) {
+            FlowStatistics result = results[shard];
+            for (int flow = 0; flow < result.getNumFlows(); flow++) {
+                completionTimes[firstFlows[shard] + flow] = result.getCompletionTime(flow);
+                delivered[firstFlows[shard] + flow] = result.getDelivered(flow);
+            }
+            totalTime = Math.max(totalTime, result.getTotalTime());
+            metrics.addAll(result.getMetrics());
+            latencies.add(result.getLatencies());
+        }
+        return new FlowStatistics(completionTimes, delivered, totalTime, metrics, latencies);
+    }
+
+    /**
+     * Return the number of events processed by the shards, stale ones
+     * included. The shards never send each other events, and each stops once
+     * its own flows have completed, so this is at most the number of events a
+     * Simulation with the same seed processes.
+     *
+     * @return the number of events
+     */
+    public long getEventsProcessed() {
+        long events = 0;
+        for (Simulation shard : shards) {
+            events += shard.getEventsProcessed();
+        }
+        return events;
+    }
+}
@@ -0,0 +1,802 @@
+package transport;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class which holds the state of one simulation run: the timeline, the
+ * network layer shared by all flows, and the sender and receiver of every
+ * flow. Flows are numbered from 0; the state of flow f is kept at index f of
+ * each array so an idle flow costs only a handful of small objects.
+ *
+ * A simulation can also be one logical process of a parallel run, in which
+ * case it only creates and simulates the hosts the process owns (see
+ * Timeline.logicalProcessOf) and the arrays are empty for the other hosts.
+ */
+public class Simulation {
+
+    /**
+     * Version of the model, to be increased by any change which alters the
+     * results of a run, so cached results of older versions are not reused
+     * (see ResultCache)
+     */
+    public static final int MODEL_VERSION = 2;
+
+    private Timeline tl;
+    private NetworkLayer nl;
+    private SenderApplication[] sa; //sender application of each flow
+    private SenderTransport[] st; //sender transport of each flow
+    private ReceiverTransport[] rt; //receiver transport of each flow
+    private int totalMessages; //number of messages each flow sends
+    private long[] completionTimes; //time at which each flow completed, -1 while it is running or not local
+    private int flowsCompleted; //number of local flows that have completed
+    private long timeSoFar; //time of the last tick processed
+    private long eventsProcessed; //events taken off the timeline since this simulation was created
+    private final Telemetry.Probe probe = new Telemetry.Probe(); //progress published for the telemetry
+
+    //parameters of the run, kept so that it can be checkpointed
+    private List<String> messages;
+    private int timeBetweenMsg;
+    private float lossProb;
+    private float corrProb;
+    private int windowsSize;
+    private int protocolType;
+    private long seed;
+    private boolean antithetic;
+
+    private Path checkpointFile; //where checkpoints are written, null for none
+    private long checkpointTimeInterval; //simulated time between checkpoints, in ticks, 0 for none
+    private long checkpointEventInterval; //events processed between checkpoints, 0 for none
+    private long lastCheckpointTime; //time of the last checkpoint
+    private long eventsSinceCheckpoint; //events processed since the last checkpoint
+
+    private List<Event> batch; //events of the current tick
+    private List<Packet> acks; //acks of the current flow arriving at its sender in the current tick
+    private List<long[]> lateAcks; //flow, time, packets sent, lost and corrupted of groups of local receivers of remote senders that already had every message
+
+    /**
+     * Create a simulation in which every flow sends the same messages
+     *
+     * @param messages the messages each flow sends
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     */
+    public Simulation(List<String> messages, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType, long ticksPerUnit, long seed) {
+        this(messages, numFlows, timeBetweenMsg, lossProb, corrProb,
+                windowsSize, protocolType, ticksPerUnit, seed, false);
+    }
+
+    /**
+     * Create a simulation in which every flow sends the same messages, with
+     * antithetic random numbers if asked for (see RandomStream)
+     *
+     * @param messages the messages each flow sends
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     * @param antithetic whether the random numbers are antithetic
+     */
+    public Simulation(List<String> messages, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType, long ticksPerUnit, long seed,
+            boolean antithetic) {
+        this(messages, 0, numFlows, timeBetweenMsg, lossProb, corrProb,
+                windowsSize, protocolType, ticksPerUnit, seed, antithetic, 0, 1);
+    }
+
+    /**
+     * Create one logical process of a simulation
+     *
+     * @param messages the messages each flow sends
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     * @param lp the logical process
+     * @param numLps number of logical processes
+     */
+    Simulation(List<String> messages, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType, long ticksPerUnit, long seed,
+            int lp, int numLps) {
+        this(messages, 0, numFlows, timeBetweenMsg, lossProb, corrProb,
+                windowsSize, protocolType, ticksPerUnit, seed, false, lp, numLps);
+    }
+
+    /**
+     * Create a simulation of a range of flows out of a larger run (see
+     * Timeline). Flow f of this simulation is flow firstFlow + f of the run.
+     *
+     * @param messages the messages each flow sends
+     * @param firstFlow the flow of the run that is flow 0 of this simulation
+     * @param numFlows number of flows of this simulation
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     * @param antithetic whether the random numbers are antithetic
+     * @param lp the logical process
+     * @param numLps number of logical processes
+     */
+    Simulation(List<String> messages, int firstFlow, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType, long ticksPerUnit, long seed,
+            boolean antithetic, int lp, int numLps) {
+        totalMessages = messages.size();
+        this.messages = messages;
+        this.timeBetweenMsg = timeBetweenMsg;
+        this.lossProb = lossProb;
+        this.corrProb = corrProb;
+        this.windowsSize = windowsSize;
+        this.protocolType = protocolType;
+        this.seed = seed;
+        this.antithetic = antithetic;
+        //creating a new timeline with an average time between packets.
+        tl = new Timeline(timeBetweenMsg, totalMessages, firstFlow, numFlows, ticksPerUnit, seed, antithetic, lp, numLps);
+        //creating a new network layer with specific loss and curroption probability.
+        nl = new NetworkLayer(lossProb, corrProb, tl);
+        sa = new SenderApplication[numFlows];
+        st = new SenderTransport[numFlows];
+        rt = new ReceiverTransport[numFlows];
+        completionTimes = new long[numFlows];
+        for (int flow = 0; flow < numFlows; flow++) {
+            completionTimes[flow] = -1;
+            if (tl.isLocal(flow, Event.SENDER)) {
+                sa[flow] = new SenderApplication(messages, nl, flow);
+                st[flow] = sa[flow].getSenderTransport();
+                //sender and receiver transport needs access to timeline to set timer.
+                st[flow].setTimeLine(tl);
+                //setting window size
+                st[flow].setWindowSize(windowsSize);
+                //setting protocol type
+                st[flow].setProtocol(protocolType);
+                checkComplete(flow);
+            }
+            if (tl.isLocal(flow, Event.RECEIVER)) {
+                rt[flow] = new ReceiverTransport(nl, flow);
+                rt[flow].setProtocol(protocolType);
+            }
+        }
+        batch = new ArrayList<>();
+        acks = new ArrayList<>();
+        lateAcks = new ArrayList<>();
+    }
+
+    /**
+     * Run the simulation until every flow has delivered and acknowledged all
+     * of its messages (or no events are left)
+     *
+     * @return the statistics of the run
+     */
+    public FlowStatistics run() {
+        Telemetry.Run run = Telemetry.get().begin("sequential", completionTimes.length, this);
+        try {
+            runUntil(Long.MAX_VALUE);
+        } finally {
+            run.end();
+        }
+        return getStatistics();
+    }
+
+    /**
+     * Process every tick before the given time, or until every flow has
+     * completed
+     *
+     * @param until time of the first tick not to process
+     */
+    void runUntil(long until) {
+        while (flowsCompleted < completionTimes.length) {
+            //get every event of the next tick
+            int batchSize = tl.returnNextBatch(batch, until);
+
+            //if no event present, break out
+            if (batchSize == 0) {
+                break;
+            }
+            timeSoFar = batch.get(0).getTime();
+            eventsProcessed += batchSize;
+
+            //events of a tick are ordered by flow, so each flow's events are next to each other
+            int first = 0;
+            while (first < batchSize) {
+                int flow = batch.get(first).getFlow();
+                int end = first + 1;
+                while (end < batchSize && batch.get(end).getFlow() == flow) {
+                    end++;
+                }
+                processFlowEvents(batch, first, end);
+                first = end;
+            }
+            probe.update(eventsProcessed, timeSoFar, tl.getQueueSize());
+
+            if (checkpointFile != null) {
+                eventsSinceCheckpoint += batchSize;
+                if ((checkpointTimeInterval > 0 && timeSoFar - lastCheckpointTime >= checkpointTimeInterval)
+                        || (checkpointEventInterval > 0 && eventsSinceCheckpoint >= checkpointEventInterval)) {
+                    checkpoint();
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a checkpoint of the run every so often. A checkpoint is taken
+     * between two ticks once the given simulated time has passed or the given
+     * number of events has been processed since the last one, and replaces the
+     * previous checkpoint.
+     *
+     * @param file file to write checkpoints to
+     * @param timeInterval simulated time between checkpoints in ticks, 0 for
+     * no time-based checkpoints
+     * @param eventInterval number of events between checkpoints, 0 for no
+     * event-based checkpoints
+     */
+    public void setCheckpointing(Path file, long timeInterval, long eventInterval) {
+        if (timeInterval < 0 || eventInterval < 0) {
+            throw new IllegalArgumentException("checkpoint intervals must not be negative");
+        }
+        checkpointFile = file;
+        checkpointTimeInterval = timeInterval;
+        checkpointEventInterval = eventInterval;
+        lastCheckpointTime = timeSoFar;
+        eventsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Write a checkpoint now
+     */
+    private void checkpoint() {
+        try {
+            Checkpoint.save(this, checkpointFile);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not write checkpoint " + checkpointFile, ex);
+        }
+        lastCheckpointTime = timeSoFar;
+        eventsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Change the loss and corruption probabilities of the network from now on
+     *
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     */
+    public void setNetworkParameters(float lossProb, float corrProb) {
+        this.lossProb = lossProb;
+        this.corrProb = corrProb;
+        nl.setLossProbability(lossProb);
+        nl.setCorruptionProbability(corrProb);
+    }
+
+    /**
+     * Take an in-memory snapshot of the run, from which any number of copies
+     * can be forked
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Write the whole state of the run: its parameters, the pending events and
+     * the state of every host
+     *
+     * @param out the checkpoint
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void writeState(ChannelOutput out) throws IOException {
+        int numFlows = completionTimes.length;
+        for (int flow = 0; flow < numFlows; flow++) {
+            if (!tl.isLocal(flow, Event.SENDER) || !tl.isLocal(flow, Event.RECEIVER)) {
+                throw new IllegalStateException("Only a whole simulation can be checkpointed, not a logical process");
+            }
+        }
+        out.writeInt(numFlows);
+        if (messages instanceof SyntheticMessages) {
+            //generated messages are written as their spec
+            out.writeInt(-1);
+            out.writeString(((SyntheticMessages) messages).toSpec());
+        } else {
+            out.writeInt(messages.size());
+            for (String m : messages) {
+                out.writeString(m);
+            }
+        }
+        out.writeInt(timeBetweenMsg);
+        out.writeFloat(lossProb);
+        out.writeFloat(corrProb);
+        out.writeInt(windowsSize);
+        out.writeInt(protocolType);
+        out.writeLong(tl.getTicksPerUnit());
+        out.writeLong(seed);
+        out.writeBoolean(antithetic);
+        out.writeString(tl.getArrivalProcess().toSpec());
+        out.writeString(nl.getLinkTrace() == null ? "" : nl.getLinkTrace().toSpec());
+
+        out.writeLong(timeSoFar);
+        out.writeLong(tl.getTimeSoFar());
+        List<Event> pending = tl.getPendingEvents();
+        Map<Event, Integer> eventIndex = new IdentityHashMap<>();
+        out.writeInt(pending.size());
+        for (Event e : pending) {
+            eventIndex.put(e, eventIndex.size());
+            Checkpoint.writeEvent(out, e);
+        }
+        for (int flow = 0; flow < numFlows; flow++) {
+            HostState.save(this, flow, Event.SENDER).write(out, eventIndex);
+            HostState.save(this, flow, Event.RECEIVER).write(out, eventIndex);
+        }
+    }
+
+    /**
+     * Recreate a run from the state written by writeState
+     *
+     * @param in the checkpoint
+     * @return the run, ready to carry on from where the checkpoint was taken
+     * @throws IOException if the checkpoint cannot be read or is not valid
+     */
+    static Simulation readState(ChannelInput in) throws IOException {
+        int numFlows = in.readInt();
+        int numMessages = in.readInt();
+        if (numFlows < 0 || numMessages < -1) {
+            throw new IOException("Invalid checkpoint: " + numFlows + " flows, " + numMessages + " messages");
+        }
+        List<String> messages;
+        if (numMessages == -1) {
+            try {
+                messages = SyntheticMessages.parse(in.readString());
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid checkpoint: " + ex.getMessage(), ex);
+            }
+        } else {
+            messages = new ArrayList<>(numMessages);
+            for (int i = 0; i < numMessages; i++) {
+                messages.add(in.readString());
+            }
+        }
+        int timeBetweenMsg = in.readInt();
+        float lossProb = in.readFloat();
+        float corrProb = in.readFloat();
+        int windowsSize = in.readInt();
+        int protocolType = in.readInt();
+        long ticksPerUnit = in.readLong();
+        long seed = in.readLong();
+        boolean antithetic = in.readBoolean();
+        String arrivals = in.readString();
+        String linkTrace = in.readString();
+        //the generators are created from the seed, then moved to where they were
+        Simulation sim = new Simulation(messages, numFlows, timeBetweenMsg, lossProb, corrProb,
+                windowsSize, protocolType, ticksPerUnit, seed, antithetic);
+
+        Timeline tl = sim.getTimeline();
+        try {
+            //the send events are pending events, restored below with the sources' states
+            tl.restoreArrivalProcess(ArrivalProcess.parse(arrivals));
+            if (!linkTrace.isEmpty()) {
+                sim.setLinkTrace(LinkTrace.parse(linkTrace));
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid checkpoint: " + ex.getMessage(), ex);
+        }
+        sim.timeSoFar = in.readLong();
+        tl.setTimeSoFar(in.readLong());
+        tl.clearEvents();
+        int numEvents = in.readInt();
+        List<Event> pending = new ArrayList<>(Math.max(0, numEvents));
+        for (int i = 0; i < numEvents; i++) {
+            Event e = Checkpoint.readEvent(in, numFlows);
+            pending.add(e);
+            tl.insertEvent(e);
+        }
+        for (int i = 0; i < 2 * numFlows; i++) {
+            HostState state = HostState.read(in, pending);
+            if (state.getFlow() != i / 2 || state.getHost() != i % 2) {
+                throw new IOException("Invalid checkpoint: expected host " + i % 2 + " of flow " + i / 2);
+            }
+            state.restore(sim);
+        }
+        sim.lastCheckpointTime = sim.timeSoFar;
+        return sim;
+    }
+
+    /**
+     * Process a group of events of one flow at the same time, as returned by
+     * Timeline.returnNextGroup
+     *
+     * @param group the events
+     */
+    void processGroup(List<Event> group) {
+        eventsProcessed += group.size();
+        processFlowEvents(group, 0, group.size());
+        probe.update(eventsProcessed, group.get(0).getTime(), tl.getQueueSize());
+    }
+
+    /**
+     * Process the events of one flow at one time, then check whether the flow
+     * has completed. Events of a flow that completed before that time (stale
+     * acks and retransmissions) are dropped.
+     *
+     * @param events list holding the events
+     * @param first index of the flow's first event in the list
+     * @param end index after the flow's last event in the list
+     */
+    private void processFlowEvents(List<Event> events, int first, int end) {
+        int flow = events.get(first).getFlow();
+        long time = events.get(first).getTime();
+        if (completionTimes[flow] >= 0 && completionTimes[flow] < time) {
+            return;
+        }
+        timeSoFar = time;
+        //a receiver whose sender is remote cannot tell when its flow completes, so what it
+        //sends once it has every message is noted, to be taken back if it came too late
+        boolean late = st[flow] == null && rt[flow] != null
+                && rt[flow].getReceiverApplication().getNumReceived() == totalMessages;
+        long sent = tl.getPacketsSent(flow, Event.RECEIVER);
+        long lost = tl.getPacketsLost(flow, Event.RECEIVER);
+        long corrupted = tl.getPacketsCorrupted(flow, Event.RECEIVER);
+
+        //acks arriving at the sender in this tick are handed over together,
+        //so the window moves and the timer is restarted only once
+        acks.clear();
+        for (int i = first; i < end; i++) {
+            Event currentEvent = events.get(i);
+            if (currentEvent.getType() == Event.MESSAGEARRIVE && currentEvent.getHost() == Event.SENDER) {
+                tl.getLog().log(Log.SIMULATOR, Log.INFO, "Message arriving from receiver to sender at time {} on flow {}", currentEvent.getTime(), flow);
+                acks.add(currentEvent.getPacket());
+                traceArrival(currentEvent);
+            }
+        }
+        if (!acks.isEmpty()) {
+            st[flow].receiveAcks(acks);
+        }
+
+        for (int i = first; i < end; i++) {
+            Event currentEvent = events.get(i);
+
+            //if event is time to send a message, call the send message function of the sender application.
+            if (currentEvent.getType() == Event.MESSAGESEND) {
+                tl.getLog().log(Log.SIMULATOR, Log.INFO, "Message sending from sender to receiver at time {} on flow {}", currentEvent.getTime(), flow);
+                tl.trace(TraceRecorder.MESSAGE_SENT, flow, Event.SENDER, sa[flow].getNumSent(), -1, 0);
+                sa[flow].sendMessage();
+            } //if event is a message arrival
+            else if (currentEvent.getType() == Event.MESSAGEARRIVE) {
+                //arrivals at the sender have already been handled with the rest of the batch,
+                //if it arrives at the receiver, call the get packet from the receiver
+                if (currentEvent.getHost() == Event.RECEIVER) {
+                    tl.getLog().log(Log.SIMULATOR, Log.INFO, "Message arriving from sender to receiver at time {} on flow {}", currentEvent.getTime(), flow);
+                    traceArrival(currentEvent);
+                    rt[flow].receiveMessage(currentEvent.getPacket());
+                }
+            } //If event is an expired timer, call the timerExpired method in the sender transport.
+            else if (currentEvent.getType() == Event.TIMER) {
+                tl.getLog().log(Log.SIMULATOR, Log.INFO, "Timer expired at time {} on flow {}", currentEvent.getTime(), flow);
+
+                tl.trace(TraceRecorder.TIMER_EXPIRED, flow, Event.SENDER, st[flow].getBase(), -1, 0);
+                FlightEvents.INSTANCE.timeout(tl.getFirstFlow() + flow, st[flow].getBase(), currentEvent.getTime());
+                tl.stopTimer(flow);
+                st[flow].timerExpired();
+            } else if (currentEvent.getType() == Event.KILLEDTIMER) {//do nothing if it is just a turned off timer.
+            } //this should not happen.
+            else {
+                System.out.println("Unidentified event type!");
+                System.exit(1);
+            }
+        }
+        if (late && tl.getPacketsSent(flow, Event.RECEIVER) != sent) {
+            lateAcks.add(new long[]{flow, time, tl.getPacketsSent(flow, Event.RECEIVER) - sent,
+                tl.getPacketsLost(flow, Event.RECEIVER) - lost, tl.getPacketsCorrupted(flow, Event.RECEIVER) - corrupted});
+        }
+        checkComplete(flow);
+    }
+
+    /**
+     * Take back the acks that local receivers sent after their flow had
+     * completed at its sender, in another logical process. A receiver only
+     * learns that its flow has completed from its sender's process, so it may
+     * have gone on acknowledging retransmissions that a sequential run, which
+     * drops the events of a flow once it has completed, never handles; those
+     * acks are taken off its packet counts. The acks of flows that have
+     * completed are forgotten, the others are kept for a later call. This
+     * must only be called once no process can go back to before the acks.
+     *
+     * @param lps every logical process of the run, this one included
+     */
+    void dropLateAcks(Simulation[] lps) {
+        int kept = 0;
+        for (long[] ack : lateAcks) {
+            int flow = (int) ack[0];
+            long completionTime = lps[Timeline.logicalProcessOf(flow, Event.SENDER, lps.length)].getCompletionTime(flow);
+            if (completionTime < 0) {
+                lateAcks.set(kept++, ack);
+            } else if (ack[1] > completionTime) {
+                tl.setPacketsSent(flow, Event.RECEIVER, tl.getPacketsSent(flow, Event.RECEIVER) - ack[2]);
+                tl.setPacketsLost(flow, Event.RECEIVER, tl.getPacketsLost(flow, Event.RECEIVER) - ack[3]);
+                tl.setPacketsCorrupted(flow, Event.RECEIVER, tl.getPacketsCorrupted(flow, Event.RECEIVER) - ack[4]);
+            }
+        }
+        lateAcks.subList(kept, lateAcks.size()).clear();
+    }
+
+    /**
+     * Return the number of groups of acks noted for dropLateAcks, to be put
+     * back by forgetLateAcks
+     *
+     * @return number of groups of acks
+     */
+    int getLateAckCount() {
+        return lateAcks.size();
+    }
+
+    /**
+     * Forget the acks noted for dropLateAcks after a point, e.g. when the
+     * groups that sent them are rolled back
+     *
+     * @param count number of groups of acks to keep, see getLateAckCount
+     */
+    void forgetLateAcks(int count) {
+        lateAcks.subList(count, lateAcks.size()).clear();
+    }
+
+    private void traceArrival(Event e) {
+        if (!tl.hasTraceRecorder()) {
+            return;
+        }
+        Packet p = e.getPacket();
+        tl.trace(TraceRecorder.PACKET_ARRIVED, e.getFlow(), e.getHost(), p.getSeqnum(), p.getAcknum(),
+                p.isCorrupt() ? TraceRecorder.CORRUPTED : 0);
+    }
+
+    /**
+     * Check whether a flow is done: its receiver application has taken every
+     * message and its sender has nothing left unacknowledged. Acks are
+     * cumulative and only sent for messages that were delivered, so this is
+     * checked at the sender alone: every message was handed to the transport
+     * and all of them are acknowledged. A flow that is done gets its
+     * completion time recorded.
+     *
+     * @param flow the flow to check
+     */
+    private void checkComplete(int flow) {
+        if (st[flow] != null && completionTimes[flow] < 0
+                && sa[flow].getNumSent() == totalMessages
+                && st[flow].isWindowEmpty()) {
+            completionTimes[flow] = timeSoFar;
+            flowsCompleted++;
+        }
+    }
+
+    /**
+     * Return the statistics of the run so far
+     *
+     * @return per-flow and aggregate statistics
+     */
+    public FlowStatistics getStatistics() {
+        int[] delivered = new int[rt.length];
+        for (int flow = 0; flow < rt.length; flow++) {
+            delivered[flow] = getDelivered(flow);
+        }
+        return new FlowStatistics(completionTimes.clone(), delivered, timeSoFar, getMetrics(), getLatencies());
+    }
+
+    /**
+     * Return the histogram of the latencies of the messages delivered so far,
+     * from the time they were handed to the sender transport to the time they
+     * were delivered to the receiver application. Each receiver application
+     * counts the latencies as it receives the messages.
+     *
+     * @return the latencies, in ticks
+     */
+    public LatencyHistogram getLatencies() {
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (int flow = 0; flow < rt.length; flow++) {
+            if (rt[flow] != null) {
+                latencies.add(rt[flow].getReceiverApplication().getLatencies());
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * Return the counters of the local hosts so far
+     *
+     * @return the metrics of the run
+     */
+    public RunMetrics getMetrics() {
+        RunMetrics metrics = new RunMetrics();
+        metrics.set(RunMetrics.TOTAL_TIME, timeSoFar);
+        for (int flow = 0; flow < rt.length; flow++) {
+            if (st[flow] != null) {
+                st[flow].addMetrics(metrics);
+                addPacketCounts(metrics, flow, Event.SENDER);
+            }
+            if (rt[flow] != null) {
+                rt[flow].addMetrics(metrics);
+                addPacketCounts(metrics, flow, Event.RECEIVER);
+            }
+        }
+        return metrics;
+    }
+
+    private void addPacketCounts(RunMetrics metrics, int flow, int host) {
+        metrics.add(RunMetrics.PACKETS_SENT, tl.getPacketsSent(flow, host));
+        metrics.add(RunMetrics.PACKETS_LOST, tl.getPacketsLost(flow, host));
+        metrics.add(RunMetrics.PACKETS_CORRUPTED, tl.getPacketsCorrupted(flow, host));
+    }
+
+    /**
+     * Set the tracing level of the run
+     *
+     * @param tracing tracing level, see NetworkSimulator.run
+     */
+    public void setTracing(int tracing) {
+        tl.setTracing(tracing);
+    }
+
+    /**
+     * Set the recorder of the binary trace of the run
+     *
+     * @param trace the recorder, null for no binary trace
+     */
+    public void setTraceRecorder(TraceRecorder trace) {
+        tl.setTraceRecorder(trace);
+    }
+
+    /**
+     * Set the process of the send times of every flow, Poisson arrivals with
+     * average timeBetweenMsg by default. This has to be done before the run
+     * starts.
+     *
+     * @param process the arrival process
+     * @throws IllegalStateException if the run has started
+     */
+    public void setArrivalProcess(ArrivalProcess process) {
+        tl.setArrivalProcess(process);
+    }
+
+    /**
+     * Replay a trace of the losses, corruptions and delays of the packets
+     * instead of drawing them with the loss and corruption probabilities
+     *
+     * @param trace the trace, null to go back to the probabilities
+     */
+    public void setLinkTrace(LinkTrace trace) {
+        nl.setLinkTrace(trace);
+    }
+
+    /**
+     * Return the trace replayed by the network layer
+     *
+     * @return the trace, null if none
+     */
+    public LinkTrace getLinkTrace() {
+        return nl.getLinkTrace();
+    }
+
+    /**
+     * Set where the receiver applications put the messages delivered to them,
+     * a PrintSink by default
+     *
+     * @param sink the sink of the run
+     */
+    public void setReceiverSink(ReceiverSink sink) {
+        for (int flow = 0; flow < rt.length; flow++) {
+            if (rt[flow] != null) {
+                rt[flow].getReceiverApplication().setSink(sink, tl.getFirstFlow() + flow);
+            }
+        }
+    }
+
+    Timeline getTimeline() {
+        return tl;
+    }
+
+    /**
+     * Return the number of events processed since this simulation was
+     * created, stale ones included. Events processed again after a rollback
+     * count twice, and a simulation restored from a checkpoint starts over
+     * from 0.
+     *
+     * @return the number of events
+     */
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    /**
+     * Return the probe the simulation publishes its progress to, up to date
+     *
+     * @return the probe
+     */
+    Telemetry.Probe getProbe() {
+        probe.update(eventsProcessed, timeSoFar, tl.getQueueSize());
+        return probe;
+    }
+
+    int getProtocolType() {
+        return protocolType;
+    }
+
+    int getWindowSize() {
+        return windowsSize;
+    }
+
+    float getLossProb() {
+        return lossProb;
+    }
+
+    int getFlowsCompleted() {
+        return flowsCompleted;
+    }
+
+    long getTimeSoFar() {
+        return timeSoFar;
+    }
+
+    long getCompletionTime(int flow) {
+        return completionTimes[flow];
+    }
+
+    /**
+     * Set the completion time of a flow whose sender is local, e.g. when the
+     * flow is put back to an earlier state
+     *
+     * @param flow the flow
+     * @param time the completion time, -1 if the flow has not completed
+     */
+    void setCompletionTime(int flow, long time) {
+        if (completionTimes[flow] >= 0) {
+            flowsCompleted--;
+        }
+        completionTimes[flow] = time;
+        if (time >= 0) {
+            flowsCompleted++;
+        }
+    }
+
+    SenderApplication getSenderApplication(int flow) {
+        return sa[flow];
+    }
+
+    SenderTransport getSenderTransport(int flow) {
+        return st[flow];
+    }
+
+    ReceiverTransport getReceiverTransport(int flow) {
+        return rt[flow];
+    }
+
+    /**
+     * Return the number of messages delivered on a flow whose receiver is local
+     *
+     * @param flow the flow
+     * @return number of delivered messages, 0 if the receiver is not local
+     */
+    int getDelivered(int flow) {
+        return rt[flow] == null ? 0 : rt[flow].getReceiverApplication().getNumReceived();
+    }
+}
@@ -0,0 +1,77 @@
+package transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+/**
+ * A class which holds the state of a simulation at one point in memory, so
+ * that runs which share a common prefix (e.g. a warm-up before a parameter
+ * is changed) only simulate it once. The state is kept in the checkpoint
+ * format, so a snapshot is compact, never changes, and can be forked into any
+ * number of independent simulations, each carrying on from the same point.
+ */
+public class Snapshot {
+
+    private final byte[] state; //the simulation in the checkpoint format
+    private final int tracing; //tracing level of the simulation
+
+    /**
+     * Take a snapshot of a simulation
+     *
+     * @param sim the simulation, which must not be a logical process of a
+     * parallel run
+     */
+    Snapshot(Simulation sim) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ChannelOutput out = new ChannelOutput(Channels.newChannel(bytes));
+            Checkpoint.write(sim, out);
+            out.flush();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not take a snapshot", ex);
+        }
+        state = bytes.toByteArray();
+        tracing = sim.getTimeline().getTracing();
+    }
+
+    /**
+     * Create a new simulation in the state of the snapshot
+     *
+     * @return the simulation, ready to carry on with run()
+     */
+    public Simulation fork() {
+        Simulation sim;
+        try {
+            sim = Checkpoint.read(new ChannelInput(Channels.newChannel(new ByteArrayInputStream(state))), "snapshot");
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not fork the snapshot", ex);
+        }
+        sim.setTracing(tracing);
+        return sim;
+    }
+
+    /**
+     * Create a new simulation in the state of the snapshot, with different
+     * loss and corruption probabilities from then on
+     *
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @return the simulation, ready to carry on with run()
+     */
+    public Simulation fork(float lossProb, float corrProb) {
+        Simulation sim = fork();
+        sim.setNetworkParameters(lossProb, corrProb);
+        return sim;
+    }
+
+    /**
+     * Return the size of the snapshot
+     *
+     * @return size in bytes
+     */
+    public int size() {
+        return state.length;
+    }
+}
@@ -0,0 +1,338 @@
+package transport;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A list of messages generated on demand instead of read from a file, so that
+ * a run can send 10^8 messages without writing or loading them first. It can
+ * be passed wherever a simulation takes its messages.
+ *
+ * Message i is rebuilt from the seed and i alone whenever it is asked for:
+ * its size is drawn from the size distribution, then its characters from the
+ * 64 letters, digits, '-' and '_', with SplitMix64 (see RandomStream). The
+ * list holds no message, only the parameters, and every flow, shard or
+ * restored checkpoint of a run sees the same messages. The characters are
+ * generated into a buffer reused by each thread, and only the String handed
+ * to the transport is allocated.
+ *
+ * A list can also be given as a spec, in place of a file name:
+ *
+ * synthetic:count=100000000,size=pareto:20:1.5:4000,seed=7
+ *
+ * where the size is fixed:SIZE, uniform:MIN:MAX, pareto:SCALE:SHAPE:MAX or
+ * empirical:SIZE@P:SIZE@P:..., P being the cumulative probability of the
+ * sizes up to SIZE, the last one 1.
+ */
+public class SyntheticMessages extends AbstractList<String> implements RandomAccess {
+
+    public static final String PREFIX = "synthetic:";
+
+    public static final int FIXED = 0;
+    public static final int UNIFORM = 1;
+    public static final int PARETO = 2;
+    public static final int EMPIRICAL = 3;
+
+    public static final int MAX_SIZE = 1 << 20; //largest message, in characters
+
+    private static final String[] DISTRIBUTION_NAMES = {"fixed", "uniform", "pareto", "empirical"};
+    private static final char[] ALPHABET
+            = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double TWO_POW_53 = 1L << 53;
+
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
+    private final int count; //number of messages
+    private final int distribution; //FIXED, UNIFORM, PARETO or EMPIRICAL
+    private final int min; //fixed size, smallest uniform size, or largest Pareto size
+    private final int max; //largest uniform or Pareto size
+    private final double scale; //scale (smallest size) of the Pareto distribution
+    private final double shape; //shape of the Pareto distribution
+    private final int[] sizes; //sizes of the empirical distribution, increasing
+    private final double[] cdf; //cumulative probability of each size of the empirical distribution
+    private final long seed;
+
+    private SyntheticMessages(int count, int distribution, int min, int max, double scale, double shape,
+            int[] sizes, double[] cdf, long seed) {
+        if (count < 0) {
+            throw new IllegalArgumentException("negative number of messages " + count);
+        }
+        this.count = count;
+        this.distribution = distribution;
+        this.min = min;
+        this.max = max;
+        this.scale = scale;
+        this.shape = shape;
+        this.sizes = sizes;
+        this.cdf = cdf;
+        this.seed = seed;
+    }
+
+    private static int checkSize(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("message size " + size + " not in 1.." + MAX_SIZE);
+        }
+        return size;
+    }
+
+    /**
+     * Create messages that all have the same size
+     *
+     * @param count number of messages
+     * @param size size of every message, in characters
+     * @param seed seed of the content
+     * @return the messages
+     */
+    public static SyntheticMessages fixed(int count, int size, long seed) {
+        return new SyntheticMessages(count, FIXED, checkSize(size), size, 0, 0, null, null, seed);
+    }
+
+    /**
+     * Create messages whose sizes are uniform between two bounds
+     *
+     * @param count number of messages
+     * @param min smallest size, in characters
+     * @param max largest size, included
+     * @param seed seed of the sizes and content
+     * @return the messages
+     */
+    public static SyntheticMessages uniform(int count, int min, int max, long seed) {
+        if (checkSize(min) > checkSize(max)) {
+            throw new IllegalArgumentException("smallest size " + min + " above largest " + max);
+        }
+        return new SyntheticMessages(count, UNIFORM, min, max, 0, 0, null, null, seed);
+    }
+
+    /**
+     * Create messages whose sizes follow a Pareto distribution, a few long
+     * messages among many short ones, cut off at a largest size
+     *
+     * @param count number of messages
+     * @param scale smallest size, in characters
+     * @param shape shape of the distribution; the smaller, the heavier the
+     * tail
+     * @param max largest size, larger draws are cut down to it
+     * @param seed seed of the sizes and content
+     * @return the messages
+     */
+    public static SyntheticMessages pareto(int count, double scale, double shape, int max, long seed) {
+        if (!(scale >= 1) || !(shape > 0) || checkSize(max) < scale) {
+            throw new IllegalArgumentException("invalid Pareto distribution: scale " + scale + ", shape " + shape
+                    + ", largest size " + max);
+        }
+        return new SyntheticMessages(count, PARETO, (int) Math.ceil(scale), max, scale, shape, null, null, seed);
+    }
+
+    /**
+     * Create messages whose sizes follow an empirical distribution, e.g. one
+     * measured on real traffic
+     *
+     * @param count number of messages
+     * @param sizes the sizes, increasing
+     * @param cdf cumulative probability of each size, i.e. of a message being
+     * at most that size; increasing and ending with 1
+     * @param seed seed of the sizes and content
+     * @return the messages
+     */
+    public static SyntheticMessages empirical(int count, int[] sizes, double[] cdf, long seed) {
+        if (sizes.length == 0 || sizes.length != cdf.length || cdf[cdf.length - 1] != 1) {
+            throw new IllegalArgumentException("the distribution needs a probability per size, the last one 1");
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            checkSize(sizes[i]);
+            if (i > 0 && (sizes[i] <= sizes[i - 1] || cdf[i] < cdf[i - 1])) {
+                throw new IllegalArgumentException("sizes and probabilities must increase");
+            }
+        }
+        return new SyntheticMessages(count, EMPIRICAL, sizes[0], sizes[sizes.length - 1], 0, 0,
+                sizes.clone(), cdf.clone(), seed);
+    }
+
+    /**
+     * Return whether a file name is the spec of synthetic messages
+     *
+     * @param fileName the file name
+     * @return true if it starts with PREFIX
+     */
+    public static boolean isSpec(String fileName) {
+        return fileName.startsWith(PREFIX);
+    }
+
+    /**
+     * Create messages from a spec, see the class comment
+     *
+     * @param spec the spec
+     * @return the messages
+     */
+    public static SyntheticMessages parse(String spec) {
+        if (!isSpec(spec)) {
+            throw new IllegalArgumentException("not a synthetic spec: " + spec);
+        }
+        int count = -1;
+        String size = null;
+        long seed = 0;
+        try {
+            for (String param : spec.substring(PREFIX.length()).split(",")) {
+                int eq = param.indexOf('=');
+                String key = eq < 0 ? param : param.substring(0, eq).trim();
+                String value = eq < 0 ? "" : param.substring(eq + 1).trim();
+                if (key.equals("count")) {
+                    count = Integer.parseInt(value);
+                } else if (key.equals("size")) {
+                    size = value;
+                } else if (key.equals("seed")) {
+                    seed = Long.parseLong(value);
+                } else {
+                    throw new IllegalArgumentException("unknown parameter " + key + " in " + spec);
+                }
+            }
+            if (count < 0 || size == null) {
+                throw new IllegalArgumentException("count and size are required: " + spec);
+            }
+            String[] parts = size.split(":");
+            switch (parts[0]) {
+                case "fixed":
+                    return fixed(count, Integer.parseInt(parts[1]), seed);
+                case "uniform":
+                    return uniform(count, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), seed);
+                case "pareto":
+                    return pareto(count, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                            Integer.parseInt(parts[3]), seed);
+                case "empirical":
+                    int[] sizes = new int[parts.length - 1];
+                    double[] cdf = new double[parts.length - 1];
+                    for (int i = 1; i < parts.length; i++) {
+                        String[] point = parts[i].split("@");
+                        sizes[i - 1] = Integer.parseInt(point[0]);
+                        cdf[i - 1] = Double.parseDouble(point[1]);
+                    }
+                    return empirical(count, sizes, cdf, seed);
+                default:
+                    throw new IllegalArgumentException("unknown size distribution " + parts[0] + " in " + spec);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("invalid synthetic spec: " + spec, ex);
+        }
+    }
+
+    /**
+     * Return the spec of the messages, which parse turns back into the same
+     * messages
+     *
+     * @return the spec
+     */
+    public String toSpec() {
+        StringBuilder sb = new StringBuilder(PREFIX).append("count=").append(count)
+                .append(",size=").append(DISTRIBUTION_NAMES[distribution]);
+        switch (distribution) {
+            case FIXED:
+                sb.append(':').append(min);
+                break;
+            case UNIFORM:
+                sb.append(':').append(min).append(':').append(max);
+                break;
+            case PARETO:
+                sb.append(':').append(scale).append(':').append(shape).append(':').append(max);
+                break;
+            default:
+                for (int i = 0; i < sizes.length; i++) {
+                    sb.append(':').append(sizes[i]).append('@').append(cdf[i]);
+                }
+        }
+        return sb.append(",seed=").append(seed).toString();
+    }
+
+    @Override
+    public String toString() {
+        return toSpec();
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Generate a message
+     *
+     * @param index number of the message
+     * @return the message
+     */
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("message " + index + " of " + count);
+        }
+        long state = start(index);
+        state += GOLDEN_GAMMA;
+        int size = size(RandomStream.mix64(state));
+        char[] buffer = BUFFER.get();
+        if (buffer.length < size) {
+            buffer = new char[Math.max(size, 2 * buffer.length)];
+            BUFFER.set(buffer);
+        }
+        int i = 0;
+        while (i < size) {
+            state += GOLDEN_GAMMA;
+            long bits = RandomStream.mix64(state);
+            //ten characters of six bits each
+            for (int end = Math.min(size, i + 10); i < end; i++) {
+                buffer[i] = ALPHABET[(int) bits & 63];
+                bits >>>= 6;
+            }
+        }
+        return new String(buffer, 0, size);
+    }
+
+    /**
+     * Return the size of a message without generating it
+     *
+     * @param index number of the message
+     * @return its size, in characters
+     */
+    public int sizeOf(int index) {
+        return size(RandomStream.mix64(start(index) + GOLDEN_GAMMA));
+    }
+
+    private long start(int index) {
+        return RandomStream.mix64(seed + RandomStream.mix64((index + 1L) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * Draw a size
+     *
+     * @param bits 64 random bits
+     * @return the size
+     */
+    private int size(long bits) {
+        double u = (bits >>> 11) / TWO_POW_53; //uniform in [0, 1)
+        switch (distribution) {
+            case FIXED:
+                return min;
+            case UNIFORM:
+                return min + (int) (u * (max - min + 1));
+            case PARETO:
+                //inverse transform, 1 - u is in (0, 1]
+                double size = scale / Math.pow(1 - u, 1 / shape);
+                return size >= max ? max : Math.max(min, (int) size);
+            default:
+                int low = 0;
+                int high = cdf.length - 1;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (cdf[mid] > u) {
+                        high = mid;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+                return sizes[low];
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package transport;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A class which keeps the live telemetry of the runs of this JVM, so that a
+ * sweep running for hours can be watched from outside: counters over JMX (see
+ * TelemetryMBean) and flight recorder events (see FlightEvents).
+ *
+ * Every simulation publishes its progress to its own Probe after each tick,
+ * with ordered stores that take no lock and no fence, and runs only register
+ * here when they start and end. The counters are added up when they are
+ * read, so a run pays a few stores per tick whether anybody watches or not,
+ * and the telemetry can stay on in production sweeps. The one rate, events
+ * per second, is sampled by a daemon thread once the telemetry is registered,
+ * so that reading it has no effect on what the next reader gets.
+ */
+public class Telemetry implements TelemetryMBean {
+
+    public static final String OBJECT_NAME = "transport:type=Telemetry";
+    public static final long SAMPLE_MILLIS = 1000; //time between two samples of the events per second
+
+    private static final Telemetry INSTANCE = new Telemetry();
+
+    private final List<Run> active = new ArrayList<>(); //runs going on
+    private long runsStarted; //runs started so far
+    private long runsCompleted; //runs ended so far
+    private long eventsCompleted; //events processed by the runs that have ended
+    private long peakQueued; //high-water mark of the queue depth of the runs that have ended
+    private long sampleNanos; //wall-clock time of the last sample of the events per second, 0 before
+    private long sampleEvents; //events processed at the last sample
+    private double eventsPerSecond; //events per second between the last two samples
+    private boolean registered; //whether the MBean is registered
+
+    /**
+     * The progress of one simulation, written by the thread running it and
+     * read by whoever reads the telemetry
+     */
+    static final class Probe {
+
+        private static final AtomicLongFieldUpdater<Probe> EVENTS
+                = AtomicLongFieldUpdater.newUpdater(Probe.class, "events");
+        private static final AtomicLongFieldUpdater<Probe> TIME
+                = AtomicLongFieldUpdater.newUpdater(Probe.class, "time");
+        private static final AtomicLongFieldUpdater<Probe> QUEUED
+                = AtomicLongFieldUpdater.newUpdater(Probe.class, "queued");
+        private static final AtomicLongFieldUpdater<Probe> PEAK_QUEUED
+                = AtomicLongFieldUpdater.newUpdater(Probe.class, "peakQueued");
+
+        private volatile long events; //events processed by the simulation
+        private volatile long time; //time of the last tick processed, in ticks
+        private volatile long queued; //events waiting in the timeline
+        private volatile long peakQueued; //largest number of events waiting in the timeline
+
+        /**
+         * Publish the progress of the simulation after a tick
+         *
+         * @param events events processed so far
+         * @param time time of the tick
+         * @param queued events waiting in the timeline
+         */
+        void update(long events, long time, int queued) {
+            EVENTS.lazySet(this, events);
+            TIME.lazySet(this, time);
+            QUEUED.lazySet(this, queued);
+            if (queued > peakQueued) {
+                PEAK_QUEUED.lazySet(this, queued);
+            }
+        }
+    }
+
+    /**
+     * A run going on: an engine and the simulations it is made of
+     */
+    static final class Run {
+
+        private final long id; //number of the run in this JVM
+        private final String engine; //name of the engine running it
+        private final int numFlows;
+        private final int protocol;
+        private final int windowSize;
+        private final float lossProb;
+        private final long ticksPerUnit;
+        private final Probe[] probes; //probes of the simulations of the run
+        private final long startEvents; //events the simulations had processed when the run started
+        private final long startTime; //simulated time when the run started, in ticks
+        private final long startNanos; //wall-clock time when the run started
+        private Object flight; //what the flight recorder keeps for the run, see FlightEvents
+
+        private Run(long id, String engine, int numFlows, Simulation[] parts) {
+            this.id = id;
+            this.engine = engine;
+            this.numFlows = numFlows;
+            protocol = parts[0].getProtocolType();
+            windowSize = parts[0].getWindowSize();
+            lossProb = parts[0].getLossProb();
+            ticksPerUnit = parts[0].getTimeline().getTicksPerUnit();
+            probes = new Probe[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                probes[i] = parts[i].getProbe();
+            }
+            startEvents = getEventsSoFar();
+            startTime = getTimeSoFar();
+            startNanos = System.nanoTime();
+        }
+
+        private long getEventsSoFar() {
+            long total = 0;
+            for (Probe probe : probes) {
+                total += probe.events;
+            }
+            return total;
+        }
+
+        private long getTimeSoFar() {
+            long time = 0;
+            for (Probe probe : probes) {
+                time = Math.max(time, probe.time);
+            }
+            return time;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        String getEngine() {
+            return engine;
+        }
+
+        int getNumFlows() {
+            return numFlows;
+        }
+
+        int getProtocol() {
+            return protocol;
+        }
+
+        int getWindowSize() {
+            return windowSize;
+        }
+
+        float getLossProb() {
+            return lossProb;
+        }
+
+        /**
+         * Return the number of events processed since the run started
+         *
+         * @return number of events
+         */
+        long getEvents() {
+            return getEventsSoFar() - startEvents;
+        }
+
+        /**
+         * Return the simulated time the run has gone through
+         *
+         * @return simulated time, in time units
+         */
+        double getSimulatedTime() {
+            return (double) (getTimeSoFar() - startTime) / ticksPerUnit;
+        }
+
+        /**
+         * Return the wall-clock time since the run started
+         *
+         * @return elapsed time, in nanoseconds
+         */
+        long getElapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        /**
+         * Return the number of events waiting in the timelines of the run
+         *
+         * @return queue depth
+         */
+        long getQueued() {
+            long total = 0;
+            for (Probe probe : probes) {
+                total += probe.queued;
+            }
+            return total;
+        }
+
+        /**
+         * Return the largest number of events one timeline of the run has had
+         * waiting at once
+         *
+         * @return high-water mark of the queue depth
+         */
+        long getPeakQueued() {
+            long peak = 0;
+            for (Probe probe : probes) {
+                peak = Math.max(peak, probe.peakQueued);
+            }
+            return peak;
+        }
+
+        /**
+         * Tell the telemetry the run has ended, whether it completed or failed
+         */
+        void end() {
+            INSTANCE.end(this);
+        }
+    }
+
+    private Telemetry() {
+    }
+
+    /**
+     * Return the telemetry of this JVM
+     *
+     * @return the telemetry
+     */
+    public static Telemetry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the telemetry with the platform MBean server under
+     * OBJECT_NAME, if it is not already, so that it can be read with JConsole,
+     * VisualVM or any JMX client
+     *
+     * @throws JMException if it cannot be registered
+     */
+    public static void register() throws JMException {
+        synchronized (INSTANCE) {
+            if (!INSTANCE.registered) {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+                INSTANCE.registered = true;
+                Thread sampler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (true) {
+                                INSTANCE.sample(System.nanoTime());
+                                Thread.sleep(SAMPLE_MILLIS);
+                            }
+                        } catch (InterruptedException ex) {
+                            //the JVM is going away
+                        }
+                    }
+                }, "telemetry-sampler");
+                sampler.setDaemon(true);
+                sampler.start();
+            }
+        }
+    }
+
+    /**
+     * Take a sample of the events processed, and work out the events per
+     * second since the previous one
+     *
+     * @param now wall-clock time of the sample, in nanoseconds
+     */
+    synchronized void sample(long now) {
+        long events = getEventsProcessed();
+        if (sampleNanos != 0 && now > sampleNanos) {
+            eventsPerSecond = (events - sampleEvents) * 1e9 / (now - sampleNanos);
+        }
+        sampleNanos = now;
+        sampleEvents = events;
+    }
+
+    /**
+     * Record the start of a run
+     *
+     * @param engine name of the engine running it
+     * @param numFlows number of flows of the run
+     * @param parts the simulations the run is made of
+     * @return the run, to end when it is over
+     */
+    Run begin(String engine, int numFlows, Simulation... parts) {
+        Run run;
+        synchronized (this) {
+            run = new Run(runsStarted++, engine, numFlows, parts);
+            active.add(run);
+        }
+        run.flight = FlightEvents.INSTANCE.runStarted(run);
+        return run;
+    }
+
+    private void end(Run run) {
+        synchronized (this) {
+            active.remove(run);
+            runsCompleted++;
+            eventsCompleted += run.getEvents();
+            peakQueued = Math.max(peakQueued, run.getPeakQueued());
+        }
+        FlightEvents.INSTANCE.runEnded(run, run.flight);
+    }
+
+    /**
+     * Return the runs going on
+     *
+     * @return a copy of the list of active runs
+     */
+    synchronized List<Run> getActive() {
+        return new ArrayList<>(active);
+    }
+
+    @Override
+    public synchronized int getActiveRuns() {
+        return active.size();
+    }
+
+    @Override
+    public synchronized long getRunsStarted() {
+        return runsStarted;
+    }
+
+    @Override
+    public synchronized long getRunsCompleted() {
+        return runsCompleted;
+    }
+
+    @Override
+    public synchronized long getEventsProcessed() {
+        long total = eventsCompleted;
+        for (Run run : active) {
+            total += run.getEvents();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    @Override
+    public synchronized long getQueueDepth() {
+        long total = 0;
+        for (Run run : active) {
+            total += run.getQueued();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized long getQueueHighWaterMark() {
+        long peak = peakQueued;
+        for (Run run : active) {
+            peak = Math.max(peak, run.getPeakQueued());
+        }
+        return peak;
+    }
+
+    @Override
+    public synchronized double getSimulatedTimeRatio() {
+        if (active.isEmpty()) {
+            return 0;
+        }
+        double total = 0;
+        for (Run run : active) {
+            long elapsed = run.getElapsedNanos();
+            if (elapsed > 0) {
+                total += run.getSimulatedTime() * 1e9 / elapsed;
+            }
+        }
+        return total / active.size();
+    }
+}
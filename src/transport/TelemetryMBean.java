@@ -0,0 +1,70 @@
+package transport;
+
+/**
+ * The live counters of the runs of this JVM, as exposed over JMX under
+ * Telemetry.OBJECT_NAME. See Telemetry.
+ */
+public interface TelemetryMBean {
+
+    /**
+     * Return the number of runs going on
+     *
+     * @return number of active runs
+     */
+    int getActiveRuns();
+
+    /**
+     * Return the number of runs started since the JVM started
+     *
+     * @return number of runs started
+     */
+    long getRunsStarted();
+
+    /**
+     * Return the number of runs that have ended, failed ones included
+     *
+     * @return number of runs ended
+     */
+    long getRunsCompleted();
+
+    /**
+     * Return the number of events processed by all runs, the active ones up
+     * to their last tick
+     *
+     * @return number of events
+     */
+    long getEventsProcessed();
+
+    /**
+     * Return the number of events processed per second of wall-clock time
+     * over the last second. The rate is sampled once a second from when the
+     * telemetry is registered, and is 0 until two samples have been taken;
+     * reading it changes nothing.
+     *
+     * @return events per second
+     */
+    double getEventsPerSecond();
+
+    /**
+     * Return the number of events waiting in the timelines of the active runs
+     *
+     * @return queue depth
+     */
+    long getQueueDepth();
+
+    /**
+     * Return the largest number of events a timeline has had waiting at once,
+     * over all runs
+     *
+     * @return high-water mark of the queue depth
+     */
+    long getQueueHighWaterMark();
+
+    /**
+     * Return the simulated time units the active runs go through per second
+     * of wall-clock time, on average
+     *
+     * @return ratio of simulated to wall-clock time, 0 with no active run
+     */
+    double getSimulatedTimeRatio();
+}
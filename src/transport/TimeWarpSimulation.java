@@ -0,0 +1,507 @@
+package transport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * A class which runs a simulation as an optimistic (Time Warp) parallel
+ * discrete-event simulation. The hosts are split between logical processes as
+ * in ParallelSimulation, so every packet goes from one process to another,
+ * but a process does not wait for the others: it keeps processing its own
+ * events and sends the events it creates for other processes to their inboxes
+ * right away.
+ *
+ * Events are processed in groups: all events of one host at one time (see
+ * Timeline.returnNextGroup). Before a group is processed the state of its host
+ * is saved (see HostState), and the group is remembered with every event it
+ * created. When an event arrives that should have been processed before a
+ * group that already was (a straggler), the process rolls back: the groups are
+ * undone from the latest one, their hosts are put back to the saved state,
+ * their events are put back into the timeline, the local events they created
+ * are cancelled and anti-messages are sent for the remote ones. An
+ * anti-message cancels its event, after rolling back the receiving process if
+ * the event was already processed.
+ *
+ * A process only runs ahead of global virtual time by its window, eight time
+ * units by default (see setWindow): the further ahead it gets, the more it
+ * has to undo when a straggler comes. Every gvtInterval groups, or when it
+ * has nothing to do within its window, a process stops at a barrier. Once
+ * all are there, global virtual time (the earliest pending event of all
+ * processes, including the events and anti-messages in inboxes) is computed.
+ * No process can be rolled back to before it, so the saved state of older
+ * groups is discarded. The run is over when every flow has completed before global
+ * virtual time, or no events are left. Once it is, the acks that receivers
+ * sent after their flow had completed are taken back, as in
+ * ParallelSimulation.
+ *
+ * Events are ordered the same way in every timeline and each host has its own
+ * random number generator, so the results are exactly the same as those of a
+ * Simulation with the same seed.
+ */
+public class TimeWarpSimulation {
+
+    public static final int DEFAULT_WINDOW = 8; //time units a process may run ahead of global virtual time
+
+    private final Simulation[] lps; //logical processes
+    private final int numFlows;
+    private final int gvtInterval; //number of groups a process handles between two GVT computations
+    private final List<ConcurrentLinkedQueue<Envelope>> inboxes; //events sent to each process
+    private final List<ArrayDeque<GroupRecord>> histories; //groups processed by each process since GVT, oldest first
+    private final long[] rollbacks; //number of rollbacks of each process
+    private final long[] antiMessages; //number of anti-messages sent by each process
+    private final long[] remoteEvents; //number of events each process sent to another, anti-messages left out
+    private final long[] windows; //time each process may run ahead of global virtual time, in ticks
+    private final CyclicBarrier barrier;
+
+    private long gvt; //global virtual time
+    private boolean done; //whether the run is over
+    private RuntimeException failure; //first error thrown by a process
+
+    /**
+     * An event sent to another process, or an anti-message cancelling one
+     */
+    private static class Envelope {
+
+        final Event event;
+        final boolean anti; //true if the event is to be cancelled
+
+        Envelope(Event event, boolean anti) {
+            this.event = event;
+            this.anti = anti;
+        }
+    }
+
+    /**
+     * A group of events that has been processed, with what is needed to undo
+     * it
+     */
+    private static class GroupRecord {
+
+        final List<Event> events; //the events of the group
+        final HostState state; //state of the host before the group
+        final List<Event> created; //events created while processing the group
+        final int lateAcks; //groups of acks the process had noted before the group, see Simulation.dropLateAcks
+
+        GroupRecord(List<Event> events, HostState state, List<Event> created, int lateAcks) {
+            this.events = events;
+            this.state = state;
+            this.created = created;
+            this.lateAcks = lateAcks;
+        }
+
+        long getTime() {
+            return events.get(0).getTime();
+        }
+    }
+
+    /**
+     * Create an optimistic parallel simulation in which every flow sends the
+     * same messages
+     *
+     * @param messages the messages each flow sends
+     * @param numFlows number of flows
+     * @param timeBetweenMsg time between messages
+     * @param lossProb loss probability
+     * @param corrProb corruption probability
+     * @param windowsSize windows size
+     * @param protocolType Go-back-N vs TCP 0 means go­back­n,1 means TCP
+     * @param ticksPerUnit number of ticks in one time unit
+     * @param seed seed of the hosts' random number generators
+     * @param numLps number of logical processes (and threads)
+     * @param gvtInterval number of groups of events a process handles between
+     * two computations of global virtual time
+     */
+    public TimeWarpSimulation(List<String> messages, int numFlows,
+            int timeBetweenMsg, float lossProb, float corrProb,
+            int windowsSize, int protocolType, long ticksPerUnit, long seed,
+            int numLps, int gvtInterval) {
+        if (gvtInterval < 1) {
+            throw new IllegalArgumentException("GVT interval must be at least 1: " + gvtInterval);
+        }
+        this.numFlows = numFlows;
+        this.gvtInterval = gvtInterval;
+        lps = new Simulation[numLps];
+        inboxes = new ArrayList<>();
+        histories = new ArrayList<>();
+        for (int lp = 0; lp < numLps; lp++) {
+            lps[lp] = new Simulation(messages, numFlows, timeBetweenMsg, lossProb, corrProb,
+                    windowsSize, protocolType, ticksPerUnit, seed, lp, numLps);
+            inboxes.add(new ConcurrentLinkedQueue<Envelope>());
+            histories.add(new ArrayDeque<GroupRecord>());
+        }
+        rollbacks = new long[numLps];
+        antiMessages = new long[numLps];
+        remoteEvents = new long[numLps];
+        windows = new long[numLps];
+        setWindow(DEFAULT_WINDOW * ticksPerUnit);
+        barrier = new CyclicBarrier(numLps, new Runnable() {
+            @Override
+            public void run() {
+                computeGvt();
+            }
+        });
+    }
+
+    /**
+     * Set the tracing level of the run
+     *
+     * @param tracing tracing level, see NetworkSimulator.run
+     */
+    public void setTracing(int tracing) {
+        for (Simulation sim : lps) {
+            sim.setTracing(tracing);
+        }
+    }
+
+    /**
+     * Set how far ahead of global virtual time the processes may run. One
+     * time unit, the lookahead of the links, is as far as they can go without
+     * ever rolling back; the larger the window, the more they can do between
+     * two barriers, and the more they may have to undo.
+     *
+     * @param ticks the window, in ticks, Long.MAX_VALUE for no bound
+     */
+    public void setWindow(long ticks) {
+        for (int lp = 0; lp < windows.length; lp++) {
+            setWindow(lp, ticks);
+        }
+    }
+
+    /**
+     * Set how far ahead of global virtual time one process may run, e.g. to
+     * let it get ahead of the others
+     *
+     * @param lp the logical process
+     * @param ticks the window, in ticks, Long.MAX_VALUE for no bound
+     */
+    void setWindow(int lp, long ticks) {
+        if (ticks < 1) {
+            throw new IllegalArgumentException("window must be at least one tick: " + ticks);
+        }
+        windows[lp] = ticks;
+    }
+
+    /**
+     * Set the process of the send times of every flow. This has to be done
+     * before the run starts.
+     *
+     * @param process the arrival process, shared by all logical processes
+     */
+    public void setArrivalProcess(ArrivalProcess process) {
+        for (Simulation sim : lps) {
+            sim.setArrivalProcess(process);
+        }
+    }
+
+    /**
+     * Replay a trace of the losses, corruptions and delays of the packets
+     * instead of drawing them with the loss and corruption probabilities
+     *
+     * @param trace the trace, shared by all logical processes, null for none
+     */
+    public void setLinkTrace(LinkTrace trace) {
+        for (Simulation sim : lps) {
+            sim.setLinkTrace(trace);
+        }
+    }
+
+    /**
+     * Set where the receiver applications put the messages delivered to them,
+     * shared by all threads. Messages delivered again after a rollback are
+     * handed over again with the same index.
+     *
+     * @param sink the sink of the run
+     */
+    public void setReceiverSink(ReceiverSink sink) {
+        for (Simulation sim : lps) {
+            sim.setReceiverSink(sink);
+        }
+    }
+
+    /**
+     * Run the simulation until every flow has delivered and acknowledged all
+     * of its messages (or no events are left)
+     *
+     * @return the statistics of the run
+     */
+    public FlowStatistics run() {
+        Telemetry.Run run = Telemetry.get().begin("timewarp", numFlows, lps);
+        Thread[] threads = new Thread[lps.length];
+        try {
+            for (int lp = 0; lp < lps.length; lp++) {
+                final int process = lp;
+                threads[lp] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runProcess(process);
+                    }
+                }, "lp-" + lp);
+                threads[lp].start();
+            }
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the logical processes", ex);
+                }
+            }
+        } finally {
+            run.end();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        for (Simulation sim : lps) {
+            sim.dropLateAcks(lps);
+        }
+        return FlowStatistics.merge(lps, numFlows);
+    }
+
+    /**
+     * Return the number of rollbacks of all processes in the last run
+     *
+     * @return number of rollbacks
+     */
+    public long getRollbacks() {
+        long total = 0;
+        for (long r : rollbacks) {
+            total += r;
+        }
+        return total;
+    }
+
+    /**
+     * Return the number of anti-messages sent by all processes in the last run
+     *
+     * @return number of anti-messages
+     */
+    public long getAntiMessages() {
+        long total = 0;
+        for (long a : antiMessages) {
+            total += a;
+        }
+        return total;
+    }
+
+    /**
+     * Return the number of events sent from one process to another in the
+     * last run, anti-messages left out
+     *
+     * @return number of events
+     */
+    public long getRemoteEvents() {
+        long total = 0;
+        for (long r : remoteEvents) {
+            total += r;
+        }
+        return total;
+    }
+
+    /**
+     * The loop of one logical process: handle up to gvtInterval groups of
+     * events within its window, then wait at the barrier for global virtual
+     * time.
+     *
+     * @param lp the logical process
+     */
+    private void runProcess(int lp) {
+        Timeline tl = lps[lp].getTimeline();
+        try {
+            while (true) {
+                try {
+                    receive(lp);
+                    for (int i = 0; i < gvtInterval && tl.peekNextEvent() != null
+                            && tl.peekNextTime() - gvt < windows[lp]; i++) {
+                        processNextGroup(lp);
+                        receive(lp);
+                    }
+                } catch (RuntimeException ex) {
+                    //keep taking part in the barrier so the others can stop at the next one
+                    fail(ex);
+                }
+                barrier.await();
+                if (done) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | BrokenBarrierException ex) {
+            fail(new IllegalStateException("Logical process " + Thread.currentThread().getName() + " was interrupted", ex));
+        }
+    }
+
+    /**
+     * Record the first error thrown by a process
+     *
+     * @param ex the error
+     */
+    private synchronized void fail(RuntimeException ex) {
+        if (failure == null) {
+            failure = ex;
+        }
+    }
+
+    /**
+     * Process the next group of events of a process, saving what is needed to
+     * undo it, and send the events it created for other processes
+     *
+     * @param lp the logical process
+     */
+    private void processNextGroup(int lp) {
+        Simulation sim = lps[lp];
+        Timeline tl = sim.getTimeline();
+        Event next = tl.peekNextEvent();
+        HostState state = HostState.save(sim, next.getFlow(), next.getHost());
+        int lateAcks = sim.getLateAckCount();
+        List<Event> created = new ArrayList<>();
+        List<Event> group = new ArrayList<>();
+        //send events are created when the previous one is taken from the timeline
+        tl.setCreatedLog(created);
+        tl.returnNextGroup(group);
+        sim.processGroup(group);
+        tl.setCreatedLog(null);
+        histories.get(lp).addLast(new GroupRecord(group, state, created, lateAcks));
+
+        List<Event> remote = new ArrayList<>();
+        tl.drainRemoteEvents(remote);
+        for (Event e : remote) {
+            send(e, false);
+        }
+        remoteEvents[lp] += remote.size();
+    }
+
+    /**
+     * Send an event, or an anti-message for it, to the process of its host
+     *
+     * @param e the event
+     * @param anti true to cancel the event
+     */
+    private void send(Event e, boolean anti) {
+        int target = Timeline.logicalProcessOf(e.getFlow(), e.getHost(), lps.length);
+        inboxes.get(target).add(new Envelope(e, anti));
+    }
+
+    /**
+     * Handle the events and anti-messages sent to a process
+     *
+     * @param lp the logical process
+     */
+    private void receive(int lp) {
+        Timeline tl = lps[lp].getTimeline();
+        Envelope env;
+        while ((env = inboxes.get(lp).poll()) != null) {
+            Event e = env.event;
+            //every event still in the timeline comes after the last group processed,
+            //so an event that does not was either a straggler or has already been processed
+            if (isProcessedBefore(lp, e)) {
+                rollback(lp, e);
+            }
+            if (env.anti) {
+                e.cancelled = true;
+            } else {
+                tl.insertEvent(e);
+            }
+        }
+    }
+
+    /**
+     * Return whether an event would belong to a group that the process has
+     * already processed, or to one before it
+     *
+     * @param lp the logical process
+     * @param e the event
+     * @return true if a rollback is needed before the event can be handled
+     */
+    private boolean isProcessedBefore(int lp, Event e) {
+        GroupRecord last = histories.get(lp).peekLast();
+        return last != null && compareGroup(e, last.events.get(0)) <= 0;
+    }
+
+    /**
+     * Compare the groups of two events: by time, then flow, then host
+     *
+     * @param a an event
+     * @param b another event
+     * @return a negative number, zero or a positive number as the group of a
+     * comes before, is the same as or comes after the group of b
+     */
+    private static int compareGroup(Event a, Event b) {
+        if (a.getTime() != b.getTime()) {
+            return Long.compare(a.getTime(), b.getTime());
+        }
+        if (a.getFlow() != b.getFlow()) {
+            return Integer.compare(a.getFlow(), b.getFlow());
+        }
+        return Integer.compare(a.getHost(), b.getHost());
+    }
+
+    /**
+     * Undo every group of a process that is the same as or after the group of
+     * an event, latest first
+     *
+     * @param lp the logical process
+     * @param e the event
+     */
+    private void rollback(int lp, Event e) {
+        Simulation sim = lps[lp];
+        Timeline tl = sim.getTimeline();
+        ArrayDeque<GroupRecord> history = histories.get(lp);
+        rollbacks[lp]++;
+        tl.getLog().log(Log.TIME_WARP, Log.INFO, "Process {} rolling back to time {} on flow {}", lp, e.getTime(), e.getFlow());
+        while (!history.isEmpty() && compareGroup(e, history.peekLast().events.get(0)) <= 0) {
+            GroupRecord record = history.removeLast();
+            record.state.restore(sim);
+            sim.forgetLateAcks(record.lateAcks);
+            for (Event undone : record.events) {
+                tl.insertEvent(undone);
+            }
+            for (Event created : record.created) {
+                if (tl.isLocal(created.getFlow(), created.getHost())) {
+                    created.cancelled = true;
+                } else {
+                    send(created, true);
+                    antiMessages[lp]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Run by the last process to reach the barrier, while all others wait:
+     * compute global virtual time, discard the groups before it and decide
+     * whether the run is over.
+     */
+    private void computeGvt() {
+        long next = Long.MAX_VALUE;
+        for (int lp = 0; lp < lps.length; lp++) {
+            next = Math.min(next, lps[lp].getTimeline().peekNextTime());
+            //an anti-message rolls its process back to its event if the event was already processed
+            for (Envelope env : inboxes.get(lp)) {
+                next = Math.min(next, env.event.getTime());
+            }
+        }
+        gvt = next;
+
+        int flowsCompleted = 0;
+        long maxCompletion = 0;
+        for (int lp = 0; lp < lps.length; lp++) {
+            Iterator<GroupRecord> it = histories.get(lp).iterator();
+            while (it.hasNext() && it.next().getTime() < gvt) {
+                it.remove();
+            }
+            flowsCompleted += lps[lp].getFlowsCompleted();
+        }
+        for (int flow = 0; flow < numFlows && flowsCompleted == numFlows; flow++) {
+            maxCompletion = Math.max(maxCompletion, lps[Timeline.logicalProcessOf(flow, Event.SENDER, lps.length)].getCompletionTime(flow));
+        }
+        synchronized (this) {
+            done = failure != null || gvt == Long.MAX_VALUE
+                    || (flowsCompleted == numFlows && maxCompletion < gvt);
+        }
+    }
+}
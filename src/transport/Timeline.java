@@ -3,18 +3,58 @@ package transport;
 import java.util.*;
 
 /**
- * This class represents the timeline of events in a priority queue
+ * This class represents the timeline of events in a priority queue, whose
+ * events are grouped by time (see EventQueue). The
+ * timeline can hold the events of several flows (sender/receiver pairs) at
+ * once; each flow has its own send events, timer and link state.
+ *
+ * Hosts are numbered 2 * flow + side, side being Event.SENDER or
+ * Event.RECEIVER. When the simulation is split into logical processes, a
+ * timeline only holds the events of the hosts its process owns; events for
+ * other hosts are kept aside until they are collected with
+ * drainRemoteEvents.
  */
 public class Timeline {
 
-    private PriorityQueue<Event> events; //timeline of events. 
+    /**
+     * Numbers set aside for each packet: two for each uniform double drawn for
+     * its loss, corruption and kind of corruption (up to two), one for its
+     * delay, with room to spare
+     */
+    static final int DRAWS_PER_PACKET = 16;
+
+    /**
+     * Number of bits of a packet's position in its host's stream that hold
+     * its transmission; the seqnum or acknum is above them
+     */
+    static final int TRANSMISSION_BITS = 28;
+
+    private EventQueue events; //timeline of events.
     private int timeBetweenSends; //Avg. time between two packets being sent
-    private int totalMessagesToSend; //total number of messages to send
-    private int sentSoFar; //number fo messages sent so far 
-    private int timeSoFar; // time which has passed so far
-    private Random ran; //random number generator
-    private int lastArrivalTime;  //last arrival time so far
-    private Event timerPointer; //pointer to currently running timer
+    private int totalMessagesToSend; //total number of messages to send per flow
+    private int[] sentSoFar; //number fo messages sent so far, per flow
+    private long timeSoFar; // time which has passed so far, in ticks
+    private RandomStream[] ran; //random number generator of the send times, per host
+    private RandomStream[] packetRan; //random number generator of the packets, per host
+    private long[] packetsSent; //number of packets each host has sent
+    private long[] packetsLost; //number of packets of each host lost by the network layer
+    private long[] packetsCorrupted; //number of packets of each host corrupted by the network layer
+    private long[] lastArrivalTime;  //last arrival time so far, in ticks, per flow and direction
+    private Event[] timerPointer; //pointer to currently running timer, per flow
+    private long ticksPerUnit; //resolution of the timeline: number of ticks in one time unit
+    private long[] eventsCreated; //number of events created by each host so far, used to order events at the same time
+    private int lp; //logical process this timeline belongs to
+    private int numLps; //number of logical processes
+    private List<Event> remoteEvents; //events created here for hosts of other logical processes
+    private List<Event> createdLog; //if set, every event created is also added to it
+    private int tracing; //tracing level of the run, see NetworkSimulator.run
+    private final Log log = new Log(); //debug output of the run, configured from the tracing level
+    private int firstFlow; //flow of the run that is flow 0 of this timeline
+    private TraceRecorder trace; //binary trace of the run, null if none
+    private long seed; //seed of the hosts' random number generators
+    private boolean antithetic; //whether the generators are antithetic
+    private ArrivalProcess arrivalProcess; //process of the send times
+    private ArrivalProcess.Source[] arrivals; //source of the send times, per flow
 
     /**
      * A constructor to initialize variables.
@@ -23,66 +63,281 @@ public class Timeline {
      * @param numOfMessages The number of messages to send
      */
     public Timeline(int time, int numOfMessages) {
-        events = new PriorityQueue<>();
+        this(time, numOfMessages, 1, 1, new Random().nextLong());
+    }
+
+    /**
+     * A constructor to initialize variables for several flows with a given
+     * time resolution. All times passed in (time between sends, timer
+     * increments, link delay) are in time units, and events are scheduled in
+     * ticks.
+     *
+     * @param time The time between two packets being sent
+     * @param numOfMessages The number of messages each flow sends
+     * @param numFlows The number of flows
+     * @param ticksPerUnit The number of ticks in one time unit
+     * @param seed The seed of the hosts' random number generators
+     */
+    public Timeline(int time, int numOfMessages, int numFlows, long ticksPerUnit, long seed) {
+        this(time, numOfMessages, numFlows, ticksPerUnit, seed, 0, 1);
+    }
+
+    /**
+     * A constructor to initialize the part of the timeline owned by one
+     * logical process.
+     *
+     * @param time The time between two packets being sent
+     * @param numOfMessages The number of messages each flow sends
+     * @param numFlows The number of flows
+     * @param ticksPerUnit The number of ticks in one time unit
+     * @param seed The seed of the hosts' random number generators
+     * @param lp The logical process this timeline belongs to
+     * @param numLps The number of logical processes
+     */
+    public Timeline(int time, int numOfMessages, int numFlows, long ticksPerUnit, long seed, int lp, int numLps) {
+        this(time, numOfMessages, 0, numFlows, ticksPerUnit, seed, false, lp, numLps);
+    }
+
+    /**
+     * A constructor to initialize the timeline of a range of flows out of a
+     * larger run. Flow f of this timeline is flow firstFlow + f of the run, and
+     * its hosts draw from the same random number streams as in the run, so
+     * the flows behave the same whichever timeline simulates them.
+     *
+     * @param time The time between two packets being sent
+     * @param numOfMessages The number of messages each flow sends
+     * @param firstFlow The flow of the run that is flow 0 of this timeline
+     * @param numFlows The number of flows of this timeline
+     * @param ticksPerUnit The number of ticks in one time unit
+     * @param seed The seed of the hosts' random number generators
+     * @param antithetic Whether the generators are antithetic (see
+     * RandomStream)
+     * @param lp The logical process this timeline belongs to
+     * @param numLps The number of logical processes
+     */
+    public Timeline(int time, int numOfMessages, int firstFlow, int numFlows, long ticksPerUnit, long seed,
+            boolean antithetic, int lp, int numLps) {
+        this.ticksPerUnit = ticksPerUnit;
+        this.firstFlow = firstFlow;
+        this.lp = lp;
+        this.numLps = numLps;
+        this.seed = seed;
+        this.antithetic = antithetic;
+        events = new EventQueue();
+        remoteEvents = new ArrayList<>();
         timeBetweenSends = time;
         totalMessagesToSend = numOfMessages;
-        ran = new Random();
         timeSoFar = 0;
-        sentSoFar = 1; //set to one because we send the fisrt packet right away
-        lastArrivalTime = 0;
-        createSendEvent();//sengin first packet
-        timerPointer = null;
+        sentSoFar = new int[numFlows];
+        lastArrivalTime = new long[2 * numFlows];
+        timerPointer = new Event[numFlows];
+        eventsCreated = new long[2 * numFlows];
+        ran = new RandomStream[2 * numFlows];
+        packetRan = new RandomStream[2 * numFlows];
+        packetsSent = new long[2 * numFlows];
+        packetsLost = new long[2 * numFlows];
+        packetsCorrupted = new long[2 * numFlows];
+        arrivalProcess = new PoissonArrivals(time);
+        arrivals = new ArrivalProcess.Source[numFlows];
+        for (int host = 0; host < 2 * numFlows; host++) {
+            if (isLocal(host / 2, host % 2)) {
+                long stream = 2 * (2L * firstFlow + host);
+                ran[host] = new RandomStream(seed, stream, antithetic);
+                packetRan[host] = new RandomStream(seed, stream + 1, antithetic);
+            }
+        }
+        if (numOfMessages > 0) {
+            for (int flow = 0; flow < numFlows; flow++) {
+                if (isLocal(flow, Event.SENDER)) {
+                    arrivals[flow] = arrivalProcess.newSource(ticksPerUnit);
+                    createSendEvent(flow);//sengin first packet
+                    sentSoFar[flow] = 1; //set to one because we send the fisrt packet right away
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Return the logical process that owns a host. Senders are dealt out to
+     * the processes in turn, and the receiver of a flow belongs to the process
+     * after its sender's, so with more than one process every packet goes
+     * from one process to another and the lookahead of the link delay is what
+     * lets the processes run side by side.
+     *
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     * @param numLps number of logical processes
+     * @return the logical process of the host
+     */
+    public static int logicalProcessOf(int flow, int host, int numLps) {
+        return (flow + host) % numLps;
+    }
 
+    /**
+     * Return whether a host is owned by this timeline's logical process
+     *
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     * @return true if the host is local
+     */
+    public boolean isLocal(int flow, int host) {
+        return logicalProcessOf(flow, host, numLps) == lp;
     }
 
     /**
      * Getting next event. It it is a send event, and there are still messages
-     * that need to be sent, sending the next one.
+     * that need to be sent on its flow, sending the next one.
      *
      * @return the next event in the queue
      */
     public Event returnNextEvent() {
-        Event tmp = events.poll();
-        if (tmp == null) {
-            return tmp;
+        if (peekNextEvent() == null) {
+            return null;
         }
+        Event tmp = events.poll();
         timeSoFar = tmp.getTime();
-        if (tmp.getType() == Event.MESSAGESEND && sentSoFar < totalMessagesToSend) {
-            createSendEvent();
-            sentSoFar++;
+        taken(tmp);
+        return tmp;
+    }
+
+    /**
+     * Sending the next message of the flow of an event taken off the queue, if
+     * it is a send event and there are still messages that need to be sent
+     *
+     * @param tmp the event
+     */
+    private void taken(Event tmp) {
+        int flow = tmp.getFlow();
+        if (tmp.getType() == Event.MESSAGESEND && sentSoFar[flow] < totalMessagesToSend) {
+            createSendEvent(flow);
+            sentSoFar[flow]++;
         }
+    }
 
-        return tmp;
+    /**
+     * Getting every event scheduled at the earliest pending time. The events
+     * are put into the given list, which is cleared first so the same list can
+     * be reused for every tick. Events created while the batch is processed at
+     * the same time will be returned by the next call.
+     *
+     * @param batch list to fill with the events of the next tick
+     * @return the number of events in the batch, 0 if the queue is empty
+     */
+    public int returnNextBatch(List<Event> batch) {
+        return returnNextBatch(batch, Long.MAX_VALUE);
+    }
+
+    /**
+     * Getting every event scheduled at the earliest pending time, if that time
+     * is before the given bound. The events of the tick are taken off the
+     * queue together, with one heap operation rather than one per event.
+     *
+     * @param batch list to fill with the events of the next tick
+     * @param until events at this time or later are left in the queue
+     * @return the number of events in the batch, 0 if there is no event before
+     * until
+     */
+    public int returnNextBatch(List<Event> batch, long until) {
+        batch.clear();
+        long time = peekNextTime();
+        if (time >= until) {
+            return 0;
+        }
+        timeSoFar = time;
+        int done = 0;
+        int ticks = 0;
+        //a send event due right away is taken with the events of its tick
+        while (peekNextTime() == time) {
+            events.pollTick(batch);
+            ticks++;
+            for (; done < batch.size(); done++) {
+                taken(batch.get(done));
+            }
+        }
+        if (ticks > 1) {
+            //the new events come after the ones that sent them, put them in among the others
+            Collections.sort(batch);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Getting every event of the host of the next event that is scheduled at
+     * the same time, i.e. the next event and all events with the same time,
+     * flow and host.
+     *
+     * @param group list to fill with the events, cleared first
+     * @return the number of events in the group, 0 if the queue is empty
+     */
+    public int returnNextGroup(List<Event> group) {
+        group.clear();
+        Event tmp = returnNextEvent();
+        if (tmp == null) {
+            return 0;
+        }
+        group.add(tmp);
+        Event next;
+        while ((next = peekNextEvent()) != null && next.getTime() == tmp.getTime()
+                && next.getFlow() == tmp.getFlow() && next.getHost() == tmp.getHost()) {
+            group.add(returnNextEvent());
+        }
+        return group.size();
     }
 
     /**
-     * Creating a send event.First generating a random number using the
-     * exponential distribution with average timeBetweenSends and then adding
-     * the event.
+     * Return the next event without removing it. Cancelled events at the head
+     * of the queue are dropped first.
+     *
+     * @return the next event, null if there is none
      */
-    public void createSendEvent() {
-        double tmp = ran.nextFloat();
-        tmp = (tmp == 0) ? 0.00001 : tmp;
-        int time = (int) (timeBetweenSends * (-Math.log(tmp)) + timeSoFar);
-        if (NetworkSimulator.DEBUG > 2) {
-            System.out.println("[Tl] Inserting future send event at " + timeSoFar + " with send time: " + time);
+    public Event peekNextEvent() {
+        Event next = events.peek();
+        while (next != null && next.cancelled) {
+            events.poll();
+            next = events.peek();
         }
-        events.add(new Event(time, Event.MESSAGESEND, Event.SENDER));
+        return next;
+    }
+
+    /**
+     * Return the time of the next event without removing it
+     *
+     * @return the time of the next event, Long.MAX_VALUE if there is none
+     */
+    public long peekNextTime() {
+        Event next = peekNextEvent();
+        return next == null ? Long.MAX_VALUE : next.getTime();
+    }
+
+    /**
+     * Creating a send event. The time until the next message is pulled from
+     * the arrival source of the flow, exponential with average
+     * timeBetweenSends unless another arrival process was set, and then the
+     * event is added.
+     *
+     * @param flow flow whose sender will send the message
+     */
+    public void createSendEvent(int flow) {
+        long time = arrivals[flow].nextGap(sentSoFar[flow], getRandom(flow, Event.SENDER)) + timeSoFar;
+        log.log(Log.TIMELINE, Log.TRACE, "Inserting future send event at {} with send time: {} for flow {}", timeSoFar, time, flow);
+        addEvent(new Event(time, Event.MESSAGESEND, Event.SENDER, flow), Event.SENDER);
     }
 
     /**
      * Creating an arrive event. This first checks for the last arrival time
-     * (since packets cannot be reordered), and the adds a random number
-     * uniformly distributed from 1-9 to calculate the time of the arrival
-     * event. It then adds the event to the queue.
+     * on the same flow and direction (since packets cannot be reordered), and
+     * the adds a random number uniformly distributed from 1-9 to calculate the
+     * time of the arrival event. It then adds the event to the queue.
      *
      * @param pkt packet that will arrive
      * @param to who are we sending the packet to
+     * @param flow flow the packet belongs to
      */
-    public void createArriveEvent(Packet pkt, int to) {
-        //comment this out because it's creating weird bug
-        lastArrivalTime = (lastArrivalTime > timeSoFar) ? lastArrivalTime : timeSoFar;
-        lastArrivalTime = 1 + (int) (ran.nextFloat() * 9) + lastArrivalTime;
+    public void createArriveEvent(Packet pkt, int to, int flow) {
+        int from = 1 - to;
+        long delay = ticksPerUnit + (long) (packetRan[2 * flow + from].nextFloat() * 9.0 * ticksPerUnit);
+        createArriveEvent(pkt, to, flow, delay);
         //out-of-order
 //        lastArrivalTime = 1 + (int) (ran.nextFloat() * 9) + timeSoFar;
 
@@ -91,12 +346,26 @@ public class Timeline {
 //        } else {
 //            lastArrivalTime = 1 + (int) (ran.nextFloat() * 9) + timeSoFar;
 //        }
+    }
 
-        if (NetworkSimulator.DEBUG > 2) {
-            String tmp = (to == Event.SENDER) ? "sender" : "receiver";
-            System.out.println("[Tl] Inserting future arrive event at " + timeSoFar + " with arrive time: " + lastArrivalTime + " to: " + tmp);
-        }
-        events.add(new Event(lastArrivalTime, Event.MESSAGEARRIVE, to, pkt));
+    /**
+     * Creating an arrive event with a given delay, counted from the last
+     * arrival time on the same flow and direction if it is later than now.
+     *
+     * @param pkt packet that will arrive
+     * @param to who are we sending the packet to
+     * @param flow flow the packet belongs to
+     * @param delay delay of the packet, in ticks
+     */
+    public void createArriveEvent(Packet pkt, int to, int flow, long delay) {
+        int link = 2 * flow + to;
+        int from = 1 - to;
+        //comment this out because it's creating weird bug
+        lastArrivalTime[link] = (lastArrivalTime[link] > timeSoFar) ? lastArrivalTime[link] : timeSoFar;
+        lastArrivalTime[link] = delay + lastArrivalTime[link];
+        log.log(Log.TIMELINE, Log.TRACE, "Inserting future arrive event at {} with arrive time: {} to: {} for flow {}",
+                timeSoFar, lastArrivalTime[link], (to == Event.SENDER) ? "sender" : "receiver", flow);
+        addEvent(new Event(lastArrivalTime[link], Event.MESSAGEARRIVE, to, flow, pkt), from);
 
     }
 
@@ -104,45 +373,421 @@ public class Timeline {
      * Starting timer.If it si already started it prints out an error message.
      * setting timerPointer to point at timer event.
      *
-     * @param increment timeout for timer
+     * @param flow flow whose sender the timer belongs to
+     * @param increment timeout for timer, in time units
      */
-    public void startTimer(int increment) {
-        if (timerPointer != null) {
-            System.out.println("Timer is allready on!");
+    public void startTimer(int flow, int increment) {
+        if (timerPointer[flow] != null) {
+            log.warn("Timer is allready on!");
             return;
         }
-        timerPointer = new Event(timeSoFar + increment, Event.TIMER, Event.SENDER);
-        events.add(timerPointer);
-        if (NetworkSimulator.DEBUG > 2) {
-            System.out.println("[Tl] Inserting future timer event at " + timeSoFar + " for time out at " + (timeSoFar + increment));
-        }
+        restartTimer(flow, increment);
 
     }
 
     /**
      * Kills timer and sets timerPointer to null
+     *
+     * @param flow flow whose sender the timer belongs to
      */
-    public void stopTimer() {
-        if (timerPointer == null) {
-            System.out.println("Timer is not on!");
+    public void stopTimer(int flow) {
+        if (timerPointer[flow] == null) {
+            log.warn("Timer is not on!");
             return;
         }
 
-        timerPointer.killTimer();
-        timerPointer = null;
+        timerPointer[flow].killTimer();
+        timerPointer[flow] = null;
     }
 
     /**
      * Starting a new timer or restarting if it si already started.
      * setting timerPointer to point at timer event.
      *
-     * @param increment timeout for timer
+     * @param flow flow whose sender the timer belongs to
+     * @param increment timeout for timer, in time units
+     */
+    public void restartTimer(int flow, int increment) {
+        timerPointer[flow] = new Event(timeSoFar + increment * ticksPerUnit, Event.TIMER, Event.SENDER, flow);
+        addEvent(timerPointer[flow], Event.SENDER);
+        log.log(Log.TIMELINE, Log.TRACE, "Inserting future timer event at {} for time out at {} for flow {}", timeSoFar, timerPointer[flow].getTime(), flow);
+    }
+
+    /**
+     * Return the number of ticks in one time unit
+     *
+     * @return ticks per time unit
+     */
+    public long getTicksPerUnit() {
+        return ticksPerUnit;
+    }
+
+    /**
+     * Return the random number generator of a host. Only hosts owned by this
+     * timeline's logical process have one.
+     *
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     * @return the host's random number generator
+     */
+    public RandomStream getRandom(int flow, int host) {
+        return ran[2 * flow + host];
+    }
+
+    /**
+     * Return the random number generator for a packet a host sends, and count
+     * the packet. Every packet gets its own block of numbers for its loss,
+     * corruption and delay, picked by what the packet is rather than by when
+     * it is sent: its seqnum (data) or acknum (ack), and how many times a
+     * packet with that number was sent before. Whatever the protocol or the
+     * engine, the k-th transmission of a seqnum is then lost, corrupted and
+     * delayed the same way in runs with the same seed, and a host put back to
+     * an earlier state draws the same numbers again.
+     *
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     * @param number seqnum of a data packet or acknum of an ack, at least -1
+     * @param transmission number of packets with the same number the host
+     * sent before, less than 2^TRANSMISSION_BITS
+     * @return the generator, moved to the start of the packet's block
+     */
+    public RandomStream packetRandom(int flow, int host, int number, int transmission) {
+        int h = 2 * flow + host;
+        packetsSent[h]++;
+        long block = ((number + 1L) << TRANSMISSION_BITS) + transmission;
+        packetRan[h].seek(block * DRAWS_PER_PACKET);
+        return packetRan[h];
+    }
+
+    long getPacketsSent(int flow, int host) {
+        return packetsSent[2 * flow + host];
+    }
+
+    void setPacketsSent(int flow, int host, long count) {
+        packetsSent[2 * flow + host] = count;
+    }
+
+    /**
+     * Count a packet of a host lost by the network layer
+     *
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     */
+    void countLost(int flow, int host) {
+        packetsLost[2 * flow + host]++;
+    }
+
+    /**
+     * Count a packet of a host corrupted by the network layer
+     *
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     */
+    void countCorrupted(int flow, int host) {
+        packetsCorrupted[2 * flow + host]++;
+    }
+
+    long getPacketsLost(int flow, int host) {
+        return packetsLost[2 * flow + host];
+    }
+
+    void setPacketsLost(int flow, int host, long count) {
+        packetsLost[2 * flow + host] = count;
+    }
+
+    long getPacketsCorrupted(int flow, int host) {
+        return packetsCorrupted[2 * flow + host];
+    }
+
+    void setPacketsCorrupted(int flow, int host, long count) {
+        packetsCorrupted[2 * flow + host] = count;
+    }
+
+    /**
+     * Move the events created for hosts of other logical processes into the
+     * given list
+     *
+     * @param out list to add the events to
+     */
+    public void drainRemoteEvents(List<Event> out) {
+        out.addAll(remoteEvents);
+        remoteEvents.clear();
+    }
+
+    /**
+     * Adding an event that was created earlier, either by another logical
+     * process for one of this timeline's hosts or by a rolled back event of
+     * this one. The event keeps the number it was given when it was created.
+     *
+     * @param e the event to add
+     */
+    public void insertEvent(Event e) {
+        events.add(e);
+    }
+
+    /**
+     * Set the tracing level of the run this timeline belongs to. Every part of
+     * a run reads it from here, so runs on different threads can trace at
+     * different levels.
+     *
+     * @param tracing tracing level, see NetworkSimulator.run
+     */
+    public void setTracing(int tracing) {
+        this.tracing = tracing;
+        log.configure(tracing);
+    }
+
+    public int getTracing() {
+        return tracing;
+    }
+
+    public Log getLog() {
+        return log;
+    }
+
+    /**
+     * Return the flow of the run that is flow 0 of this timeline
+     *
+     * @return the first flow
+     */
+    public int getFirstFlow() {
+        return firstFlow;
+    }
+
+    /**
+     * Return the number of flows of this timeline
+     *
+     * @return the number of flows
+     */
+    public int getNumFlows() {
+        return sentSoFar.length;
+    }
+
+    /**
+     * Set the recorder of the binary trace of the run
+     *
+     * @param trace the recorder, null for no binary trace
+     */
+    public void setTraceRecorder(TraceRecorder trace) {
+        this.trace = trace;
+    }
+
+    boolean hasTraceRecorder() {
+        return trace != null;
+    }
+
+    /**
+     * Add a record to the binary trace of the run, if there is one, at the
+     * current time
+     *
+     * @param type type of the record, see TraceRecorder
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     * @param seq seq number
+     * @param ack ack number
+     * @param flags TraceRecorder.LOST and TraceRecorder.CORRUPTED, or 0
+     */
+    void trace(int type, int flow, int host, int seq, int ack, int flags) {
+        if (trace != null) {
+            trace.record(timeSoFar, type, firstFlow + flow, host, seq, ack, flags);
+        }
+    }
+
+    /**
+     * Record a fast retransmit of a flow with the flight recorder, at the
+     * current time
+     *
+     * @param flow the flow
+     * @param base base of the sender's window
+     */
+    void recordFastRetransmit(int flow, int base) {
+        FlightEvents.INSTANCE.fastRetransmit(firstFlow + flow, base, timeSoFar);
+    }
+
+    /**
+     * Return the number of events in the queue, cancelled ones included
+     *
+     * @return number of events
+     */
+    int getQueueSize() {
+        return events.size();
+    }
+
+    /**
+     * Return the events waiting in the queue, in no particular order
+     *
+     * @return a copy of the pending events, cancelled ones left out
+     */
+    List<Event> getPendingEvents() {
+        List<Event> pending = new ArrayList<>(events.size());
+        events.addPendingTo(pending);
+        return pending;
+    }
+
+    /**
+     * Remove every event from the queue
+     */
+    void clearEvents() {
+        events.clear();
+    }
+
+    long getTimeSoFar() {
+        return timeSoFar;
+    }
+
+    void setTimeSoFar(long time) {
+        timeSoFar = time;
+    }
+
+    /**
+     * Set a list to which every event created from now on is also added, or
+     * null to stop recording
+     *
+     * @param log the list, or null
+     */
+    void setCreatedLog(List<Event> log) {
+        createdLog = log;
+    }
+
+    /**
+     * Set the process of the send times, in place of Poisson arrivals with
+     * average timeBetweenSends. This has to be done before the run starts:
+     * the first send event of each flow is drawn again, from a fresh random
+     * number generator, so the run is the same as if the process had been
+     * given from the start.
+     *
+     * @param process the arrival process
+     * @throws IllegalStateException if the run has started
+     */
+    public void setArrivalProcess(ArrivalProcess process) {
+        for (int flow = 0; flow < sentSoFar.length; flow++) {
+            if (timeSoFar > 0 || sentSoFar[flow] > 1) {
+                throw new IllegalStateException("the arrival process cannot change once the run has started");
+            }
+        }
+        arrivalProcess = process;
+        //the send events drawn with the old process are dropped when they come up
+        List<Event> pending = getPendingEvents();
+        for (Event e : pending) {
+            if (e.getType() == Event.MESSAGESEND && arrivals[e.getFlow()] != null) {
+                e.cancelled = true;
+            }
+        }
+        for (int flow = 0; flow < sentSoFar.length; flow++) {
+            if (arrivals[flow] == null) {
+                continue;
+            }
+            int host = 2 * flow + Event.SENDER;
+            ran[host] = new RandomStream(seed, 2 * (2L * firstFlow + host), antithetic);
+            eventsCreated[host] = 0;
+            arrivals[flow] = process.newSource(ticksPerUnit);
+            sentSoFar[flow] = 0;
+            createSendEvent(flow);
+            sentSoFar[flow] = 1;
+        }
+    }
+
+    /**
+     * Set the process of the send times without scheduling anything, for a
+     * timeline whose events and host states are restored afterwards
+     *
+     * @param process the arrival process
+     */
+    void restoreArrivalProcess(ArrivalProcess process) {
+        arrivalProcess = process;
+        for (int flow = 0; flow < arrivals.length; flow++) {
+            if (arrivals[flow] != null) {
+                arrivals[flow] = process.newSource(ticksPerUnit);
+            }
+        }
+    }
+
+    /**
+     * Return the process of the send times
+     *
+     * @return the arrival process
+     */
+    public ArrivalProcess getArrivalProcess() {
+        return arrivalProcess;
+    }
+
+    long getArrivalState(int flow) {
+        return arrivals[flow] == null ? 0 : arrivals[flow].getState();
+    }
+
+    void setArrivalState(int flow, long state) {
+        if (arrivals[flow] != null) {
+            arrivals[flow].setState(state);
+        }
+    }
+
+    int getSentSoFar(int flow) {
+        return sentSoFar[flow];
+    }
+
+    void setSentSoFar(int flow, int sent) {
+        sentSoFar[flow] = sent;
+    }
+
+    Event getTimer(int flow) {
+        return timerPointer[flow];
+    }
+
+    /**
+     * Put back the timer that was running at an earlier point. If it has been
+     * killed since, it is turned back on.
+     *
+     * @param flow flow whose sender the timer belongs to
+     * @param timer the timer event, or null if no timer was running
      */
-    public void restartTimer(int increment) {
-        timerPointer = new Event(timeSoFar + increment, Event.TIMER, Event.SENDER);
-        events.add(timerPointer);
-        if (NetworkSimulator.DEBUG > 2) {
-            System.out.println("[Tl] Inserting future timer event at " + timeSoFar + " for time out at " + (timeSoFar + increment));
+    void setTimer(int flow, Event timer) {
+        timerPointer[flow] = timer;
+        if (timer != null && timer.getType() == Event.KILLEDTIMER) {
+            timer.type = Event.TIMER;
+        }
+    }
+
+    /**
+     * Return the arrival time of the last packet sent to a host
+     *
+     * @param flow flow of the host
+     * @param to Event.SENDER or Event.RECEIVER
+     * @return the last arrival time
+     */
+    long getLastArrivalTime(int flow, int to) {
+        return lastArrivalTime[2 * flow + to];
+    }
+
+    void setLastArrivalTime(int flow, int to, long time) {
+        lastArrivalTime[2 * flow + to] = time;
+    }
+
+    long getEventsCreated(int flow, int host) {
+        return eventsCreated[2 * flow + host];
+    }
+
+    void setEventsCreated(int flow, int host, long count) {
+        eventsCreated[2 * flow + host] = count;
+    }
+
+    /**
+     * Adding an event to the queue. Each event is numbered in the order its
+     * creating host made it, so events of a host at the same time always come
+     * out in the same order, however the hosts are split between logical
+     * processes.
+     *
+     * @param e the event to add
+     * @param creator side of the flow that created the event
+     */
+    private void addEvent(Event e, int creator) {
+        e.seq = (eventsCreated[2 * e.getFlow() + creator]++ << 1) | creator;
+        if (createdLog != null) {
+            createdLog.add(e);
+        }
+        if (isLocal(e.getFlow(), e.getHost())) {
+            events.add(e);
+        } else {
+            remoteEvents.add(e);
         }
     }
 }
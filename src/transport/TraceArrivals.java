@@ -0,0 +1,193 @@
+package transport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Arrivals replayed from a recorded trace of timestamps: message i of every
+ * flow is sent at the i-th timestamp, counted from the first one. Once the
+ * trace is used up it starts over, one average gap after its last timestamp.
+ *
+ * The trace is a binary file: a header (magic number, format version and
+ * number of timestamps) followed by the timestamps, in time units, as
+ * big-endian doubles that never decrease. See fromText to make one from a
+ * text file with a timestamp per line. The file is memory-mapped rather than
+ * read, in chunks, so a trace does not have to fit in the heap: only the
+ * pages the flows are replaying are in memory, and the sources of all flows
+ * and threads read the same mapping.
+ */
+public class TraceArrivals extends ArrivalProcess {
+
+    static final int MAGIC = 0x4E534154; //"NSAT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private static final int CHUNK_SHIFT = 24; //timestamps mapped at a time: 2^24, 128 MB
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final Path file;
+    private final long count; //number of timestamps
+    private final ByteBuffer[] chunks; //the timestamps, mapped
+    private final double first; //first timestamp
+    private final double span; //time from the first timestamp to the first of the next round
+
+    /**
+     * Map a trace
+     *
+     * @param file the trace
+     * @throws IOException if the file cannot be read or is not a trace of at
+     * least two timestamps
+     */
+    public TraceArrivals(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not an arrival trace");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported arrival trace version " + version + " in " + file);
+            }
+            count = header.getLong();
+            if (count < 2 || count > (channel.size() - HEADER_SIZE) / 8) {
+                throw new IOException("Invalid arrival trace " + file + ": " + count + " timestamps");
+            }
+            chunks = new ByteBuffer[(int) ((count + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                long size = Math.min(count - start, 1L << CHUNK_SHIFT) * 8;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + start * 8, size);
+            }
+        }
+        first = timestamp(0);
+        double last = timestamp(count - 1);
+        span = (last - first) * count / (count - 1);
+    }
+
+    /**
+     * Return a timestamp of the trace
+     *
+     * @param i its number
+     * @return the timestamp, in time units
+     */
+    double timestamp(long i) {
+        return chunks[(int) (i >>> CHUNK_SHIFT)].getDouble((int) (i & CHUNK_MASK) * 8);
+    }
+
+    /**
+     * Return the number of timestamps of the trace
+     *
+     * @return the number of timestamps
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public Source newSource(final long ticksPerUnit) {
+        return new Source() {
+            @Override
+            public long nextGap(long index, RandomStream random) {
+                //from the times of the messages rather than the gaps, so that rounding does not drift
+                return sendTime(index, ticksPerUnit) - (index == 0 ? 0 : sendTime(index - 1, ticksPerUnit));
+            }
+        };
+    }
+
+    /**
+     * Return the time at which a message is sent
+     *
+     * @param index number of the message
+     * @param ticksPerUnit number of ticks in one time unit
+     * @return the time, in ticks
+     */
+    private long sendTime(long index, long ticksPerUnit) {
+        long round = index / count;
+        double time = round * span + timestamp(index % count) - first;
+        return (long) (time * ticksPerUnit);
+    }
+
+    @Override
+    public String toSpec() {
+        return "trace:" + file;
+    }
+
+    /**
+     * Make a trace from a text file with a timestamp per line. Blank lines
+     * and lines starting with # are skipped. The file is read and written as
+     * a stream, whatever its size.
+     *
+     * @param text the text file, timestamps in time units
+     * @param trace the trace to write, replaced if it exists
+     * @return the number of timestamps
+     * @throws IOException if a file cannot be read or written, or a line is
+     * not a timestamp or is before the previous one
+     */
+    public static long fromText(Path text, Path trace) throws IOException {
+        long count = 0;
+        try (BufferedReader in = Files.newBufferedReader(text, StandardCharsets.UTF_8);
+                FileChannel channel = FileChannel.open(trace, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChannelOutput out = new ChannelOutput(channel);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(0); //number of timestamps, written once known
+            double previous = Double.NEGATIVE_INFINITY;
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                double timestamp;
+                try {
+                    timestamp = Double.parseDouble(line);
+                } catch (NumberFormatException ex) {
+                    throw new IOException(text + ":" + lineNumber + ": not a timestamp: " + line, ex);
+                }
+                if (!(timestamp >= previous) || Double.isInfinite(timestamp)) {
+                    throw new IOException(text + ":" + lineNumber + ": timestamp " + line + " before the previous one");
+                }
+                out.writeDouble(timestamp);
+                previous = timestamp;
+                count++;
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putLong(count).flip();
+            channel.write(header, 8);
+        }
+        return count;
+    }
+
+    /**
+     * Make a trace from a text file, see fromText
+     *
+     * @param args text file and trace file
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("usage: TraceArrivals timestamps.txt trace.bin");
+            System.exit(1);
+        }
+        try {
+            System.out.println(fromText(Paths.get(args[0]), Paths.get(args[1])) + " timestamps");
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package transport;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class which converts a binary trace written by TraceRecorder to CSV, with
+ * one line per record, or to pcap, with one packet per packet sent.
+ *
+ * In the pcap file, every packet is a raw IPv4 packet (link type 101) with a
+ * TCP header and no payload. Host h of flow f has the address 10.0.0.0 +
+ * 2f + h + 1; the seq and ack numbers are the packet's own, with the ACK flag
+ * set on acks only, and the DSCP field holds the flags of the record (1 lost,
+ * 2 corrupted). A tick is written as one microsecond.
+ */
+public class TraceConverter {
+
+    private static final String[] TYPE_NAMES = {"", "sent", "arrived", "timer", "message"};
+    private static final int PCAP_MAGIC = 0xA1B2C3D4;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int PACKET_SIZE = 40; //IPv4 and TCP headers
+    private static final int PORT = 5000;
+
+    private TraceConverter() {
+    }
+
+    /**
+     * Convert a trace
+     *
+     * @param args the trace file and the output file, whose extension (.csv or
+     * .pcap) sets the format
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("need a trace file and an output file (.csv or .pcap)");
+            System.exit(1);
+        }
+        try {
+            Path trace = Paths.get(args[0]);
+            Path out = Paths.get(args[1]);
+            long count = args[1].endsWith(".pcap") ? toPcap(trace, out) : toCsv(trace, out);
+            System.out.println("Wrote " + count + " records to " + out);
+        } catch (IOException ex) {
+            System.out.println("Could not convert trace: " + ex);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write every record of a trace to a CSV file
+     *
+     * @param trace the trace file
+     * @param csv the CSV file, replaced if it exists
+     * @return number of records written
+     * @throws IOException if a file cannot be read or written, or the trace is
+     * not a trace
+     */
+    public static long toCsv(Path trace, Path csv) throws IOException {
+        long count = 0;
+        try (Records records = new Records(trace);
+                Writer out = new BufferedWriter(Channels.newWriter(FileChannel.open(csv, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                        StandardCharsets.UTF_8.newEncoder(), -1))) {
+            out.write("time,type,flow,host,seq,ack,lost,corrupted\n");
+            StringBuilder line = new StringBuilder();
+            while (records.next()) {
+                line.setLength(0);
+                line.append(records.time).append(',').append(typeName(records.type)).append(',')
+                        .append(records.flow).append(',').append(records.host == Event.SENDER ? "sender" : "receiver")
+                        .append(',').append(records.seq).append(',').append(records.ack).append(',')
+                        .append((records.flags & TraceRecorder.LOST) != 0 ? 1 : 0).append(',')
+                        .append((records.flags & TraceRecorder.CORRUPTED) != 0 ? 1 : 0).append('\n');
+                out.append(line);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write every packet sent in a trace to a pcap file
+     *
+     * @param trace the trace file
+     * @param pcap the pcap file, replaced if it exists
+     * @return number of packets written
+     * @throws IOException if a file cannot be read or written, or the trace is
+     * not a trace
+     */
+    public static long toPcap(Path trace, Path pcap) throws IOException {
+        long count = 0;
+        try (Records records = new Records(trace);
+                ChannelOutput out = new ChannelOutput(FileChannel.open(pcap, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            //global header, big-endian: readers tell the byte order from the magic number
+            out.writeInt(PCAP_MAGIC);
+            out.writeByte(0);
+            out.writeByte(2); //version 2.4
+            out.writeByte(0);
+            out.writeByte(4);
+            out.writeInt(0); //time zone
+            out.writeInt(0); //accuracy
+            out.writeInt(65535); //snapshot length
+            out.writeInt(LINKTYPE_RAW);
+            while (records.next()) {
+                if (records.type != TraceRecorder.PACKET_SENT) {
+                    continue;
+                }
+                writePacket(out, records, count);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void writePacket(ChannelOutput out, Records r, long index) throws IOException {
+        out.writeInt((int) (r.time / 1000000));
+        out.writeInt((int) (r.time % 1000000));
+        out.writeInt(PACKET_SIZE);
+        out.writeInt(PACKET_SIZE);
+
+        int src = address(r.flow, r.host);
+        int dst = address(r.flow, 1 - r.host);
+        int[] ip = {
+            0x4500 | (r.flags << 2), PACKET_SIZE, (int) index & 0xFFFF, 0x4000,
+            (64 << 8) | 6, 0, src >>> 16, src & 0xFFFF, dst >>> 16, dst & 0xFFFF};
+        int sum = 0;
+        for (int word : ip) {
+            sum += word;
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        ip[5] = ~sum & 0xFFFF;
+        for (int word : ip) {
+            out.writeByte(word >>> 8);
+            out.writeByte(word);
+        }
+
+        boolean isAck = r.seq < 0;
+        out.writeByte(PORT >>> 8);
+        out.writeByte(PORT);
+        out.writeByte(PORT >>> 8);
+        out.writeByte(PORT);
+        out.writeInt(isAck ? 0 : r.seq);
+        out.writeInt(isAck ? r.ack : 0);
+        out.writeByte(5 << 4); //header length, in words
+        out.writeByte(isAck ? 0x10 : 0x08); //ACK or PSH
+        out.writeByte(0xFF); //window
+        out.writeByte(0xFF);
+        out.writeInt(0); //checksum and urgent pointer
+    }
+
+    private static int address(int flow, int host) {
+        return 0x0A000000 | ((2 * flow + host + 1) & 0xFFFFFF);
+    }
+
+    private static String typeName(int type) {
+        return type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : Integer.toString(type);
+    }
+
+    /**
+     * The records of a trace, read one at a time
+     */
+    private static class Records implements Closeable {
+
+        private final ChannelInput in;
+        private long remaining; //records left, -1 if the trace was not closed
+        long time;
+        int type;
+        int flow;
+        int host;
+        int seq;
+        int ack;
+        int flags;
+
+        Records(Path trace) throws IOException {
+            in = new ChannelInput(FileChannel.open(trace, StandardOpenOption.READ));
+            if (in.readInt() != TraceRecorder.MAGIC) {
+                in.close();
+                throw new IOException(trace + " is not a trace");
+            }
+            int version = in.readInt();
+            int recordSize = in.readInt();
+            if (version != TraceRecorder.VERSION || recordSize != TraceRecorder.RECORD_SIZE) {
+                in.close();
+                throw new IOException("Unsupported trace version " + version + " in " + trace);
+            }
+            in.readInt();
+            long count = in.readLong();
+            remaining = count > 0 ? count : -1;
+        }
+
+        /**
+         * Read the next record
+         *
+         * @return false if there are no more records
+         */
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            long word1;
+            long word2;
+            try {
+                time = in.readLong();
+                word1 = in.readLong();
+                word2 = in.readLong();
+            } catch (EOFException ex) {
+                return false;
+            }
+            type = (int) (word2 >>> 16) & 0xFF;
+            if (type == 0) {
+                //end of a trace that was not closed
+                return false;
+            }
+            flow = (int) (word1 >>> 32);
+            seq = (int) word1;
+            ack = (int) (word2 >>> 32);
+            host = (int) (word2 >>> 8) & 0xFF;
+            flags = (int) word2 & 0xFF;
+            if (remaining > 0) {
+                remaining--;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class which records a binary trace of a run: one fixed-size record per
+ * packet sent, packet arrival, timer expiry and message handed to a sender.
+ * Recording a record costs a few stores into a ring buffer; a background
+ * thread drains the buffer into a memory-mapped file, so a full trace of a
+ * large run slows it down by a few percent where printing it would slow it
+ * down by orders of magnitude. See TraceConverter to turn a trace into pcap or
+ * CSV.
+ *
+ * The ring buffer is lock-free and may be shared by the threads of a parallel
+ * run: a record claims a slot by incrementing a counter and publishes it by
+ * storing its sequence number once its fields are written. Records of
+ * different threads are not in time order. When the buffer is full, the
+ * recording threads wait for the writer rather than drop records.
+ *
+ * The file starts with a header (magic number, format version, record size and
+ * number of records, the last written on close) followed by the records, and
+ * ends after the last record once the recorder is closed. Each record holds
+ * three big-endian longs: the time in ticks; the flow and the seq
+ * number; the ack number and the type, host and flags of the record. A trace
+ * cut short by a crash ends at the first record of type 0.
+ */
+public class TraceRecorder implements Closeable {
+
+    static final int MAGIC = 0x4E535452; //"NSTR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 24;
+
+    public static final int PACKET_SENT = 1; //a packet handed to the network layer
+    public static final int PACKET_ARRIVED = 2; //a packet taken by the transport it was sent to
+    public static final int TIMER_EXPIRED = 3; //the timer of a sender expired; seq is its window's base
+    public static final int MESSAGE_SENT = 4; //a message handed to a sender transport; seq is its number
+
+    public static final int LOST = 1; //flag of a packet the network layer lost
+    public static final int CORRUPTED = 2; //flag of a corrupted packet
+
+    private static final int DEFAULT_CAPACITY = 1 << 16; //records in the ring buffer
+    private static final int CHUNK_RECORDS = 1 << 16; //records mapped at a time
+
+    private final long[] ring; //three longs per record
+    private final AtomicLongArray published; //sequence number + 1 of the record in each slot
+    private final int mask;
+    private final AtomicLong claimed; //number of records claimed by the recording threads
+    private final AtomicLong drained; //number of records written to the file
+
+    private final FileChannel channel;
+    private final Thread writer;
+    private volatile boolean closing;
+    private MappedByteBuffer chunk; //part of the file the next records are written to
+    private long chunkStart; //index of the first record of the chunk
+    private IOException failure; //error of the writer thread
+
+    /**
+     * Create a recorder with a ring buffer of the default size
+     *
+     * @param file the trace file, replaced if it exists
+     * @throws IOException if the file cannot be opened
+     */
+    public TraceRecorder(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a recorder
+     *
+     * @param file the trace file, replaced if it exists
+     * @param capacity number of records the ring buffer holds, a power of two
+     * @throws IOException if the file cannot be opened
+     */
+    public TraceRecorder(Path file, int capacity) throws IOException {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        ring = new long[3 * capacity];
+        published = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        claimed = new AtomicLong();
+        drained = new AtomicLong();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(0);
+        chunkStart = 0;
+        chunk = map(0);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void writeHeader(long count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).putLong(count).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private MappedByteBuffer map(long firstRecord) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE,
+                HEADER_SIZE + firstRecord * RECORD_SIZE, (long) CHUNK_RECORDS * RECORD_SIZE);
+    }
+
+    /**
+     * Add a record to the trace. Safe to call from several threads at once.
+     *
+     * @param time time of the record, in ticks
+     * @param type PACKET_SENT, PACKET_ARRIVED, TIMER_EXPIRED or MESSAGE_SENT
+     * @param flow flow of the host
+     * @param host Event.SENDER or Event.RECEIVER
+     * @param seq seq number of the packet
+     * @param ack ack number of the packet
+     * @param flags LOST and CORRUPTED, or 0
+     */
+    public void record(long time, int type, int flow, int host, int seq, int ack, int flags) {
+        long sequence = claimed.getAndIncrement();
+        while (sequence - drained.get() > mask) {
+            //the buffer is full: let the writer catch up
+            Thread.yield();
+        }
+        int slot = (int) sequence & mask;
+        ring[3 * slot] = time;
+        ring[3 * slot + 1] = ((long) flow << 32) | (seq & 0xFFFFFFFFL);
+        ring[3 * slot + 2] = ((long) ack << 32) | (type << 16) | (host << 8) | flags;
+        published.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * The loop of the writer thread: copy the published records to the file,
+     * in order, until the recorder is closed and every record is written
+     */
+    private void drain() {
+        try {
+            long next = drained.get();
+            while (true) {
+                int slot = (int) next & mask;
+                if (published.get(slot) != next + 1) {
+                    if (closing && claimed.get() == next) {
+                        return;
+                    }
+                    LockSupport.parkNanos(100000);
+                    continue;
+                }
+                if (next - chunkStart == CHUNK_RECORDS) {
+                    chunkStart = next;
+                    chunk = map(chunkStart);
+                }
+                chunk.putLong(ring[3 * slot]);
+                chunk.putLong(ring[3 * slot + 1]);
+                chunk.putLong(ring[3 * slot + 2]);
+                next++;
+                drained.lazySet(next);
+            }
+        } catch (IOException ex) {
+            failure = ex;
+            //stop the recording threads from waiting forever
+            drained.set(Long.MAX_VALUE / 2);
+        }
+    }
+
+    /**
+     * Return the number of records so far
+     *
+     * @return number of records
+     */
+    public long getCount() {
+        return claimed.get();
+    }
+
+    /**
+     * Wait for every record to be written, then write the number of records,
+     * cut the file after the last record and close it. No record may be added
+     * once this is called.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the trace", ex);
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            chunk.force();
+            chunk = null;
+            long count = drained.get();
+            //the last chunk was mapped whole, drop its records that were never written
+            channel.truncate(HEADER_SIZE + count * RECORD_SIZE);
+            writeHeader(count);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package transport;
+
+/**
+ * A class which accumulates the results of independent trials and gives
+ * their mean, standard deviation and confidence interval. The mean and
+ * variance are updated one value at a time (Welford's method), so no value
+ * is kept.
+ */
+public class TrialStatistics {
+
+    private long count; //number of values
+    private double mean; //mean of the values so far
+    private double m2; //sum of squared differences from the mean
+
+    /**
+     * Add the result of a trial
+     *
+     * @param value the result
+     */
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Return the sample standard deviation
+     *
+     * @return the standard deviation, 0 with fewer than two values
+     */
+    public double getStdDev() {
+        return count < 2 ? 0 : Math.sqrt(m2 / (count - 1));
+    }
+
+    /**
+     * Return the half-width of the confidence interval of the mean, using
+     * Student's t distribution
+     *
+     * @param confidence confidence level, e.g. 0.95
+     * @return the half-width, infinite with fewer than two values
+     */
+    public double getHalfWidth(double confidence) {
+        if (count < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return tQuantile(1 - (1 - confidence) / 2, count - 1) * getStdDev() / Math.sqrt(count);
+    }
+
+    /**
+     * Return the half-width of the confidence interval relative to the mean
+     *
+     * @param confidence confidence level, e.g. 0.95
+     * @return the relative half-width, infinite if the mean is 0 and the
+     * half-width is not
+     */
+    public double getRelativeHalfWidth(double confidence) {
+        double halfWidth = getHalfWidth(confidence);
+        if (halfWidth == 0) {
+            return 0;
+        }
+        return mean == 0 ? Double.POSITIVE_INFINITY : halfWidth / Math.abs(mean);
+    }
+
+    /**
+     * Return a quantile of the standard normal distribution (Acklam's
+     * rational approximation, relative error below 1.2e-9)
+     *
+     * @param p probability, between 0 and 1 exclusive
+     * @return the quantile
+     */
+    static double normalQuantile(double p) {
+        if (p <= 0 || p >= 1) {
+            throw new IllegalArgumentException("probability must be between 0 and 1: " + p);
+        }
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+            3.754408661907416e+00};
+        double low = 0.02425;
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            return -normalQuantile(1 - p);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    /**
+     * Return a quantile of Student's t distribution. One and two degrees of
+     * freedom have closed forms; above that the normal quantile is corrected
+     * with the Cornish-Fisher expansion, which is within 0.5% from three
+     * degrees of freedom on.
+     *
+     * @param p probability, between 0 and 1 exclusive
+     * @param df degrees of freedom, at least 1
+     * @return the quantile
+     */
+    static double tQuantile(double p, long df) {
+        if (df < 1) {
+            throw new IllegalArgumentException("degrees of freedom must be at least 1: " + df);
+        }
+        if (df == 1) {
+            return Math.tan(Math.PI * (p - 0.5));
+        }
+        if (df == 2) {
+            double alpha = 4 * p * (1 - p);
+            return 2 * (p - 0.5) * Math.sqrt(2 / alpha);
+        }
+        double z = normalQuantile(p);
+        double z2 = z * z;
+        double n = df;
+        return z + z * (z2 + 1) / (4 * n)
+                + z * ((5 * z2 + 16) * z2 + 3) / (96 * n * n)
+                + z * (((3 * z2 + 19) * z2 + 17) * z2 - 15) / (384 * n * n * n)
+                + z * ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945) / (92160 * n * n * n * n);
+    }
+}
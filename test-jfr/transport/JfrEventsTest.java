@@ -0,0 +1,78 @@
+package transport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+
+/**
+ *
+ * @author hongha912
+ */
+public class JfrEventsTest {
+
+    public JfrEventsTest() {
+    }
+
+    /**
+     * Test of the events of class JfrEvents: a recording has the start and
+     * end of the run, and one event per timeout and fast retransmit.
+     */
+    @Test
+    public void testEvents() throws Exception {
+        System.out.println("events");
+        //this test needs the recorder, so the events must have loaded
+        assertTrue(FlightEvents.INSTANCE instanceof JfrEvents);
+        Path file = Files.createTempFile("telemetry", ".jfr");
+        try {
+            Simulation sim = new Simulation(messages(200), 2, 2, 0.2f, 0.1f, 8, 1, 1, 42L);
+            sim.setReceiverSink(new CountingSink(2));
+            RunMetrics metrics;
+            try (Recording recording = new Recording()) {
+                recording.enable("transport.RunStarted");
+                recording.enable("transport.Run");
+                recording.enable("transport.Timeout");
+                recording.enable("transport.FastRetransmit");
+                recording.start();
+                metrics = sim.run().getMetrics();
+                recording.stop();
+                recording.dump(file);
+            }
+            int started = 0;
+            int ended = 0;
+            int timeouts = 0;
+            int fastRetransmits = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                switch (event.getEventType().getName()) {
+                    case "transport.RunStarted":
+                        started++;
+                        assertEquals("TCP", event.getString("protocol"));
+                        break;
+                    case "transport.Run":
+                        ended++;
+                        assertEquals(sim.getEventsProcessed(), event.getLong("events"));
+                        break;
+                    case "transport.Timeout":
+                        timeouts++;
+                        break;
+                    case "transport.FastRetransmit":
+                        fastRetransmits++;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            assertEquals(1, started);
+            assertEquals(1, ended);
+            assertEquals(metrics.getTimeouts(), timeouts);
+            assertEquals(metrics.getFastRetransmits(), fastRetransmits);
+            assertTrue(timeouts > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class AdaptiveTrialsTest {
+
+    public AdaptiveTrialsTest() {
+    }
+
+    /**
+     * Test of run method, of class AdaptiveTrials: values that barely vary
+     * stop at the minimum number of trials, noisy ones run to the budget.
+     */
+    @Test
+    public void testRun() {
+        System.out.println("run");
+        AdaptiveTrials instance = new AdaptiveTrials(3);
+        instance.setTrialBounds(4, 50);
+        instance.setTargetRelativeHalfWidth(0.01);
+
+        TrialStatistics[] easy = instance.run(new AdaptiveTrials.Trial() {
+            @Override
+            public double[] run(int index) {
+                return new double[]{100 + index % 2 * 0.01};
+            }
+        }, 1);
+        assertEquals(4, easy[0].getCount());
+
+        TrialStatistics[] noisy = instance.run(new AdaptiveTrials.Trial() {
+            @Override
+            public double[] run(int index) {
+                return new double[]{100, (RandomStream.mix64(index) >>> 11) * 0x1.0p-53 * 100};
+            }
+        }, 2);
+        assertEquals(50, noisy[0].getCount());
+        assertEquals(50, noisy[1].getCount());
+    }
+
+    /**
+     * Test of run method, of class AdaptiveTrials: the results do not depend
+     * on the number of threads.
+     */
+    @Test
+    public void testRun_sameForAnyThreads() {
+        System.out.println("run_sameForAnyThreads");
+        AdaptiveTrials.Trial trial = new AdaptiveTrials.Trial() {
+            @Override
+            public double[] run(int index) {
+                return new double[]{(RandomStream.mix64(index) >>> 11) * 0x1.0p-53 + 10};
+            }
+        };
+        AdaptiveTrials single = new AdaptiveTrials(1);
+        AdaptiveTrials many = new AdaptiveTrials(4);
+        single.setTrialBounds(4, 8);
+        many.setTrialBounds(4, 8);
+        TrialStatistics expResult = single.run(trial, 1)[0];
+        TrialStatistics result = many.run(trial, 1)[0];
+        assertEquals(expResult.getCount(), result.getCount());
+        assertEquals(expResult.getMean(), result.getMean(), 0);
+    }
+}
@@ -0,0 +1,175 @@
+package transport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+import static transport.TestFixtures.assertSameResults;
+
+/**
+ *
+ * @author hongha912
+ */
+public class ArrivalProcessTest {
+
+    public ArrivalProcessTest() {
+    }
+
+    private static Path tempFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("arrivals", suffix);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Test of setArrivalProcess method, of class Simulation: the default
+     * process is Poisson arrivals with the run's time between messages, and
+     * setting a process before the run draws the first send times again.
+     */
+    @Test
+    public void testSetArrivalProcess() {
+        System.out.println("setArrivalProcess");
+        FlowStatistics expResult = new Simulation(messages(30), 4, 3, 0.1f, 0.1f, 4, 1, 10, 5L).run();
+        Simulation sim = new Simulation(messages(30), 4, 3, 0.1f, 0.1f, 4, 1, 10, 5L);
+        sim.setArrivalProcess(new ConstantArrivals(1));
+        sim.setArrivalProcess(new PoissonArrivals(3));
+        assertEquals("poisson:3.0", sim.getTimeline().getArrivalProcess().toSpec());
+        assertSameResults(expResult, sim.run());
+
+        sim = new Simulation(messages(30), 4, 3, 0.1f, 0.1f, 4, 1, 10, 5L);
+        sim.runUntil(20);
+        try {
+            sim.setArrivalProcess(new ConstantArrivals(1));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * Test of nextGap method, of class ConstantArrivals: messages are sent at
+     * multiples of the gap, rounded down to a tick.
+     */
+    @Test
+    public void testConstantArrivals() {
+        System.out.println("constantArrivals");
+        ArrivalProcess.Source source = new ConstantArrivals(2.5).newSource(1);
+        long time = 0;
+        for (int i = 0; i < 100; i++) {
+            time += source.nextGap(i, null);
+            assertEquals((long) ((i + 1) * 2.5), time);
+        }
+        Simulation sim = new Simulation(messages(10), 1, 1, 0, 0, 100, 1, 10, 1L);
+        sim.setArrivalProcess(new ConstantArrivals(4));
+        for (int i = 0; i < 10; i++) {
+            //message i is sent at 40 * (i + 1)
+            sim.runUntil(40 * (i + 1));
+            assertEquals(i, sim.getSenderApplication(0).getNumSent());
+            sim.runUntil(40 * (i + 1) + 1);
+            assertEquals(i + 1, sim.getSenderApplication(0).getNumSent());
+        }
+    }
+
+    /**
+     * Test of nextGap method, of class MmppArrivals: the long-run rate is the
+     * average of the phase rates weighted by the phases' sojourn times.
+     */
+    @Test
+    public void testMmppArrivals() throws IOException {
+        System.out.println("mmppArrivals");
+        ArrivalProcess[] processes = {MmppArrivals.onOff(2, 10, 30), ArrivalProcess.parse("mmpp:4@5:0.5@15")};
+        double[] rates = {2 * 10 / 40.0, (4 * 5 + 0.5 * 15) / 20.0};
+        for (int p = 0; p < processes.length; p++) {
+            ArrivalProcess.Source source = processes[p].newSource(1000);
+            RandomStream random = new RandomStream(9, 0, false);
+            int n = 100000;
+            long time = 0;
+            for (int i = 0; i < n; i++) {
+                time += source.nextGap(i, random);
+            }
+            assertEquals(rates[p], n * 1000.0 / time, rates[p] * 0.05);
+            assertEquals(processes[p].toSpec(), ArrivalProcess.parse(processes[p].toSpec()).toSpec());
+        }
+        for (String bad : new String[]{"mmpp:0@5", "mmpp:1@0", "onoff:1:2", "cbr:-1", "poisson", "exponential:3"}) {
+            try {
+                ArrivalProcess.parse(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Test of fromText method, of class TraceArrivals: a trace replays the
+     * timestamps as send times, and starts over once they are used up.
+     */
+    @Test
+    public void testTraceArrivals() throws IOException {
+        System.out.println("traceArrivals");
+        Path text = tempFile(".txt");
+        Files.write(text, Arrays.asList("# seconds", "10", "10.5", "", "12", "16"), StandardCharsets.UTF_8);
+        Path file = tempFile(".bin");
+        assertEquals(4, TraceArrivals.fromText(text, file));
+        TraceArrivals trace = (TraceArrivals) ArrivalProcess.parse("trace:" + file);
+        assertEquals(4, trace.getCount());
+
+        Simulation sim = new Simulation(messages(10), 2, 1, 0, 0, 100, 1, 10, 1L);
+        sim.setArrivalProcess(trace);
+        //the trace lasts 6 units, so it starts over 8 units after its first timestamp
+        long[] expected = {0, 5, 20, 60, 80, 85, 100, 140, 160, 165};
+        for (int i = 0; i < expected.length; i++) {
+            sim.runUntil(expected[i]);
+            for (int flow = 0; flow < 2; flow++) {
+                assertEquals(i, sim.getSenderApplication(flow).getNumSent());
+            }
+            sim.runUntil(expected[i] + 1);
+            for (int flow = 0; flow < 2; flow++) {
+                assertEquals(i + 1, sim.getSenderApplication(flow).getNumSent());
+            }
+        }
+
+        Files.write(text, Arrays.asList("1", "3", "2"), StandardCharsets.UTF_8);
+        try {
+            TraceArrivals.fromText(text, file);
+            fail();
+        } catch (IOException expected1) {
+        }
+        try {
+            new TraceArrivals(text);
+            fail();
+        } catch (IOException expected2) {
+        }
+    }
+
+    /**
+     * Test of the arrival process of checkpoints and optimistic runs: a run
+     * with bursty arrivals gives the same results resumed from a checkpoint or
+     * rolled back by Time Warp.
+     */
+    @Test
+    public void testStateIsRestored() throws IOException {
+        System.out.println("stateIsRestored");
+        ArrivalProcess onOff = MmppArrivals.onOff(1, 5, 20);
+        Simulation sim = new Simulation(messages(20), 6, 3, 0.2f, 0.2f, 4, 1, 10, 13L);
+        sim.setArrivalProcess(onOff);
+        FlowStatistics expResult = sim.run();
+
+        sim = new Simulation(messages(20), 6, 3, 0.2f, 0.2f, 4, 1, 10, 13L);
+        sim.setArrivalProcess(onOff);
+        sim.runUntil(300);
+        Path file = tempFile(".ckpt");
+        Checkpoint.save(sim, file);
+        Simulation resumed = Checkpoint.load(file);
+        assertEquals(onOff.toSpec(), resumed.getTimeline().getArrivalProcess().toSpec());
+        assertSameResults(expResult, resumed.run());
+
+        for (int numLps = 2; numLps <= 3; numLps++) {
+            TimeWarpSimulation optimistic = new TimeWarpSimulation(messages(20), 6, 3, 0.2f, 0.2f, 4, 1, 10, 13L, numLps, 2);
+            optimistic.setArrivalProcess(onOff);
+            assertSameResults(expResult, optimistic.run());
+        }
+    }
+}
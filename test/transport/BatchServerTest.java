@@ -0,0 +1,176 @@
+package transport;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class BatchServerTest {
+
+    public BatchServerTest() {
+    }
+
+    /**
+     * Test of parse method, of class BatchServer.
+     */
+    @Test
+    public void testParse() {
+        System.out.println("parse");
+        Map<String, Object> members = BatchServer.parse(" {\"a\": 1.5, \"b\" :\"x\\\"\\u00e9\", \"c\":true,\"d\":null} ");
+        assertEquals(new BigDecimal("1.5"), members.get("a"));
+        assertEquals("x\"\u00e9", members.get("b"));
+        assertEquals(Boolean.TRUE, members.get("c"));
+        assertTrue(members.containsKey("d"));
+        assertTrue(BatchServer.parse("{}").isEmpty());
+        for (String bad : new String[]{"{", "{\"a\":}", "{\"a\":1} x", "{\"a\":1,\"a\":2}", "[1]"}) {
+            try {
+                BatchServer.parse(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Test of serve method, of class BatchServer: every line gets one result,
+     * the same as a run of its own, and bad lines get an error.
+     */
+    @Test
+    public void testServe() throws Exception {
+        System.out.println("serve");
+        Path file = Files.createTempFile("messages", ".txt");
+        try {
+            ArrayList<String> messages = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                messages.add("message " + i);
+            }
+            Files.write(file, messages, StandardCharsets.UTF_8);
+            String name = file.toString().replace("\\", "\\\\");
+            StringBuilder in = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                in.append("{\"id\": ").append(i).append(", \"fileName\": \"").append(name)
+                        .append("\", \"timeBetweenMsg\": 2, \"lossProb\": 0.2, \"corrProb\": 0.1, \"windowsSize\": 4,")
+                        .append(" \"protocolType\": ").append(i % 2).append(", \"seed\": ").append(i).append("}\n");
+            }
+            in.append("\n{\"id\": \"typo\", \"fileName\": \"").append(name).append("\", \"lossProb\": 0.1}\n");
+            in.append("{\"id\": \"missing\", \"fileName\": \"no-such-file.txt\", \"timeBetweenMsg\": 2,")
+                    .append(" \"lossProb\": 0.1, \"corrProb\": 0.1, \"windowsSize\": 4, \"protocolType\": 0}\n");
+            in.append("not json\n");
+
+            StringWriter out = new StringWriter();
+            new BatchServer(3, out).serve(new BufferedReader(new StringReader(in.toString())));
+
+            String[] lines = out.toString().split("\n");
+            assertEquals(15, lines.length);
+            Map<String, Map<String, Object>> results = new HashMap<>();
+            for (String line : lines) {
+                Map<String, Object> result = BatchServer.parse(line.replaceFirst(",\"metrics\":\\{.*\\}\\}$", "}"));
+                results.put(String.valueOf(result.get("id")), result);
+                if (result.containsKey("metrics")) {
+                    fail(line);
+                }
+            }
+            assertTrue(results.get("typo").get("error").toString().contains("timeBetweenMsg"));
+            assertTrue(results.get("missing").get("error").toString().contains("no-such-file.txt"));
+            assertTrue(results.get("null").containsKey("error"));
+            for (String line : lines) {
+                if (line.startsWith("{\"id\":5,")) {
+                    Simulation sim = new Simulation(messages, 1, 2, 0.2f, 0.1f, 4, 1, 1, 5L);
+                    sim.setReceiverSink(new CountingSink(1));
+                    RunMetrics metrics = sim.run().getMetrics();
+                    assertTrue(line, line.contains("\"Total Time\":" + metrics.get(RunMetrics.TOTAL_TIME) + ","));
+                    assertTrue(line, line.contains("\"Messages Delivered\":40,"));
+                }
+            }
+            for (int i = 0; i < 12; i++) {
+                assertEquals(new BigDecimal(i), results.get(Integer.toString(i)).get("seed"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test of arrivalProcess and linkTrace methods, of class BatchServer: a
+     * spec is parsed once and shared, until the file it reads changes.
+     */
+    @Test
+    public void testArrivalProcess_cached() throws Exception {
+        System.out.println("arrivalProcess_cached");
+        Path text = Files.createTempFile("arrivals", ".txt");
+        Path linkText = Files.createTempFile("linktrace", ".txt");
+        Path arrivals = Files.createTempFile("arrivals", ".bin");
+        Path links = Files.createTempFile("linktrace", ".bin");
+        try {
+            Files.write(text, Arrays.asList("0", "1", "3"), StandardCharsets.UTF_8);
+            Files.write(linkText, Arrays.asList("0 0 1", "1 0 2"), StandardCharsets.UTF_8);
+            TraceArrivals.fromText(text, arrivals);
+            LinkTrace.fromText(linkText, linkText, links, 1);
+            BatchServer server = new BatchServer(1, new StringWriter());
+            assertSame(server.arrivalProcess("cbr:2"), server.arrivalProcess("cbr:2"));
+            ArrivalProcess process = server.arrivalProcess("trace:" + arrivals);
+            assertSame(process, server.arrivalProcess("trace:" + arrivals));
+            LinkTrace trace = server.linkTrace("loop:" + links);
+            assertSame(trace, server.linkTrace("loop:" + links));
+            assertNotSame(trace, server.linkTrace("stop:" + links));
+
+            Files.write(text, Arrays.asList("0", "1", "3", "4"), StandardCharsets.UTF_8);
+            Files.write(linkText, Arrays.asList("0 0 1", "1 0 2", "0 1 1"), StandardCharsets.UTF_8);
+            TraceArrivals.fromText(text, arrivals);
+            LinkTrace.fromText(linkText, linkText, links, 1);
+            ArrivalProcess changed = server.arrivalProcess("trace:" + arrivals);
+            assertNotSame(process, changed);
+            assertEquals(4, ((TraceArrivals) changed).getCount());
+            assertNotSame(trace, server.linkTrace("loop:" + links));
+        } finally {
+            Files.delete(text);
+            Files.delete(linkText);
+            Files.delete(arrivals);
+            Files.delete(links);
+        }
+    }
+
+    /**
+     * Test of serve method, of class BatchServer, with runs that throw an
+     * Error: each still gets an error with its id, and the server goes on.
+     */
+    @Test
+    public void testServe_error() throws Exception {
+        System.out.println("serve_error");
+        StringWriter out = new StringWriter();
+        BatchServer server = new BatchServer(2, out) {
+            @Override
+            String execute(String request) {
+                if (request.contains("overflow")) {
+                    throw new StackOverflowError();
+                }
+                return super.execute(request);
+            }
+        };
+        server.serve(new BufferedReader(new StringReader("{\"id\": \"overflow\"}\n{\"id\": 3}\n{\"overflow\n")));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        Map<String, Map<String, Object>> results = new HashMap<>();
+        for (String line : lines) {
+            Map<String, Object> result = BatchServer.parse(line);
+            results.put(String.valueOf(result.get("id")), result);
+        }
+        assertEquals("java.lang.StackOverflowError", results.get("overflow").get("error"));
+        assertTrue(results.get("3").get("error").toString().contains("fileName"));
+        assertEquals("java.lang.StackOverflowError", results.get("null").get("error"));
+    }
+}
@@ -0,0 +1,83 @@
+package transport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+import static transport.TestFixtures.assertSameResults;
+
+/**
+ *
+ * @author hongha912
+ */
+public class CheckpointTest {
+
+    public CheckpointTest() {
+    }
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("checkpoint", ".bin");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Test of save and load methods, of class Checkpoint: a run resumed from a
+     * checkpoint gives the same results as an uninterrupted one, and the
+     * resumed state is written back byte for byte.
+     */
+    @Test
+    public void testSaveLoad_resumeIsIdentical() throws IOException {
+        System.out.println("saveLoad_resumeIsIdentical");
+        int numFlows = 20;
+        for (int protocol = 0; protocol < 2; protocol++) {
+            FlowStatistics expResult = new Simulation(messages(10), numFlows, 3, 0.2f, 0.2f, 4, protocol, 10, 11L).run();
+            for (long stop : new long[]{0, 37, 250, 1000}) {
+                Simulation sim = new Simulation(messages(10), numFlows, 3, 0.2f, 0.2f, 4, protocol, 10, 11L);
+                sim.runUntil(stop);
+                Path file = tempFile();
+                Checkpoint.save(sim, file);
+
+                Simulation resumed = Checkpoint.load(file);
+                Path again = tempFile();
+                Checkpoint.save(resumed, again);
+                assertTrue(Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(again)));
+
+                assertSameResults(expResult, resumed.run());
+            }
+        }
+    }
+
+    /**
+     * Test of load method, of class Checkpoint, with a file that is not a
+     * checkpoint.
+     */
+    @Test(expected = IOException.class)
+    public void testLoad_notACheckpoint() throws IOException {
+        System.out.println("load_notACheckpoint");
+        Path file = tempFile();
+        Files.write(file, "not a checkpoint".getBytes("UTF-8"));
+        Checkpoint.load(file);
+    }
+
+    /**
+     * Test of setCheckpointing method, of class Simulation: checkpoints are
+     * written while the run goes on, and the last one resumes to the same
+     * results.
+     */
+    @Test
+    public void testSetCheckpointing() throws IOException {
+        System.out.println("setCheckpointing");
+        FlowStatistics expResult = new Simulation(messages(10), 5, 3, 0.2f, 0.2f, 4, 1, 1, 3L).run();
+        Path file = tempFile();
+        Files.delete(file);
+        Simulation sim = new Simulation(messages(10), 5, 3, 0.2f, 0.2f, 4, 1, 1, 3L);
+        sim.setCheckpointing(file, 0, 25);
+        sim.runUntil(60);
+        assertTrue(Files.exists(file));
+        assertSameResults(expResult, Checkpoint.load(file).run());
+    }
+}
@@ -0,0 +1,87 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class EventQueueTest {
+
+    public EventQueueTest() {
+    }
+
+    /**
+     * Test of poll and pollTick methods, of class EventQueue: events come out
+     * in the order of a priority queue of events, whatever the order they were
+     * added in, including events added to the tick at the head.
+     */
+    @Test
+    public void testPoll() {
+        System.out.println("poll");
+        Random ran = new Random(7L);
+        EventQueue instance = new EventQueue();
+        PriorityQueue<Event> expected = new PriorityQueue<>();
+        List<Event> tick = new ArrayList<>();
+        long now = 0;
+        int seq = 0;
+        for (int step = 0; step < 20000; step++) {
+            int op = ran.nextInt(10);
+            if (op < 5 || expected.isEmpty()) {
+                Event e = new Event(now + ran.nextInt(20), Event.MESSAGEARRIVE, ran.nextInt(2), ran.nextInt(5));
+                e.seq = seq++;
+                instance.add(e);
+                expected.add(e);
+            } else if (op < 8) {
+                assertSame(expected.peek(), instance.peek());
+                Event e = instance.poll();
+                assertSame(expected.poll(), e);
+                now = e.getTime();
+            } else {
+                tick.clear();
+                now = instance.pollTick(tick);
+                assertTrue(tick.size() > 0);
+                for (Event e : tick) {
+                    assertSame(expected.poll(), e);
+                    assertEquals(now, e.getTime());
+                }
+                assertTrue(expected.isEmpty() || expected.peek().getTime() > now);
+            }
+            assertEquals(expected.size(), instance.size());
+        }
+        instance.clear();
+        assertEquals(0, instance.size());
+        assertNull(instance.peek());
+        assertEquals(Long.MAX_VALUE, instance.pollTick(tick));
+    }
+
+    /**
+     * Test of pollTick method, of class EventQueue: cancelled events are
+     * counted until they are taken, and left out of the tick.
+     */
+    @Test
+    public void testPollTick_cancelled() {
+        System.out.println("pollTick_cancelled");
+        EventQueue instance = new EventQueue();
+        Event[] events = new Event[4];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new Event(5, Event.TIMER, Event.SENDER, i);
+            instance.add(events[i]);
+        }
+        events[1].cancelled = true;
+        List<Event> pending = new ArrayList<>();
+        instance.addPendingTo(pending);
+        assertEquals(3, pending.size());
+        assertEquals(4, instance.size());
+        List<Event> tick = new ArrayList<>();
+        assertEquals(5, instance.pollTick(tick));
+        assertEquals(3, tick.size());
+        assertSame(events[2], tick.get(1));
+        assertEquals(0, instance.size());
+    }
+}
@@ -0,0 +1,128 @@
+package transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class LatencyHistogramTest {
+
+    public LatencyHistogramTest() {
+    }
+
+    private static long value(int i) {
+        //spread over many powers of two
+        return (RandomStream.mix64(i) >>> 1) >>> (RandomStream.mix64(~i) >>> 58);
+    }
+
+    /**
+     * Test of bucketOf method, of class LatencyHistogram: every value is in a
+     * bucket whose largest value is within 1/64 of it.
+     */
+    @Test
+    public void testBucketOf() {
+        System.out.println("bucketOf");
+        for (int i = 0; i < 100000; i++) {
+            long v = value(i);
+            int bucket = LatencyHistogram.bucketOf(v);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest >= v);
+            assertTrue(highest - v <= v / 64);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.highestValueOf(bucket - 1) < v);
+            }
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Test of getValueAtPercentile method, of class LatencyHistogram: the
+     * percentiles are within 1/64 of the exact ones.
+     */
+    @Test
+    public void testGetValueAtPercentile() {
+        System.out.println("getValueAtPercentile");
+        int n = 10000;
+        long[] values = new long[n];
+        LatencyHistogram instance = new LatencyHistogram();
+        for (int i = 0; i < n; i++) {
+            values[i] = value(i) >>> 20;
+            instance.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{0, 10, 50, 90, 99, 99.9, 100}) {
+            long exact = values[Math.max(0, (int) Math.ceil(p / 100 * n) - 1)];
+            long result = instance.getValueAtPercentile(p);
+            assertTrue(result >= exact);
+            assertTrue(result - exact <= exact / 64);
+        }
+        assertEquals(values[n - 1], instance.getValueAtPercentile(100));
+        assertEquals(values[0], instance.getMin());
+        assertEquals(n, instance.getCount());
+    }
+
+    /**
+     * Test of add method, of class LatencyHistogram: merged histograms are
+     * the same as one histogram of all the values.
+     */
+    @Test
+    public void testAdd() {
+        System.out.println("add");
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram[] parts = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+        for (int i = 0; i < 3000; i++) {
+            long v = value(i) >>> (i % 3 * 20);
+            all.record(v);
+            parts[i % 3].record(v);
+        }
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram part : parts) {
+            merged.add(part);
+        }
+        assertEquals(all.getCount(), merged.getCount());
+        assertEquals(all.getMin(), merged.getMin());
+        assertEquals(all.getMax(), merged.getMax());
+        assertEquals(all.getMean(), merged.getMean(), 0);
+        for (double p = 0; p <= 100; p += 0.5) {
+            assertEquals(all.getValueAtPercentile(p), merged.getValueAtPercentile(p));
+        }
+    }
+
+    /**
+     * Test of write and read methods, of class LatencyHistogram: a histogram
+     * read back from a checkpoint has the same values, and a copy does not
+     * change with the original.
+     */
+    @Test
+    public void testWriteRead() throws IOException {
+        System.out.println("writeRead");
+        LatencyHistogram instance = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            instance.record(value(i) >>> 30);
+        }
+        LatencyHistogram copy = new LatencyHistogram(instance);
+        instance.record(1L << 40);
+        for (LatencyHistogram expResult : new LatencyHistogram[]{new LatencyHistogram(), copy, instance}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ChannelOutput out = new ChannelOutput(Channels.newChannel(bytes));
+            expResult.write(out);
+            out.flush();
+            LatencyHistogram result = LatencyHistogram.read(new ChannelInput(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))));
+            assertEquals(expResult.getCount(), result.getCount());
+            assertEquals(expResult.getMin(), result.getMin());
+            assertEquals(expResult.getMax(), result.getMax());
+            assertEquals(expResult.getMean(), result.getMean(), 0);
+            for (double p = 0; p <= 100; p += 0.5) {
+                assertEquals(expResult.getValueAtPercentile(p), result.getValueAtPercentile(p));
+            }
+        }
+        assertEquals(1000, copy.getCount());
+    }
+}
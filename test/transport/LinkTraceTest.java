@@ -0,0 +1,170 @@
+package transport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+import static transport.TestFixtures.assertSameResults;
+
+/**
+ *
+ * @author hongha912
+ */
+public class LinkTraceTest {
+
+    public LinkTraceTest() {
+    }
+
+    private static Path tempFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("linktrace", suffix);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Make a trace from the lines of each direction
+     */
+    private static Path trace(String[] forward, String[] backward, int stepsPerUnit) throws IOException {
+        Path forwardText = tempFile(".txt");
+        Path backwardText = tempFile(".txt");
+        Files.write(forwardText, Arrays.asList(forward), StandardCharsets.UTF_8);
+        Files.write(backwardText, Arrays.asList(backward), StandardCharsets.UTF_8);
+        Path file = tempFile(".bin");
+        LinkTrace.fromText(forwardText, backwardText, file, stepsPerUnit);
+        return file;
+    }
+
+    /**
+     * Test of entry method, of class LinkTrace.Cursor: the entries are read
+     * across windows, and start over or stop at the end of the trace.
+     */
+    @Test
+    public void testEntry() throws IOException {
+        System.out.println("entry");
+        Path file = trace(new String[]{"# lost corrupted delay", "0 0 2", "1 0 0", "", "0 1 1.5", "0 0 0.25", "0 0 7"},
+                new String[]{"0 0 3"}, 4);
+        int[] forward = {8, LinkTrace.LOST, LinkTrace.CORRUPTED | 6, 1, 28};
+        LinkTrace trace = new LinkTrace(file, true, 1);
+        assertEquals(5, trace.getCount(Event.SENDER));
+        assertEquals(1, trace.getCount(Event.RECEIVER));
+        LinkTrace.Cursor cursor = trace.newCursor(Event.SENDER);
+        for (int i = 0; i < 12; i++) {
+            assertEquals(forward[i % 5], cursor.entry(i));
+        }
+        //going back, as after a rollback
+        assertEquals(forward[2], cursor.entry(2));
+        assertEquals(12, trace.newCursor(Event.RECEIVER).entry(7));
+
+        LinkTrace stop = LinkTrace.parse("stop:" + file);
+        assertEquals(forward[4], stop.newCursor(Event.SENDER).entry(4));
+        assertEquals(LinkTrace.NONE, stop.newCursor(Event.SENDER).entry(5));
+        //delays are at least one time unit
+        assertEquals(20, stop.delay(forward[0], 10));
+        assertEquals(15, stop.delay(forward[2], 10));
+        assertEquals(10, stop.delay(forward[3], 10));
+
+        Path text = tempFile(".txt");
+        for (String bad : new String[]{"0 0", "2 0 1", "0 0 -1", "0 0 x"}) {
+            Files.write(text, Arrays.asList(bad), StandardCharsets.UTF_8);
+            try {
+                LinkTrace.fromText(text, text, tempFile(".bin"), 4);
+                fail(bad);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    /**
+     * Test of the windows of class LinkTrace: the next window is mapped ahead
+     * of a cursor, and a window is dropped once no cursor is in it.
+     */
+    @Test
+    public void testWindows() throws Exception {
+        System.out.println("windows");
+        Path file = trace(new String[]{"0 0 1", "0 0 2", "0 0 3", "0 0 4", "0 0 5"}, new String[]{"0 0 1"}, 1);
+        LinkTrace trace = new LinkTrace(file, true, 1);
+        LinkTrace.Cursor cursor = trace.newCursor(Event.SENDER);
+        LinkTrace.Cursor other = trace.newCursor(Event.SENDER);
+        assertEquals(1, cursor.entry(0));
+        assertEquals(2, other.entry(1));
+        LinkTrace.awaitPrefetch();
+        assertTrue(trace.isMapped(Event.SENDER, 1));
+        assertEquals(3, cursor.entry(2));
+        LinkTrace.awaitPrefetch();
+        assertTrue(trace.isMapped(Event.SENDER, 0));
+        assertEquals(5, cursor.entry(4));
+        LinkTrace.awaitPrefetch();
+        //window 1 was left by its only cursor, the trace loops so window 0 is next after window 2
+        assertFalse(trace.isMapped(Event.SENDER, 1));
+        assertTrue(trace.isMapped(Event.SENDER, 2));
+        assertTrue(trace.isMapped(Event.SENDER, 0));
+        assertEquals(1, cursor.entry(5));
+        assertEquals(2, other.entry(6));
+        assertFalse(trace.isMapped(Event.SENDER, 2));
+    }
+
+    /**
+     * Test of setLinkTrace method, of class Simulation: the losses and delays
+     * of the trace replace the probabilities and random delays, until a trace
+     * that does not loop is over.
+     */
+    @Test
+    public void testSetLinkTrace() throws IOException {
+        System.out.println("setLinkTrace");
+        Path file = trace(new String[]{"0 0 2"}, new String[]{"0 0 1"}, 1);
+        Simulation sim = new Simulation(messages(10), 2, 1, 0.9f, 0.9f, 100, 1, 10, 1L);
+        sim.setArrivalProcess(new ConstantArrivals(5));
+        sim.setLinkTrace(LinkTrace.parse("loop:" + file));
+        FlowStatistics result = sim.run();
+        assertEquals(0, result.getMetrics().get(RunMetrics.PACKETS_LOST));
+        assertEquals(0, result.getMetrics().get(RunMetrics.PACKETS_CORRUPTED));
+        //every message is delivered 2 units after it was sent
+        assertEquals(20, result.getLatencies().getCount());
+        assertEquals(20, result.getLatencies().getMin());
+        assertEquals(20, result.getLatencies().getMax());
+
+        file = trace(new String[]{"0 0 2", "1 0 2", "0 1 2"}, new String[]{"0 0 1"}, 1);
+        sim = new Simulation(messages(10), 2, 1, 0, 0, 100, 1, 10, 1L);
+        sim.setLinkTrace(LinkTrace.parse("stop:" + file));
+        result = sim.run();
+        assertEquals(2, result.getMetrics().get(RunMetrics.PACKETS_LOST));
+        assertEquals(2, result.getMetrics().get(RunMetrics.PACKETS_CORRUPTED));
+    }
+
+    /**
+     * Test of the link trace of checkpoints and parallel runs: a run
+     * replaying a trace gives the same results resumed from a checkpoint or
+     * split between threads.
+     */
+    @Test
+    public void testSameResults() throws IOException {
+        System.out.println("sameResults");
+        String[] forward = new String[100];
+        for (int i = 0; i < forward.length; i++) {
+            forward[i] = (i % 7 == 3 ? 1 : 0) + " " + (i % 11 == 5 ? 1 : 0) + " " + (0.5 + (i * 37 % 13) / 2.0);
+        }
+        LinkTrace trace = new LinkTrace(trace(forward, new String[]{"0 0 1", "1 0 3", "0 0 2"}, 2), true, 4);
+        Simulation sim = new Simulation(messages(30), 5, 3, 0.2f, 0.2f, 4, 1, 10, 17L);
+        sim.setLinkTrace(trace);
+        FlowStatistics expResult = sim.run();
+
+        sim = new Simulation(messages(30), 5, 3, 0.2f, 0.2f, 4, 1, 10, 17L);
+        sim.setLinkTrace(trace);
+        sim.runUntil(400);
+        Path file = tempFile(".ckpt");
+        Checkpoint.save(sim, file);
+        Simulation resumed = Checkpoint.load(file);
+        assertEquals(trace.toSpec(), resumed.getLinkTrace().toSpec());
+        assertSameResults(expResult, resumed.run());
+
+        for (int numLps = 2; numLps <= 3; numLps++) {
+            ParallelSimulation parallel = new ParallelSimulation(messages(30), 5, 3, 0.2f, 0.2f, 4, 1, 10, 17L, numLps);
+            parallel.setLinkTrace(trace);
+            assertSameResults(expResult, parallel.run());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class LogTest {
+
+    public LogTest() {
+    }
+
+    /**
+     * Test of log method, of class Log: patterns are filled in order, an
+     * argument with no "{}" is dropped and only enabled levels are printed.
+     */
+    @Test
+    public void testLog() throws Exception {
+        System.out.println("log");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Log instance = new Log();
+        instance.setOut(new PrintStream(bytes, true, "UTF-8"));
+        instance.setLevel(Log.SENDER, Log.DEBUG);
+        instance.log(Log.SENDER, Log.DEBUG, "seqnum: {} acknum: {}", 3, -1);
+        instance.log(Log.SENDER, Log.TRACE, "not printed");
+        instance.log(Log.RECEIVER, Log.DEBUG, "not printed");
+        instance.log(Log.SENDER, Log.INFO, "{} to: {} {} for flow {}", 7, 8, "receiver", 2);
+        instance.log(Log.SENDER, Log.INFO, "{} to: {} for flow {}", 7, 8, "receiver", 2);
+        instance.log(Log.SENDER, Log.INFO, "{} and {}", 1);
+        instance.log(Log.SENDER, Log.INFO, new Log.LazyMessage() {
+            @Override
+            public String get() {
+                return "lazy";
+            }
+        });
+        String nl = System.getProperty("line.separator");
+        assertEquals("[ST] seqnum: 3 acknum: -1" + nl + "[ST] 7 to: 8 receiver for flow 2" + nl
+                + "[ST] 7 to: 8 for flow receiver" + nl + "[ST] 1 and {}" + nl + "[ST] lazy" + nl,
+                bytes.toString("UTF-8"));
+    }
+
+    /**
+     * Test of configure method, of class Log: the tracing level applies to
+     * every component but those set by a system property.
+     */
+    @Test
+    public void testConfigure() {
+        System.out.println("configure");
+        String property = Log.PROPERTY_PREFIX + Log.COMPONENT_NAMES[Log.RECEIVER];
+        System.setProperty(property, "trace");
+        try {
+            Log instance = new Log();
+            instance.configure(1);
+            assertEquals(Log.TRACE, instance.getLevel(Log.RECEIVER));
+            assertEquals(Log.INFO, instance.getLevel(Log.SENDER));
+            assertTrue(instance.isEnabled(Log.SIMULATOR, Log.INFO));
+            assertFalse(instance.isEnabled(Log.NETWORK, Log.DEBUG));
+        } finally {
+            System.clearProperty(property);
+        }
+        assertEquals(Log.DEBUG, Log.parseLevel("2"));
+        assertEquals(Log.OFF, Log.parseLevel("OFF"));
+    }
+
+    /**
+     * Test of disabled logging: a million calls with the arguments of the
+     * transports' debug output allocate nothing. See LogBenchmark for the cost
+     * of a call.
+     */
+    @Test
+    public void testLog_disabledAllocatesNothing() {
+        System.out.println("log disabled");
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        Log instance = new Log();
+        instance.configure(0);
+        Packet pkt = new Packet(new Message("payload"), 5, -1);
+        int calls = 1000000;
+        callDisabled(instance, pkt, calls); //warm up
+        long before = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        callDisabled(instance, pkt, calls);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        System.out.println(calls + " disabled calls: " + allocated + " bytes allocated, "
+                + (double) elapsed / calls + " ns per call");
+        //a single allocation per call would be at least 16 MB
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    private static void callDisabled(Log log, Packet pkt, int calls) {
+        for (int i = 0; i < calls; i++) {
+            log.log(Log.SENDER, Log.DEBUG, "Current queuing messages: {}, open windows: {}", i, calls - i);
+            log.log(Log.RECEIVER, Log.DEBUG, "Receive packet at receiver; seqnum: {} acknum: {} msg: {}",
+                    pkt.getSeqnum(), pkt.getAcknum(), pkt.getMessage().getMessage());
+            log.log(Log.TIMELINE, Log.TRACE, "Inserting future send event at {} with send time: {} for flow {}", i, i + 1L, 0);
+        }
+    }
+}
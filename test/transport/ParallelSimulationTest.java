@@ -0,0 +1,40 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+import static transport.TestFixtures.assertSameResults;
+
+/**
+ *
+ * @author hongha912
+ */
+public class ParallelSimulationTest {
+
+    public ParallelSimulationTest() {
+    }
+
+    /**
+     * Test of run method, of class ParallelSimulation: the results must be
+     * the same as the sequential simulation's with the same seed, and with
+     * more than one process the packets must go from one to another.
+     */
+    @Test
+    public void testRun_sameAsSequential() {
+        System.out.println("run_sameAsSequential");
+        int numFlows = 40;
+        for (int protocol = 0; protocol < 2; protocol++) {
+            FlowStatistics expResult = new Simulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L).run();
+            for (int numLps = 1; numLps <= 4; numLps++) {
+                ParallelSimulation instance = new ParallelSimulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L, numLps);
+                FlowStatistics result = instance.run();
+                assertSameResults(expResult, result);
+                if (numLps == 1) {
+                    assertEquals(0, instance.getRemoteEvents());
+                } else {
+                    assertTrue(instance.getRemoteEvents() > 0);
+                }
+            }
+        }
+    }
+}
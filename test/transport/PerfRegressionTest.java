@@ -0,0 +1,87 @@
+package transport;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class PerfRegressionTest {
+
+    public PerfRegressionTest() {
+    }
+
+    private static PerfRegression.Measures measures(double eventsPerSec, double bytesPerEvent, long peakHeap) {
+        PerfRegression.Measures m = new PerfRegression.Measures();
+        m.events = 80000;
+        m.eventsPerSec = eventsPerSec;
+        m.bytesPerEvent = bytesPerEvent;
+        m.peakHeap = peakHeap;
+        return m;
+    }
+
+    /**
+     * Test of compare method, of class PerfRegression: only changes beyond
+     * the tolerance bands are regressions, and a run of another number of
+     * events always fails.
+     */
+    @Test
+    public void testCompare() {
+        System.out.println("compare");
+        PerfRegression.Measures base = measures(1e6, 200, 20000000);
+        assertEquals(0, PerfRegression.compare(measures(0.8e6, 210, 25000000), base));
+        assertEquals(0, PerfRegression.compare(measures(2e6, 100, 1000), base));
+        assertEquals(PerfRegression.THROUGHPUT, PerfRegression.compare(measures(0.6e6, 200, 20000000), base));
+        assertEquals(PerfRegression.ALLOCATION | PerfRegression.HEAP,
+                PerfRegression.compare(measures(1e6, 300, 40000000), base));
+        //allocations that cannot be measured are not compared
+        assertEquals(0, PerfRegression.compare(measures(1e6, -1, 20000000), base));
+        PerfRegression.Measures other = measures(1e6, 200, 20000000);
+        other.events++;
+        assertEquals(PerfRegression.EVENTS, PerfRegression.compare(other, base));
+    }
+
+    /**
+     * Test of measure method, of class PerfRegression: a run of a scenario is
+     * deterministic but for its timing.
+     */
+    @Test
+    public void testMeasure() {
+        System.out.println("measure");
+        PerfRegression.Measures first = PerfRegression.measure(PerfRegression.corpus(200), 0.1f, 4, 1, 1, 2);
+        PerfRegression.Measures second = PerfRegression.measure(PerfRegression.corpus(200), 0.1f, 4, 1, 0, 1);
+        assertTrue(first.events > 3 * 200);
+        assertEquals(first.events, second.events);
+        assertTrue(first.eventsPerSec > 0);
+        assertTrue(first.peakHeap > 0);
+    }
+
+    /**
+     * Test of readBaseline method, of class PerfRegression.
+     */
+    @Test
+    public void testReadBaseline() throws Exception {
+        System.out.println("readBaseline");
+        Path file = Files.createTempFile("baseline", ".csv");
+        try {
+            Files.write(file, Arrays.asList("baseline",
+                    "lossProb,windowSize,protocol,events,eventsPerSec,bytesPerEvent,peakHeap",
+                    "0.10000000149011612,8,1,79111,1278125.5,225.0,21029632"), StandardCharsets.UTF_8);
+            Map<String, PerfRegression.Measures> baseline = PerfRegression.readBaseline(file);
+            assertEquals(1, baseline.size());
+            PerfRegression.Measures m = baseline.get(PerfRegression.key(0.1f, 8, 1));
+            assertEquals(79111, m.events);
+            assertEquals(1278125.5, m.eventsPerSec, 0);
+            assertEquals(225.0, m.bytesPerEvent, 0);
+            assertEquals(21029632, m.peakHeap);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
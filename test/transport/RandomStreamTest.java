@@ -0,0 +1,48 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class RandomStreamTest {
+
+    public RandomStreamTest() {
+    }
+
+    /**
+     * Test of seek method, of class RandomStream: the numbers only depend on
+     * their position.
+     */
+    @Test
+    public void testSeek() {
+        System.out.println("seek");
+        RandomStream instance = new RandomStream(42L, 3L, false);
+        long[] expResult = new long[10];
+        for (int i = 0; i < expResult.length; i++) {
+            expResult[i] = instance.nextLong();
+        }
+        instance.seek(7);
+        assertEquals(expResult[7], instance.nextLong());
+        instance.seek(2);
+        assertEquals(expResult[2], instance.nextLong());
+        assertEquals(expResult[3], instance.nextLong());
+    }
+
+    /**
+     * Test of an antithetic RandomStream: its uniform draws are the
+     * complements of those of the plain stream with the same seed.
+     */
+    @Test
+    public void testAntithetic() {
+        System.out.println("antithetic");
+        RandomStream plain = new RandomStream(42L, 3L, false);
+        RandomStream antithetic = new RandomStream(42L, 3L, true);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1.0, plain.nextDouble() + antithetic.nextDouble(), 1e-9);
+            assertEquals(1.0f, plain.nextFloat() + antithetic.nextFloat(), 1e-6f);
+        }
+    }
+}
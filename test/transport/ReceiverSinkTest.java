@@ -0,0 +1,174 @@
+package transport;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class ReceiverSinkTest {
+
+    public ReceiverSinkTest() {
+    }
+
+    /**
+     * Return messages with characters of two and three bytes in UTF-8, so the
+     * digests cover every length of character
+     */
+    private static ArrayList<String> nonAsciiMessages(int n) {
+        ArrayList<String> messages = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            messages.add("message " + i + " é中");
+        }
+        return messages;
+    }
+
+    /**
+     * Test of receive method, of class DigestSink: the digest follows the
+     * corpus, and a wrong or skipped message breaks it.
+     */
+    @Test
+    public void testDigestSink() {
+        System.out.println("DigestSink");
+        List<String> corpus = nonAsciiMessages(3);
+        DigestSink instance = new DigestSink(corpus, 3);
+        //CRC-64/XZ check value
+        long crc = -1;
+        for (char c : "123456789".toCharArray()) {
+            crc = DigestSink.step(crc, c);
+        }
+        assertEquals(0x995DC9BBDF1939FAL, ~crc);
+        for (int i = 0; i < 3; i++) {
+            instance.receive(0, i, new Message(corpus.get(i)));
+            assertTrue(instance.isIntact(0));
+        }
+        instance.receive(0, 1, new Message("replayed"));
+        assertTrue(instance.isIntact(0));
+        assertEquals(3, instance.getDelivered(0));
+
+        instance.receive(1, 0, new Message("wrong"));
+        assertFalse(instance.isIntact(1));
+        instance.receive(2, 1, new Message(corpus.get(1)));
+        assertFalse(instance.isIntact(2));
+        assertFalse(instance.isComplete());
+    }
+
+    /**
+     * Test of isIntact method, of class DigestSink, on a corpus too large to
+     * digest: only the messages delivered are read, once for every flow.
+     */
+    @Test
+    public void testDigestSink_lazy() {
+        System.out.println("DigestSink_lazy");
+        final int[] reads = new int[1];
+        List<String> corpus = new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                reads[0]++;
+                return "Message" + index;
+            }
+
+            @Override
+            public int size() {
+                return Integer.MAX_VALUE;
+            }
+        };
+        DigestSink instance = new DigestSink(corpus, 3);
+        assertEquals(0, reads[0]);
+        for (int flow = 0; flow < 3; flow++) {
+            for (int i = 0; i < 5; i++) {
+                instance.receive(flow, i, new Message("Message" + i));
+            }
+        }
+        instance.receive(2, 5, new Message("Message5"));
+        for (int flow = 0; flow < 3; flow++) {
+            assertTrue(instance.isIntact(flow));
+        }
+        assertEquals(6, reads[0]);
+        assertFalse(instance.isComplete());
+    }
+
+    /**
+     * Test of the sinks of runs: every flow of a lossy run delivers its
+     * messages intact, whichever engine runs it, and the counting sink agrees
+     * with the metrics.
+     */
+    @Test
+    public void testSetReceiverSink() {
+        System.out.println("setReceiverSink");
+        ArrayList<String> corpus = nonAsciiMessages(30);
+        for (int protocol = 0; protocol <= 1; protocol++) {
+            Simulation sim = new Simulation(corpus, 3, 2, 0.2f, 0.2f, 4, protocol, 1, 42L);
+            CountingSink counting = new CountingSink(3);
+            sim.setReceiverSink(counting);
+            RunMetrics metrics = sim.run().getMetrics();
+            assertEquals(metrics.getMessagesDelivered(), counting.getTotalDelivered());
+            assertEquals(3 * 30, counting.getTotalDelivered());
+
+            DigestSink digest = new DigestSink(corpus, 5);
+            ShardedSimulation sharded = new ShardedSimulation(corpus, 5, 2, 0.2f, 0.2f, 4, protocol, 1, 42L, 2);
+            sharded.setReceiverSink(digest);
+            sharded.run();
+            assertTrue(digest.isComplete());
+
+            digest = new DigestSink(corpus, 5);
+            TimeWarpSimulation timeWarp = new TimeWarpSimulation(corpus, 5, 2, 0.2f, 0.2f, 4, protocol, 1, 42L, 3, 4);
+            timeWarp.setReceiverSink(digest);
+            timeWarp.run();
+            assertTrue(digest.isComplete());
+        }
+    }
+
+    /**
+     * Test of the sink of a forked sweep, see NetworkSimulator.runForked: the
+     * warm-up and every run after it deliver to the sink, so each flow is
+     * delivered whole.
+     */
+    @Test
+    public void testRunForked_sink() {
+        System.out.println("runForked_sink");
+        String spec = "synthetic:count=30,size=uniform:1:40,seed=3";
+        DigestSink digest = new DigestSink(SyntheticMessages.parse(spec), 3);
+        NetworkSimulator simulator = new NetworkSimulator();
+        simulator.setSeed(42L);
+        simulator.setReceiverSink(digest);
+        FlowStatistics[] results = simulator.runForked(spec, 3, 2, 0.2f, 0.2f, 4, 1, 0,
+                20, new float[]{0.1f, 0.3f}, new float[]{0f, 0.1f});
+        assertEquals(2, results.length);
+        assertTrue(digest.isComplete());
+    }
+
+    /**
+     * Test of receive method, of class FileSink.
+     */
+    @Test
+    public void testFileSink() throws Exception {
+        System.out.println("FileSink");
+        Path file = Files.createTempFile("sink", ".txt");
+        try {
+            ArrayList<String> corpus = nonAsciiMessages(10);
+            Simulation sim = new Simulation(corpus, 2, 2, 0.1f, 0.1f, 4, 1, 1, 42L);
+            try (FileSink sink = new FileSink(file)) {
+                sim.setReceiverSink(sink);
+                sim.run();
+            }
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(20, lines.size());
+            int[] next = new int[2];
+            for (String line : lines) {
+                String[] fields = line.split("\t", 2);
+                int flow = Integer.parseInt(fields[0]);
+                assertEquals(corpus.get(next[flow]++), fields[1]);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package transport;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class ResultCacheTest {
+
+    public ResultCacheTest() {
+    }
+
+    private static RunMetrics metrics(long value) {
+        RunMetrics metrics = new RunMetrics();
+        for (int field = 0; field < RunMetrics.FIELD_NAMES.length; field++) {
+            metrics.set(field, value + field);
+        }
+        return metrics;
+    }
+
+    private static String key(long seed) {
+        byte[] digest = ResultCache.digest(Arrays.asList("Message0", "Message1"));
+        return ResultCache.key(digest, 1, 10, 0.1f, 0.1f, 7, 0, 1, seed, false);
+    }
+
+    /**
+     * Test of key method, of class ResultCache: every part of the
+     * configuration changes the key.
+     */
+    @Test
+    public void testKey() {
+        System.out.println("key");
+        byte[] digest = ResultCache.digest(Arrays.asList("Message0", "Message1"));
+        String key = ResultCache.key(digest, 1, 10, 0.1f, 0.1f, 7, 0, 1, 5L, false);
+        assertEquals(64, key.length());
+        assertEquals(key, ResultCache.key(digest.clone(), 1, 10, 0.1f, 0.1f, 7, 0, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(ResultCache.digest(Arrays.asList("Message0", "Message2")),
+                1, 10, 0.1f, 0.1f, 7, 0, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(ResultCache.digest(Arrays.asList("Message0Message1")),
+                1, 10, 0.1f, 0.1f, 7, 0, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(digest, 1, 11, 0.1f, 0.1f, 7, 0, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(digest, 1, 10, 0.2f, 0.1f, 7, 0, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(digest, 1, 10, 0.1f, 0.2f, 7, 0, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(digest, 1, 10, 0.1f, 0.1f, 8, 0, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(digest, 1, 10, 0.1f, 0.1f, 7, 1, 1, 5L, false));
+        assertNotEquals(key, ResultCache.key(digest, 1, 10, 0.1f, 0.1f, 7, 0, 1, 6L, false));
+        assertNotEquals(key, ResultCache.key(digest, 1, 10, 0.1f, 0.1f, 7, 0, 1, 5L, true));
+    }
+
+    /**
+     * Test of put method, of class ResultCache: results are found again once
+     * the cache is reopened, and a record cut short is dropped.
+     */
+    @Test
+    public void testPut() throws Exception {
+        System.out.println("put");
+        Path file = Files.createTempFile("results", ".cache");
+        Files.delete(file);
+        try (ResultCache cache = new ResultCache(file)) {
+            for (long seed = 0; seed < 2000; seed++) {
+                cache.put(key(seed), metrics(seed * 3));
+            }
+            assertNull(cache.get(key(-1)));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+        try (ResultCache cache = new ResultCache(file)) {
+            assertEquals(1999, cache.size());
+            assertEquals(3 * 1998 + RunMetrics.PEAK_WINDOW, cache.get(key(1998)).get(RunMetrics.PEAK_WINDOW));
+            assertNull(cache.get(key(1999)));
+            cache.put(key(1999), metrics(7));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+        try (ResultCache cache = new ResultCache(file)) {
+            assertEquals(2000, cache.size());
+            assertEquals(7, cache.get(key(1999)).getTotalTime());
+            assertEquals(RunMetrics.PEAK_REORDER_BUFFER, cache.get(key(0)).getPeakReorderBuffer());
+        }
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,176 @@
+package transport;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class ResultsWriterTest {
+
+    public ResultsWriterTest() {
+    }
+
+    private static ResultsSchema schema() {
+        return new ResultsSchema().addInt("Windows Size").addDouble("Total Time").addLong("Trials");
+    }
+
+    /**
+     * Test of append method, of class ResultsWriter: the rows of every table
+     * are in the CSV file and are read back from the binary file.
+     */
+    @Test
+    public void testAppend() throws Exception {
+        System.out.println("append");
+        Path csv = Files.createTempFile("results", ".csv");
+        Path bin = Files.createTempFile("results", ".bin");
+        ResultsSchema first = schema();
+        ResultsSchema second = new ResultsSchema().addDouble("Loss Probability");
+        try (ResultsWriter writer = new ResultsWriter(csv, bin, 3)) {
+            writer.startTable("first", first);
+            for (int i = 0; i < 7; i++) {
+                writer.append(new ResultRow(first).setInt(0, i).setDouble(1, i / 4.0).setLong(2, 1L << 40 + i));
+            }
+            writer.startTable("second", second);
+            writer.append(new ResultRow(second).setDouble(0, 0.25));
+        }
+
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        assertEquals("first", lines.get(0));
+        assertEquals("Windows Size,Total Time,Trials", lines.get(1));
+        assertEquals("2,0.5," + (1L << 42), lines.get(4));
+        assertEquals("second", lines.get(9));
+        assertEquals("0.25", lines.get(11));
+        assertEquals(12, lines.size());
+
+        List<ResultTable> tables = ResultsReader.read(bin);
+        assertEquals(2, tables.size());
+        ResultTable table = tables.get(0);
+        assertEquals("first", table.getName());
+        assertEquals(ResultsSchema.LONG, table.getSchema().getType(2));
+        assertEquals(7, table.getNumRows());
+        for (int i = 0; i < 7; i++) {
+            ResultRow row = table.getRow(i);
+            assertEquals(i, row.getInt(0));
+            assertEquals(i / 4.0, row.getDouble(1), 0);
+            assertEquals(1L << 40 + i, row.getLong(2));
+        }
+        assertEquals(0.25, tables.get(1).getRow(0).getDouble(0), 0);
+        Files.delete(csv);
+        Files.delete(bin);
+    }
+
+    /**
+     * Test of append method, of class ResultsWriter, with a time bound: a row
+     * appended after the bound is in both files before the writer is closed.
+     */
+    @Test
+    public void testAppend_flushMillis() throws Exception {
+        System.out.println("append_flushMillis");
+        Path csv = Files.createTempFile("results", ".csv");
+        Path bin = Files.createTempFile("results", ".bin");
+        ResultsSchema schema = schema();
+        try (ResultsWriter writer = new ResultsWriter(csv, bin, 64, 0)) {
+            writer.startTable("every row", schema);
+            for (int i = 0; i < 3; i++) {
+                writer.append(new ResultRow(schema).setInt(0, i));
+                assertEquals(i + 3, Files.readAllLines(csv, StandardCharsets.UTF_8).size());
+                ResultTable table = ResultsReader.read(bin).get(0);
+                assertEquals(i + 1, table.getNumRows());
+                assertEquals(i, table.getRow(i).getInt(0));
+            }
+        }
+        try (ResultsWriter writer = new ResultsWriter(csv, bin, 64, 20)) {
+            writer.startTable("slow points", schema);
+            writer.append(new ResultRow(schema).setInt(0, 1));
+            Thread.sleep(30);
+            writer.append(new ResultRow(schema).setInt(0, 2));
+            assertEquals("2,0.0,0", Files.readAllLines(csv, StandardCharsets.UTF_8).get(3));
+            assertEquals(2, ResultsReader.read(bin).get(0).getNumRows());
+        }
+        Files.delete(csv);
+        Files.delete(bin);
+    }
+
+    /**
+     * Test of append method, of class ResultsWriter, from several threads at
+     * once: no row is lost or mixed with another.
+     */
+    @Test
+    public void testAppend_concurrent() throws Exception {
+        System.out.println("append_concurrent");
+        Path bin = Files.createTempFile("results", ".bin");
+        final ResultsSchema schema = schema();
+        final int perThread = 500;
+        Thread[] threads = new Thread[4];
+        try (final ResultsWriter writer = new ResultsWriter(null, bin, 7)) {
+            writer.startTable("concurrent", schema);
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < perThread; i++) {
+                                int value = id * perThread + i;
+                                writer.append(new ResultRow(schema).setInt(0, value)
+                                        .setDouble(1, value).setLong(2, value));
+                            }
+                        } catch (java.io.IOException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
+
+        ResultTable table = ResultsReader.read(bin).get(0);
+        assertEquals(threads.length * perThread, table.getNumRows());
+        boolean[] seen = new boolean[threads.length * perThread];
+        for (int i = 0; i < table.getNumRows(); i++) {
+            ResultRow row = table.getRow(i);
+            assertEquals(row.getInt(0), row.getDouble(1), 0);
+            assertEquals(row.getInt(0), row.getLong(2));
+            assertFalse(seen[row.getInt(0)]);
+            seen[row.getInt(0)] = true;
+        }
+        Files.delete(bin);
+    }
+
+    /**
+     * Test of read method, of class ResultsReader, on a file cut short: every
+     * complete block is read back.
+     */
+    @Test
+    public void testRead_truncated() throws Exception {
+        System.out.println("read_truncated");
+        Path bin = Files.createTempFile("results", ".bin");
+        ResultsSchema schema = schema();
+        try (ResultsWriter writer = new ResultsWriter(null, bin, 4)) {
+            writer.startTable("truncated", schema);
+            for (int i = 0; i < 10; i++) {
+                writer.append(new ResultRow(schema).setInt(0, i));
+            }
+        }
+        //drop the END record and part of the last block
+        try (FileChannel channel = FileChannel.open(bin, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        ResultTable table = ResultsReader.read(bin).get(0);
+        assertEquals(8, table.getNumRows());
+        assertEquals(7, table.getRow(7).getInt(0));
+        Files.delete(bin);
+    }
+}
@@ -0,0 +1,42 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+import static transport.TestFixtures.assertSameResults;
+
+/**
+ *
+ * @author hongha912
+ */
+public class ShardedSimulationTest {
+
+    public ShardedSimulationTest() {
+    }
+
+    /**
+     * Test of run method, of class ShardedSimulation: the results must be
+     * the same as the sequential simulation's with the same seed, and the
+     * shards, which never send each other events, must process no more events
+     * between them than the sequential simulation.
+     */
+    @Test
+    public void testRun_sameAsSequential() {
+        System.out.println("run_sameAsSequential");
+        int numFlows = 40;
+        for (int protocol = 0; protocol < 2; protocol++) {
+            Simulation sequential = new Simulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L);
+            FlowStatistics expResult = sequential.run();
+            for (int numShards = 1; numShards <= 5; numShards++) {
+                ShardedSimulation instance = new ShardedSimulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L, numShards);
+                FlowStatistics result = instance.run();
+                assertSameResults(expResult, result);
+                if (numShards == 1) {
+                    assertEquals(sequential.getEventsProcessed(), instance.getEventsProcessed());
+                } else {
+                    assertTrue(instance.getEventsProcessed() <= sequential.getEventsProcessed());
+                }
+            }
+        }
+    }
+}
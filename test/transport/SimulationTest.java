@@ -0,0 +1,93 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+
+/**
+ *
+ * @author hongha912
+ */
+public class SimulationTest {
+
+    public SimulationTest() {
+    }
+
+    /**
+     * Test of run method, of class Simulation, with several flows.
+     */
+    @Test
+    public void testRun_multipleFlows() {
+        System.out.println("run_multipleFlows");
+        int numFlows = 20;
+        for (int protocol = 0; protocol < 2; protocol++) {
+            Simulation instance = new Simulation(messages(5), numFlows, 3, 0.1f, 0.1f, 3, protocol, 1, 42L);
+            FlowStatistics result = instance.run();
+            assertEquals(numFlows, result.getNumFlows());
+            assertEquals(numFlows, result.getFlowsCompleted());
+            assertEquals(5L * numFlows, result.getTotalDelivered());
+            assertEquals(result.getTotalTime(), result.getMaxCompletionTime());
+            for (int flow = 0; flow < numFlows; flow++) {
+                assertEquals(5, result.getDelivered(flow));
+                assertTrue(result.getCompletionTime(flow) > 0);
+            }
+        }
+    }
+
+    /**
+     * Test of run method, of class Simulation, with no messages to send.
+     */
+    @Test
+    public void testRun_noMessages() {
+        System.out.println("run_noMessages");
+        Simulation instance = new Simulation(messages(0), 3, 3, 0f, 0f, 3, 0, 1, 42L);
+        FlowStatistics result = instance.run();
+        assertEquals(3, result.getFlowsCompleted());
+        assertEquals(0, result.getTotalTime());
+    }
+
+    /**
+     * Test of getMetrics method, of class Simulation: nothing is lost or
+     * resent on a perfect network, and losses and corruptions lead to
+     * retransmissions otherwise.
+     */
+    @Test
+    public void testGetMetrics() {
+        System.out.println("getMetrics");
+        int numFlows = 10;
+        for (int protocol = 0; protocol < 2; protocol++) {
+            RunMetrics perfect = new Simulation(messages(20), numFlows, 1, 0f, 0f, 4, protocol, 1, 42L).run().getMetrics();
+            assertEquals(20L * numFlows, perfect.getMessagesDelivered());
+            assertEquals(0, perfect.getPacketsLost());
+            assertEquals(0, perfect.getPacketsCorrupted());
+            assertEquals(0, perfect.getRetransmissions());
+            assertEquals(0, perfect.getTimeouts());
+            assertEquals(0, perfect.getPeakReorderBuffer());
+            assertEquals(4, perfect.getPeakWindow());
+            //one ack per packet
+            assertEquals(2 * 20L * numFlows, perfect.getPacketsSent());
+
+            Simulation sim = new Simulation(messages(20), numFlows, 1, 0.2f, 0.2f, 4, protocol, 1, 42L);
+            FlowStatistics result = sim.run();
+            RunMetrics lossy = result.getMetrics();
+            assertEquals(result.getTotalTime(), lossy.getTotalTime());
+            assertEquals(20L * numFlows, lossy.getMessagesDelivered());
+            assertEquals(20L * numFlows, result.getLatencies().getCount());
+            assertTrue(lossy.getLatency(50) > 0);
+            assertTrue(lossy.getLatency(50) <= lossy.getLatency(99));
+            assertTrue(lossy.getLatency(99) <= lossy.getLatency(100));
+            assertEquals(result.getLatencies().getMax(), lossy.getLatency(100));
+            assertTrue(lossy.getPacketsLost() > 0);
+            assertTrue(lossy.getPacketsCorrupted() > 0);
+            assertTrue(lossy.getTimeouts() > 0);
+            assertTrue(lossy.getRetransmissions() >= lossy.getTimeouts() + lossy.getFastRetransmits());
+            assertTrue(lossy.getDuplicateAcks() > 0);
+            assertTrue(lossy.getPeakWindow() <= 4);
+            if (protocol == 1) {
+                assertTrue(lossy.getFastRetransmits() > 0);
+                assertTrue(lossy.getPeakReorderBuffer() > 0);
+                assertTrue(lossy.getPeakReorderBuffer() < 4);
+            }
+        }
+    }
+}
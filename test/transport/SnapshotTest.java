@@ -0,0 +1,53 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+import static transport.TestFixtures.assertSameResults;
+
+/**
+ *
+ * @author hongha912
+ */
+public class SnapshotTest {
+
+    public SnapshotTest() {
+    }
+
+    /**
+     * Test of fork method, of class Snapshot: every fork carries on exactly
+     * like the original would have, independently of the others.
+     */
+    @Test
+    public void testFork() {
+        System.out.println("fork");
+        FlowStatistics expResult = new Simulation(messages(10), 10, 3, 0.2f, 0.2f, 4, 0, 1, 5L).run();
+        Simulation sim = new Simulation(messages(10), 10, 3, 0.2f, 0.2f, 4, 0, 1, 5L);
+        sim.runUntil(40);
+        Snapshot snapshot = sim.snapshot();
+        Simulation first = snapshot.fork();
+        Simulation second = snapshot.fork();
+        assertSameResults(expResult, first.run());
+        assertSameResults(expResult, second.run());
+        assertSameResults(expResult, sim.run());
+    }
+
+    /**
+     * Test of fork method, of class Snapshot, with new network parameters:
+     * the fork is the same as a run whose parameters were changed at the same
+     * time.
+     */
+    @Test
+    public void testFork_newParameters() {
+        System.out.println("fork_newParameters");
+        Simulation sim = new Simulation(messages(10), 10, 3, 0.2f, 0.2f, 4, 1, 1, 5L);
+        sim.runUntil(40);
+        Snapshot snapshot = sim.snapshot();
+        FlowStatistics result = snapshot.fork(0.5f, 0f).run();
+
+        Simulation expSim = new Simulation(messages(10), 10, 3, 0.2f, 0.2f, 4, 1, 1, 5L);
+        expSim.runUntil(40);
+        expSim.setNetworkParameters(0.5f, 0f);
+        assertSameResults(expSim.run(), result);
+    }
+}
@@ -0,0 +1,132 @@
+package transport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class SyntheticMessagesTest {
+
+    public SyntheticMessagesTest() {
+    }
+
+    /**
+     * Test of get method, of class SyntheticMessages: messages depend on the
+     * seed and their number only, and parse gives back the same list.
+     */
+    @Test
+    public void testGet() {
+        System.out.println("get");
+        SyntheticMessages instance = SyntheticMessages.uniform(1000, 1, 300, 7);
+        SyntheticMessages same = SyntheticMessages.parse("synthetic:count=1000,size=uniform:1:300,seed=7");
+        assertEquals(1000, instance.size());
+        assertEquals(instance, same);
+        assertEquals(instance, SyntheticMessages.parse(instance.toSpec()));
+        assertEquals(instance.get(999), instance.get(999));
+        assertNotEquals(instance.get(0), SyntheticMessages.uniform(1000, 1, 300, 8).get(0));
+        //messages are generated backwards as well as forwards
+        for (int i = 999; i >= 0; i--) {
+            String message = instance.get(i);
+            assertEquals(instance.sizeOf(i), message.length());
+            assertTrue(message.matches("[A-Za-z0-9_-]+"));
+        }
+        SyntheticMessages[] others = {
+            SyntheticMessages.fixed(3, 12, 1),
+            SyntheticMessages.pareto(3, 20, 1.5, 4000, 1),
+            SyntheticMessages.empirical(3, new int[]{10, 100}, new double[]{0.5, 1}, 1)};
+        for (SyntheticMessages other : others) {
+            assertEquals(other, SyntheticMessages.parse(other.toSpec()));
+        }
+        try {
+            instance.get(1000);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        for (String bad : new String[]{"synthetic:count=5", "synthetic:count=5,size=normal:3",
+            "synthetic:count=5,size=uniform:9:3", "synthetic:count=5,size=fixed:0",
+            "synthetic:count=5,size=empirical:10@0.5", "synthetic:count=5,size=fixed:3,colour=red"}) {
+            try {
+                SyntheticMessages.parse(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Test of sizeOf method, of class SyntheticMessages: the sizes follow
+     * their distribution.
+     */
+    @Test
+    public void testSizeOf() {
+        System.out.println("sizeOf");
+        int n = 20000;
+        SyntheticMessages fixed = SyntheticMessages.fixed(n, 12, 3);
+        SyntheticMessages uniform = SyntheticMessages.uniform(n, 10, 30, 3);
+        SyntheticMessages pareto = SyntheticMessages.pareto(n, 20, 2, 1000, 3);
+        SyntheticMessages empirical = SyntheticMessages.empirical(n, new int[]{5, 50, 500},
+                new double[]{0.25, 0.75, 1}, 3);
+        double uniformSum = 0;
+        int paretoBelow = 0;
+        int[] empiricalCounts = new int[3];
+        for (int i = 0; i < n; i++) {
+            assertEquals(12, fixed.sizeOf(i));
+            int size = uniform.sizeOf(i);
+            assertTrue(size >= 10 && size <= 30);
+            uniformSum += size;
+            size = pareto.sizeOf(i);
+            assertTrue(size >= 20 && size <= 1000);
+            //P(size < x) = 1 - (scale / x)^shape, 3/4 for x = 40
+            if (size < 40) {
+                paretoBelow++;
+            }
+            size = empirical.sizeOf(i);
+            empiricalCounts[size == 5 ? 0 : size == 50 ? 1 : 2]++;
+        }
+        assertEquals(20, uniformSum / n, 0.2);
+        assertEquals(0.75, (double) paretoBelow / n, 0.02);
+        assertEquals(0.25, (double) empiricalCounts[0] / n, 0.02);
+        assertEquals(0.5, (double) empiricalCounts[1] / n, 0.02);
+        assertEquals(0.25, (double) empiricalCounts[2] / n, 0.02);
+    }
+
+    /**
+     * Test of a run of synthetic messages: every flow delivers them intact,
+     * the same as from a list, and a checkpoint keeps their spec.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        SyntheticMessages messages = SyntheticMessages.pareto(300, 5, 1.2, 2000, 11);
+        List<String> copy = new ArrayList<>(messages);
+        DigestSink digest = new DigestSink(messages, 2);
+        Simulation sim = new Simulation(messages, 2, 2, 0.1f, 0.1f, 8, 1, 1, 42L);
+        sim.setReceiverSink(digest);
+        FlowStatistics expResult = sim.run();
+        assertTrue(digest.isComplete());
+
+        Simulation fromList = new Simulation(new ArrayList<>(copy), 2, 2, 0.1f, 0.1f, 8, 1, 1, 42L);
+        fromList.setReceiverSink(new CountingSink(2));
+        assertEquals(expResult.getTotalTime(), fromList.run().getTotalTime());
+
+        Path file = Files.createTempFile("synthetic", ".ckpt");
+        try {
+            Simulation interrupted = new Simulation(messages, 2, 2, 0.1f, 0.1f, 8, 1, 1, 42L);
+            interrupted.setReceiverSink(new CountingSink(2));
+            interrupted.runUntil(200);
+            Checkpoint.save(interrupted, file);
+            assertTrue(Files.size(file) < 8 * 1024);
+            Simulation resumed = Checkpoint.load(file);
+            resumed.setReceiverSink(new CountingSink(2));
+            assertEquals(expResult.getTotalTime(), resumed.run().getTotalTime());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
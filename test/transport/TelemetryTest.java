@@ -0,0 +1,75 @@
+package transport;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+
+/**
+ *
+ * @author hongha912
+ */
+public class TelemetryTest {
+
+    public TelemetryTest() {
+    }
+
+    /**
+     * Test of the counters of class Telemetry: runs of every engine are
+     * counted once, with all of their events, and read over JMX.
+     */
+    @Test
+    public void testCounters() throws Exception {
+        System.out.println("counters");
+        Telemetry.register();
+        Telemetry.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Telemetry.OBJECT_NAME);
+        Telemetry instance = Telemetry.get();
+        long runs = (Long) server.getAttribute(name, "RunsCompleted");
+        long events = instance.getEventsProcessed();
+
+        ArrayList<String> corpus = messages(50);
+        Simulation sim = new Simulation(corpus, 2, 2, 0.2f, 0.1f, 4, 1, 1, 42L);
+        sim.setReceiverSink(new CountingSink(2));
+        sim.run();
+        ShardedSimulation sharded = new ShardedSimulation(corpus, 3, 2, 0.2f, 0.1f, 4, 0, 1, 42L, 2);
+        sharded.setReceiverSink(new CountingSink(3));
+        sharded.run();
+
+        assertEquals(runs + 2, (long) (Long) server.getAttribute(name, "RunsCompleted"));
+        assertEquals(0, (int) (Integer) server.getAttribute(name, "ActiveRuns"));
+        assertEquals(0, instance.getQueueDepth());
+        assertEquals(0, instance.getSimulatedTimeRatio(), 0);
+        assertTrue(instance.getEventsProcessed() - events >= sim.getEventsProcessed() + 3 * 3 * 50);
+        assertTrue(instance.getQueueHighWaterMark() > 0);
+        assertTrue(instance.getEventsPerSecond() >= 0);
+    }
+
+    /**
+     * Test of sample method, of class Telemetry: the events per second are
+     * those between the last two samples, whoever reads them and however
+     * often.
+     */
+    @Test
+    public void testSample() {
+        System.out.println("sample");
+        Telemetry instance = Telemetry.get();
+        Simulation sim = new Simulation(messages(50), 2, 2, 0.2f, 0.1f, 4, 1, 1, 42L);
+        sim.setReceiverSink(new CountingSink(2));
+        //the lock keeps the sampler of a registered telemetry out of the way
+        synchronized (instance) {
+            long now = System.nanoTime();
+            instance.sample(now);
+            sim.run();
+            instance.sample(now + 2000000000L);
+            double rate = instance.getEventsPerSecond();
+            assertEquals(sim.getEventsProcessed() / 2.0, rate, 1e-9);
+            assertEquals(rate, instance.getEventsPerSecond(), 0);
+            assertEquals(rate, instance.getEventsPerSecond(), 0);
+        }
+    }
+}
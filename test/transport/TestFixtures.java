@@ -0,0 +1,47 @@
+package transport;
+
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+
+/**
+ * The messages and checks shared by the tests of the runs
+ *
+ * @author hongha912
+ */
+public class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * Return a corpus of messages, "Message0" to "Message(n-1)"
+     *
+     * @param n number of messages
+     * @return the messages
+     */
+    public static ArrayList<String> messages(int n) {
+        ArrayList<String> messages = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            messages.add("Message" + i);
+        }
+        return messages;
+    }
+
+    /**
+     * Check that two runs have the same results: total time, every metric,
+     * and the completion time and messages delivered of every flow
+     *
+     * @param expResult the results expected
+     * @param result the results of the run
+     */
+    public static void assertSameResults(FlowStatistics expResult, FlowStatistics result) {
+        assertEquals(expResult.getTotalTime(), result.getTotalTime());
+        for (int field = 0; field < RunMetrics.FIELD_NAMES.length; field++) {
+            assertEquals(RunMetrics.FIELD_NAMES[field], expResult.getMetrics().get(field), result.getMetrics().get(field));
+        }
+        for (int flow = 0; flow < expResult.getNumFlows(); flow++) {
+            assertEquals(expResult.getCompletionTime(flow), result.getCompletionTime(flow));
+            assertEquals(expResult.getDelivered(flow), result.getDelivered(flow));
+        }
+    }
+}
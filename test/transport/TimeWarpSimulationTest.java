@@ -0,0 +1,66 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+import static transport.TestFixtures.assertSameResults;
+
+/**
+ *
+ * @author hongha912
+ */
+public class TimeWarpSimulationTest {
+
+    public TimeWarpSimulationTest() {
+    }
+
+    /**
+     * Test of run method, of class TimeWarpSimulation: with the default
+     * window, the results must be the same as the sequential simulation's
+     * with the same seed, and with more than one process the packets must go
+     * from one to another.
+     */
+    @Test
+    public void testRun_sameAsSequential() {
+        System.out.println("run_sameAsSequential");
+        int numFlows = 40;
+        for (int protocol = 0; protocol < 2; protocol++) {
+            FlowStatistics expResult = new Simulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L).run();
+            for (int numLps = 1; numLps <= 4; numLps++) {
+                for (int gvtInterval : new int[]{1, 16, 100000}) {
+                    TimeWarpSimulation instance = new TimeWarpSimulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L, numLps, gvtInterval);
+                    FlowStatistics result = instance.run();
+                    assertSameResults(expResult, result);
+                    if (numLps == 1) {
+                        assertEquals(0, instance.getRemoteEvents());
+                    } else {
+                        assertTrue(instance.getRemoteEvents() > 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of run method, of class TimeWarpSimulation: with one process let
+     * run ahead of the others, which are held to the lookahead, the events
+     * it gets from them are stragglers; it must roll back and send
+     * anti-messages, and the results must still be the same as the
+     * sequential simulation's with the same seed.
+     */
+    @Test
+    public void testRun_stragglers() {
+        System.out.println("run_stragglers");
+        int numFlows = 40;
+        for (int protocol = 0; protocol < 2; protocol++) {
+            FlowStatistics expResult = new Simulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L).run();
+            TimeWarpSimulation instance = new TimeWarpSimulation(messages(8), numFlows, 3, 0.2f, 0.2f, 4, protocol, 1, 7L, 4, 16);
+            instance.setWindow(1);
+            instance.setWindow(0, Long.MAX_VALUE);
+            FlowStatistics result = instance.run();
+            assertTrue(instance.getRollbacks() > 0);
+            assertTrue(instance.getAntiMessages() > 0);
+            assertSameResults(expResult, result);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class TimelineTest {
+
+    public TimelineTest() {
+    }
+
+    /**
+     * Test of returnNextBatch method, of class Timeline.
+     */
+    @Test
+    public void testReturnNextBatch() {
+        System.out.println("returnNextBatch");
+        // with no time between sends every send event happens at time 0
+        Timeline instance = new Timeline(0, 3);
+        List<Event> batch = new ArrayList<>();
+        assertEquals(3, instance.returnNextBatch(batch));
+        for (Event e : batch) {
+            assertEquals(0, e.getTime());
+            assertEquals(Event.MESSAGESEND, e.getType());
+        }
+        assertEquals(0, instance.returnNextBatch(batch));
+        assertTrue(batch.isEmpty());
+    }
+
+    /**
+     * Test of returnNextBatch method, of class Timeline, with events at
+     * different times.
+     */
+    @Test
+    public void testReturnNextBatch_differentTimes() {
+        System.out.println("returnNextBatch_differentTimes");
+        Timeline instance = new Timeline(0, 1);
+        List<Event> batch = new ArrayList<>();
+        assertEquals(1, instance.returnNextBatch(batch));
+        instance.startTimer(0, 30);
+        instance.createArriveEvent(new Packet(new Message("test"), 0, -1), Event.RECEIVER, 0);
+        assertEquals(1, instance.returnNextBatch(batch));
+        assertEquals(Event.MESSAGEARRIVE, batch.get(0).getType());
+        assertEquals(1, instance.returnNextBatch(batch));
+        assertEquals(Event.TIMER, batch.get(0).getType());
+        assertEquals(30, batch.get(0).getTime());
+    }
+
+    /**
+     * Test of startTimer method, of class Timeline, with a finer resolution.
+     */
+    @Test
+    public void testStartTimer_ticksPerUnit() {
+        System.out.println("startTimer_ticksPerUnit");
+        Timeline instance = new Timeline(0, 1, 1, 1000000L, 0L);
+        List<Event> batch = new ArrayList<>();
+        instance.returnNextBatch(batch);
+        instance.startTimer(0, 3000);
+        assertEquals(1, instance.returnNextBatch(batch));
+        // 3 * 10^9 ticks does not fit in an int
+        assertEquals(3000000000L, batch.get(0).getTime());
+    }
+
+    /**
+     * Test of compareTo method, of class Event, for events at the same time
+     * and far apart in time.
+     */
+    @Test
+    public void testEventOrder() {
+        System.out.println("eventOrder");
+        Event first = new Event(5, Event.TIMER, Event.SENDER, 0);
+        Event second = new Event(5, Event.TIMER, Event.SENDER, 0);
+        first.seq = 0;
+        second.seq = 1;
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(second.compareTo(first) > 0);
+        Event late = new Event(Long.MAX_VALUE, Event.TIMER, Event.SENDER, 0);
+        Event early = new Event(-1, Event.TIMER, Event.SENDER, 0);
+        assertTrue(early.compareTo(late) < 0);
+        assertTrue(late.compareTo(early) > 0);
+    }
+
+    /**
+     * Test of packetRandom method, of class Timeline: the numbers of a packet
+     * only depend on its number and transmission, not on the packets sent
+     * before it.
+     */
+    @Test
+    public void testPacketRandom() {
+        System.out.println("packetRandom");
+        Timeline instance = new Timeline(0, 0, 2, 1, 42L);
+        long retransmission = instance.packetRandom(1, Event.SENDER, 3, 1).nextLong();
+        long ack = instance.packetRandom(1, Event.RECEIVER, -1, 0).nextLong();
+        for (int seqnum = 0; seqnum < 5; seqnum++) {
+            instance.packetRandom(1, Event.SENDER, seqnum, 0).nextLong();
+        }
+        assertEquals(retransmission, instance.packetRandom(1, Event.SENDER, 3, 1).nextLong());
+        assertEquals(ack, instance.packetRandom(1, Event.RECEIVER, -1, 0).nextLong());
+        assertNotEquals(retransmission, instance.packetRandom(1, Event.SENDER, 3, 0).nextLong());
+        assertNotEquals(retransmission, instance.packetRandom(0, Event.SENDER, 3, 1).nextLong());
+        assertEquals(8, instance.getPacketsSent(1, Event.SENDER));
+    }
+}
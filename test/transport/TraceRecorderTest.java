@@ -0,0 +1,119 @@
+package transport;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static transport.TestFixtures.messages;
+
+/**
+ *
+ * @author hongha912
+ */
+public class TraceRecorderTest {
+
+    public TraceRecorderTest() {
+    }
+
+    /**
+     * Test of record method, of class TraceRecorder: records of several
+     * threads through a small ring buffer are all written, once each.
+     */
+    @Test
+    public void testRecord_concurrent() throws Exception {
+        System.out.println("record");
+        Path file = Files.createTempFile("trace", ".trace");
+        Path csv = Files.createTempFile("trace", ".csv");
+        final int numThreads = 4;
+        final int perThread = 20000;
+        try {
+            final TraceRecorder trace = new TraceRecorder(file, 64);
+            Thread[] threads = new Thread[numThreads];
+            for (int t = 0; t < numThreads; t++) {
+                final int flow = t;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < perThread; i++) {
+                            trace.record(i, TraceRecorder.PACKET_SENT, flow, Event.SENDER, i, -1, 0);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            trace.close();
+            assertEquals((long) numThreads * perThread, trace.getCount());
+            //no zeroed record is left after the last one
+            assertEquals(TraceRecorder.HEADER_SIZE + (long) numThreads * perThread * TraceRecorder.RECORD_SIZE,
+                    Files.size(file));
+
+            assertEquals((long) numThreads * perThread, TraceConverter.toCsv(file, csv));
+            List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+            assertEquals("time,type,flow,host,seq,ack,lost,corrupted", lines.get(0));
+            boolean[][] seen = new boolean[numThreads][perThread];
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(",");
+                int flow = Integer.parseInt(fields[2]);
+                int seq = Integer.parseInt(fields[4]);
+                assertEquals(fields[0], fields[4]);
+                assertFalse(seen[flow][seq]);
+                seen[flow][seq] = true;
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(csv);
+        }
+    }
+
+    /**
+     * Test of the trace of a run: every packet sent is recorded, with the
+     * packets the network layer lost flagged, and converted to pcap.
+     */
+    @Test
+    public void testTrace_simulation() throws Exception {
+        System.out.println("trace");
+        Path file = Files.createTempFile("trace", ".trace");
+        Path pcap = Files.createTempFile("trace", ".pcap");
+        Path csv = Files.createTempFile("trace", ".csv");
+        try {
+            TraceRecorder trace = new TraceRecorder(file);
+            Simulation sim = new Simulation(messages(50), 3, 2, 0.2f, 0.1f, 4, 1, 1, 42L);
+            sim.setTraceRecorder(trace);
+            RunMetrics metrics = sim.run().getMetrics();
+            trace.close();
+
+            TraceConverter.toCsv(file, csv);
+            long sent = 0;
+            long lost = 0;
+            long corrupted = 0;
+            long messagesSent = 0;
+            List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(",");
+                if (fields[1].equals("sent")) {
+                    sent++;
+                    lost += Integer.parseInt(fields[6]);
+                    corrupted += Integer.parseInt(fields[7]);
+                } else if (fields[1].equals("message")) {
+                    messagesSent++;
+                }
+            }
+            assertEquals(metrics.getPacketsSent(), sent);
+            assertEquals(metrics.getPacketsLost(), lost);
+            assertEquals(metrics.getPacketsCorrupted(), corrupted);
+            assertEquals(3 * 50, messagesSent);
+
+            assertEquals(sent, TraceConverter.toPcap(file, pcap));
+            assertEquals(24 + sent * (16 + 40), Files.size(pcap));
+        } finally {
+            Files.delete(file);
+            Files.delete(pcap);
+            Files.delete(csv);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package transport;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hongha912
+ */
+public class TrialStatisticsTest {
+
+    public TrialStatisticsTest() {
+    }
+
+    /**
+     * Test of getMean and getStdDev methods, of class TrialStatistics.
+     */
+    @Test
+    public void testMeanAndStdDev() {
+        System.out.println("meanAndStdDev");
+        TrialStatistics instance = new TrialStatistics();
+        for (double v : new double[]{2, 4, 4, 4, 5, 5, 7, 9}) {
+            instance.add(v);
+        }
+        assertEquals(8, instance.getCount());
+        assertEquals(5.0, instance.getMean(), 1e-12);
+        assertEquals(Math.sqrt(32.0 / 7), instance.getStdDev(), 1e-12);
+    }
+
+    /**
+     * Test of getHalfWidth method, of class TrialStatistics.
+     */
+    @Test
+    public void testGetHalfWidth() {
+        System.out.println("getHalfWidth");
+        TrialStatistics instance = new TrialStatistics();
+        instance.add(1);
+        assertEquals(Double.POSITIVE_INFINITY, instance.getHalfWidth(0.95), 0);
+        instance.add(3);
+        //t(0.975, 1) = 12.706, s = sqrt(2), n = 2
+        assertEquals(12.706 * Math.sqrt(2) / Math.sqrt(2), instance.getHalfWidth(0.95), 1e-3);
+        assertEquals(12.706 / 2, instance.getRelativeHalfWidth(0.95), 1e-3);
+    }
+
+    /**
+     * Test of tQuantile method, of class TrialStatistics, against tabulated
+     * values.
+     */
+    @Test
+    public void testTQuantile() {
+        System.out.println("tQuantile");
+        assertEquals(4.303, TrialStatistics.tQuantile(0.975, 2), 1e-3);
+        assertEquals(3.182, TrialStatistics.tQuantile(0.975, 3), 0.01);
+        assertEquals(2.571, TrialStatistics.tQuantile(0.975, 5), 0.005);
+        assertEquals(2.228, TrialStatistics.tQuantile(0.975, 10), 1e-3);
+        assertEquals(1.984, TrialStatistics.tQuantile(0.975, 100), 1e-3);
+        assertEquals(1.960, TrialStatistics.normalQuantile(0.975), 1e-3);
+    }
+}